@@ -24,7 +24,8 @@ public class Booking implements Serializable {
     private LocalTime bookingTime;
     private int numberOfGuests;
     private BookingStatus status;
-    private final LocalDateTime creationTimestamp;
+    private LocalDateTime creationTimestamp;
+    private long version;
 
 
     /**
@@ -130,8 +131,39 @@ public class Booking implements Serializable {
         return creationTimestamp;
     }
 
+    /**
+     * @return The version of the booking, which the repository raises on
+     * every save. 0 for a booking that has never been saved.
+     */
+    public long getVersion() {
+        return version;
+    }
+
     // Setters
 
+    /**
+     * Restores the creation timestamp of a booking read back from storage,
+     * since the constructor stamps every new booking with the current time.
+     * Intended for persistence code only.
+     *
+     * @param creationTimestamp When the booking was created
+     * @throws NullPointerException if creationTimestamp is null.
+     */
+    public void restoreCreationTimestamp(LocalDateTime creationTimestamp) {
+        this.creationTimestamp = Objects.requireNonNull(creationTimestamp,
+        "Creation timestamp cannot be null.");
+    }
+
+    /**
+     * Sets the version of a booking being saved or read back from storage.
+     * Intended for persistence code only.
+     *
+     * @param version The version
+     */
+    public void restoreVersion(long version) {
+        this.version = version;
+    }
+
     /**
      * Sets the booking's persistent ID..
      *
@@ -1,14 +1,19 @@
 package com.cafe94.domain;
 
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.util.Objects;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import com.cafe94.util.MoneyUtils;
 import com.cafe94.util.ValidationUtils;
 
 /**
- * Represents a single item available on the Cafe94 menu.
+ * Represents a single item available on the Cafe94 menu. The price is
+ * held in whole pence; the double accessors convert at the edges.
  * @author  Adigun Lateef
  * @version 1.0
  */
@@ -17,7 +22,7 @@ public class Item implements Serializable {
     private static final Logger LOGGER = Logger.getLogger(Item.class.getName());
     private int itemID;
     private String name;
-    private double price;
+    private long pricePence;
     private String category;
     private boolean isDailySpecial;
 
@@ -45,7 +50,8 @@ public class Item implements Serializable {
         // Validate and set final fields directly using ValidationUtils
         this.name = ValidationUtils.requireNonBlank(name, "Item name");
         this.category = ValidationUtils.requireNonBlank(category, "Item category");
-        this.price = ValidationUtils.requireNonNegative(price, "Item price");
+        this.pricePence = MoneyUtils.toPence(
+        ValidationUtils.requireNonNegative(price, "Item price"));
         this.isDailySpecial = isDailySpecial;
 
          LOGGER.log(Level.FINEST, "Created Item object: ID={0}, Name='{1}'",
@@ -72,7 +78,14 @@ public class Item implements Serializable {
      * @return The item's price
     */
     public double getPrice() {
-        return price;
+        return MoneyUtils.toPounds(pricePence);
+    }
+
+    /**
+     * @return The item's price in pence
+     */
+    public long getPricePence() {
+        return pricePence;
     }
 
     /**
@@ -131,10 +144,25 @@ public class Item implements Serializable {
 
     /**
      * Sets item price
-     * @param price The item price value
+     * @param price The item price value, rounded to the nearest penny
+     * @throws IllegalArgumentException if price is negative or not finite.
      */
     public void setPrice(double price) {
-        this.price = price;
+        this.pricePence = MoneyUtils.toPence(
+        ValidationUtils.requireNonNegative(price, "Item price"));
+    }
+
+    /**
+     * Sets item price in pence
+     * @param pricePence The item price in pence
+     * @throws IllegalArgumentException if pricePence is negative.
+     */
+    public void setPricePence(long pricePence) {
+        if (pricePence < 0) {
+            throw new IllegalArgumentException(
+            "Item price cannot be negative. Value: " + pricePence);
+        }
+        this.pricePence = pricePence;
     }
 
     /**
@@ -157,7 +185,7 @@ public class Item implements Serializable {
                "ID=" + itemID +
                ", Name='" + name + '\'' +
                ", Cat='" + category + '\'' +
-               ", Price=" + String.format("%.2f", price) +
+               ", Price=" + MoneyUtils.format(pricePence) +
                ", Special=" + isDailySpecial + ']';
     }
 
@@ -176,7 +204,7 @@ public class Item implements Serializable {
         }
 
         // Fallback for transient objects
-        return Double.compare(item.price, price) == 0 &&
+        return item.pricePence == pricePence &&
                Objects.equals(name, item.name) &&
                Objects.equals(category, item.category);
     }
@@ -190,7 +218,30 @@ public class Item implements Serializable {
         if (itemID > 0) {
             return Objects.hash(itemID);
         }
-        return Objects.hash(name, category, price);
+        return Objects.hash(name, category, pricePence);
+    }
+
+    /**
+     * Reads an item, converting the double price of items serialized
+     * before prices were held in pence.
+     */
+    private void readObject(ObjectInputStream in)
+    throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField fields = in.readFields();
+        itemID = fields.get("itemID", 0);
+        name = (String) fields.get("name", null);
+        category = (String) fields.get("category", null);
+        isDailySpecial = fields.get("isDailySpecial", false);
+        if (fields.defaulted("pricePence")) {
+            try {
+                pricePence = MoneyUtils.toPence(fields.get("price", 0.0));
+            } catch (IllegalArgumentException e) {
+                throw new InvalidObjectException(
+                "Invalid item price: " + e.getMessage());
+            }
+        } else {
+            pricePence = fields.get("pricePence", 0L);
+        }
     }
 
 }
\ No newline at end of file
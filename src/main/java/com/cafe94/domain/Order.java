@@ -1,9 +1,10 @@
 
 package com.cafe94.domain;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.time.LocalDateTime;
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
@@ -12,9 +13,15 @@ import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import com.cafe94.enums.OrderStatus;
+import com.cafe94.util.MoneyUtils;
 
 /**
  * Abstract base class representing an order placed at Cafe94.
+ * <p>
+ * The items are held as {@link OrderLine}s, one per distinct item and
+ * price with a quantity, sharing the item instances they were given.
+ * {@link #getItems()} still lists every unit. Prices are whole pence, so
+ * the total is exact.
  * @author Adigun Lateef
  * @version 1.0
  */
@@ -22,18 +29,23 @@ public abstract class Order implements Serializable {
     private static final long serialVersionUID = 1L;
     private static final Logger LOGGER = Logger.getLogger(Order.class.getName());
     private int orderID;
+    private List<OrderLine> lines;
+    // Only set in orders serialized before order lines existed
     private List<Item> items;
     private final int customerID;
     private OrderStatus status;
-    private final LocalDateTime orderTimestamp;
+    private LocalDateTime orderTimestamp;
     protected LocalDateTime lastUpdatedTimestamp;
-    private double totalPrice;
+    // Derived from the lines, so recomputed on deserialization
+    private transient long totalPence;
+    private long version;
 
     /**
      * Protected constructor for use by subclasses. Validates input.
      *
      * @param orderID       Unique ID or existing ID.
-     * @param items         List of items
+     * @param items         List of items, one entry per unit; the item
+     *                      view of another order keeps its lines
      * @param customerID    ID of the customer placing the order
      * @param initialStatus The starting status of the order
      * @throws NullPointerException if items list or initialStatus is null.
@@ -57,26 +69,41 @@ public abstract class Order implements Serializable {
 
         // Assign fields
         this.orderID = orderID;
-        this.items = new ArrayList<>(items);
+        this.lines = OrderLine.group(items);
         this.customerID = customerID;
         this.status = initialStatus;
         this.orderTimestamp = LocalDateTime.now();
         this.lastUpdatedTimestamp = this.orderTimestamp;
-        this.totalPrice = calculateTotalPrice();
+        this.totalPence = calculateTotalPence();
     }
 
     /**
-     * Calculates the total price based on the current items in the order.
-     * @return The sum of the prices of all non-null items.
+     * Calculates the total price based on the current lines in the order,
+     * without allocating.
+     * @return The sum of the line totals in pence.
+     * @throws ArithmeticException if the total overflows a long.
      */
-    private double calculateTotalPrice() {
-        if (this.items == null) {
-            return 0.0;
+    private long calculateTotalPence() {
+        long total = 0;
+        for (int i = 0; i < lines.size(); i++) {
+            total = Math.addExact(total, lines.get(i).getLineTotalPence());
         }
-        return this.items.stream()
-                .filter(Objects::nonNull)
-                .mapToDouble(Item::getPrice)
-                .sum();
+        return total;
+    }
+
+    /**
+     * Converts the items of an order serialized before order lines
+     * existed.
+     */
+    private void readObject(ObjectInputStream in)
+    throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        if (lines == null) {
+            lines = OrderLine.group(items != null ? items
+            : Collections.<Item>emptyList());
+            items = null;
+        }
+        totalPence = calculateTotalPence();
     }
 
     // Getters
@@ -89,11 +116,20 @@ public abstract class Order implements Serializable {
     }
 
     /**
-     * Returns an unmodifiable view of the items currently in the order.
+     * Returns an unmodifiable view of the items currently in the order,
+     * each line repeated by its quantity and priced as charged.
      * @return An unmodifiable list of Items.
      */
     public List<Item> getItems() {
-        return Collections.unmodifiableList(items);
+        return OrderLine.view(lines);
+    }
+
+    /**
+     * Returns the lines of the order, one per distinct item and price.
+     * @return An unmodifiable list of OrderLines.
+     */
+    public List<OrderLine> getLines() {
+        return lines;
     }
 
     /**
@@ -129,11 +165,55 @@ public abstract class Order implements Serializable {
      * @return The total price.
      */
     public double getTotalPrice() {
-        return totalPrice;
+        return MoneyUtils.toPounds(totalPence);
+    }
+
+    /**
+     * Gets the pre-calculated total price of the order in pence.
+     * @return The exact total price in pence.
+     */
+    public long getTotalPence() {
+        return totalPence;
+    }
+
+    /**
+     * Gets the version of the order, which the repository raises on every
+     * save. 0 for an order that has never been saved.
+     * @return The version.
+     */
+    public long getVersion() {
+        return version;
     }
 
     // Setters
 
+    /**
+     * Restores the timestamps of an order read back from storage, since
+     * the constructor stamps every new order with the current time.
+     * Intended for persistence code only.
+     *
+     * @param orderTimestamp       When the order was placed
+     * @param lastUpdatedTimestamp When the order last changed
+     * @throws NullPointerException if orderTimestamp is null.
+     */
+    public void restoreTimestamps(LocalDateTime orderTimestamp,
+    LocalDateTime lastUpdatedTimestamp) {
+        this.orderTimestamp = Objects.requireNonNull(orderTimestamp,
+        "Order timestamp cannot be null.");
+        this.lastUpdatedTimestamp = lastUpdatedTimestamp != null
+        ? lastUpdatedTimestamp : orderTimestamp;
+    }
+
+    /**
+     * Sets the version of an order being saved or read back from storage.
+     * Intended for persistence code only.
+     *
+     * @param version The version
+     */
+    public void restoreVersion(long version) {
+        this.version = version;
+    }
+
     /**
      * Sets the order's persistent ID.
      *
@@ -185,14 +265,14 @@ public abstract class Order implements Serializable {
             "no items.");
         }
 
-        this.items = new ArrayList<>(newItems);
+        this.lines = OrderLine.group(newItems);
         // Recalculate price
-        this.totalPrice = calculateTotalPrice();
+        this.totalPence = calculateTotalPence();
         // Update timestamp
         this.lastUpdatedTimestamp = LocalDateTime.now();
 
         LOGGER.log(Level.INFO, "Items updated for order ID: {0}. New total " +
-        "price: {1,number,#.##}", new Object[]{orderID, totalPrice});
+        "price: {1}", new Object[]{orderID, MoneyUtils.format(totalPence)});
     }
 
     /**
@@ -326,8 +406,8 @@ public abstract class Order implements Serializable {
                "ID=" + orderID +
                ", CustID=" + customerID +
                ", Status=" + status +
-               ", Items=" + (items != null ? items.size() : 0) +
-               ", Total=" + String.format("%.2f", totalPrice) +
+               ", Items=" + getItems().size() +
+               ", Total=" + MoneyUtils.format(totalPence) +
                ", Placed=" + (orderTimestamp != null ?
                orderTimestamp.toLocalDate() + "T" +
                orderTimestamp.toLocalTime() : "N/A") + ']';
@@ -0,0 +1,272 @@
+package com.cafe94.domain;
+
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.RandomAccess;
+
+import com.cafe94.util.MoneyUtils;
+import com.cafe94.util.ValidationUtils;
+
+/**
+ * One line of an {@link Order}: an item, how many were ordered and the
+ * unit price charged. The item is shared, usually with the menu, rather
+ * than copied per unit or per order; the unit price is a snapshot taken
+ * when the order was placed, so later menu price changes never alter it.
+ * Prices are whole pence, so line totals are exact.
+ * @author Adigun Lateef
+ * @version 1.0
+ */
+public final class OrderLine implements Serializable {
+    private static final long serialVersionUID = 1L;
+    // Only assigned on construction and by readObject
+    private Item item;
+    private int quantity;
+    private long unitPence;
+
+    /**
+     * Constructs an order line.
+     *
+     * @param item      The item ordered, which may be shared
+     * @param quantity  How many were ordered
+     * @param unitPence The price charged for each, in pence
+     * @throws NullPointerException if item is null.
+     * @throws IllegalArgumentException if quantity is not positive or
+     * unitPence is negative.
+     */
+    public OrderLine(Item item, int quantity, long unitPence) {
+        this.item = Objects.requireNonNull(item,
+        "Order line item cannot be null.");
+        this.quantity = ValidationUtils.requirePositive(quantity,
+        "Order line quantity");
+        if (unitPence < 0) {
+            throw new IllegalArgumentException(
+            "Order line unit price cannot be negative. Value: " + unitPence);
+        }
+        this.unitPence = unitPence;
+    }
+
+    // Getters
+
+    /**
+     * @return The item ordered. Its current price may differ from the unit
+     * price charged.
+     */
+    public Item getItem() {
+        return item;
+    }
+
+    /**
+     * @return The ID of the item ordered
+     */
+    public int getItemID() {
+        return item.getItemID();
+    }
+
+    /**
+     * @return How many were ordered
+     */
+    public int getQuantity() {
+        return quantity;
+    }
+
+    /**
+     * @return The price charged for each
+     */
+    public double getUnitPrice() {
+        return MoneyUtils.toPounds(unitPence);
+    }
+
+    /**
+     * @return The price charged for each, in pence
+     */
+    public long getUnitPence() {
+        return unitPence;
+    }
+
+    /**
+     * @return The unit price times the quantity, in pence
+     * @throws ArithmeticException if the total overflows a long.
+     */
+    public long getLineTotalPence() {
+        return Math.multiplyExact(unitPence, (long) quantity);
+    }
+
+    /**
+     * Returns the item as it was charged: the shared item itself while its
+     * price still matches, otherwise a copy carrying the unit price.
+     * @return An item priced at the unit price.
+     */
+    public Item getChargedItem() {
+        if (item.getPricePence() == unitPence) {
+            return item;
+        }
+        Item charged = new Item(item.getItemID(), item.getName(),
+        item.getCategory(), 0, item.isDailySpecial());
+        charged.setPricePence(unitPence);
+        return charged;
+    }
+
+    /**
+     * Groups a list of items into order lines, one per distinct item and
+     * price in order of first appearance. Null entries are ignored. The
+     * item view of other order lines is adopted as it is.
+     *
+     * @param items The items, one entry per unit
+     * @return An unmodifiable list of lines.
+     * @throws NullPointerException if items is null.
+     */
+    static List<OrderLine> group(Collection<Item> items) {
+        Objects.requireNonNull(items, "Items cannot be null.");
+        if (items instanceof ItemView) {
+            return ((ItemView) items).lines;
+        }
+        List<Item> distinct = new ArrayList<>();
+        List<Integer> counts = new ArrayList<>();
+        for (Item item : items) {
+            if (item == null) {
+                continue;
+            }
+            int index = indexOfSame(distinct, item);
+            if (index < 0) {
+                distinct.add(item);
+                counts.add(1);
+            } else {
+                counts.set(index, counts.get(index) + 1);
+            }
+        }
+        List<OrderLine> lines = new ArrayList<>(distinct.size());
+        for (int i = 0; i < distinct.size(); i++) {
+            Item item = distinct.get(i);
+            lines.add(new OrderLine(item, counts.get(i),
+            item.getPricePence()));
+        }
+        return Collections.unmodifiableList(lines);
+    }
+
+    /**
+     * Orders hold a handful of distinct items, so a scan beats hashing.
+     */
+    private static int indexOfSame(List<Item> distinct, Item item) {
+        for (int i = 0; i < distinct.size(); i++) {
+            Item other = distinct.get(i);
+            if (other == item
+            || (other.getItemID() == item.getItemID()
+            && other.getPricePence() == item.getPricePence()
+            && other.isDailySpecial() == item.isDailySpecial()
+            && Objects.equals(other.getName(), item.getName())
+            && Objects.equals(other.getCategory(), item.getCategory()))) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the units of some order lines as an unmodifiable list of
+     * items, each line repeated by its quantity and priced as charged.
+     * An order constructed from such a list adopts the lines as they are,
+     * so copies of orders keep sharing their items.
+     *
+     * @param lines The order lines
+     * @return An unmodifiable item view of the lines.
+     * @throws NullPointerException if lines is null.
+     */
+    public static List<Item> asItems(List<OrderLine> lines) {
+        Objects.requireNonNull(lines, "Order lines cannot be null.");
+        for (OrderLine line : lines) {
+            Objects.requireNonNull(line, "Order line cannot be null.");
+        }
+        return view(Collections.unmodifiableList(new ArrayList<>(lines)));
+    }
+
+    /**
+     * @param lines Unmodifiable lines, which the view keeps
+     * @return An item view of the lines.
+     */
+    static List<Item> view(List<OrderLine> lines) {
+        return new ItemView(lines);
+    }
+
+    /**
+     * The units of a fixed list of lines. Lookups walk the lines, which
+     * are few, instead of materialising one entry per unit.
+     */
+    private static final class ItemView extends AbstractList<Item>
+    implements RandomAccess {
+        private final List<OrderLine> lines;
+        private final int size;
+
+        private ItemView(List<OrderLine> lines) {
+            this.lines = lines;
+            int units = 0;
+            for (OrderLine line : lines) {
+                units += line.quantity;
+            }
+            this.size = units;
+        }
+
+        @Override
+        public Item get(int index) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException("Index: " + index
+                + ", Size: " + size);
+            }
+            int remaining = index;
+            for (OrderLine line : lines) {
+                if (remaining < line.quantity) {
+                    return line.getChargedItem();
+                }
+                remaining -= line.quantity;
+            }
+            throw new IllegalStateException("Order lines changed.");
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+
+    /**
+     * String representaion of the objects
+     * @return a string reprentation of the order line
+     */
+    @Override
+    public String toString() {
+        return "OrderLine[" +
+               "ItemID=" + item.getItemID() +
+               ", Name='" + item.getName() + '\'' +
+               ", Qty=" + quantity +
+               ", UnitPrice=" + MoneyUtils.format(unitPence) + ']';
+    }
+
+    /**
+     * Reads a line, converting the double unit price of lines serialized
+     * before prices were held in pence.
+     */
+    private void readObject(ObjectInputStream in)
+    throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField fields = in.readFields();
+        item = (Item) fields.get("item", null);
+        quantity = fields.get("quantity", 0);
+        try {
+            unitPence = fields.defaulted("unitPence")
+            ? MoneyUtils.toPence(fields.get("unitPrice", 0.0))
+            : fields.get("unitPence", 0L);
+        } catch (IllegalArgumentException e) {
+            throw new InvalidObjectException(
+            "Invalid order line price: " + e.getMessage());
+        }
+        if (item == null || quantity <= 0 || unitPence < 0) {
+            throw new InvalidObjectException("Invalid order line.");
+        }
+    }
+}
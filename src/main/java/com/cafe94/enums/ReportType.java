@@ -9,4 +9,5 @@ public enum ReportType {
     POPULAR_ITEMS,
     BUSIEST_PERIODS,
     CUSTOMER_ACTIVITY,
+    REVENUE,
 }
\ No newline at end of file
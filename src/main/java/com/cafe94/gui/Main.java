@@ -54,6 +54,9 @@ public class Main extends Application {
     private IMenuRepository menuRepository;
     private IOrderRepository orderRepository;
     private IBookingRepository bookingRepository;
+    private JournalCompactor journalCompactor;
+    private StorageBackend storage;
+    private ITransactionManager transactionManager;
     private PasswordHasher passwordHasher;
     private SessionManager sessionManager;
     private AuthorizationService authorizationService;
@@ -85,22 +88,25 @@ public class Main extends Application {
         LOGGER.log(Level.INFO, "Starting component initialisation...");
         String dataDir = System.getProperty("cafe94.data.dir", "data");
         LOGGER.log(Level.CONFIG, "Using data directory: {0}", dataDir);
-        String userDataFile = dataDir + File.separator + "users.dat";
-        String tableDataFile = dataDir + File.separator + "tables.dat";
-        String menuDataFile = dataDir + File.separator + "menu.dat";
-        String orderDataFile = dataDir + File.separator + "orders.dat";
-        String bookingDataFile = dataDir + File.separator + "bookings.dat";
         try {
             LOGGER.log(Level.CONFIG, "Instantiating Repositories...");
-            List<Table> initialTables = createInitialTables();
-            tableRepository = new TableRepository(tableDataFile,
-                                                  initialTables);
-            userRepository = new UserRepository(userDataFile);
-            menuRepository = new MenuRepository(menuDataFile);
-            orderRepository = new OrderRepository(orderDataFile);
-            bookingRepository = new BookingRepository(bookingDataFile);
+            StorageProvider provider = StorageProviders.fromSystemProperties();
+            storage = provider.open(new File(dataDir), createInitialTables());
+            tableRepository = storage.getTableRepository();
+            userRepository = storage.getUserRepository();
+            menuRepository = storage.getMenuRepository();
+            orderRepository = storage.getOrderRepository();
+            bookingRepository = storage.getBookingRepository();
+            transactionManager = storage.getTransactionManager();
             LOGGER.log(Level.INFO, "Repositories instantiated.");
+
+            journalCompactor = JournalCompactor.fromSystemProperties();
+            storage.getCompactables().forEach(journalCompactor::register);
+            journalCompactor.start();
         } catch (Exception e) {
+            if (storage != null) {
+                storage.close();
+            }
             throw new RuntimeException("Repo init failed", e);
         }
         try {
@@ -120,12 +126,12 @@ public class Main extends Application {
                 authorizationService, passwordHasher, sessionManager);
             bookingService = new BookingService(bookingRepository,
                 userRepository, tableRepository, authorizationService,
-                notificationService);
+                notificationService, transactionManager);
             menuService = new MenuService(menuRepository,
                 authorizationService);
             orderService = new OrderService(orderRepository,
                 tableRepository, userRepository, authorizationService,
-                notificationService);
+                notificationService, transactionManager);
             reportingService = new ReportingService(orderRepository,
                 bookingRepository, userRepository, authorizationService);
             LOGGER.log(Level.INFO, "Services instantiated.");
@@ -173,6 +179,13 @@ public class Main extends Application {
     @Override
     public void stop() throws Exception {
         LOGGER.log(Level.INFO, "stop(): JavaFX application stopping.");
+        if (journalCompactor != null) {
+            journalCompactor.close();
+        }
+        // Write-behind repositories may still hold unsaved changes
+        if (storage != null) {
+            storage.close();
+        }
         super.stop();
     }
 
@@ -20,6 +20,7 @@ public class ReportsScreen implements Main.NeedsMainApp {
     @FXML private Button popularItemsButton;
     @FXML private Button busiestPeriodsButton;
     @FXML private Button activeCustomerButton;
+    @FXML private Button revenueButton;
     @FXML private Label titleLabel;
 
     private IReportingService reportingService;
@@ -83,6 +84,11 @@ public class ReportsScreen implements Main.NeedsMainApp {
                                  "Most Active Customers");
     }
 
+    @FXML
+    private void handleRevenue() {
+        generateAndDisplayReport(ReportType.REVENUE, "Revenue Summary");
+    }
+
     private void generateAndDisplayReport(ReportType type, String name) {
         if (reportingService == null || currentUser == null) {
             showAlert(Alert.AlertType.ERROR, "Error",
@@ -108,6 +114,10 @@ public class ReportsScreen implements Main.NeedsMainApp {
                         .generateMostActiveCustomerReport(currentUser,
                                                           TOP_CUSTOMER_LIMIT);
                     break;
+                case REVENUE:
+                    report = reportingService
+                        .generateRevenueReport(currentUser);
+                    break;
                 default:
                     showAlert(Alert.AlertType.ERROR, "Error", "Unknown type.");
                     reportDisplayArea.setText("Unknown report type.");
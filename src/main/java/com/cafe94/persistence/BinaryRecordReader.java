@@ -0,0 +1,196 @@
+package com.cafe94.persistence;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneOffset;
+import java.util.Objects;
+
+import com.cafe94.util.MoneyUtils;
+
+/**
+ * Reads the primitive encodings written by {@link BinaryRecordWriter}.
+ * Every read is bounds checked, so a truncated or corrupt record surfaces
+ * as an {@link IOException} rather than a runtime exception.
+ * @author Adigun Lateef
+ * @version 1.0
+ */
+final class BinaryRecordReader {
+
+    private final byte[] data;
+    private int position;
+
+    /**
+     * @param data The encoded record
+     * @throws NullPointerException if data is null.
+     */
+    BinaryRecordReader(byte[] data) {
+        this.data = Objects.requireNonNull(data, "Data cannot be null.");
+    }
+
+    int readByte() throws IOException {
+        if (position >= data.length) {
+            throw new EOFException("Truncated binary record");
+        }
+        return data[position++] & 0xFF;
+    }
+
+    boolean readBoolean() throws IOException {
+        return readByte() != 0;
+    }
+
+    int readVarInt() throws IOException {
+        long value = readVarLong();
+        if (value > 0xFFFFFFFFL) {
+            throw new IOException("Varint out of int range: " + value);
+        }
+        return (int) value;
+    }
+
+    long readVarLong() throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = readByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint in binary record");
+    }
+
+    long readSignedVarLong() throws IOException {
+        long value = readVarLong();
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    Integer readNullableInt() throws IOException {
+        long value = readVarLong();
+        if (value == 0) {
+            return null;
+        }
+        value--;
+        return (int) ((value >>> 1) ^ -(value & 1));
+    }
+
+    double readDouble() throws IOException {
+        if (position + 8 > data.length) {
+            throw new EOFException("Truncated binary record");
+        }
+        long bits = 0;
+        for (int i = 0; i < 8; i++) {
+            bits = (bits << 8) | (data[position++] & 0xFF);
+        }
+        return Double.longBitsToDouble(bits);
+    }
+
+    /**
+     * Reads a price in pence, rounding the raw double that older records
+     * hold for prices that were not whole pence.
+     */
+    long readPence() throws IOException {
+        long value = readSignedVarLong();
+        if ((value & 1) == 0) {
+            return value >> 1;
+        }
+        try {
+            return MoneyUtils.toPence(readDouble());
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Invalid price in binary record", e);
+        }
+    }
+
+    String readString() throws IOException {
+        int length = readVarInt();
+        if (length == 0) {
+            return null;
+        }
+        length--;
+        if (length < 0 || position + length > data.length) {
+            throw new EOFException("Truncated string in binary record");
+        }
+        String value = new String(data, position, length,
+        StandardCharsets.UTF_8);
+        position += length;
+        return value;
+    }
+
+    /**
+     * Reads an enum constant written by ordinal.
+     *
+     * @param constants The values of the enum type
+     * @return The constant, or null if null was written.
+     * @throws IOException if the ordinal is unknown.
+     */
+    <E extends Enum<E>> E readEnum(E[] constants) throws IOException {
+        int value = readVarInt();
+        if (value == 0) {
+            return null;
+        }
+        if (value > constants.length) {
+            throw new IOException("Unknown ordinal " + (value - 1)
+            + " for " + constants.getClass().getComponentType()
+            .getSimpleName());
+        }
+        return constants[value - 1];
+    }
+
+    LocalDate readDate() throws IOException {
+        return readBoolean() ? LocalDate.ofEpochDay(readSignedVarLong())
+        : null;
+    }
+
+    LocalTime readTime() throws IOException {
+        int secondOfDay = readVarInt();
+        if (secondOfDay == 0) {
+            return null;
+        }
+        return LocalTime.ofSecondOfDay(secondOfDay - 1L)
+        .withNano(readVarInt());
+    }
+
+    LocalDateTime readDateTime() throws IOException {
+        if (!readBoolean()) {
+            return null;
+        }
+        long epochSecond = readSignedVarLong();
+        return LocalDateTime.ofEpochSecond(epochSecond, readVarInt(),
+        ZoneOffset.UTC);
+    }
+
+    /**
+     * @return true if every byte of the record has been read
+     */
+    boolean isAtEnd() {
+        return position == data.length;
+    }
+
+    /**
+     * Reads a varint straight from a stream.
+     *
+     * @param in The stream
+     * @return The value.
+     * @throws IOException if the stream ends or the varint is malformed.
+     */
+    static int readVarInt(InputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = in.read();
+            if (b < 0) {
+                throw new EOFException("Truncated varint");
+            }
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                if (value > 0xFFFFFFFFL) {
+                    break;
+                }
+                return (int) value;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+}
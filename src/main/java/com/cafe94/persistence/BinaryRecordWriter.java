@@ -0,0 +1,177 @@
+package com.cafe94.persistence;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+
+/**
+ * Growable buffer with the primitive encodings shared by the binary record
+ * codecs. Integers are written as LEB128 varints (zig-zag for values that
+ * may be negative), dates and times relative to the epoch, and enums by
+ * ordinal. Nullable values carry their own presence marker so a codec
+ * never needs separate flag fields.
+ * @author Adigun Lateef
+ * @version 1.0
+ * @see BinaryRecordReader
+ */
+final class BinaryRecordWriter {
+
+    private byte[] buffer;
+    private int size;
+
+    /**
+     * @param initialCapacity Expected encoded size in bytes
+     */
+    BinaryRecordWriter(int initialCapacity) {
+        this.buffer = new byte[Math.max(16, initialCapacity)];
+    }
+
+    /**
+     * Writes the low eight bits of a value.
+     */
+    void writeByte(int value) {
+        ensureCapacity(1);
+        buffer[size++] = (byte) value;
+    }
+
+    void writeBoolean(boolean value) {
+        writeByte(value ? 1 : 0);
+    }
+
+    /**
+     * Writes a non-negative int in one to five bytes.
+     */
+    void writeVarInt(int value) {
+        writeVarLong(value & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Writes a long as an unsigned varint.
+     */
+    void writeVarLong(long value) {
+        ensureCapacity(10);
+        while ((value & ~0x7FL) != 0) {
+            buffer[size++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[size++] = (byte) value;
+    }
+
+    /**
+     * Writes a long that may be negative, zig-zag encoded so small
+     * magnitudes stay short.
+     */
+    void writeSignedVarLong(long value) {
+        writeVarLong((value << 1) ^ (value >> 63));
+    }
+
+    /**
+     * Writes an Integer that may be null.
+     */
+    void writeNullableInt(Integer value) {
+        if (value == null) {
+            writeVarLong(0);
+        } else {
+            long longValue = value;
+            writeVarLong(((longValue << 1) ^ (longValue >> 63)) + 1);
+        }
+    }
+
+    /**
+     * Writes a price in pence as a short varint, shifted left so the low
+     * bit stays clear. Older records set that bit and follow it with a raw
+     * double for prices that were not whole pence.
+     */
+    void writePence(long pence) {
+        writeSignedVarLong(pence << 1);
+    }
+
+    /**
+     * Writes a string that may be null as a length prefixed UTF-8 run.
+     */
+    void writeString(String value) {
+        if (value == null) {
+            writeVarInt(0);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(bytes.length + 1);
+        ensureCapacity(bytes.length);
+        System.arraycopy(bytes, 0, buffer, size, bytes.length);
+        size += bytes.length;
+    }
+
+    /**
+     * Writes an enum constant that may be null by ordinal.
+     */
+    void writeEnum(Enum<?> value) {
+        writeVarInt(value == null ? 0 : value.ordinal() + 1);
+    }
+
+    /**
+     * Writes a date that may be null as days since the epoch.
+     */
+    void writeDate(LocalDate value) {
+        writeBoolean(value != null);
+        if (value != null) {
+            writeSignedVarLong(value.toEpochDay());
+        }
+    }
+
+    /**
+     * Writes a time that may be null as second of day plus nanoseconds.
+     */
+    void writeTime(LocalTime value) {
+        writeVarInt(value == null ? 0 : value.toSecondOfDay() + 1);
+        if (value != null) {
+            writeVarInt(value.getNano());
+        }
+    }
+
+    /**
+     * Writes a date-time that may be null as epoch seconds plus
+     * nanoseconds, treating the local time as if it were UTC.
+     */
+    void writeDateTime(LocalDateTime value) {
+        writeBoolean(value != null);
+        if (value != null) {
+            writeSignedVarLong(value.toEpochSecond(ZoneOffset.UTC));
+            writeVarInt(value.getNano());
+        }
+    }
+
+    /**
+     * @return A copy of the bytes written so far
+     */
+    byte[] toByteArray() {
+        return Arrays.copyOf(buffer, size);
+    }
+
+    /**
+     * Writes a non-negative int as a varint straight to a stream.
+     *
+     * @param out   The stream
+     * @param value The value
+     * @throws IOException if the stream cannot be written.
+     */
+    static void writeVarInt(OutputStream out, int value) throws IOException {
+        long remaining = value & 0xFFFFFFFFL;
+        while ((remaining & ~0x7FL) != 0) {
+            out.write((int) ((remaining & 0x7F) | 0x80));
+            remaining >>>= 7;
+        }
+        out.write((int) remaining);
+    }
+
+    private void ensureCapacity(int extra) {
+        if (size + extra > buffer.length) {
+            buffer = Arrays.copyOf(buffer,
+            Math.max(buffer.length * 2, size + extra));
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.cafe94.persistence;
+
+import java.io.IOException;
+
+import com.cafe94.domain.Booking;
+import com.cafe94.enums.BookingStatus;
+
+/**
+ * Binary codec for {@link Booking} records.
+ * <p>
+ * Version 1 layout: version byte, varint booking ID, customer ID and
+ * table number (0 when unassigned), date, time, varint guest count,
+ * status ordinal, creation timestamp. Version 2 appends the varint record
+ * version; version 1 records decode at version 0.
+ * @author Adigun Lateef
+ * @version 1.0
+ */
+final class BookingCodec implements RecordCodec<Booking> {
+
+    private static final int FORMAT_VERSION = 2;
+    private static final int UNVERSIONED_FORMAT = 1;
+    private static final BookingStatus[] STATUSES = BookingStatus.values();
+
+    @Override
+    public byte[] encode(Booking booking) throws IOException {
+        BinaryRecordWriter out = new BinaryRecordWriter(32);
+        out.writeByte(FORMAT_VERSION);
+        out.writeVarInt(booking.getBookingID());
+        out.writeVarInt(booking.getCustomerID());
+        out.writeVarInt(booking.getTableNumber());
+        out.writeDate(booking.getBookingDate());
+        out.writeTime(booking.getBookingTime());
+        out.writeVarInt(booking.getNumberOfGuests());
+        out.writeEnum(booking.getStatus());
+        out.writeDateTime(booking.getCreationTimestamp());
+        out.writeVarLong(booking.getVersion());
+        return out.toByteArray();
+    }
+
+    @Override
+    public Booking decode(byte[] payload) throws IOException {
+        BinaryRecordReader in = new BinaryRecordReader(payload);
+        int version = in.readByte();
+        if (version != FORMAT_VERSION && version != UNVERSIONED_FORMAT) {
+            throw new IOException("Unsupported booking record version "
+            + version);
+        }
+        int bookingId = in.readVarInt();
+        int customerId = in.readVarInt();
+        int tableNumber = in.readVarInt();
+        Booking booking = new Booking(bookingId, customerId, in.readDate(),
+        in.readTime(), in.readVarInt(), in.readEnum(STATUSES));
+        if (tableNumber > 0) {
+            booking.assignTable(tableNumber);
+        }
+        booking.restoreCreationTimestamp(in.readDateTime());
+        if (version != UNVERSIONED_FORMAT) {
+            booking.restoreVersion(in.readVarLong());
+        }
+        return booking;
+    }
+}
@@ -0,0 +1,252 @@
+package com.cafe94.persistence;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import com.cafe94.domain.Booking;
+import com.cafe94.enums.BookingStatus;
+
+/**
+ * Secondary indexes over every booking of a {@link BookingRepository}: a
+ * {@link TreeMap} from date to that day's bookings, and an
+ * {@link EnumMap} from status to bookings. Both keep their bookings sorted
+ * by date and time, so lookups by date, date range or status, and keyset
+ * pages over all bookings, cost time proportional to the result however
+ * much history the repository holds.
+ * <p>
+ * Bookings are mutable, so the index remembers the date, time and status
+ * each booking was indexed under and uses those to unlink it on the next
+ * update.
+ * @author Adigun Lateef
+ * @version 1.0
+ */
+final class BookingIndex {
+
+    private static final Comparator<Entry> CHRONOLOGICAL =
+    Comparator.comparing((Entry entry) -> entry.date,
+    Comparator.nullsLast(Comparator.naturalOrder()))
+    .thenComparing(entry -> entry.time,
+    Comparator.nullsLast(Comparator.naturalOrder()))
+    .thenComparingInt(entry -> entry.bookingId);
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<Integer, Entry> entries = new HashMap<>();
+    private final NavigableMap<LocalDate, NavigableSet<Entry>> byDate =
+    new TreeMap<>();
+    private final Map<BookingStatus, NavigableSet<Entry>> byStatus =
+    new EnumMap<>(BookingStatus.class);
+
+    /**
+     * The keys one booking was indexed under.
+     */
+    private static final class Entry {
+        private final Booking booking;
+        private final int bookingId;
+        private final LocalDate date;
+        private final LocalTime time;
+        private final BookingStatus status;
+
+        private Entry(Booking booking) {
+            this.booking = booking;
+            this.bookingId = booking.getBookingID();
+            this.date = booking.getBookingDate();
+            this.time = booking.getBookingTime();
+            this.status = booking.getStatus();
+        }
+
+        /** A search key only, positioned at the given date, time and ID. */
+        private Entry(LocalDateTime dateTime, int bookingId) {
+            this.booking = null;
+            this.bookingId = bookingId;
+            this.date = dateTime.toLocalDate();
+            this.time = dateTime.toLocalTime();
+            this.status = null;
+        }
+    }
+
+    /**
+     * Indexes a saved booking, replacing whatever it was indexed under
+     * before.
+     *
+     * @param booking The saved booking
+     * @throws NullPointerException if booking is null.
+     */
+    void put(Booking booking) {
+        Objects.requireNonNull(booking, "Booking cannot be null.");
+        lock.writeLock().lock();
+        try {
+            index(booking);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Indexes many bookings at once, e.g. after loading.
+     *
+     * @param bookings The bookings
+     */
+    void putAll(Collection<Booking> bookings) {
+        lock.writeLock().lock();
+        try {
+            for (Booking booking : bookings) {
+                index(booking);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes a deleted booking.
+     *
+     * @param bookingId The booking ID
+     */
+    void remove(int bookingId) {
+        lock.writeLock().lock();
+        try {
+            unlink(entries.remove(bookingId));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Finds the bookings between two dates, both inclusive.
+     *
+     * @param startDate The first date
+     * @param endDate   The last date
+     * @return The bookings, by date and time.
+     */
+    List<Booking> findBetween(LocalDate startDate, LocalDate endDate) {
+        lock.readLock().lock();
+        try {
+            List<Booking> result = new ArrayList<>();
+            for (NavigableSet<Entry> day : byDate.subMap(startDate, true,
+            endDate, true).values()) {
+                for (Entry entry : day) {
+                    LocalDate date = entry.booking.getBookingDate();
+                    // Skip bookings moved in memory but not yet saved
+                    if (date != null && !date.isBefore(startDate)
+                    && !date.isAfter(endDate)) {
+                        result.add(entry.booking);
+                    }
+                }
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @param status The status
+     * @return The bookings with the status, by date and time.
+     */
+    List<Booking> findByStatus(BookingStatus status) {
+        lock.readLock().lock();
+        try {
+            NavigableSet<Entry> set = byStatus.get(status);
+            if (set == null) {
+                return Collections.emptyList();
+            }
+            List<Booking> result = new ArrayList<>(set.size());
+            for (Entry entry : set) {
+                // Skip bookings whose status changed but is not yet saved
+                if (entry.booking.getStatus() == status) {
+                    result.add(entry.booking);
+                }
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Finds the next bookings after a keyset cursor, by date, time and ID.
+     * Bookings without a date are not paged.
+     *
+     * @param afterDateTime Date and time of the last booking already seen,
+     *                      or null to start from the earliest booking
+     * @param afterId       ID of the last booking already seen
+     * @param limit         The most bookings to return
+     * @return Up to limit bookings ordered after the cursor.
+     */
+    List<Booking> findPage(LocalDateTime afterDateTime, int afterId,
+    int limit) {
+        lock.readLock().lock();
+        try {
+            List<Booking> result = new ArrayList<>();
+            Entry from = afterDateTime == null ? null
+            : new Entry(afterDateTime, afterId);
+            NavigableMap<LocalDate, NavigableSet<Entry>> days = from == null
+            ? byDate : byDate.tailMap(from.date, true);
+            for (Map.Entry<LocalDate, NavigableSet<Entry>> day
+            : days.entrySet()) {
+                NavigableSet<Entry> set = day.getValue();
+                if (from != null && day.getKey().equals(from.date)) {
+                    set = set.tailSet(from, false);
+                }
+                for (Entry entry : set) {
+                    if (result.size() >= limit) {
+                        return result;
+                    }
+                    result.add(entry.booking);
+                }
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void index(Booking booking) {
+        Entry entry = new Entry(booking);
+        unlink(entries.put(entry.bookingId, entry));
+        if (entry.date != null) {
+            byDate.computeIfAbsent(entry.date,
+            key -> new TreeSet<>(CHRONOLOGICAL)).add(entry);
+        }
+        if (entry.status != null) {
+            byStatus.computeIfAbsent(entry.status,
+            key -> new TreeSet<>(CHRONOLOGICAL)).add(entry);
+        }
+    }
+
+    private void unlink(Entry entry) {
+        if (entry == null) {
+            return;
+        }
+        if (entry.date != null) {
+            removeFrom(byDate, entry.date, entry);
+        }
+        if (entry.status != null) {
+            removeFrom(byStatus, entry.status, entry);
+        }
+    }
+
+    private static <K> void removeFrom(Map<K, NavigableSet<Entry>> index,
+    K key, Entry entry) {
+        NavigableSet<Entry> set = index.get(key);
+        if (set != null && set.remove(entry) && set.isEmpty()) {
+            index.remove(key);
+        }
+    }
+}
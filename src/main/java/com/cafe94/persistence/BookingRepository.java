@@ -1,48 +1,57 @@
 package com.cafe94.persistence;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
-import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Objects;
 import java.util.Optional;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.Set;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import com.cafe94.domain.Booking;
 import com.cafe94.enums.BookingStatus;
+import com.cafe94.util.primitive.IntObjectConcurrentMap;
 
 /**
  * Concrete implementation of {@link IBookingRepository} using Java
- * Serialization for persistence.
+ * Serialization for persistence. Storage is handled by a
+ * {@link RecordStore}, optionally journaled and compacted in the background.
+ * Bookings that hold a table are also kept in a {@link BookingSchedule}, so
+ * table conflict checks do not scan every booking, and every booking is
+ * kept in a {@link BookingIndex} by date and by status, which also backs
+ * the keyset pages of {@link #findPage(LocalDateTime, int, int)} and
+ * {@link #streamAll()}.
  * @author  Adigun Lateef
  * @version 1.0
  */
-public class BookingRepository implements IBookingRepository {
+public class BookingRepository implements IBookingRepository,
+DurableRepository {
 
     private static final Logger LOGGER =
     Logger.getLogger(BookingRepository.class.getName());
+    private static final int STREAM_PAGE_SIZE = 256;
 
-    private final Map<Integer, Booking> bookings = new ConcurrentHashMap<>();
+    private final IntObjectConcurrentMap<Booking> bookings =
+    new IntObjectConcurrentMap<>();
     // Thread-safe ID generator.
     private final AtomicInteger nextId = new AtomicInteger(1);
     // Path to the persistence file.
     private final String storageFilePath;
+    private final RecordStore<Booking> store;
+    private final BookingSchedule schedule = new BookingSchedule();
+    private final BookingIndex index = new BookingIndex();
 
     /**
      * Constructs the repository, loading existing data from the specified
@@ -52,11 +61,27 @@ public class BookingRepository implements IBookingRepository {
      * @throws NullPointerException if storageFilePath is null.
      */
     public BookingRepository(String storageFilePath) {
+        this(storageFilePath, StorageOptions.snapshot());
+    }
 
+    /**
+     * Constructs the repository with explicit storage options, loading
+     * existing data and, in journaled mode, replaying the journal.
+     *
+     * @param storageFilePath The path to the file for storing booking data
+     * @param storageOptions  How mutations are persisted
+     * @throws NullPointerException if any argument is null.
+     */
+    public BookingRepository(String storageFilePath,
+    StorageOptions storageOptions) {
         // Load data on initialisation
         this.storageFilePath = Objects.requireNonNull(storageFilePath,
         "Storage file path cannot be null.");
-        loadData();
+        this.store = new RecordStore<>(storageFilePath, "booking",
+        Booking.class, bookings, storageOptions, new BookingCodec());
+        store.load();
+        schedule.putAll(bookings.values());
+        index.putAll(bookings.values());
         // Initialise nextId based on the maximum ID found in loaded data
         int maxId =
         bookings.keySet().stream().max(Integer::compare).orElse(0);
@@ -73,7 +98,104 @@ public class BookingRepository implements IBookingRepository {
      * @throws NullPointerException if booking is null.
      */
     @Override
-    public synchronized Booking save(Booking booking) {
+    public Booking save(Booking booking) {
+        return saveIfVersion(booking, TransactionParticipant.ANY_VERSION);
+    }
+
+    /**
+     * Saves a booking only if the stored booking is still at the given
+     * version.
+     * @param booking         The Booking to save or update
+     * @param expectedVersion The version the caller read
+     * @return The saved Booking object
+     * @throws StaleRecordException if the stored version differs.
+     * @throws NullPointerException if booking is null.
+     */
+    @Override
+    public Booking saveIfVersion(Booking booking, long expectedVersion) {
+        Booking saved = applySave(booking, expectedVersion);
+        // Wait outside the monitor so concurrent saves share one fsync
+        store.awaitDurable();
+        return saved;
+    }
+
+    private synchronized Booking applySave(Booking booking,
+    long expectedVersion) {
+        Objects.requireNonNull(booking, "Booking to save cannot be null.");
+        stampVersion(booking, expectedVersion, null);
+        applyPrepared(prepareSave(booking));
+        // Return booking
+        return booking;
+    }
+
+    /**
+     * Applies a change to a booking and saves it, only if the booking is
+     * still at the given version.
+     * @param bookingId       The ID of the booking
+     * @param expectedVersion The version the caller read
+     * @param change          The change to apply
+     * @return The saved Booking object
+     * @throws StaleRecordException if the stored version differs.
+     * @throws NoSuchElementException if no booking has the ID.
+     * @throws NullPointerException if change is null.
+     */
+    @Override
+    public Booking update(int bookingId, long expectedVersion,
+    Consumer<? super Booking> change) {
+        Objects.requireNonNull(change, "Change cannot be null.");
+        Booking saved = applyUpdate(bookingId, expectedVersion, change);
+        store.awaitDurable();
+        return saved;
+    }
+
+    private synchronized Booking applyUpdate(int bookingId,
+    long expectedVersion, Consumer<? super Booking> change) {
+        Booking booking = bookings.get(bookingId);
+        if (booking == null) {
+            throw new NoSuchElementException(
+                "Booking not found with ID: " + bookingId);
+        }
+        stampVersion(booking, expectedVersion, change);
+        applyPrepared(prepareSave(booking));
+        return booking;
+    }
+
+    /**
+     * Checks the stored version of a booking, applies the change, if any,
+     * and gives the booking the next version. Callers must hold the
+     * monitor.
+     */
+    private void stampVersion(Booking booking, long expectedVersion,
+    Consumer<? super Booking> change) {
+        long current = checkStoredVersion(booking, expectedVersion);
+        if (change != null) {
+            change.accept(booking);
+        }
+        booking.restoreVersion(current + 1);
+    }
+
+    /**
+     * @return The stored version of a booking, once checked against the
+     * version the caller read. Callers must hold the monitor.
+     * @throws StaleRecordException if the stored version differs.
+     */
+    private long checkStoredVersion(Booking booking, long expectedVersion) {
+        int bookingId = booking.getBookingID();
+        Booking stored = bookingId > 0 ? bookings.get(bookingId) : null;
+        long current = stored != null ? stored.getVersion() : 0;
+        if (expectedVersion != TransactionParticipant.ANY_VERSION
+        && expectedVersion != current) {
+            throw new StaleRecordException("Booking", bookingId,
+            expectedVersion, current);
+        }
+        return current;
+    }
+
+    /**
+     * Assigns a new booking its ID, or reserves the ID of an existing one.
+     * Callers must hold the monitor.
+     */
+    private Booking prepareSave(Booking booking) {
         Objects.requireNonNull(booking, "Booking to save cannot be null.");
         int bookingId = booking.getBookingID();
 
@@ -100,17 +222,80 @@ public class BookingRepository implements IBookingRepository {
              LOGGER.log(Level.FINEST,
              "Saving existing booking with ID {0}", bookingId);
         }
+        return booking;
+    }
+
+    /**
+     * Publishes and persists a prepared booking. Callers must hold the
+     * monitor.
+     */
+    private void applyPrepared(Booking booking) {
+        int bookingId = booking.getBookingID();
         // Add or update in the map
         bookings.put(bookingId, booking);
         // Persist the changes
-        saveData();
+        store.put(bookingId, booking);
+        schedule.put(booking);
+        index.put(booking);
         LOGGER.log(Level.INFO,
         "Saved booking: ID={0}, Customer={1}, Date={2}, Status={3}",
         new Object[]{bookingId, booking.getCustomerID(),
             booking.getBookingDate(), booking.getStatus()});
+    }
 
-        // Return booking
-        return booking;
+    /**
+     * @return This repository as seen by a {@link TransactionManager}.
+     */
+    TransactionParticipant<Booking> asParticipant() {
+        return new TransactionParticipant<Booking>() {
+            @Override
+            public String getName() {
+                return "bookings";
+            }
+
+            @Override
+            public void runExclusive(Runnable action) {
+                synchronized (BookingRepository.this) {
+                    action.run();
+                }
+            }
+
+            @Override
+            public RecordStore<Booking> getStore() {
+                return store;
+            }
+
+            @Override
+            public void checkVersion(Booking booking, long expectedVersion) {
+                Objects.requireNonNull(booking,
+                "Booking to save cannot be null.");
+                checkStoredVersion(booking, expectedVersion);
+            }
+
+            @Override
+            public Booking prepare(Booking booking, long expectedVersion,
+            Consumer<? super Booking> change) {
+                Objects.requireNonNull(booking,
+                "Booking to save cannot be null.");
+                stampVersion(booking, expectedVersion, change);
+                return prepareSave(booking);
+            }
+
+            @Override
+            public Booking recover(Booking booking) {
+                return prepareSave(booking);
+            }
+
+            @Override
+            public int getId(Booking booking) {
+                return booking.getBookingID();
+            }
+
+            @Override
+            public void apply(Booking booking) {
+                applyPrepared(booking);
+            }
+        };
     }
 
     /**
@@ -137,7 +322,14 @@ public class BookingRepository implements IBookingRepository {
      * @return true if a booking was found and deleted, false otherwise.
      */
     @Override
-    public synchronized boolean deleteById(int bookingId) {
+    public boolean deleteById(int bookingId) {
+        boolean deleted = applyDeleteById(bookingId);
+        // Wait outside the monitor so concurrent writers share one fsync
+        store.awaitDurable();
+        return deleted;
+    }
+
+    private synchronized boolean applyDeleteById(int bookingId) {
         if (bookingId <= 0) {
             LOGGER.log(Level.WARNING,
             "Attempted to delete booking with invalid ID: {0}", bookingId);
@@ -147,7 +339,9 @@ public class BookingRepository implements IBookingRepository {
         Booking removedBooking = bookings.remove(bookingId);
         if (removedBooking != null) {
             // Persist the removal
-            saveData();
+            store.delete(bookingId);
+            schedule.remove(bookingId);
+            index.remove(bookingId);
             LOGGER.log(Level.INFO, "Deleted booking ID: {0}", bookingId);
             return true;
         } else {
@@ -187,13 +381,67 @@ public class BookingRepository implements IBookingRepository {
     @Override
     public List<Booking> findByDate(LocalDate date) {
         Objects.requireNonNull(date, "Date cannot be null for findByDate.");
-        return bookings.values().stream()
-                .filter(booking -> date.equals(booking.getBookingDate()))
-                .sorted(Comparator.comparing(Booking::getBookingTime,
-                Comparator.nullsLast(Comparator.naturalOrder())))
-                // Collect to an unmodifiable list
-                .collect(Collectors.collectingAndThen(Collectors.toList(),
-                Collections::unmodifiableList));
+        // Already sorted by time
+        return Collections.unmodifiableList(index.findBetween(date, date));
+    }
+
+    /**
+     * Finds all bookings scheduled between two dates using the date index.
+     *
+     * @param startDate The first date, inclusive
+     * @param endDate   The last date, inclusive
+     * @return An unmodifiable List of Bookings sorted by date and time.
+     * @throws NullPointerException if either date is null.
+     * @throws IllegalArgumentException if endDate is before startDate.
+     */
+    @Override
+    public List<Booking> findBetween(LocalDate startDate, LocalDate endDate) {
+        Objects.requireNonNull(startDate,
+        "Start date cannot be null for findBetween.");
+        Objects.requireNonNull(endDate,
+        "End date cannot be null for findBetween.");
+        if (endDate.isBefore(startDate)) {
+            throw new IllegalArgumentException(
+            "End date cannot be before start date.");
+        }
+        return Collections.unmodifiableList(index.findBetween(startDate,
+        endDate));
+    }
+
+    /**
+     * Finds the next bookings after a keyset cursor
+     *
+     * @param afterDateTime Date and time of the last booking already seen,
+     *                      or null to start from the earliest booking
+     * @param afterId       ID of the last booking already seen
+     * @param limit         The most bookings to return
+     * @return An unmodifiable List of up to limit Bookings, by date, time
+     * and ID.
+     * @throws IllegalArgumentException if limit is not positive.
+     */
+    @Override
+    public List<Booking> findPage(LocalDateTime afterDateTime, int afterId,
+    int limit) {
+        if (limit <= 0) {
+            throw new IllegalArgumentException(
+            "Page limit must be positive. Provided: " + limit);
+        }
+        return Collections.unmodifiableList(index.findPage(afterDateTime,
+        afterId, limit));
+    }
+
+    /**
+     * Streams every booking by date and time, fetching one page at a time.
+     *
+     * @return A sequential, ordered Stream of all Bookings.
+     */
+    @Override
+    public Stream<Booking> streamAll() {
+        return StreamSupport.stream(new PageSpliterator<Booking>(
+        STREAM_PAGE_SIZE, (last, limit) -> last == null
+        ? findPage(null, 0, limit)
+        : findPage(last.getBookingDateTime(), last.getBookingID(), limit)),
+        false);
     }
 
     /**
@@ -215,13 +463,8 @@ public class BookingRepository implements IBookingRepository {
     public List<Booking> findByStatus(BookingStatus status) {
          Objects.requireNonNull(status,
          "Status cannot be null for findByStatus.");
-         
-         return bookings.values().stream()
-                .filter(booking -> booking.getStatus() == status)
-                .sorted(Comparator.comparing(Booking::getBookingDateTime,
-                Comparator.nullsLast(Comparator.naturalOrder())))
-                .collect(Collectors.collectingAndThen(Collectors.toList(),
-                Collections::unmodifiableList));
+         // Already sorted by date and time
+         return Collections.unmodifiableList(index.findByStatus(status));
     }
 
     @Override
@@ -243,136 +486,72 @@ public class BookingRepository implements IBookingRepository {
                 "EndDateTime must be after startDateTime.");
          }
 
-        return bookings.values().stream()
-               .filter(b -> b.getTableNumber() == tableNumber)
-               .filter(b -> b.getStatus() == BookingStatus.CONFIRMED
-               || b.getStatus() == BookingStatus.PENDING_APPROVAL)
-               .filter(b -> {
-                    LocalDateTime bookingStart = b.getBookingDateTime();
-                    LocalDateTime bookingEnd =
-                    bookingStart != null ? bookingStart.plusHours(1) : null;
-                    if (bookingStart == null||bookingEnd == null) return false;
-
-                    // Check for overlap:
-                    return bookingStart.isBefore(endDateTime) &&
-                    bookingEnd.isAfter(startDateTime);
-               })
-               .sorted(Comparator.comparing(Booking::getBookingDateTime,
-               Comparator.nullsLast(Comparator.naturalOrder())))
-               .collect(Collectors.collectingAndThen(Collectors.toList(),
-               Collections::unmodifiableList));
+        // Already ordered by start time
+        return Collections.unmodifiableList(schedule.findOverlapping(
+        tableNumber, startDateTime, endDateTime));
     }
 
-
     /**
-     * Loads booking data from the specified storage file.
+     * Finds which of the given tables are free for a time range with one
+     * lookup per table in the booking schedule.
+     *
+     * @param tableNumbers  The table numbers to check
+     * @param startDateTime The start of the time range
+     * @param endDateTime   The end of the time range
+     * @return An unmodifiable Set of the free table numbers, in the order
+     * given.
+     * @throws NullPointerException if any argument is null.
+     * @throws IllegalArgumentException if endDateTime is not after
+     * startDateTime.
      */
-    @SuppressWarnings("unchecked")
-    private synchronized void loadData() {
-        File file = new File(storageFilePath);
-        if (!file.exists() || file.length() == 0) {
-             LOGGER.log(Level.INFO,
-             "Booking data file not found or empty ({0}). Starting with an " +
-             "empty repository.", storageFilePath);
-             // Ensure directory exists for future saves
-             ensureDirectoryExists(file);
-             return;
-        }
-
-        try (FileInputStream fis = new FileInputStream(file);
-             BufferedInputStream bis = new BufferedInputStream(fis);
-             ObjectInputStream ois = new ObjectInputStream(bis)) {
-
-            Object readObject = ois.readObject();
-             if (readObject instanceof Map) {
-                // Clear existing map before loading
-                bookings.clear();
-                Map<?,?> rawMap = (Map<?,?>) readObject;
-                // Safely populate the map and checking types
-                rawMap.forEach((key, value) -> {
-                    if (key instanceof Integer && value instanceof Booking) {
-                         bookings.put((Integer)key, (Booking)value);
-                    } else {
-                         LOGGER.log(Level.WARNING,
-                         "Skipping invalid entry during load: Key type {0}, " +
-                         "Value type {1}",
-                         new Object[]{key != null ?
-                            key.getClass().getName() : "null",
-                            value != null ?
-                            value.getClass().getName() : "null"});
-                    }
-                });
-                LOGGER.log(Level.INFO,
-                "Successfully loaded {0} booking entries from: {1}",
-                new Object[]{bookings.size(), storageFilePath});
-            } else {
-                LOGGER.log(Level.SEVERE,
-                "Booking data file ({0}) does not contain a valid Map.",
-                storageFilePath);
-                // Clear Storage
-                bookings.clear();
-            }
-        } catch (FileNotFoundException e) {
-             LOGGER.log(Level.SEVERE,
-             "Booking data file not found for loading: " + storageFilePath, e);
-        } catch (IOException | ClassNotFoundException | ClassCastException e) {
-             LOGGER.log(Level.SEVERE, "Failed to load booking data from " +
-             "file (" + storageFilePath + "). Data might be corrupted or " +
-             "class versions incompatible.", e);
-             // clear data
-             bookings.clear();
+    @Override
+    public Set<Integer> findFreeTables(Collection<Integer> tableNumbers,
+    LocalDateTime startDateTime, LocalDateTime endDateTime) {
+        Objects.requireNonNull(tableNumbers,
+        "Table numbers cannot be null.");
+        Objects.requireNonNull(startDateTime,
+        "StartDateTime cannot be null.");
+        Objects.requireNonNull(endDateTime, "EndDateTime cannot be null.");
+        if (!endDateTime.isAfter(startDateTime)) {
+            throw new IllegalArgumentException(
+            "EndDateTime must be after startDateTime.");
         }
+        return Collections.unmodifiableSet(schedule.findFreeTables(
+        tableNumbers, startDateTime, endDateTime));
     }
 
+
     /**
-     * Saves the current state of the bookings map to the storage file.
+     * Compacts the booking journal once it passes the configured thresholds.
+     * Runs without the repository monitor, so saves are not blocked.
+     *
+     * @return true if a compaction ran and succeeded.
      */
-    private synchronized void saveData() {
-        File file = new File(storageFilePath);
-        // Ensure parent directory exists
-        ensureDirectoryExists(file);
-
-        // Overwrites existing file
-        try (FileOutputStream fos = new FileOutputStream(file);
-             BufferedOutputStream bos = new BufferedOutputStream(fos);
-             ObjectOutputStream oos = new ObjectOutputStream(bos)) {
-
-            // Save a snapshot copy of the map to avoid issues
-            // if map is modified during serialisation
-            oos.writeObject(new ConcurrentHashMap<>(bookings));
-            LOGGER.log(Level.FINE,
-            "Booking data saved successfully to {0}", storageFilePath);
+    @Override
+    public boolean compactIfNeeded() {
+        return store.compactIfNeeded();
+    }
 
-        } catch (IOException e) {
-            // Log critical error
-            LOGGER.log(Level.SEVERE,
-            "CRITICAL: Failed to save booking data to file (" + storageFilePath
-            + "). Data loss may occur.", e);
-        }
+    /**
+     * Writes any booking changes still pending in write-behind mode and waits
+     * until they are on disk.
+     */
+    @Override
+    public void flush() {
+        store.flush();
     }
 
     /**
-     * Ensures the parent directory for the storage file exists
-     * @param file The storage file.
+     * Flushes pending booking changes and closes the journal. The repository
+     * must not be used afterwards.
      */
-     private void ensureDirectoryExists(File file) {
-        Objects.requireNonNull(file, "File cannot be null");
-        File parentDir = file.getParentFile();
-         if (parentDir != null && !parentDir.exists()) {
-             LOGGER.log(Level.INFO,
-             "Attempting to create directory for booking data: {0}",
-             parentDir.getAbsolutePath());
-             if (parentDir.mkdirs()) {
-                 LOGGER.log(Level.INFO,
-                 "Successfully created directory: {0}",
-                 parentDir.getAbsolutePath());
-             } else {
-                 LOGGER.log(Level.SEVERE,
-                 "Failed to create directory for booking data: {0}",
-                 parentDir.getAbsolutePath());
-                 throw new RuntimeException("Failed to create directory: "
-                 + parentDir.getAbsolutePath());
-             }
-         }
-     }
+    @Override
+    public void close() {
+        try {
+            store.close();
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to close booking storage "
+            + "cleanly (" + store.getStorageFilePath() + ")", e);
+        }
+    }
 }
@@ -0,0 +1,246 @@
+package com.cafe94.persistence;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import com.cafe94.domain.Booking;
+import com.cafe94.enums.BookingStatus;
+
+/**
+ * Per-table index of the active bookings of a {@link BookingRepository},
+ * ordered by start time. Every booking occupies its table for
+ * {@link #BOOKING_DURATION}, so a booking overlaps the range
+ * {@code [start, end)} exactly when it starts after
+ * {@code start - BOOKING_DURATION} and before {@code end}. A conflict check
+ * is therefore one range lookup in the table's sorted set, logarithmic in
+ * the number of bookings for that table.
+ * <p>
+ * Only bookings that hold a table (confirmed or awaiting approval, with a
+ * table assigned) are indexed. Bookings are mutable, so the schedule
+ * remembers the table and start time each booking was indexed under and
+ * uses those to unlink it on the next update.
+ * @author Adigun Lateef
+ * @version 1.0
+ */
+final class BookingSchedule {
+
+    /** How long a booking occupies its table. */
+    static final Duration BOOKING_DURATION = Duration.ofHours(1);
+
+    private static final Comparator<Entry> BY_START =
+    Comparator.comparing((Entry entry) -> entry.start)
+    .thenComparingInt(entry -> entry.bookingId);
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<Integer, Entry> entries = new HashMap<>();
+    private final Map<Integer, NavigableSet<Entry>> byTable = new HashMap<>();
+
+    /**
+     * Where one booking was indexed.
+     */
+    private static final class Entry {
+        private final Booking booking;
+        private final int bookingId;
+        private final int tableNumber;
+        private final LocalDateTime start;
+
+        private Entry(Booking booking, int bookingId, int tableNumber,
+        LocalDateTime start) {
+            this.booking = booking;
+            this.bookingId = bookingId;
+            this.tableNumber = tableNumber;
+            this.start = start;
+        }
+    }
+
+    /**
+     * @param status A booking status
+     * @return true if bookings in this status hold their table.
+     */
+    static boolean holdsTable(BookingStatus status) {
+        return status == BookingStatus.CONFIRMED
+        || status == BookingStatus.PENDING_APPROVAL;
+    }
+
+    /**
+     * @return true if the booking, as it is now, overlaps the range.
+     */
+    static boolean overlaps(Booking booking, LocalDateTime start,
+    LocalDateTime end) {
+        LocalDateTime bookingStart = booking.getBookingDateTime();
+        return bookingStart != null && bookingStart.isBefore(end)
+        && bookingStart.plus(BOOKING_DURATION).isAfter(start);
+    }
+
+    /**
+     * Indexes a saved booking, replacing wherever it was indexed before.
+     * Bookings that do not hold a table are only unlinked.
+     *
+     * @param booking The saved booking
+     * @throws NullPointerException if booking is null.
+     */
+    void put(Booking booking) {
+        Objects.requireNonNull(booking, "Booking cannot be null.");
+        lock.writeLock().lock();
+        try {
+            index(booking);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Indexes many bookings at once, e.g. after loading.
+     *
+     * @param bookings The bookings
+     */
+    void putAll(Collection<Booking> bookings) {
+        lock.writeLock().lock();
+        try {
+            for (Booking booking : bookings) {
+                index(booking);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes a deleted booking.
+     *
+     * @param bookingId The booking ID
+     */
+    void remove(int bookingId) {
+        lock.writeLock().lock();
+        try {
+            unlink(entries.remove(bookingId));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Finds the bookings holding a table at any time in a range.
+     *
+     * @param tableNumber The table number
+     * @param start       Start of the range, inclusive
+     * @param end         End of the range, exclusive
+     * @return The overlapping bookings, by start time.
+     */
+    List<Booking> findOverlapping(int tableNumber, LocalDateTime start,
+    LocalDateTime end) {
+        lock.readLock().lock();
+        try {
+            List<Booking> result = new ArrayList<>();
+            for (Entry entry : candidates(tableNumber, start, end)) {
+                // Skip bookings changed in memory but not yet saved
+                if (isCurrent(entry, start, end)) {
+                    result.add(entry.booking);
+                }
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Finds which of the given tables have no booking in a range.
+     *
+     * @param tableNumbers The tables to check
+     * @param start        Start of the range, inclusive
+     * @param end          End of the range, exclusive
+     * @return The free tables, in the order given.
+     */
+    Set<Integer> findFreeTables(Collection<Integer> tableNumbers,
+    LocalDateTime start, LocalDateTime end) {
+        Set<Integer> free = new LinkedHashSet<>();
+        lock.readLock().lock();
+        try {
+            for (Integer tableNumber : tableNumbers) {
+                if (tableNumber != null
+                && isFree(tableNumber, start, end)) {
+                    free.add(tableNumber);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return free;
+    }
+
+    private boolean isFree(int tableNumber, LocalDateTime start,
+    LocalDateTime end) {
+        for (Entry entry : candidates(tableNumber, start, end)) {
+            if (isCurrent(entry, start, end)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the entries of a table starting in
+     * {@code (start - BOOKING_DURATION, end)}, as a view.
+     */
+    private NavigableSet<Entry> candidates(int tableNumber,
+    LocalDateTime start, LocalDateTime end) {
+        NavigableSet<Entry> table = byTable.get(tableNumber);
+        if (table == null) {
+            return Collections.emptyNavigableSet();
+        }
+        Entry from = new Entry(null, Integer.MAX_VALUE, tableNumber,
+        start.minus(BOOKING_DURATION));
+        Entry to = new Entry(null, Integer.MIN_VALUE, tableNumber, end);
+        if (BY_START.compare(from, to) >= 0) {
+            return Collections.emptyNavigableSet();
+        }
+        return table.subSet(from, false, to, false);
+    }
+
+    private static boolean isCurrent(Entry entry, LocalDateTime start,
+    LocalDateTime end) {
+        Booking booking = entry.booking;
+        return booking.getTableNumber() == entry.tableNumber
+        && holdsTable(booking.getStatus()) && overlaps(booking, start, end);
+    }
+
+    private void index(Booking booking) {
+        int bookingId = booking.getBookingID();
+        unlink(entries.remove(bookingId));
+        LocalDateTime start = booking.getBookingDateTime();
+        if (booking.getTableNumber() <= 0 || start == null
+        || !holdsTable(booking.getStatus())) {
+            return;
+        }
+        Entry entry = new Entry(booking, bookingId, booking.getTableNumber(),
+        start);
+        entries.put(bookingId, entry);
+        byTable.computeIfAbsent(entry.tableNumber,
+        key -> new TreeSet<>(BY_START)).add(entry);
+    }
+
+    private void unlink(Entry entry) {
+        if (entry == null) {
+            return;
+        }
+        NavigableSet<Entry> table = byTable.get(entry.tableNumber);
+        if (table != null && table.remove(entry) && table.isEmpty()) {
+            byTable.remove(entry.tableNumber);
+        }
+    }
+}
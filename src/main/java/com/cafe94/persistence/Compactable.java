@@ -0,0 +1,19 @@
+package com.cafe94.persistence;
+
+/**
+ * Implemented by repositories whose journal can be folded into a fresh
+ * snapshot in the background by a {@link JournalCompactor}.
+ * @author Adigun Lateef
+ * @version 1.0
+ */
+public interface Compactable {
+
+    /**
+     * Compacts the repository's journal if it has grown past the
+     * configured thresholds. Must not block concurrent saves for the
+     * duration of the snapshot write.
+     *
+     * @return true if a compaction ran and succeeded.
+     */
+    boolean compactIfNeeded();
+}
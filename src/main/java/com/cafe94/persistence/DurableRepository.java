@@ -0,0 +1,25 @@
+package com.cafe94.persistence;
+
+/**
+ * Implemented by repositories that may hold changes in memory before they
+ * reach disk, such as in write-behind mode. Callers that need durability
+ * at a known point, like application shutdown, use {@link #flush()} or
+ * {@link #close()}.
+ * @author Adigun Lateef
+ * @version 1.0
+ */
+public interface DurableRepository extends Compactable, AutoCloseable {
+
+    /**
+     * Persists every pending change and waits until it is on disk. Does
+     * nothing if changes are already written synchronously.
+     */
+    void flush();
+
+    /**
+     * Flushes pending changes and releases the repository's files and
+     * threads. The repository must not be used afterwards.
+     */
+    @Override
+    void close();
+}
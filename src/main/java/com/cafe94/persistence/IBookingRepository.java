@@ -2,8 +2,12 @@ package com.cafe94.persistence;
 
 import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 import com.cafe94.domain.Booking;
 import com.cafe94.enums.BookingStatus;
@@ -24,6 +28,37 @@ public interface IBookingRepository {
      */
     Booking save(Booking booking);
 
+    /**
+     * Saves a booking only if no one has saved it since the caller read
+     * it, i.e. if the stored booking is still at the given version.
+     *
+     * @param booking         The Booking entity to save or update
+     * @param expectedVersion The version the caller read; 0 for a new
+     *                        booking
+     * @return The saved Booking entity, at the next version
+     * @throws StaleRecordException if the stored version differs. Nothing
+     * is saved.
+     * @throws NullPointerException if the booking parameter is null.
+     */
+    Booking saveIfVersion(Booking booking, long expectedVersion);
+
+    /**
+     * Applies a change to a stored booking and saves it as one step, only
+     * if the booking is still at the given version. The change does not
+     * run at all on a conflict.
+     *
+     * @param bookingId       The ID of the booking to change
+     * @param expectedVersion The version the caller read
+     * @param change          The change, which may throw to abort it
+     * @return The saved Booking entity, at the next version
+     * @throws StaleRecordException if the stored version differs. Nothing
+     * is changed.
+     * @throws java.util.NoSuchElementException if no booking has the ID.
+     * @throws NullPointerException if change is null.
+     */
+    Booking update(int bookingId, long expectedVersion,
+    Consumer<? super Booking> change);
+
     /**
      * Finds a booking by its unique persistent identifier (ID).
      *
@@ -66,6 +101,44 @@ public interface IBookingRepository {
      */
     List<Booking> findByDate(LocalDate date);
 
+    /**
+     * Finds all bookings scheduled between two dates, both inclusive
+     *
+     * @param startDate The first {@link LocalDate} to include
+     * @param endDate   The last {@link LocalDate} to include
+     * @return A {@code List<Booking>} containing the bookings in the range,
+     * sorted by date and time, and returns an empty list if none exist.
+     * @throws NullPointerException if either date is null
+     * @throws IllegalArgumentException if endDate is before startDate
+     */
+    List<Booking> findBetween(LocalDate startDate, LocalDate endDate);
+
+    /**
+     * Finds the next page of bookings after a keyset cursor, ordered by
+     * booking date, time and ID. Pass the date-time and ID of the last
+     * booking of one page to get the next.
+     *
+     * @param afterDateTime Date and time of the last booking already seen,
+     * or null to start from the earliest booking
+     * @param afterId ID of the last booking already seen, ignored if
+     * afterDateTime is null
+     * @param limit The maximum number of bookings to return
+     * @return A {@code List<Booking>} of up to limit bookings, shorter only
+     * when no bookings remain.
+     * @throws IllegalArgumentException if limit is not positive.
+     */
+    List<Booking> findPage(LocalDateTime afterDateTime, int afterId,
+    int limit);
+
+    /**
+     * Streams every booking in the same order as
+     * {@link #findPage(LocalDateTime, int, int)}, fetching lazily so that
+     * the full history never has to be held in memory at once.
+     *
+     * @return A sequential {@code Stream<Booking>} of all bookings.
+     */
+    Stream<Booking> streamAll();
+
     /**
      * Finds all bookings assigned to a specific table that overlap with the
      * given date and time range
@@ -82,6 +155,22 @@ public interface IBookingRepository {
     List<Booking> findByTableAndDateTimeRange(int tableNumber,
     LocalDateTime startDateTime, LocalDateTime endDateTime);
 
+    /**
+     * Finds which of the given tables have no confirmed or pending booking
+     * overlapping the given date and time range, in a single call.
+     *
+     * @param tableNumbers  The table numbers to check
+     * @param startDateTime The start of the time range
+     * @param endDateTime   The end of the time range
+     * @return A {@code Set<Integer>} of the free table numbers, in the order
+     * given, and returns an empty set if none are free.
+     * @throws NullPointerException if any argument is null.
+     * @throws IllegalArgumentException if endDateTime is not after
+     * startDateTime.
+     */
+    Set<Integer> findFreeTables(Collection<Integer> tableNumbers,
+    LocalDateTime startDateTime, LocalDateTime endDateTime);
+
     /**
      * Retrieves all bookings from the repository
      * @return A {@code List<Booking>} containing all bookings and returns an
@@ -14,6 +14,9 @@ public interface IMenuRepository {
 
     /**
      * Saves a new menu item or updates an existing one based on its ID.
+     * The saved instance is shared with menu snapshots and decoded orders,
+     * so it must not be changed afterwards; to update an item, save a new
+     * instance with the same ID.
      *
      * @param item The Item object to save or update
      * @return The saved or updated Item
@@ -40,6 +43,15 @@ public interface IMenuRepository {
      */
     Optional<Item> findById(int itemId);
 
+    /**
+     * Returns an immutable snapshot of the whole menu, pre-sorted and split
+     * into categories and daily specials
+     *
+     * @return The current {@link MenuSnapshot}; a later change publishes a
+     * new snapshot with a higher version rather than altering this one.
+     */
+    MenuSnapshot snapshot();
+
     /**
      * Retrieves all menu items currently stored in the repository
      * @return A {@code List<Item>} containing all menu items and returns an
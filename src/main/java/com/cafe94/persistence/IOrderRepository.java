@@ -1,8 +1,11 @@
 package com.cafe94.persistence;
 
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 import com.cafe94.domain.Order;
 import com.cafe94.enums.OrderStatus;
@@ -23,6 +26,40 @@ public interface IOrderRepository {
      */
     Order save(Order order);
 
+    /**
+     * Saves an order only if no one has saved it since the caller read it,
+     * i.e. if the stored order is still at the given version. Use this
+     * instead of {@link #save(Order)} when the change was decided on what
+     * the caller read.
+     *
+     * @param order           The Order entity to save or update
+     * @param expectedVersion The version the caller read; 0 for a new order
+     * @return The saved Order entity, at the next version
+     * @throws StaleRecordException if the stored version differs. Nothing
+     * is saved.
+     * @throws NullPointerException if the order parameter is null.
+     */
+    Order saveIfVersion(Order order, long expectedVersion);
+
+    /**
+     * Applies a change to a stored order and saves it as one step, only if
+     * the order is still at the given version. The change runs while no
+     * other writer can touch the order, and does not run at all on a
+     * conflict, so callers sharing the stored instance never see a change
+     * that lost.
+     *
+     * @param orderId         The ID of the order to change
+     * @param expectedVersion The version the caller read
+     * @param change          The change, which may throw to abort it
+     * @return The saved Order entity, at the next version
+     * @throws StaleRecordException if the stored version differs. Nothing
+     * is changed.
+     * @throws java.util.NoSuchElementException if no order has the ID.
+     * @throws NullPointerException if change is null.
+     */
+    Order update(int orderId, long expectedVersion,
+    Consumer<? super Order> change);
+
     /**
      * Finds an order by its unique persistent identifier (ID).
      *
@@ -90,6 +127,33 @@ public interface IOrderRepository {
      */
     List<Order> findAll();
 
+    /**
+     * Finds the next page of orders after a keyset cursor, ordered by order
+     * timestamp then order ID. Pass the timestamp and ID of the last order
+     * of one page to get the next; unlike an offset, the cursor stays valid
+     * while orders are added.
+     *
+     * @param afterTimestamp Timestamp of the last order already seen, or
+     * null to start from the oldest order
+     * @param afterId ID of the last order already seen, ignored if
+     * afterTimestamp is null
+     * @param limit The maximum number of orders to return
+     * @return A {@code List<Order>} of up to limit orders, shorter only when
+     * no orders remain.
+     * @throws IllegalArgumentException if limit is not positive.
+     */
+    List<Order> findPage(LocalDateTime afterTimestamp, int afterId,
+    int limit);
+
+    /**
+     * Streams every order in the same order as
+     * {@link #findPage(LocalDateTime, int, int)}, fetching lazily so that
+     * the full history never has to be held in memory at once.
+     *
+     * @return A sequential {@code Stream<Order>} of all orders.
+     */
+    Stream<Order> streamAll();
+
     /**
      * Finds the top customers based on the total number of orders they
      * have placed
@@ -1,5 +1,6 @@
 package com.cafe94.persistence;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -43,14 +44,26 @@ public interface ITableRepository {
 
     /**
      * Retrieves all tables that have a capacity greater than or equal to the
-     * specified minimum requirement
+     * specified minimum requirement, smallest first
      *
      * @param requiredCapacity The minimum number of seats the table must have
-     * @return A {@code List<Table>} containing all Table objects that meet or
-     * exceed the capacity requirement and eturns an empty list if
+     * @return An unmodifiable, live {@code Collection<Table>} of the Table
+     * objects that meet or exceed the capacity requirement, ordered by
+     * capacity then table number, and returns an empty collection if
      * requiredCapacity is not positive or no tables meet the criteria.
      */
-    List<Table> findWithCapacityGreaterThanOrEqual(int requiredCapacity);
+    Collection<Table> findWithCapacityGreaterThanOrEqual(int requiredCapacity);
+
+    /**
+     * Retrieves the tables that are currently {@code AVAILABLE} and have a
+     * capacity greater than or equal to the specified requirement
+     *
+     * @param requiredCapacity The minimum number of seats the table must have
+     * @return A {@code List<Table>} of the matching tables ordered by capacity
+     * then table number, so the snuggest fit comes first, and returns an
+     * empty list if requiredCapacity is not positive or no tables match.
+     */
+    List<Table> findAvailableWithCapacityAtLeast(int requiredCapacity);
 
     /**
      * Deletes a table configuration based on its unique table number
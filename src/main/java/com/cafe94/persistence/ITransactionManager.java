@@ -0,0 +1,14 @@
+package com.cafe94.persistence;
+
+/**
+ * Starts units of work that save to several repositories atomically.
+ * @author Adigun Lateef
+ * @version 1.0
+ */
+public interface ITransactionManager {
+
+    /**
+     * @return A new, empty unit of work.
+     */
+    IUnitOfWork begin();
+}
@@ -0,0 +1,99 @@
+package com.cafe94.persistence;
+
+import java.util.function.Consumer;
+
+import com.cafe94.domain.Booking;
+import com.cafe94.domain.Order;
+import com.cafe94.domain.Table;
+
+/**
+ * A set of saves across repositories that become durable together or not
+ * at all. Saves are only staged until {@link #commit()}; repositories do
+ * not see them before then. Obtained from {@link ITransactionManager#begin()}
+ * and used by one thread only.
+ * @author Adigun Lateef
+ * @version 1.0
+ */
+public interface IUnitOfWork {
+
+    /**
+     * Stages an order to be saved. New orders are given their ID on commit.
+     * @param order The Order to save
+     * @throws NullPointerException if order is null.
+     * @throws IllegalStateException if the unit of work has been committed.
+     */
+    void save(Order order);
+
+    /**
+     * Stages a table to be saved.
+     * @param table The Table to save
+     * @throws NullPointerException if table is null.
+     * @throws IllegalStateException if the unit of work has been committed.
+     */
+    void save(Table table);
+
+    /**
+     * Stages a booking to be saved. New bookings are given their ID on
+     * commit.
+     * @param booking The Booking to save
+     * @throws NullPointerException if booking is null.
+     * @throws IllegalStateException if the unit of work has been committed.
+     */
+    void save(Booking booking);
+
+    /**
+     * Stages a change to an order, to run on commit only if the order is
+     * still at the given version.
+     * @param order           The Order to change and save
+     * @param expectedVersion The version the caller read
+     * @param change          The change, run on a copy of the order; may
+     *                        throw to abort the commit
+     * @throws NullPointerException if order or change is null.
+     * @throws IllegalStateException if the unit of work has been committed.
+     */
+    void update(Order order, long expectedVersion,
+    Consumer<? super Order> change);
+
+    /**
+     * Stages a change to a booking, to run on commit only if the booking
+     * is still at the given version.
+     * @param booking         The Booking to change and save
+     * @param expectedVersion The version the caller read
+     * @param change          The change, run on a copy of the booking;
+     *                        may throw to abort the commit
+     * @throws NullPointerException if booking or change is null.
+     * @throws IllegalStateException if the unit of work has been committed.
+     */
+    void update(Booking booking, long expectedVersion,
+    Consumer<? super Booking> change);
+
+    /**
+     * Writes every staged save to the transaction log with a single
+     * durable write, then applies them to their repositories. Staged
+     * changes, new IDs and versions go to copies of the staged records,
+     * which are what the repositories then hold; the staged records
+     * themselves are never changed. If a staged change throws or the log
+     * write fails, nothing is logged or applied and every record is left
+     * as it was.
+     *
+     * @throws IllegalStateException if the unit of work has already been
+     * committed, or the transaction log could not be written.
+     * @throws StaleRecordException if a staged update found its record at
+     * another version. Every version is checked before any staged change
+     * runs, so nothing is changed, logged or applied.
+     */
+    void commit();
+
+    /**
+     * Returns the record a staged one was saved as, with its staged change
+     * run, its version raised and, if new, its assigned ID.
+     *
+     * @param <T>    The record type
+     * @param staged A record passed to one of the save methods
+     * @return The saved record.
+     * @throws IllegalStateException if the unit of work has not been
+     * committed.
+     * @throws IllegalArgumentException if the record was not staged here.
+     */
+    <T> T getSaved(T staged);
+}
@@ -2,6 +2,7 @@ package com.cafe94.persistence;
 
 import java.util.List;
 import java.util.Optional;
+import java.util.function.Predicate;
 
 import com.cafe94.domain.Staff;
 import com.cafe94.domain.User;
@@ -71,6 +72,22 @@ public interface IUserRepository {
      */
     User save(User user);
 
+    /**
+     * Saves a user only if no other profile registered under the same
+     * email address, ignoring case, matches the given conflict test. The
+     * check and the save are atomic, so two concurrent registrations with
+     * the same email cannot both succeed.
+     *
+     * @param user      The User entity to save
+     * @param conflicts Tests whether an existing profile with the same
+     *                  email blocks the save
+     * @return An {@code Optional<User>} containing the saved User, or an
+     * empty Optional if a conflicting profile exists
+     * @throws NullPointerException if either parameter is null
+     */
+    Optional<User> saveIfEmailAvailable(User user,
+    Predicate<? super User> conflicts);
+
     /**
      * Deletes a User entity using the provided object instance
      *
@@ -0,0 +1,19 @@
+package com.cafe94.persistence;
+
+/**
+ * Storage backend "memory": the repositories keep their records in memory
+ * only, for benchmarks that should not measure the disk. Nothing is read
+ * from the data directory at startup or written to it afterwards, so the
+ * initial tables are all there is.
+ * @author Adigun Lateef
+ * @version 1.0
+ */
+public class InMemoryStorageProvider extends RecordStoreProvider {
+
+    /**
+     * Creates the provider; called by {@link java.util.ServiceLoader}.
+     */
+    public InMemoryStorageProvider() {
+        super("memory", StorageOptions.memory(), 0);
+    }
+}
@@ -0,0 +1,56 @@
+package com.cafe94.persistence;
+
+import java.io.IOException;
+
+import com.cafe94.domain.Item;
+
+/**
+ * Binary codec for menu {@link Item} records.
+ * <p>
+ * Version 1 layout: version byte, varint ID, name, category, price,
+ * daily special flag.
+ * @author Adigun Lateef
+ * @version 1.0
+ */
+final class ItemCodec implements RecordCodec<Item> {
+
+    private static final int FORMAT_VERSION = 1;
+
+    @Override
+    public byte[] encode(Item item) throws IOException {
+        BinaryRecordWriter out = new BinaryRecordWriter(48);
+        out.writeByte(FORMAT_VERSION);
+        out.writeVarInt(item.getItemID());
+        out.writeString(item.getName());
+        out.writeString(item.getCategory());
+        out.writePence(item.getPricePence());
+        out.writeBoolean(item.isDailySpecial());
+        return out.toByteArray();
+    }
+
+    @Override
+    public Item decode(byte[] payload) throws IOException {
+        BinaryRecordReader in = new BinaryRecordReader(payload);
+        int version = in.readByte();
+        if (version != FORMAT_VERSION) {
+            throw new IOException("Unsupported item record version "
+            + version);
+        }
+        return newItem(in.readVarInt(), in.readString(), in.readString(),
+        in.readPence(), in.readBoolean());
+    }
+
+    /**
+     * Creates an item priced in pence, which the public constructor only
+     * accepts in pounds.
+     *
+     * @throws IllegalArgumentException if name or category is blank, or
+     * the price is negative.
+     */
+    static Item newItem(int itemId, String name, String category,
+    long pricePence, boolean dailySpecial) {
+        Item item = new Item(itemId, name, category, 0, dailySpecial);
+        item.setPricePence(pricePence);
+        return item;
+    }
+}
@@ -0,0 +1,66 @@
+package com.cafe94.persistence;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.Objects;
+
+/**
+ * Encodes records with default Java serialization. Always available, and
+ * used to read records written before the binary codecs existed.
+ * @param <V> The record type
+ * @author Adigun Lateef
+ * @version 1.0
+ */
+final class JavaSerializationCodec<V extends Serializable>
+implements RecordCodec<V> {
+
+    /** First byte of every Java serialization stream. */
+    static final byte STREAM_MAGIC_FIRST_BYTE = (byte) 0xAC;
+
+    private final Class<V> type;
+
+    /**
+     * @param type The record type, checked when decoding
+     * @throws NullPointerException if type is null.
+     */
+    JavaSerializationCodec(Class<V> type) {
+        this.type = Objects.requireNonNull(type, "Type cannot be null.");
+    }
+
+    @Override
+    public byte[] encode(V record) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(512);
+        try (ObjectOutputStream oos = new ObjectOutputStream(bytes)) {
+            oos.writeObject(record);
+        }
+        return bytes.toByteArray();
+    }
+
+    @Override
+    public V decode(byte[] payload) throws IOException {
+        try (ObjectInputStream ois = new ObjectInputStream(
+             new ByteArrayInputStream(payload))) {
+            Object value = ois.readObject();
+            if (!type.isInstance(value)) {
+                throw new IOException("Record is not a "
+                + type.getSimpleName() + ": "
+                + (value != null ? value.getClass().getName() : "null"));
+            }
+            return type.cast(value);
+        } catch (ClassNotFoundException e) {
+            throw new IOException("Unknown class in serialized record", e);
+        }
+    }
+
+    /**
+     * @param payload An encoded record
+     * @return true if the payload was written by Java serialization.
+     */
+    static boolean isJavaSerialized(byte[] payload) {
+        return payload.length > 0 && payload[0] == STREAM_MAGIC_FIRST_BYTE;
+    }
+}
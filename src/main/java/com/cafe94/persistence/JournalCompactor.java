@@ -0,0 +1,129 @@
+package com.cafe94.persistence;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Periodically asks registered repositories to compact their journals on
+ * a single background thread, so the cost of writing a snapshot is never
+ * paid by a save and startup only replays a short journal tail.
+ * @author Adigun Lateef
+ * @version 1.0
+ */
+public final class JournalCompactor implements AutoCloseable {
+
+    private static final Logger LOGGER =
+    Logger.getLogger(JournalCompactor.class.getName());
+
+    /** Seconds between compaction checks when no property is set. */
+    public static final long DEFAULT_INTERVAL_SECONDS = 30;
+
+    private final List<Compactable> targets = new CopyOnWriteArrayList<>();
+    private final long intervalMillis;
+    private ScheduledExecutorService executor;
+
+    /**
+     * Creates a compactor. No thread is started until {@link #start()}.
+     *
+     * @param interval Time between compaction checks
+     * @param unit     Unit of the interval
+     * @throws IllegalArgumentException if interval is not positive.
+     * @throws NullPointerException if unit is null.
+     */
+    public JournalCompactor(long interval, TimeUnit unit) {
+        Objects.requireNonNull(unit, "Time unit cannot be null.");
+        if (interval <= 0) {
+            throw new IllegalArgumentException(
+            "Compaction interval must be positive.");
+        }
+        this.intervalMillis = unit.toMillis(interval);
+    }
+
+    /**
+     * Creates a compactor whose interval is read from
+     * {@code cafe94.storage.compactionIntervalSeconds}.
+     *
+     * @return The new compactor.
+     */
+    public static JournalCompactor fromSystemProperties() {
+        return new JournalCompactor(StorageOptions.longProperty("compactor",
+        "compactionIntervalSeconds", DEFAULT_INTERVAL_SECONDS),
+        TimeUnit.SECONDS);
+    }
+
+    /**
+     * Adds a repository to the compaction schedule.
+     *
+     * @param target The repository
+     * @throws NullPointerException if target is null.
+     */
+    public void register(Compactable target) {
+        targets.add(Objects.requireNonNull(target,
+        "Compaction target cannot be null."));
+    }
+
+    /**
+     * Starts the background thread. The first check runs immediately so a
+     * long journal replayed at startup is compacted straight away.
+     */
+    public synchronized void start() {
+        if (executor != null) {
+            return;
+        }
+        executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "cafe94-journal-compactor");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.NORM_PRIORITY - 1);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(this::compactAll, 0,
+        intervalMillis, TimeUnit.MILLISECONDS);
+        LOGGER.log(Level.INFO,
+        "Journal compactor started for {0} repositories. Interval: {1} ms",
+        new Object[]{targets.size(), intervalMillis});
+    }
+
+    /**
+     * Runs one compaction check over every registered repository.
+     */
+    public void compactAll() {
+        for (Compactable target : targets) {
+            try {
+                target.compactIfNeeded();
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Compaction failed for "
+                + target.getClass().getSimpleName(), e);
+            }
+        }
+    }
+
+    /**
+     * Stops the background thread, waiting briefly for a running
+     * compaction to finish.
+     */
+    @Override
+    public synchronized void close() {
+        if (executor == null) {
+            return;
+        }
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+                LOGGER.log(Level.WARNING,
+                "Journal compactor did not stop within 10 seconds.");
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        executor = null;
+        LOGGER.log(Level.INFO, "Journal compactor stopped.");
+    }
+}
@@ -0,0 +1,22 @@
+package com.cafe94.persistence;
+
+/**
+ * Storage backend "journaled", the default: every repository appends its
+ * changes to a journal with the binary codecs, and finished orders are
+ * archived once they have not changed for an hour.
+ * @author Adigun Lateef
+ * @version 1.0
+ */
+public class JournaledStorageProvider extends RecordStoreProvider {
+
+    // Finished orders stay in memory this long before they are archived
+    private static final long ORDER_ARCHIVE_AFTER_MINUTES = 60;
+
+    /**
+     * Creates the provider; called by {@link java.util.ServiceLoader}.
+     */
+    public JournaledStorageProvider() {
+        super("journaled", StorageOptions.journaled()
+        .withCodec(StorageOptions.Codec.BINARY), ORDER_ARCHIVE_AFTER_MINUTES);
+    }
+}
@@ -0,0 +1,17 @@
+package com.cafe94.persistence;
+
+/**
+ * Storage backend "legacy": the original behaviour, where every repository
+ * rewrites its whole data file on every change with Java serialization.
+ * @author Adigun Lateef
+ * @version 1.0
+ */
+public class LegacyStorageProvider extends RecordStoreProvider {
+
+    /**
+     * Creates the provider; called by {@link java.util.ServiceLoader}.
+     */
+    public LegacyStorageProvider() {
+        super("legacy", StorageOptions.snapshot(), 0);
+    }
+}
@@ -0,0 +1,524 @@
+package com.cafe94.persistence;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import com.cafe94.domain.Booking;
+import com.cafe94.enums.BookingStatus;
+import com.cafe94.persistence.lsm.KeyBuilder;
+import com.cafe94.persistence.lsm.LsmEngine;
+import com.cafe94.persistence.lsm.WriteBatch;
+
+/**
+ * Implementation of {@link IBookingRepository} on an {@link LsmEngine}.
+ * Bookings are stored with the binary {@link BookingCodec} and indexed by
+ * date and time, by status and by customer. Bookings that hold a table
+ * are also indexed by table and start time, so a conflict check is one
+ * short range scan, as in the {@link BookingSchedule} of the file-backed
+ * repository.
+ * <p>
+ * Bookings are decoded afresh on every read, so callers get their own
+ * copies and must save a booking for a change to be seen. Saves lock the
+ * stripe their booking ID hashes to, check the stored version and write
+ * the booking and its index entries in one batch.
+ * @author Adigun Lateef
+ * @version 1.0
+ */
+public class LsmBookingRepository implements IBookingRepository,
+DurableRepository {
+
+    private static final Logger LOGGER =
+    Logger.getLogger(LsmBookingRepository.class.getName());
+    /** First byte of every booking key in the shared engine. */
+    static final int KEY_SPACE = 2;
+    private static final int TAG_TIME = 1;
+    private static final int TAG_STATUS = 2;
+    private static final int TAG_CUSTOMER = 3;
+    private static final int TAG_TABLE = 4;
+    private static final int STREAM_PAGE_SIZE = 256;
+
+    private final LsmRecords<Booking> records;
+
+    /**
+     * Opens the bookings stored in an engine.
+     *
+     * @param engine The shared engine, owned by the caller
+     * @throws NullPointerException if engine is null.
+     */
+    public LsmBookingRepository(LsmEngine engine) {
+        Objects.requireNonNull(engine, "Engine cannot be null.");
+        this.records = new LsmRecords<>(engine, KEY_SPACE, "booking",
+        new BookingCodec(), this::indexKeys);
+        LOGGER.log(Level.INFO,
+        "LsmBookingRepository initialized in {0}. Next ID: {1}",
+        new Object[]{engine.getDirectory(), records.getNextId()});
+    }
+
+    private List<byte[]> indexKeys(Booking booking) {
+        int bookingId = booking.getBookingID();
+        LocalDateTime start = booking.getBookingDateTime();
+        List<byte[]> keys = new ArrayList<>(4);
+        keys.add(records.key(TAG_TIME).addDateTime(start).addInt(bookingId)
+        .build());
+        if (booking.getStatus() != null) {
+            keys.add(records.key(TAG_STATUS)
+            .addByte(booking.getStatus().ordinal()).addDateTime(start)
+            .addInt(bookingId).build());
+        }
+        keys.add(records.key(TAG_CUSTOMER).addInt(booking.getCustomerID())
+        .addDateTime(start).addInt(bookingId).build());
+        if (start != null && booking.getTableNumber() > 0
+        && BookingSchedule.holdsTable(booking.getStatus())) {
+            keys.add(tablePrefix(booking.getTableNumber()).addDateTime(start)
+            .addInt(bookingId).build());
+        }
+        return keys;
+    }
+
+    private KeyBuilder tablePrefix(int tableNumber) {
+        return records.key(TAG_TABLE).addInt(tableNumber);
+    }
+
+    /**
+     * Saves a new booking or updates an existing one.
+     * @param booking The Booking to save or update (must not be null).
+     * @return The saved Booking object
+     * @throws NullPointerException if booking is null.
+     */
+    @Override
+    public Booking save(Booking booking) {
+        return saveIfVersion(booking, TransactionParticipant.ANY_VERSION);
+    }
+
+    /**
+     * Saves a booking only if the stored booking is still at the given
+     * version. A new booking is given its ID in place.
+     * @param booking         The Booking to save or update
+     * @param expectedVersion The version the caller read
+     * @return The saved Booking object
+     * @throws StaleRecordException if the stored version differs.
+     * @throws NullPointerException if booking is null.
+     */
+    @Override
+    public Booking saveIfVersion(Booking booking, long expectedVersion) {
+        Objects.requireNonNull(booking, "Booking to save cannot be null.");
+        assignId(booking);
+        int bookingId = booking.getBookingID();
+        synchronized (records.stripeFor(bookingId)) {
+            Booking stored = records.find(bookingId).orElse(null);
+            checkVersion(bookingId, stored, expectedVersion);
+            booking.restoreVersion(
+            (stored != null ? stored.getVersion() : 0) + 1);
+            records.put(bookingId, booking, stored);
+        }
+        LOGGER.log(Level.INFO,
+        "Saved booking: ID={0}, Customer={1}, Date={2}, Status={3}",
+        new Object[]{bookingId, booking.getCustomerID(),
+            booking.getBookingDate(), booking.getStatus()});
+        return booking;
+    }
+
+    /**
+     * Applies a change to the stored booking and saves it, only if the
+     * booking is still at the given version.
+     * @param bookingId       The ID of the booking
+     * @param expectedVersion The version the caller read
+     * @param change          The change to apply
+     * @return The saved Booking object
+     * @throws StaleRecordException if the stored version differs.
+     * @throws NoSuchElementException if no booking has the ID.
+     * @throws NullPointerException if change is null.
+     */
+    @Override
+    public Booking update(int bookingId, long expectedVersion,
+    Consumer<? super Booking> change) {
+        Objects.requireNonNull(change, "Change cannot be null.");
+        synchronized (records.stripeFor(bookingId)) {
+            Booking stored = records.find(bookingId).orElseThrow(() ->
+            new NoSuchElementException(
+                "Booking not found with ID: " + bookingId));
+            // A second copy, so the index keys of the first still apply
+            Booking booking = records.find(bookingId).get();
+            checkVersion(bookingId, stored, expectedVersion);
+            change.accept(booking);
+            booking.restoreVersion(stored.getVersion() + 1);
+            records.put(bookingId, booking, stored);
+            return booking;
+        }
+    }
+
+    private Booking assignId(Booking booking) {
+        if (booking.getBookingID() <= 0) {
+            booking.setBookingID(records.allocateId());
+            LOGGER.log(Level.FINE, "Assigned new ID {0} to booking for " +
+            "customer: {1}",
+            new Object[]{booking.getBookingID(), booking.getCustomerID()});
+        } else {
+            records.reserveId(booking.getBookingID());
+        }
+        return booking;
+    }
+
+    /**
+     * @return This repository as seen by an {@link LsmTransactionManager}.
+     */
+    LsmParticipant<Booking> asParticipant() {
+        return new LsmParticipant<Booking>() {
+            @Override
+            public LsmRecords<Booking> getRecords() {
+                return records;
+            }
+
+            @Override
+            public Booking assignId(Booking booking) {
+                return LsmBookingRepository.this.assignId(booking);
+            }
+
+            @Override
+            public int getId(Booking booking) {
+                return booking.getBookingID();
+            }
+
+            @Override
+            public List<Object> locksFor(Collection<Integer> ids) {
+                return records.stripesFor(ids);
+            }
+
+            @Override
+            public void checkVersion(int bookingId, Booking stored,
+            int stagedBefore, long expectedVersion) {
+                LsmBookingRepository.checkVersion(bookingId,
+                (stored != null ? stored.getVersion() : 0) + stagedBefore,
+                expectedVersion);
+            }
+
+            @Override
+            public void stage(WriteBatch batch, Booking booking,
+            Booking previous, long expectedVersion,
+            Consumer<? super Booking> change) {
+                LsmBookingRepository.checkVersion(booking.getBookingID(),
+                previous, expectedVersion);
+                if (change != null) {
+                    change.accept(booking);
+                }
+                booking.restoreVersion(
+                (previous != null ? previous.getVersion() : 0) + 1);
+                records.stage(batch, booking.getBookingID(), booking,
+                previous);
+            }
+        };
+    }
+
+    private static void checkVersion(int bookingId, Booking stored,
+    long expectedVersion) {
+        checkVersion(bookingId, stored != null ? stored.getVersion() : 0,
+        expectedVersion);
+    }
+
+    private static void checkVersion(int bookingId, long current,
+    long expectedVersion) {
+        if (expectedVersion != TransactionParticipant.ANY_VERSION
+        && expectedVersion != current) {
+            throw new StaleRecordException("Booking", bookingId,
+            expectedVersion, current);
+        }
+    }
+
+    /**
+     * Finds a booking by its unique persistent ID.
+     *
+     * @param bookingId The ID of the booking
+     * @return An Optional containing a copy of the Booking if found,
+     * otherwise empty.
+     */
+    @Override
+    public Optional<Booking> findById(int bookingId) {
+        if (bookingId <= 0) {
+            LOGGER.log(Level.FINER,
+            "findById called with non-positive ID: {0}", bookingId);
+            return Optional.empty();
+        }
+        return records.find(bookingId);
+    }
+
+    /**
+     * Deletes a booking by its unique persistent ID.
+     *
+     * @param bookingId The ID of the booking to delete
+     * @return true if a booking was found and deleted, false otherwise.
+     */
+    @Override
+    public boolean deleteById(int bookingId) {
+        if (bookingId <= 0) {
+            LOGGER.log(Level.WARNING,
+            "Attempted to delete booking with invalid ID: {0}", bookingId);
+            return false;
+        }
+        synchronized (records.stripeFor(bookingId)) {
+            Optional<Booking> stored = records.find(bookingId);
+            if (!stored.isPresent()) {
+                LOGGER.log(Level.WARNING,
+                "Booking ID {0} not found for deletion.", bookingId);
+                return false;
+            }
+            records.delete(bookingId, stored.get());
+        }
+        LOGGER.log(Level.INFO, "Deleted booking ID: {0}", bookingId);
+        return true;
+    }
+
+    /**
+     * Finds all bookings made by a specific customer.
+     * @param customerId The ID of the customer
+     * @return An unmodifiable List of Bookings made by the customer, by
+     * date and time.
+     */
+    @Override
+    public List<Booking> findByCustomerId(int customerId) {
+        if (customerId <= 0) {
+            LOGGER.log(Level.FINER,
+            "findByCustomerId called with non-positive ID: {0}", customerId);
+            return Collections.emptyList();
+        }
+        return Collections.unmodifiableList(records.findIndexed(
+        records.key(TAG_CUSTOMER).addInt(customerId).build()));
+    }
+
+    /**
+     * Finds all bookings scheduled for a specific date.
+     *
+     * @param date The date to query
+     * @return An unmodifiable List of Bookings scheduled for that date.
+     */
+    @Override
+    public List<Booking> findByDate(LocalDate date) {
+        Objects.requireNonNull(date, "Date cannot be null for findByDate.");
+        return findBetween(date, date);
+    }
+
+    /**
+     * Finds all bookings scheduled between two dates with one scan of the
+     * date index.
+     *
+     * @param startDate The first date, inclusive
+     * @param endDate   The last date, inclusive
+     * @return An unmodifiable List of Bookings sorted by date and time.
+     * @throws NullPointerException if either date is null.
+     * @throws IllegalArgumentException if endDate is before startDate.
+     */
+    @Override
+    public List<Booking> findBetween(LocalDate startDate, LocalDate endDate) {
+        Objects.requireNonNull(startDate,
+        "Start date cannot be null for findBetween.");
+        Objects.requireNonNull(endDate,
+        "End date cannot be null for findBetween.");
+        if (endDate.isBefore(startDate)) {
+            throw new IllegalArgumentException(
+            "End date cannot be before start date.");
+        }
+        return Collections.unmodifiableList(records.findIndexed(
+        records.key(TAG_TIME).addDateTime(startDate.atStartOfDay()).build(),
+        records.key(TAG_TIME).addDateTime(endDate.plusDays(1)
+        .atStartOfDay()).build(), Integer.MAX_VALUE));
+    }
+
+    /**
+     * Finds the next bookings after a keyset cursor
+     *
+     * @param afterDateTime Date and time of the last booking already seen,
+     *                      or null to start from the earliest booking
+     * @param afterId       ID of the last booking already seen
+     * @param limit         The most bookings to return
+     * @return An unmodifiable List of up to limit Bookings, by date, time
+     * and ID.
+     * @throws IllegalArgumentException if limit is not positive.
+     */
+    @Override
+    public List<Booking> findPage(LocalDateTime afterDateTime, int afterId,
+    int limit) {
+        if (limit <= 0) {
+            throw new IllegalArgumentException(
+            "Page limit must be positive. Provided: " + limit);
+        }
+        byte[] prefix = records.key(TAG_TIME).build();
+        byte[] from = afterDateTime == null ? prefix
+        : LsmRecords.after(records.key(TAG_TIME).addDateTime(afterDateTime)
+        .addInt(afterId).build());
+        return Collections.unmodifiableList(records.findIndexed(from,
+        KeyBuilder.prefixEnd(prefix), limit));
+    }
+
+    /**
+     * Streams every booking by date and time, fetching one page at a time.
+     *
+     * @return A sequential, ordered Stream of all Bookings.
+     */
+    @Override
+    public Stream<Booking> streamAll() {
+        return StreamSupport.stream(new PageSpliterator<Booking>(
+        STREAM_PAGE_SIZE, (last, limit) -> last == null
+        ? findPage(null, 0, limit)
+        : findPage(last.getBookingDateTime(), last.getBookingID(), limit)),
+        false);
+    }
+
+    /**
+     * Finds all bookings
+     *
+     * @return An unmodifiable List of all Bookings, by date and time.
+     */
+    @Override
+    public List<Booking> findAll() {
+        return Collections.unmodifiableList(records.findIndexed(
+        records.key(TAG_TIME).build()));
+    }
+
+    /**
+     * Finds all bookings with a status
+     *
+     * @param status The status to match
+     * @return An unmodifiable List of the Bookings, by date and time.
+     * @throws NullPointerException if status is null.
+     */
+    @Override
+    public List<Booking> findByStatus(BookingStatus status) {
+        Objects.requireNonNull(status,
+        "Status cannot be null for findByStatus.");
+        List<Booking> matching = records.findIndexed(records.key(TAG_STATUS)
+        .addByte(status.ordinal()).build());
+        // Drop bookings whose status changed after the index was read
+        matching.removeIf(booking -> booking.getStatus() != status);
+        return Collections.unmodifiableList(matching);
+    }
+
+    /**
+     * Finds the bookings holding a table that overlap a time range
+     *
+     * @param tableNumber   The table number
+     * @param startDateTime The start of the time range
+     * @param endDateTime   The end of the time range
+     * @return An unmodifiable List of the Bookings, by start time.
+     * @throws NullPointerException if either time is null.
+     * @throws IllegalArgumentException if endDateTime is not after
+     * startDateTime.
+     */
+    @Override
+    public List<Booking> findByTableAndDateTimeRange(int tableNumber,
+    LocalDateTime startDateTime, LocalDateTime endDateTime) {
+        Objects.requireNonNull(startDateTime,
+        "StartDateTime cannot be null.");
+        Objects.requireNonNull(endDateTime,
+        "EndDateTime cannot be null.");
+        if (tableNumber <= 0) {
+            LOGGER.log(Level.FINER,
+            "findByTableAndDateTimeRange called with non-positive table " +
+            "number: {0}", tableNumber);
+            return Collections.emptyList();
+        }
+        if (!endDateTime.isAfter(startDateTime)) {
+            throw new IllegalArgumentException(
+                "EndDateTime must be after startDateTime.");
+        }
+        List<Booking> overlapping = records.findIndexed(
+        overlapFrom(tableNumber, startDateTime),
+        overlapTo(tableNumber, endDateTime), Integer.MAX_VALUE);
+        // Drop bookings changed after the index was read
+        overlapping.removeIf(booking ->
+        booking.getTableNumber() != tableNumber
+        || !BookingSchedule.holdsTable(booking.getStatus())
+        || !BookingSchedule.overlaps(booking, startDateTime, endDateTime));
+        return Collections.unmodifiableList(overlapping);
+    }
+
+    /**
+     * Finds which of the given tables are free for a time range, reading
+     * at most one index key per table.
+     *
+     * @param tableNumbers  The table numbers to check
+     * @param startDateTime The start of the time range
+     * @param endDateTime   The end of the time range
+     * @return An unmodifiable Set of the free table numbers, in the order
+     * given.
+     * @throws NullPointerException if any argument is null.
+     * @throws IllegalArgumentException if endDateTime is not after
+     * startDateTime.
+     */
+    @Override
+    public Set<Integer> findFreeTables(Collection<Integer> tableNumbers,
+    LocalDateTime startDateTime, LocalDateTime endDateTime) {
+        Objects.requireNonNull(tableNumbers,
+        "Table numbers cannot be null.");
+        Objects.requireNonNull(startDateTime,
+        "StartDateTime cannot be null.");
+        Objects.requireNonNull(endDateTime, "EndDateTime cannot be null.");
+        if (!endDateTime.isAfter(startDateTime)) {
+            throw new IllegalArgumentException(
+            "EndDateTime must be after startDateTime.");
+        }
+        Set<Integer> free = new LinkedHashSet<>();
+        for (Integer tableNumber : tableNumbers) {
+            if (tableNumber != null && records.scan(
+            overlapFrom(tableNumber, startDateTime),
+            overlapTo(tableNumber, endDateTime), 1).isEmpty()) {
+                free.add(tableNumber);
+            }
+        }
+        return Collections.unmodifiableSet(free);
+    }
+
+    /**
+     * Every booking of a fixed duration that overlaps {@code [start, end)}
+     * starts strictly after {@code start - BOOKING_DURATION}, so the scan
+     * skips bookings starting exactly then.
+     */
+    private byte[] overlapFrom(int tableNumber, LocalDateTime start) {
+        return LsmRecords.after(tablePrefix(tableNumber)
+        .addDateTime(start.minus(BookingSchedule.BOOKING_DURATION)).build());
+    }
+
+    private byte[] overlapTo(int tableNumber, LocalDateTime end) {
+        return tablePrefix(tableNumber).addDateTime(end).build();
+    }
+
+    /**
+     * The engine merges its own segments in the background, so there is
+     * nothing to compact here.
+     *
+     * @return false.
+     */
+    @Override
+    public boolean compactIfNeeded() {
+        return false;
+    }
+
+    /**
+     * Forces every booking change so far to disk.
+     */
+    @Override
+    public void flush() {
+        records.sync();
+    }
+
+    /**
+     * Forces every booking change so far to disk. The engine is shared,
+     * so it is left open for its owner to close.
+     */
+    @Override
+    public void close() {
+        records.sync();
+    }
+}
@@ -0,0 +1,216 @@
+package com.cafe94.persistence;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.cafe94.domain.Item;
+import com.cafe94.persistence.lsm.LsmEngine;
+import com.cafe94.util.primitive.IntObjectConcurrentMap;
+
+/**
+ * Implementation of {@link IMenuRepository} on an {@link LsmEngine}. The
+ * menu is small and read on every order, so, as in {@link MenuRepository},
+ * it is loaded once and reads are served from an immutable
+ * {@link MenuSnapshot} rebuilt after each change; the engine only stores
+ * the items, with the binary {@link ItemCodec}.
+ * @author Adigun Lateef
+ * @version 1.0
+ */
+public class LsmMenuRepository implements IMenuRepository, DurableRepository {
+
+    private static final Logger LOGGER =
+    Logger.getLogger(LsmMenuRepository.class.getName());
+    /** First byte of every menu key in the shared engine. */
+    static final int KEY_SPACE = 4;
+
+    private final IntObjectConcurrentMap<Item> items =
+    new IntObjectConcurrentMap<>();
+    private final LsmRecords<Item> records;
+    // Replaced, never modified, under the repository monitor
+    private volatile MenuSnapshot snapshot;
+
+    /**
+     * Opens the menu stored in an engine.
+     *
+     * @param engine The shared engine, owned by the caller
+     * @throws NullPointerException if engine is null.
+     */
+    public LsmMenuRepository(LsmEngine engine) {
+        Objects.requireNonNull(engine, "Engine cannot be null.");
+        this.records = new LsmRecords<>(engine, KEY_SPACE, "menu item",
+        new ItemCodec(), item -> Collections.emptyList());
+        for (Item item : records.findAll()) {
+            items.put(item.getItemID(), item);
+        }
+        this.snapshot = new MenuSnapshot(1, items.values());
+        LOGGER.log(Level.INFO,
+        "LsmMenuRepository initialized. Loaded {0} items from {1}. " +
+        "Next ID: {2}",
+        new Object[]{items.size(), engine.getDirectory(),
+            records.getNextId()});
+    }
+
+    /**
+     * Saves a new item or updates an existing one
+     *
+     * @param item The Item to save or update
+     * @return The saved Item object (the same instance passed in)
+     * @throws NullPointerException if item is null.
+     */
+    @Override
+    public synchronized Item save(Item item) {
+        Objects.requireNonNull(item, "Item to save cannot be null.");
+        if (item.getItemID() <= 0) {
+            item.setItemID(records.allocateId());
+            LOGGER.log(Level.FINE, "Assigned new ID {0} to item: {1}",
+            new Object[]{item.getItemID(), item.getName()});
+        } else {
+            records.reserveId(item.getItemID());
+        }
+        int itemId = item.getItemID();
+        records.put(itemId, item, null);
+        items.put(itemId, item);
+        publishSnapshot();
+        LOGGER.log(Level.INFO,
+        "Saved item: ID={0}, Name=''{1}'', Category=''{2}''",
+        new Object[]{itemId, item.getName(), item.getCategory()});
+        return item;
+    }
+
+    /**
+     * Deletes an item by its unique persistent ID
+     *
+     * @param itemId The ID of the item to delete
+     * @return true if an item was found and deleted, false otherwise.
+     */
+    @Override
+    public synchronized boolean deleteById(int itemId) {
+        if (itemId <= 0) {
+            LOGGER.log(Level.WARNING,
+            "Attempted to delete item with invalid ID: {0}", itemId);
+            return false;
+        }
+        Item removedItem = items.get(itemId);
+        if (removedItem == null) {
+            LOGGER.log(Level.WARNING, "Item ID {0} not found for deletion.",
+            itemId);
+            return false;
+        }
+        records.delete(itemId, removedItem);
+        items.remove(itemId);
+        publishSnapshot();
+        LOGGER.log(Level.INFO, "Deleted item ID: {0}", itemId);
+        return true;
+    }
+
+    /**
+     * Finds an item by its unique persistent ID.
+     *
+     * @param itemId The ID of the item
+     * @return An Optional containing the Item if found, otherwise empty.
+     */
+    @Override
+    public Optional<Item> findById(int itemId) {
+        if (itemId <= 0) {
+            LOGGER.log(Level.FINER,
+            "findById called with non-positive ID: {0}", itemId);
+            return Optional.empty();
+        }
+        return Optional.ofNullable(items.get(itemId));
+    }
+
+    /**
+     * Rebuilds the snapshot after a change. Callers hold the monitor, so
+     * versions are published in order.
+     */
+    private void publishSnapshot() {
+        snapshot = new MenuSnapshot(snapshot.getVersion() + 1,
+        items.values());
+    }
+
+    /**
+     * Returns the current menu snapshot with a single volatile read.
+     *
+     * @return The latest published snapshot.
+     */
+    @Override
+    public MenuSnapshot snapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Retrieves all items, sorted by category then name
+     * @return An unmodifiable List of all Items.
+     */
+    @Override
+    public List<Item> findAll() {
+        return snapshot.getItems();
+    }
+
+    /**
+     * Finds items by category
+     * @param category The category name (must not be null or blank).
+     * @return An unmodifiable List of Items in the category.
+     */
+    @Override
+    public List<Item> findByCategory(String category) {
+        Objects.requireNonNull(category,
+        "Category cannot be null for findByCategory.");
+        if (category.trim().isEmpty()) {
+            LOGGER.log(Level.FINER,
+            "findByCategory called with blank category.");
+            return Collections.emptyList();
+        }
+        return snapshot.getItemsInCategory(category);
+    }
+
+    /**
+     * Finds all daily special items, sorted by name
+     * @return An unmodifiable List of daily special Items.
+     */
+    @Override
+    public List<Item> findDailySpecials() {
+        return snapshot.getDailySpecials();
+    }
+
+    /**
+     * Finds all distinct category names
+     * @return An unmodifiable List of unique category names.
+     */
+    @Override
+    public List<String> findDistinctCategories() {
+        return snapshot.getCategories();
+    }
+
+    /**
+     * The engine merges its own segments in the background, so there is
+     * nothing to compact here.
+     *
+     * @return false.
+     */
+    @Override
+    public boolean compactIfNeeded() {
+        return false;
+    }
+
+    /**
+     * Forces every menu change so far to disk.
+     */
+    @Override
+    public void flush() {
+        records.sync();
+    }
+
+    /**
+     * Forces every menu change so far to disk. The engine is shared, so it
+     * is left open for its owner to close.
+     */
+    @Override
+    public void close() {
+        records.sync();
+    }
+}
@@ -0,0 +1,490 @@
+package com.cafe94.persistence;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import com.cafe94.domain.Delivery;
+import com.cafe94.domain.Order;
+import com.cafe94.enums.OrderStatus;
+import com.cafe94.persistence.lsm.KeyBuilder;
+import com.cafe94.persistence.lsm.KeyValue;
+import com.cafe94.persistence.lsm.LsmEngine;
+import com.cafe94.persistence.lsm.WriteBatch;
+import com.cafe94.util.primitive.IntLongMap;
+
+/**
+ * Implementation of {@link IOrderRepository} on an {@link LsmEngine}.
+ * Orders are stored with the binary {@link OrderCodec}, and indexed by
+ * customer, driver, status and timestamp in the same engine, so every
+ * query is a range scan over one index. Nothing is held in memory and
+ * there is no separate archive: finished orders simply sit in the older
+ * segments, and startup time does not depend on the size of the history.
+ * <p>
+ * Orders are decoded afresh on every read, so callers get their own
+ * copies and must save an order for a change to be seen. Saves lock the
+ * stripe their order ID hashes to, check the stored version and write the
+ * order and its index entries in one batch.
+ * @author Adigun Lateef
+ * @version 1.0
+ */
+public class LsmOrderRepository implements IOrderRepository,
+DurableRepository {
+
+    private static final Logger LOGGER =
+    Logger.getLogger(LsmOrderRepository.class.getName());
+    /** First byte of every order key in the shared engine. */
+    static final int KEY_SPACE = 1;
+    private static final int TAG_CUSTOMER = 1;
+    private static final int TAG_DRIVER = 2;
+    private static final int TAG_STATUS = 3;
+    private static final int TAG_TIME = 4;
+    private static final int STREAM_PAGE_SIZE = 256;
+    private static final Set<OrderStatus> ACTIVE_STATUSES =
+    Collections.unmodifiableSet(EnumSet.copyOf(
+    Stream.of(OrderStatus.values())
+    .filter(status -> !status.isFinalStatus())
+    .collect(Collectors.toList())));
+
+    private final LsmRecords<Order> records;
+
+    /**
+     * Opens the orders stored in an engine.
+     *
+     * @param engine         The shared engine, owned by the caller
+     * @param menuRepository The menu to share unchanged items with, or
+     *                       null to share no items
+     * @throws NullPointerException if engine is null.
+     */
+    public LsmOrderRepository(LsmEngine engine,
+    IMenuRepository menuRepository) {
+        Objects.requireNonNull(engine, "Engine cannot be null.");
+        OrderCodec codec = new OrderCodec(itemId -> menuRepository == null
+        ? null : menuRepository.findById(itemId).orElse(null));
+        this.records = new LsmRecords<>(engine, KEY_SPACE, "order", codec,
+        this::indexKeys);
+        LOGGER.log(Level.INFO,
+        "LsmOrderRepository initialized in {0}. Next ID: {1}",
+        new Object[]{engine.getDirectory(), records.getNextId()});
+    }
+
+    private List<byte[]> indexKeys(Order order) {
+        int orderId = order.getOrderID();
+        LocalDateTime timestamp = order.getOrderTimestamp();
+        List<byte[]> keys = new ArrayList<>(4);
+        keys.add(records.key(TAG_CUSTOMER).addInt(order.getCustomerID())
+        .addDateTime(timestamp).addInt(orderId).build());
+        if (order instanceof Delivery
+        && ((Delivery) order).getAssignedDriverID() > 0) {
+            keys.add(records.key(TAG_DRIVER)
+            .addInt(((Delivery) order).getAssignedDriverID())
+            .addInt(orderId).build());
+        }
+        if (order.getStatus() != null) {
+            keys.add(statusPrefix(order.getStatus()).addDateTime(timestamp)
+            .addInt(orderId).build());
+        }
+        keys.add(records.key(TAG_TIME).addDateTime(timestamp).addInt(orderId)
+        .build());
+        return keys;
+    }
+
+    private KeyBuilder statusPrefix(OrderStatus status) {
+        return records.key(TAG_STATUS).addByte(status.ordinal());
+    }
+
+    /**
+     * Saves a new order or updates an existing one
+     *
+     * @param order The Order to save or update
+     * @return The saved Order object
+     * @throws NullPointerException if order is null.
+     */
+    @Override
+    public Order save(Order order) {
+        return saveIfVersion(order, TransactionParticipant.ANY_VERSION);
+    }
+
+    /**
+     * Saves an order only if the stored order is still at the given
+     * version. A new order is saved as a copy carrying its assigned ID.
+     *
+     * @param order           The Order to save or update
+     * @param expectedVersion The version the caller read
+     * @return The saved Order object
+     * @throws StaleRecordException if the stored version differs.
+     * @throws NullPointerException if order is null.
+     */
+    @Override
+    public Order saveIfVersion(Order order, long expectedVersion) {
+        Objects.requireNonNull(order, "Order cannot be null.");
+        Order orderToSave = assignId(order);
+        int orderId = orderToSave.getOrderID();
+        synchronized (records.stripeFor(orderId)) {
+            Order stored = records.find(orderId).orElse(null);
+            stampVersion(orderToSave, stored, expectedVersion);
+            records.put(orderId, orderToSave, stored);
+        }
+        return orderToSave;
+    }
+
+    /**
+     * Applies a change to the stored order and saves it, only if the
+     * order is still at the given version
+     *
+     * @param orderId         The ID of the order
+     * @param expectedVersion The version the caller read
+     * @param change          The change to apply
+     * @return The saved Order object
+     * @throws StaleRecordException if the stored version differs.
+     * @throws NoSuchElementException if no order has the ID.
+     * @throws NullPointerException if change is null.
+     */
+    @Override
+    public Order update(int orderId, long expectedVersion,
+    Consumer<? super Order> change) {
+        Objects.requireNonNull(change, "Change cannot be null.");
+        synchronized (records.stripeFor(orderId)) {
+            Order stored = records.find(orderId).orElseThrow(() ->
+            new NoSuchElementException(
+            "Order not found with ID: " + orderId));
+            // A second copy, so the index keys of the first still apply
+            Order order = records.find(orderId).get();
+            checkVersion(orderId, stored, expectedVersion);
+            change.accept(order);
+            order.restoreVersion(stored.getVersion() + 1);
+            records.put(orderId, order, stored);
+            return order;
+        }
+    }
+
+    private Order assignId(Order order) {
+        if (order.getOrderID() <= 0) {
+            return OrderRepository.copyWithId(order, records.allocateId());
+        }
+        records.reserveId(order.getOrderID());
+        return order;
+    }
+
+    /**
+     * @return This repository as seen by an {@link LsmTransactionManager}.
+     */
+    LsmParticipant<Order> asParticipant() {
+        return new LsmParticipant<Order>() {
+            @Override
+            public LsmRecords<Order> getRecords() {
+                return records;
+            }
+
+            @Override
+            public Order assignId(Order order) {
+                return LsmOrderRepository.this.assignId(order);
+            }
+
+            @Override
+            public int getId(Order order) {
+                return order.getOrderID();
+            }
+
+            @Override
+            public List<Object> locksFor(Collection<Integer> ids) {
+                return records.stripesFor(ids);
+            }
+
+            @Override
+            public void checkVersion(int orderId, Order stored,
+            int stagedBefore, long expectedVersion) {
+                LsmOrderRepository.checkVersion(orderId,
+                (stored != null ? stored.getVersion() : 0) + stagedBefore,
+                expectedVersion);
+            }
+
+            @Override
+            public void stage(WriteBatch batch, Order order, Order previous,
+            long expectedVersion, Consumer<? super Order> change) {
+                LsmOrderRepository.checkVersion(order.getOrderID(),
+                previous, expectedVersion);
+                if (change != null) {
+                    change.accept(order);
+                }
+                order.restoreVersion(
+                (previous != null ? previous.getVersion() : 0) + 1);
+                records.stage(batch, order.getOrderID(), order, previous);
+            }
+        };
+    }
+
+    private static void stampVersion(Order order, Order stored,
+    long expectedVersion) {
+        checkVersion(order.getOrderID(), stored, expectedVersion);
+        order.restoreVersion((stored != null ? stored.getVersion() : 0) + 1);
+    }
+
+    private static void checkVersion(int orderId, Order stored,
+    long expectedVersion) {
+        checkVersion(orderId, stored != null ? stored.getVersion() : 0,
+        expectedVersion);
+    }
+
+    private static void checkVersion(int orderId, long current,
+    long expectedVersion) {
+        if (expectedVersion != TransactionParticipant.ANY_VERSION
+        && expectedVersion != current) {
+            throw new StaleRecordException("Order", orderId,
+            expectedVersion, current);
+        }
+    }
+
+    /**
+     * Finds an order by its unique persistent ID
+     *
+     * @param orderId The ID of the order
+     * @return An Optional containing a copy of the Order if found,
+     * otherwise empty.
+     */
+    @Override
+    public Optional<Order> findById(int orderId) {
+        if (orderId <= 0) {
+            LOGGER.log(Level.FINER,
+            "findById called with non-positive ID: {0}", orderId);
+            return Optional.empty();
+        }
+        return records.find(orderId);
+    }
+
+    /**
+     * Deletes an order by its unique persistent ID
+     *
+     * @param orderId The ID of the order to delete
+     * @return true if an order was found and deleted, false otherwise.
+     */
+    @Override
+    public boolean deleteById(int orderId) {
+        if (orderId <= 0) {
+            LOGGER.log(Level.WARNING,
+            "Attempted to delete order with invalid ID: {0}", orderId);
+            return false;
+        }
+        synchronized (records.stripeFor(orderId)) {
+            Optional<Order> stored = records.find(orderId);
+            if (!stored.isPresent()) {
+                LOGGER.log(Level.WARNING,
+                "Order ID {0} not found for deletion.", orderId);
+                return false;
+            }
+            records.delete(orderId, stored.get());
+        }
+        LOGGER.log(Level.INFO, "Deleted order ID: {0}", orderId);
+        return true;
+    }
+
+    /**
+     * Finds all orders placed by a specific customer.
+     * Results are sorted by order timestamp descending
+     *
+     * @param customerId The ID of the customer
+     * @return An unmodifiable List of Orders placed by the customer.
+     */
+    @Override
+    public List<Order> findByCustomerId(int customerId) {
+        if (customerId <= 0) {
+            LOGGER.log(Level.FINER,
+            "findByCustomerId called with non-positive ID: {0}",
+            customerId);
+            return Collections.emptyList();
+        }
+        List<Order> customerOrders = records.findIndexed(
+        records.key(TAG_CUSTOMER).addInt(customerId).build());
+        // The index is oldest first
+        Collections.reverse(customerOrders);
+        return Collections.unmodifiableList(customerOrders);
+    }
+
+    /**
+     * Finds all orders currently assigned to a specific driver.
+     *
+     * @param driverId The user ID of the driver
+     * @return An unmodifiable List containing Delivery Orders assigned
+     * to the driver, by ID.
+     */
+    @Override
+    public List<Order> findByDriverId(int driverId) {
+        if (driverId <= 0) {
+            LOGGER.log(Level.FINER,
+            "findByDriverId called with non-positive ID: {0}", driverId);
+            return Collections.emptyList();
+        }
+        return Collections.unmodifiableList(records.findIndexed(
+        records.key(TAG_DRIVER).addInt(driverId).build()));
+    }
+
+    /**
+     * Finds all orders matching one of the specified statuses, with one
+     * index scan per status
+     *
+     * @param statuses A List of OrderStatus values to match
+     * @return An unmodifiable List containing Orders with a matching
+     * status, oldest first.
+     * @throws NullPointerException if statuses is null.
+     */
+    @Override
+    public List<Order> findOrdersByStatuses(List<OrderStatus> statuses) {
+        Objects.requireNonNull(statuses,
+        "Statuses list cannot be null for findOrdersByStatuses.");
+        if (statuses.isEmpty()) {
+            return Collections.emptyList();
+        }
+        return Collections.unmodifiableList(
+        findByStatuses(EnumSet.copyOf(statuses)));
+    }
+
+    private List<Order> findByStatuses(Set<OrderStatus> statusSet) {
+        List<Order> matching = new ArrayList<>();
+        for (OrderStatus status : statusSet) {
+            matching.addAll(records.findIndexed(statusPrefix(status)
+            .build()));
+        }
+        // Drop orders whose status changed after the index was read
+        matching.removeIf(order -> !statusSet.contains(order.getStatus()));
+        if (statusSet.size() > 1) {
+            matching.sort(OrderRepository.OLDEST_FIRST);
+        }
+        return matching;
+    }
+
+    /**
+     * Finds all "outstanding" orders
+     * Results are sorted by order timestamp ascending
+     *
+     * @return An unmodifiable List containing all outstanding Orders.
+     */
+    @Override
+    public List<Order> findOutstandingOrders() {
+        List<Order> outstanding = findByStatuses(ACTIVE_STATUSES);
+        LOGGER.log(Level.FINE, "Found {0} outstanding orders.",
+        outstanding.size());
+        return Collections.unmodifiableList(outstanding);
+    }
+
+    /**
+     * Retrieves all orders, oldest first. Prefer {@link #streamAll()} for
+     * long histories.
+     *
+     * @return An unmodifiable List of all Orders.
+     */
+    @Override
+    public List<Order> findAll() {
+        return Collections.unmodifiableList(records.findIndexed(
+        records.key(TAG_TIME).build()));
+    }
+
+    /**
+     * Finds the next orders after a keyset cursor with one scan of the
+     * timestamp index
+     *
+     * @param afterTimestamp Timestamp of the last order already seen, or
+     *                       null to start from the oldest order
+     * @param afterId        ID of the last order already seen
+     * @param limit          The most orders to return
+     * @return An unmodifiable List of up to limit Orders, oldest first.
+     * @throws IllegalArgumentException if limit is not positive.
+     */
+    @Override
+    public List<Order> findPage(LocalDateTime afterTimestamp, int afterId,
+    int limit) {
+        if (limit <= 0) {
+            throw new IllegalArgumentException(
+                "Page limit must be positive. Provided: " + limit);
+        }
+        byte[] prefix = records.key(TAG_TIME).build();
+        byte[] from = afterTimestamp == null ? prefix
+        : LsmRecords.after(records.key(TAG_TIME).addDateTime(afterTimestamp)
+        .addInt(afterId).build());
+        return Collections.unmodifiableList(records.findIndexed(from,
+        KeyBuilder.prefixEnd(prefix), limit));
+    }
+
+    /**
+     * Streams every order, oldest first, fetching one page at a time so
+     * the whole history is never held in memory.
+     *
+     * @return A sequential, ordered Stream of all Orders.
+     */
+    @Override
+    public Stream<Order> streamAll() {
+        return StreamSupport.stream(new PageSpliterator<Order>(
+        STREAM_PAGE_SIZE, (last, limit) -> last == null
+        ? findPage(null, 0, limit)
+        : findPage(last.getOrderTimestamp(), last.getOrderID(), limit)),
+        false);
+    }
+
+    /**
+     * Finds the top customers based on the number of orders placed,
+     * counting keys of the customer index without decoding any order
+     *
+     * @param limit The maximum number of top customers to return
+     * @return A Map ordered by count descending.
+     * @throws IllegalArgumentException if limit is not positive.
+     */
+    @Override
+    public Map<Integer, Long> findTopCustomersByOrderCount(int limit) {
+        if (limit <= 0) {
+            throw new IllegalArgumentException(
+                "Limit must be positive for findTopCustomersByOrderCount.");
+        }
+        byte[] prefix = records.key(TAG_CUSTOMER).build();
+        IntLongMap counts = new IntLongMap();
+        for (KeyValue entry : records.scan(prefix,
+        KeyBuilder.prefixEnd(prefix), Integer.MAX_VALUE)) {
+            int customerId = KeyBuilder.readInt(entry.getKey(),
+            prefix.length);
+            if (customerId > 0) {
+                counts.increment(customerId);
+            }
+        }
+        return counts.top(limit);
+    }
+
+    /**
+     * The engine merges its own segments in the background, so there is
+     * nothing to compact here.
+     *
+     * @return false.
+     */
+    @Override
+    public boolean compactIfNeeded() {
+        return false;
+    }
+
+    /**
+     * Forces every order change so far to disk.
+     */
+    @Override
+    public void flush() {
+        records.sync();
+    }
+
+    /**
+     * Forces every order change so far to disk. The engine is shared, so
+     * it is left open for its owner to close.
+     */
+    @Override
+    public void close() {
+        records.sync();
+    }
+}
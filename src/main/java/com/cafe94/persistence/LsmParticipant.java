@@ -0,0 +1,82 @@
+package com.cafe94.persistence;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Consumer;
+
+import com.cafe94.persistence.lsm.WriteBatch;
+
+/**
+ * The hooks a repository on an {@link com.cafe94.persistence.lsm.LsmEngine}
+ * gives an {@link LsmTransactionManager}, the counterpart of
+ * {@link TransactionParticipant} for the file-backed repositories.
+ * {@link #checkVersion} and {@link #stage} must only be called while
+ * holding the locks returned by {@link #locksFor(Collection)}.
+ *
+ * @param <V> The record type
+ * @author Adigun Lateef
+ * @version 1.0
+ */
+interface LsmParticipant<V> {
+
+    /**
+     * @return The repository's records.
+     */
+    LsmRecords<V> getRecords();
+
+    /**
+     * Gives a new record its ID, or reserves the ID of an existing one.
+     *
+     * @param record A private copy of the record as staged by the caller
+     * @return The record to save, which may be a copy.
+     */
+    V assignId(V record);
+
+    /**
+     * @param record A record with its ID assigned
+     * @return Its ID.
+     */
+    int getId(V record);
+
+    /**
+     * @param ids The IDs of the records about to be staged
+     * @return The locks that keep other writers of those records out, in
+     * the order they must be taken.
+     */
+    List<Object> locksFor(Collection<Integer> ids);
+
+    /**
+     * Checks a record is still at the version the caller read, without
+     * changing anything. A commit checks every staged record this way
+     * before it runs any staged change. Records without versions always
+     * pass.
+     *
+     * @param id              The record ID
+     * @param stored          The stored copy, or null
+     * @param stagedBefore    How many saves of the same record are staged
+     *                        before this one in the batch, each raising
+     *                        its version by one
+     * @param expectedVersion The version the caller read, or
+     *                        {@link TransactionParticipant#ANY_VERSION}
+     * @throws StaleRecordException if the version differs.
+     */
+    void checkVersion(int id, V stored, int stagedBefore,
+    long expectedVersion);
+
+    /**
+     * Checks a record is still at the expected version, runs the staged
+     * change on it, raises its version and adds its writes to a batch.
+     * Records without versions ignore the expected version.
+     *
+     * @param batch           The batch of the unit of work
+     * @param record          The record, with its ID assigned
+     * @param previous        The stored copy, the copy staged before it in
+     *                        the same batch, or null
+     * @param expectedVersion The version the caller read, or
+     *                        {@link TransactionParticipant#ANY_VERSION}
+     * @param change          A change to run on the record first, or null
+     * @throws StaleRecordException if the version differs.
+     */
+    void stage(WriteBatch batch, V record, V previous, long expectedVersion,
+    Consumer<? super V> change);
+}
@@ -0,0 +1,443 @@
+package com.cafe94.persistence;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.cafe94.persistence.lsm.KeyBuilder;
+import com.cafe94.persistence.lsm.KeyValue;
+import com.cafe94.persistence.lsm.LsmEngine;
+import com.cafe94.persistence.lsm.WriteBatch;
+
+/**
+ * The records of one repository inside a shared {@link LsmEngine}. Every
+ * key starts with the repository's key space byte and a tag: records are
+ * stored under {@link #TAG_RECORD} and their ID, and each repository
+ * derives its own secondary index keys from a record. Index keys end with
+ * the record ID and carry an empty value, so a range scan over an index
+ * yields IDs in index order without decoding any record.
+ * <p>
+ * {@link #put(int, Object, Object)} writes the record, removes the index
+ * keys of the stored copy that no longer apply and adds the new ones in a
+ * single {@link WriteBatch}, so the indexes never disagree with the
+ * records after a crash. The next free ID is stored with every batch that
+ * saves a new record. Records are decoded afresh on every read, so
+ * callers always get their own copy. An {@link LsmTransactionManager}
+ * stages the writes of several records, possibly of several repositories
+ * sharing the engine, into one batch with
+ * {@link #stage(WriteBatch, int, Object, Object)} and
+ * {@link #write(WriteBatch, List, String)}.
+ * @author Adigun Lateef
+ * @version 1.0
+ */
+final class LsmRecords<V> {
+
+    private static final Logger LOGGER =
+    Logger.getLogger(LsmRecords.class.getName());
+
+    /** Tag of the records themselves; index tags are 1 and up. */
+    static final int TAG_RECORD = 0;
+    private static final int TAG_META = 0x7F;
+    private static final int META_NEXT_ID = 1;
+    /** Number of record lock stripes; a power of two. */
+    private static final int LOCK_STRIPES = 64;
+    private static final byte[] NO_VALUE = new byte[0];
+
+    private final LsmEngine engine;
+    private final int keySpace;
+    private final String recordType;
+    private final RecordCodec<V> codec;
+    private final Function<? super V, List<byte[]>> indexer;
+    private final Object[] stripes = new Object[LOCK_STRIPES];
+    private final byte[] nextIdKey;
+    // Guards nextId and persistedNextId, and orders their writes
+    private final Object idLock = new Object();
+    private int nextId;
+    private int persistedNextId;
+
+    /**
+     * @param engine     The shared engine
+     * @param keySpace   The first byte of every key of this repository
+     * @param recordType The record type, for messages
+     * @param codec      Encodes and decodes the records
+     * @param indexer    Derives the secondary index keys of a record
+     * @throws IllegalStateException if the stored next ID cannot be read.
+     */
+    LsmRecords(LsmEngine engine, int keySpace, String recordType,
+    RecordCodec<V> codec, Function<? super V, List<byte[]>> indexer) {
+        this.engine = Objects.requireNonNull(engine,
+        "Engine cannot be null.");
+        this.keySpace = keySpace;
+        this.recordType = Objects.requireNonNull(recordType,
+        "Record type cannot be null.");
+        this.codec = Objects.requireNonNull(codec, "Codec cannot be null.");
+        this.indexer = Objects.requireNonNull(indexer,
+        "Indexer cannot be null.");
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new Object();
+        }
+        this.nextIdKey = key(TAG_META).addByte(META_NEXT_ID).build();
+        byte[] stored = read(nextIdKey, "next " + recordType + " ID");
+        this.nextId = stored == null ? 1 : KeyBuilder.readInt(stored, 0);
+        this.persistedNextId = nextId;
+    }
+
+    /**
+     * @param tag The record or index tag
+     * @return A key builder holding the key space and the tag.
+     */
+    KeyBuilder key(int tag) {
+        return new KeyBuilder().addByte(keySpace).addByte(tag);
+    }
+
+    private byte[] recordKey(int id) {
+        return key(TAG_RECORD).addInt(id).build();
+    }
+
+    /**
+     * @param id A record ID
+     * @return The lock that serializes writers of the record.
+     */
+    Object stripeFor(int id) {
+        return stripes[id & (LOCK_STRIPES - 1)];
+    }
+
+    /**
+     * @param ids Record IDs
+     * @return The distinct stripes of the IDs, in a fixed order, so that
+     * callers locking several of them cannot deadlock each other.
+     */
+    List<Object> stripesFor(Collection<Integer> ids) {
+        boolean[] used = new boolean[LOCK_STRIPES];
+        for (int id : ids) {
+            used[id & (LOCK_STRIPES - 1)] = true;
+        }
+        List<Object> locks = new ArrayList<>();
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            if (used[i]) {
+                locks.add(stripes[i]);
+            }
+        }
+        return locks;
+    }
+
+    /**
+     * @return The engine the records are stored in.
+     */
+    LsmEngine getEngine() {
+        return engine;
+    }
+
+    /**
+     * @return A new, unused record ID.
+     */
+    int allocateId() {
+        synchronized (idLock) {
+            return nextId++;
+        }
+    }
+
+    /**
+     * Keeps the next new ID above an ID chosen by the caller.
+     *
+     * @param id The ID of a record about to be saved
+     */
+    void reserveId(int id) {
+        synchronized (idLock) {
+            nextId = Math.max(nextId, id + 1);
+        }
+    }
+
+    /**
+     * @return The ID the next new record will get.
+     */
+    int getNextId() {
+        synchronized (idLock) {
+            return nextId;
+        }
+    }
+
+    /**
+     * @param record A record
+     * @return A copy of the record, made with the codec so it is exactly
+     * what a read would give.
+     * @throws IllegalStateException if the record cannot be copied.
+     */
+    V copy(V record) {
+        try {
+            return codec.decode(codec.encode(record));
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to copy "
+            + recordType + " record", e);
+        }
+    }
+
+    /**
+     * @param id The record ID
+     * @return The stored record, or empty if there is none.
+     * @throws IllegalStateException if the record cannot be read.
+     */
+    Optional<V> find(int id) {
+        String description = recordType + " " + id;
+        byte[] payload = read(recordKey(id), description);
+        return payload == null ? Optional.empty()
+        : Optional.of(decode(payload, description));
+    }
+
+    /**
+     * @return Every record, by ID.
+     * @throws IllegalStateException if the records cannot be read.
+     */
+    List<V> findAll() {
+        byte[] prefix = key(TAG_RECORD).build();
+        List<V> found = new ArrayList<>();
+        for (KeyValue entry : scan(prefix, KeyBuilder.prefixEnd(prefix),
+        Integer.MAX_VALUE)) {
+            found.add(decode(entry.getValue(), recordType + " "
+            + KeyBuilder.readLastInt(entry.getKey())));
+        }
+        return found;
+    }
+
+    /**
+     * Reads the records an index range points at, in index order.
+     *
+     * @param fromInclusive First index key
+     * @param toExclusive   End index key, or null for the end of the key
+     *                      space
+     * @param limit         The most records to return
+     * @return The records.
+     * @throws IllegalStateException if the index or a record cannot be
+     * read.
+     */
+    List<V> findIndexed(byte[] fromInclusive, byte[] toExclusive, int limit) {
+        List<V> found = new ArrayList<>();
+        for (int id : scanIds(fromInclusive, toExclusive, limit)) {
+            // Index entries are written with their record, so one is
+            // only missing if the record was deleted since the scan
+            find(id).ifPresent(found::add);
+        }
+        return found;
+    }
+
+    /**
+     * @param prefix An index key prefix
+     * @return The records whose index keys start with the prefix, in index
+     * order.
+     * @throws IllegalStateException if the index or a record cannot be
+     * read.
+     */
+    List<V> findIndexed(byte[] prefix) {
+        return findIndexed(prefix, KeyBuilder.prefixEnd(prefix),
+        Integer.MAX_VALUE);
+    }
+
+    /**
+     * @return The IDs at the end of the index keys in the range, in index
+     * order.
+     * @throws IllegalStateException if the index cannot be read.
+     */
+    List<Integer> scanIds(byte[] fromInclusive, byte[] toExclusive,
+    int limit) {
+        List<Integer> ids = new ArrayList<>();
+        for (KeyValue entry : scan(fromInclusive, toExclusive, limit)) {
+            ids.add(KeyBuilder.readLastInt(entry.getKey()));
+        }
+        return ids;
+    }
+
+    /**
+     * @return The index keys in the range, in order.
+     * @throws IllegalStateException if the index cannot be read.
+     */
+    List<KeyValue> scan(byte[] fromInclusive, byte[] toExclusive,
+    int limit) {
+        byte[] to = toExclusive != null ? toExclusive
+        : KeyBuilder.prefixEnd(new KeyBuilder().addByte(keySpace).build());
+        try {
+            return engine.scan(fromInclusive, to, limit);
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Failed to scan " + recordType
+            + " keys", e);
+            throw new IllegalStateException("Failed to scan " + recordType
+            + " keys", e);
+        }
+    }
+
+    /**
+     * @param key A key
+     * @return The smallest key after the key and every key it prefixes,
+     * for use as the start of a scan that skips them.
+     */
+    static byte[] after(byte[] key) {
+        byte[] end = KeyBuilder.prefixEnd(key);
+        return end != null ? end : Arrays.copyOf(key, key.length + 1);
+    }
+
+    /**
+     * Writes a record and moves its index keys from the stored copy to
+     * the new one, all in one batch. Callers hold the record's stripe, or
+     * a lock that covers it, so the stored copy cannot change meanwhile.
+     *
+     * @param id       The record ID
+     * @param record   The record to store
+     * @param previous The stored copy, or null for a new record
+     * @throws IllegalStateException if the record cannot be written.
+     */
+    void put(int id, V record, V previous) {
+        WriteBatch batch = new WriteBatch();
+        stage(batch, id, record, previous);
+        write(batch, recordType + " " + id);
+    }
+
+    /**
+     * Adds the writes of {@link #put(int, Object, Object)} to a batch
+     * without writing it. The batch applies in order, so a record staged
+     * twice must pass the first staged copy as the previous one.
+     *
+     * @param batch    The batch
+     * @param id       The record ID
+     * @param record   The record to store
+     * @param previous The stored or earlier staged copy, or null for a new
+     *                 record
+     * @throws IllegalStateException if the record cannot be encoded.
+     */
+    void stage(WriteBatch batch, int id, V record, V previous) {
+        List<byte[]> keys = indexer.apply(record);
+        if (previous != null) {
+            for (byte[] stale : indexer.apply(previous)) {
+                if (!containsKey(keys, stale)) {
+                    batch.delete(stale);
+                }
+            }
+        }
+        for (byte[] key : keys) {
+            batch.put(key, NO_VALUE);
+        }
+        try {
+            batch.put(recordKey(id), codec.encode(record));
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to encode "
+            + recordType + " " + id, e);
+        }
+    }
+
+    /**
+     * Deletes a record and its index keys in one batch. Callers hold the
+     * record's stripe, or a lock that covers it.
+     *
+     * @param id       The record ID
+     * @param previous The stored copy
+     * @throws IllegalStateException if the delete cannot be written.
+     */
+    void delete(int id, V previous) {
+        WriteBatch batch = new WriteBatch();
+        for (byte[] key : indexer.apply(previous)) {
+            batch.delete(key);
+        }
+        batch.delete(recordKey(id));
+        write(batch, recordType + " " + id);
+    }
+
+    private void write(WriteBatch batch, String description) {
+        write(batch, Collections.singletonList(this), description);
+    }
+
+    /**
+     * Writes a batch holding records of one or more repositories, with
+     * the next free ID of each that has allocated one since its last
+     * write. All the records must share one engine.
+     *
+     * @param batch       The batch
+     * @param involved    The records of every repository in the batch
+     * @param description What is written, for messages
+     * @throws IllegalStateException if the batch cannot be written.
+     */
+    static void write(WriteBatch batch, List<LsmRecords<?>> involved,
+    String description) {
+        writeHolding(batch, involved, 0, description);
+    }
+
+    /**
+     * Takes the ID lock of each involved repository in turn, so the
+     * stored next IDs only grow. No ID lock holder waits for a record
+     * lock, so the nesting cannot deadlock.
+     */
+    private static void writeHolding(WriteBatch batch,
+    List<LsmRecords<?>> involved, int next, String description) {
+        if (next == involved.size()) {
+            LsmRecords<?> first = involved.get(0);
+            try {
+                first.engine.write(batch);
+            } catch (IOException e) {
+                LOGGER.log(Level.SEVERE, "Failed to write " + description,
+                e);
+                throw new IllegalStateException("Failed to write "
+                + description, e);
+            }
+            return;
+        }
+        LsmRecords<?> records = involved.get(next);
+        synchronized (records.idLock) {
+            int nextId = records.nextId;
+            boolean advancesId = nextId > records.persistedNextId;
+            if (advancesId) {
+                batch.put(records.nextIdKey,
+                new KeyBuilder().addInt(nextId).build());
+            }
+            writeHolding(batch, involved, next + 1, description);
+            if (advancesId) {
+                records.persistedNextId = nextId;
+            }
+        }
+    }
+
+    /**
+     * Forces every write so far to disk.
+     */
+    void sync() {
+        try {
+            engine.sync();
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to sync " + recordType
+            + " storage", e);
+        }
+    }
+
+    private byte[] read(byte[] key, String description) {
+        try {
+            return engine.get(key);
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Failed to read " + description, e);
+            throw new IllegalStateException("Failed to read " + description,
+            e);
+        }
+    }
+
+    private V decode(byte[] payload, String description) {
+        try {
+            return codec.decode(payload);
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Failed to decode " + description, e);
+            throw new IllegalStateException("Failed to decode "
+            + description, e);
+        }
+    }
+
+    private static boolean containsKey(List<byte[]> keys, byte[] key) {
+        for (byte[] candidate : keys) {
+            if (Arrays.equals(candidate, key)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,78 @@
+package com.cafe94.persistence;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.cafe94.domain.Table;
+import com.cafe94.persistence.lsm.LsmEngine;
+
+/**
+ * Storage backend "lsm": all five repositories share one
+ * {@link LsmEngine} in the {@code lsm} subdirectory of the data
+ * directory, and units of work are committed by an
+ * {@link LsmTransactionManager}. The engine merges its own segments, so
+ * there is nothing for the background compactor to do.
+ * @author Adigun Lateef
+ * @version 1.0
+ */
+public class LsmStorageProvider implements StorageProvider {
+
+    private static final Logger LOGGER =
+    Logger.getLogger(LsmStorageProvider.class.getName());
+
+    /**
+     * Creates the provider; called by {@link java.util.ServiceLoader}.
+     */
+    public LsmStorageProvider() {
+    }
+
+    @Override
+    public String getName() {
+        return "lsm";
+    }
+
+    @Override
+    public StorageBackend open(File dataDirectory,
+    List<Table> initialTables) {
+        Objects.requireNonNull(dataDirectory,
+        "Data directory cannot be null.");
+        File directory = new File(dataDirectory, "lsm");
+        long start = System.nanoTime();
+        LsmEngine engine;
+        try {
+            engine = new LsmEngine(directory);
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to open lsm storage in "
+            + directory, e);
+        }
+        try {
+            LsmTableRepository tables = new LsmTableRepository(engine,
+            initialTables);
+            LsmUserRepository users = new LsmUserRepository(engine);
+            LsmMenuRepository menu = new LsmMenuRepository(engine);
+            LsmOrderRepository orders = new LsmOrderRepository(engine, menu);
+            LsmBookingRepository bookings = new LsmBookingRepository(engine);
+            LsmTransactionManager transactionManager =
+            new LsmTransactionManager(orders, tables, bookings);
+            LOGGER.log(Level.INFO, "All lsm repositories opened in {0} ms",
+            (System.nanoTime() - start) / 1_000_000);
+            // The repositories sync the engine, which its owner closes last
+            List<AutoCloseable> resources = new ArrayList<>(Arrays.asList(
+            tables, users, menu, orders, bookings));
+            resources.add(engine);
+            return new StorageBackend(getName(), users, menu, tables, orders,
+            bookings, transactionManager, Collections.emptyList(), resources);
+        } catch (RuntimeException e) {
+            StorageBackend.closeAll(Collections.singletonList(engine));
+            throw new IllegalStateException("Failed to open lsm storage in "
+            + directory, e);
+        }
+    }
+}
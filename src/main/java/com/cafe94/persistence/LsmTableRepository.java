@@ -0,0 +1,266 @@
+package com.cafe94.persistence;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.cafe94.domain.Table;
+import com.cafe94.enums.TableStatus;
+import com.cafe94.persistence.lsm.KeyBuilder;
+import com.cafe94.persistence.lsm.LsmEngine;
+import com.cafe94.persistence.lsm.WriteBatch;
+
+/**
+ * Implementation of {@link ITableRepository} on an {@link LsmEngine}.
+ * Tables are stored under their table number with Java serialization, as
+ * there is no binary table codec, and indexed by capacity then number, so
+ * a search for a large enough table is one range scan.
+ * <p>
+ * Tables are decoded afresh on every read, so callers get their own
+ * copies and must save a table for a change to be seen.
+ * @author Adigun Lateef
+ * @version 1.0
+ */
+public class LsmTableRepository implements ITableRepository,
+DurableRepository {
+
+    private static final Logger LOGGER =
+    Logger.getLogger(LsmTableRepository.class.getName());
+    /** First byte of every table key in the shared engine. */
+    static final int KEY_SPACE = 5;
+    private static final int TAG_CAPACITY = 1;
+
+    private final LsmRecords<Table> records;
+
+    /**
+     * Opens the tables stored in an engine, saving the initial tables if
+     * none are stored yet.
+     *
+     * @param engine        The shared engine, owned by the caller
+     * @param initialTables Tables to store if the engine holds none, may
+     *                      be null
+     * @throws NullPointerException if engine is null.
+     */
+    public LsmTableRepository(LsmEngine engine, List<Table> initialTables) {
+        Objects.requireNonNull(engine, "Engine cannot be null.");
+        this.records = new LsmRecords<>(engine, KEY_SPACE, "table",
+        new JavaSerializationCodec<>(Table.class), this::indexKeys);
+        if (records.findAll().isEmpty()) {
+            if (initialTables != null && !initialTables.isEmpty()) {
+                LOGGER.log(Level.INFO,
+                "No tables stored. Populating repository with {0} initial " +
+                "tables.", initialTables.size());
+                for (Table table : initialTables) {
+                    if (table != null && table.getTableNumber() > 0) {
+                        save(table);
+                    } else {
+                        LOGGER.log(Level.WARNING,
+                        "Skipping invalid initial table configuration: {0}",
+                        table);
+                    }
+                }
+            } else {
+                LOGGER.log(Level.WARNING,
+                "Table repository initialised empty. No initial tables " +
+                "provided or loaded.");
+            }
+        }
+        LOGGER.log(Level.INFO, "LsmTableRepository initialised in {0}.",
+        engine.getDirectory());
+    }
+
+    private List<byte[]> indexKeys(Table table) {
+        return Collections.singletonList(records.key(TAG_CAPACITY)
+        .addInt(table.getCapacity()).addInt(table.getTableNumber()).build());
+    }
+
+    /**
+     * Saves a table configuration
+     * @param table The Table object to save or update
+     * @return The saved or updated Table object.
+     * @throws NullPointerException if table is null.
+     * @throws IllegalArgumentException if table number is not positive.
+     */
+    @Override
+    public synchronized Table save(Table table) {
+        Objects.requireNonNull(table, "Table to save cannot be null.");
+        int tableNumber = checkTableNumber(table);
+        records.put(tableNumber, table,
+        records.find(tableNumber).orElse(null));
+        LOGGER.log(Level.INFO,
+        "Saved table: Number={0}, Cap={1}, Status={2}",
+        new Object[]{tableNumber, table.getCapacity(), table.getStatus()});
+        return table;
+    }
+
+    private static int checkTableNumber(Table table) {
+        int tableNumber = table.getTableNumber();
+        if (tableNumber <= 0) {
+            throw new IllegalArgumentException(
+                "Table must have a valid positive table number to be saved. " +
+                "Provided: " + tableNumber);
+        }
+        return tableNumber;
+    }
+
+    /**
+     * @return This repository as seen by an {@link LsmTransactionManager}.
+     * Table saves hold the repository monitor, so that is the only lock.
+     */
+    LsmParticipant<Table> asParticipant() {
+        return new LsmParticipant<Table>() {
+            @Override
+            public LsmRecords<Table> getRecords() {
+                return records;
+            }
+
+            @Override
+            public Table assignId(Table table) {
+                checkTableNumber(table);
+                return table;
+            }
+
+            @Override
+            public int getId(Table table) {
+                return table.getTableNumber();
+            }
+
+            @Override
+            public List<Object> locksFor(Collection<Integer> ids) {
+                return Collections.singletonList(LsmTableRepository.this);
+            }
+
+            @Override
+            public void checkVersion(int tableNumber, Table stored,
+            int stagedBefore, long expectedVersion) {
+                // Tables are not versioned
+            }
+
+            @Override
+            public void stage(WriteBatch batch, Table table, Table previous,
+            long expectedVersion, Consumer<? super Table> change) {
+                if (change != null) {
+                    change.accept(table);
+                }
+                records.stage(batch, table.getTableNumber(), table,
+                previous);
+            }
+        };
+    }
+
+    /**
+     * Retrieves a specific table by its unique table number.
+     *
+     * @param tableNumber The unique number identifying the table
+     * @return An Optional containing a copy of the Table if found,
+     * otherwise empty.
+     */
+    @Override
+    public Optional<Table> findByTableNumber(int tableNumber) {
+        if (tableNumber <= 0) {
+            LOGGER.log(Level.FINER,
+            "findByTableNumber called with non-positive number: {0}",
+            tableNumber);
+            return Optional.empty();
+        }
+        return records.find(tableNumber);
+    }
+
+    /**
+     * Retrieves all tables defined for the restaurant
+     *
+     * @return An unmodifiable List containing all Table objects, by
+     * number.
+     */
+    @Override
+    public List<Table> findAll() {
+        return Collections.unmodifiableList(records.findAll());
+    }
+
+    /**
+     * Retrieves all tables with capacity greater than or equal to the
+     * specified requirement
+     *
+     * @param requiredCapacity The minimum number of seats required
+     * @return An unmodifiable List of the Table objects meeting the
+     * capacity requirement, ordered by capacity then table number.
+     */
+    @Override
+    public Collection<Table> findWithCapacityGreaterThanOrEqual(
+        int requiredCapacity) {
+        if (requiredCapacity <= 0) {
+            LOGGER.log(Level.FINER,
+            "findWithCapacityGreaterThanOrEqual called with non-positive " +
+            "capacity: {0}", requiredCapacity);
+            return Collections.emptyList();
+        }
+        return Collections.unmodifiableList(findFromCapacity(
+        requiredCapacity));
+    }
+
+    /**
+     * Retrieves the available tables with capacity greater than or equal to
+     * the specified requirement, smallest first
+     *
+     * @param requiredCapacity The minimum number of seats required
+     * @return An unmodifiable List of the matching tables, ordered by
+     * capacity then table number.
+     */
+    @Override
+    public List<Table> findAvailableWithCapacityAtLeast(int requiredCapacity) {
+        if (requiredCapacity <= 0) {
+            return Collections.emptyList();
+        }
+        List<Table> available = new ArrayList<>();
+        for (Table table : findFromCapacity(requiredCapacity)) {
+            if (table.getStatus() == TableStatus.AVAILABLE) {
+                available.add(table);
+            }
+        }
+        return Collections.unmodifiableList(available);
+    }
+
+    private List<Table> findFromCapacity(int requiredCapacity) {
+        byte[] prefix = records.key(TAG_CAPACITY).build();
+        List<Table> matching = records.findIndexed(records.key(TAG_CAPACITY)
+        .addInt(requiredCapacity).build(), KeyBuilder.prefixEnd(prefix),
+        Integer.MAX_VALUE);
+        // Drop tables resized after the index was read
+        matching.removeIf(table -> table.getCapacity() < requiredCapacity);
+        return matching;
+    }
+
+    /**
+     * The engine merges its own segments in the background, so there is
+     * nothing to compact here.
+     *
+     * @return false.
+     */
+    @Override
+    public boolean compactIfNeeded() {
+        return false;
+    }
+
+    /**
+     * Forces every table change so far to disk.
+     */
+    @Override
+    public void flush() {
+        records.sync();
+    }
+
+    /**
+     * Forces every table change so far to disk. The engine is shared, so
+     * it is left open for its owner to close.
+     */
+    @Override
+    public void close() {
+        records.sync();
+    }
+}
@@ -0,0 +1,279 @@
+package com.cafe94.persistence;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.cafe94.domain.Booking;
+import com.cafe94.domain.Order;
+import com.cafe94.domain.Table;
+import com.cafe94.persistence.lsm.LsmEngine;
+import com.cafe94.persistence.lsm.WriteBatch;
+
+/**
+ * Commits units of work spanning the order, table and booking
+ * repositories of one {@link LsmEngine}. The engine already writes a
+ * batch atomically through its write-ahead log, so no transaction log of
+ * its own is needed: a commit assigns new IDs, locks every record
+ * involved in a fixed order, checks the versions of all staged records,
+ * then runs the staged changes and writes all the records and their index
+ * keys as a single batch. The changes run on copies of the staged records,
+ * so if any check, change or the write fails nothing is changed or
+ * written.
+ * @author Adigun Lateef
+ * @version 1.0
+ */
+public class LsmTransactionManager implements ITransactionManager {
+
+    private static final Logger LOGGER =
+    Logger.getLogger(LsmTransactionManager.class.getName());
+
+    private final LsmParticipant<Order> orders;
+    private final LsmParticipant<Table> tables;
+    private final LsmParticipant<Booking> bookings;
+    // Also the order in which commits lock the repositories
+    private final List<LsmParticipant<?>> participants;
+
+    /**
+     * @param orderRepository   The order repository
+     * @param tableRepository   The table repository
+     * @param bookingRepository The booking repository
+     * @throws NullPointerException if any argument is null.
+     * @throws IllegalArgumentException if the repositories do not share
+     * one engine.
+     */
+    public LsmTransactionManager(LsmOrderRepository orderRepository,
+    LsmTableRepository tableRepository,
+    LsmBookingRepository bookingRepository) {
+        this.orders = Objects.requireNonNull(orderRepository,
+        "LsmOrderRepository cannot be null.").asParticipant();
+        this.tables = Objects.requireNonNull(tableRepository,
+        "LsmTableRepository cannot be null.").asParticipant();
+        this.bookings = Objects.requireNonNull(bookingRepository,
+        "LsmBookingRepository cannot be null.").asParticipant();
+        LsmEngine engine = orders.getRecords().getEngine();
+        if (tables.getRecords().getEngine() != engine
+        || bookings.getRecords().getEngine() != engine) {
+            throw new IllegalArgumentException(
+            "Repositories of one transaction manager must share an engine.");
+        }
+        this.participants = Collections.unmodifiableList(
+        Arrays.asList(orders, tables, bookings));
+    }
+
+    @Override
+    public IUnitOfWork begin() {
+        return new UnitOfWork();
+    }
+
+    /**
+     * One staged save and, once prepared, the record written for it.
+     */
+    private static final class Staged<V> {
+        private final LsmParticipant<V> participant;
+        private final V record;
+        private final long expectedVersion;
+        private final Consumer<? super V> change;
+        private V prepared;
+        private V stored;
+
+        private Staged(LsmParticipant<V> participant, V record,
+        long expectedVersion, Consumer<? super V> change) {
+            this.participant = participant;
+            this.record = record;
+            this.expectedVersion = expectedVersion;
+            this.change = change;
+        }
+
+        private void assignId() {
+            // Changes, IDs and versions only ever go to a copy
+            prepared = participant.assignId(
+            participant.getRecords().copy(record));
+        }
+
+        private int getId() {
+            return participant.getId(prepared);
+        }
+
+        /**
+         * Reads the stored copy and checks its version.
+         *
+         * @param counts The saves checked so far in this batch, by
+         *               participant and ID
+         */
+        private void checkVersion(
+        Map<LsmParticipant<?>, Map<Integer, Integer>> counts) {
+            int id = getId();
+            int stagedBefore = counts.computeIfAbsent(participant,
+            key -> new HashMap<>()).merge(id, 1, Integer::sum) - 1;
+            stored = participant.getRecords().find(id).orElse(null);
+            participant.checkVersion(id, stored, stagedBefore,
+            expectedVersion);
+        }
+
+        /**
+         * @param pending The copies staged so far in this batch, by
+         *                participant and ID
+         */
+        @SuppressWarnings("unchecked")
+        private void stage(WriteBatch batch,
+        Map<LsmParticipant<?>, Map<Integer, Object>> pending) {
+            Map<Integer, Object> staged = pending.computeIfAbsent(
+            participant, key -> new HashMap<>());
+            int id = getId();
+            V previous = staged.containsKey(id) ? (V) staged.get(id)
+            : stored;
+            participant.stage(batch, prepared, previous, expectedVersion,
+            change);
+            staged.put(id, prepared);
+        }
+    }
+
+    private final class UnitOfWork implements IUnitOfWork {
+        private final List<Staged<?>> staged = new ArrayList<>();
+        private final Map<Object, Object> saved = new IdentityHashMap<>();
+        private boolean committed;
+
+        @Override
+        public void save(Order order) {
+            stage(orders, Objects.requireNonNull(order,
+            "Order cannot be null."));
+        }
+
+        @Override
+        public void save(Table table) {
+            stage(tables, Objects.requireNonNull(table,
+            "Table cannot be null."));
+        }
+
+        @Override
+        public void save(Booking booking) {
+            stage(bookings, Objects.requireNonNull(booking,
+            "Booking cannot be null."));
+        }
+
+        @Override
+        public void update(Order order, long expectedVersion,
+        Consumer<? super Order> change) {
+            stage(orders, Objects.requireNonNull(order,
+            "Order cannot be null."), expectedVersion,
+            Objects.requireNonNull(change, "Change cannot be null."));
+        }
+
+        @Override
+        public void update(Booking booking, long expectedVersion,
+        Consumer<? super Booking> change) {
+            stage(bookings, Objects.requireNonNull(booking,
+            "Booking cannot be null."), expectedVersion,
+            Objects.requireNonNull(change, "Change cannot be null."));
+        }
+
+        private <V> void stage(LsmParticipant<V> participant, V record) {
+            stage(participant, record, TransactionParticipant.ANY_VERSION,
+            null);
+        }
+
+        private <V> void stage(LsmParticipant<V> participant, V record,
+        long expectedVersion, Consumer<? super V> change) {
+            if (committed) {
+                throw new IllegalStateException(
+                "Unit of work has already been committed.");
+            }
+            staged.add(new Staged<>(participant, record, expectedVersion,
+            change));
+        }
+
+        @Override
+        public void commit() {
+            if (committed) {
+                throw new IllegalStateException(
+                "Unit of work has already been committed.");
+            }
+            committed = true;
+            LsmTransactionManager.this.commit(staged);
+            for (Staged<?> entry : staged) {
+                saved.put(entry.record, entry.prepared);
+            }
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> T getSaved(T staged) {
+            if (!committed) {
+                throw new IllegalStateException(
+                "Unit of work has not been committed.");
+            }
+            Object result = saved.get(staged);
+            if (result == null) {
+                throw new IllegalArgumentException(
+                "Record was not saved in this unit of work.");
+            }
+            return (T) result;
+        }
+    }
+
+    private void commit(List<Staged<?>> staged) {
+        if (staged.isEmpty()) {
+            return;
+        }
+        // Record locks depend on IDs, so new records get theirs first
+        for (Staged<?> entry : staged) {
+            entry.assignId();
+        }
+        List<Object> locks = new ArrayList<>();
+        List<LsmRecords<?>> involved = new ArrayList<>();
+        for (LsmParticipant<?> participant : participants) {
+            List<Integer> ids = new ArrayList<>();
+            for (Staged<?> entry : staged) {
+                if (entry.participant == participant) {
+                    ids.add(entry.getId());
+                }
+            }
+            if (!ids.isEmpty()) {
+                locks.addAll(participant.locksFor(ids));
+                involved.add(participant.getRecords());
+            }
+        }
+        long start = System.nanoTime();
+        commitHolding(locks, 0, staged, involved);
+        LOGGER.log(Level.FINE, "Committed {0} saves in {1} ms",
+        new Object[]{staged.size(), (System.nanoTime() - start) / 1_000_000});
+    }
+
+    /**
+     * Takes each lock in turn, so no other writer can change the records
+     * during the commit.
+     */
+    private void commitHolding(List<Object> locks, int next,
+    List<Staged<?>> staged, List<LsmRecords<?>> involved) {
+        if (next == locks.size()) {
+            // Every version first, so a stale record aborts the commit
+            // before any staged change has run
+            Map<LsmParticipant<?>, Map<Integer, Integer>> counts =
+            new HashMap<>();
+            for (Staged<?> entry : staged) {
+                entry.checkVersion(counts);
+            }
+            WriteBatch batch = new WriteBatch();
+            Map<LsmParticipant<?>, Map<Integer, Object>> pending =
+            new HashMap<>();
+            for (Staged<?> entry : staged) {
+                entry.stage(batch, pending);
+            }
+            LsmRecords.write(batch, involved, "transaction of "
+            + staged.size() + " saves");
+            return;
+        }
+        synchronized (locks.get(next)) {
+            commitHolding(locks, next + 1, staged, involved);
+        }
+    }
+}
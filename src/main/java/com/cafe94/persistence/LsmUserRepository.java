@@ -0,0 +1,302 @@
+package com.cafe94.persistence;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.function.Predicate;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.cafe94.domain.Staff;
+import com.cafe94.domain.User;
+import com.cafe94.enums.UserRole;
+import com.cafe94.persistence.lsm.KeyBuilder;
+import com.cafe94.persistence.lsm.LsmEngine;
+
+/**
+ * Implementation of {@link IUserRepository} on an {@link LsmEngine}.
+ * Users are stored with the binary {@link UserCodec} and indexed by
+ * case-folded email, and staff by name and by role then name, in the same
+ * order as the {@link UserIndex} of the file-backed repository.
+ * <p>
+ * Users are decoded afresh on every read, so callers get their own copies
+ * and must save a user for a change to be seen. Writes hold the
+ * repository monitor, so an email check and the save that follows it
+ * cannot interleave with another save.
+ * @author Adigun Lateef
+ * @version 1.0
+ */
+public class LsmUserRepository implements IUserRepository,
+DurableRepository {
+
+    private static final Logger LOGGER =
+    Logger.getLogger(LsmUserRepository.class.getName());
+    /** First byte of every user key in the shared engine. */
+    static final int KEY_SPACE = 3;
+    private static final int TAG_EMAIL = 1;
+    private static final int TAG_STAFF = 2;
+    private static final int TAG_ROLE = 3;
+
+    private final LsmRecords<User> records;
+
+    /**
+     * Opens the users stored in an engine.
+     *
+     * @param engine The shared engine, owned by the caller
+     * @throws NullPointerException if engine is null.
+     */
+    public LsmUserRepository(LsmEngine engine) {
+        Objects.requireNonNull(engine, "Engine cannot be null.");
+        this.records = new LsmRecords<>(engine, KEY_SPACE, "user",
+        new UserCodec(), this::indexKeys);
+        LOGGER.log(Level.INFO,
+        "LsmUserRepository initialized in {0}. Next ID: {1}",
+        new Object[]{engine.getDirectory(), records.getNextId()});
+    }
+
+    private List<byte[]> indexKeys(User user) {
+        int userId = user.getUserID();
+        List<byte[]> keys = new ArrayList<>(3);
+        String emailKey = UserIndex.emailKey(user.getEmail());
+        if (emailKey != null) {
+            keys.add(emailPrefix(emailKey).addInt(userId).build());
+        }
+        if (user instanceof Staff) {
+            String lastName = UserIndex.collationKey(user.getLastName());
+            String firstName = UserIndex.collationKey(user.getFirstName());
+            keys.add(records.key(TAG_STAFF).addString(lastName)
+            .addString(firstName).addInt(userId).build());
+            if (user.getRole() != null) {
+                keys.add(rolePrefix(user.getRole()).addString(lastName)
+                .addString(firstName).addInt(userId).build());
+            }
+        }
+        return keys;
+    }
+
+    private KeyBuilder emailPrefix(String emailKey) {
+        return records.key(TAG_EMAIL).addString(emailKey);
+    }
+
+    private KeyBuilder rolePrefix(UserRole role) {
+        return records.key(TAG_ROLE).addByte(role.ordinal());
+    }
+
+    /**
+     * Finds a user by their unique persistent ID.
+     *
+     * @param userId The unique ID of the user to find (must be positive).
+     * @return An Optional containing a copy of the User if found,
+     * otherwise empty.
+     */
+    @Override
+    public Optional<User> findById(int userId) {
+        if (userId <= 0) {
+            LOGGER.log(Level.FINER,
+            "findById called with non-positive ID: {0}", userId);
+            return Optional.empty();
+        }
+        return records.find(userId);
+    }
+
+    /**
+     * Finds all user profiles associated with the given email address,
+     * ignoring case
+     *
+     * @param email The email address to search for
+     * @return An unmodifiable List containing all User profiles
+     * matching the email.
+     */
+    @Override
+    public List<User> findByEmail(String email) {
+        if (email == null || email.trim().isEmpty()) {
+            LOGGER.log(Level.WARNING,
+            "findByEmail called with null or blank email.");
+            return Collections.emptyList();
+        }
+        return Collections.unmodifiableList(records.findIndexed(
+        emailPrefix(UserIndex.emailKey(email)).build()));
+    }
+
+    /**
+     * Retrieves all Staff entities from the repository
+     *
+     * @return An unmodifiable List containing all staff members, by last
+     * then first name.
+     */
+    @Override
+    public List<Staff> findAllStaff() {
+        return toStaffList(records.findIndexed(
+        records.key(TAG_STAFF).build()));
+    }
+
+    /**
+     * Finds all staff members matching a specific role
+     *
+     * @param role The UserRole to filter by
+     * @return An unmodifiable List containing staff members with the
+     * specified role, by last then first name.
+     * @throws NullPointerException if role is null.
+     */
+    @Override
+    public List<Staff> findStaffByRole(UserRole role) {
+        Objects.requireNonNull(role,
+        "Role cannot be null for findStaffByRole.");
+        if (!role.isStaffRole()) {
+            LOGGER.log(Level.WARNING,
+            "Attempted to find staff by non-staff role: {0}", role);
+            return Collections.emptyList();
+        }
+        return toStaffList(records.findIndexed(rolePrefix(role).build()));
+    }
+
+    private static List<Staff> toStaffList(List<User> users) {
+        List<Staff> staff = new ArrayList<>(users.size());
+        for (User user : users) {
+            if (user instanceof Staff) {
+                staff.add((Staff) user);
+            }
+        }
+        return Collections.unmodifiableList(staff);
+    }
+
+    /**
+     * Retrieves all User entities
+     *
+     * @return An unmodifiable List containing all users, by last then
+     * first name.
+     */
+    @Override
+    public List<User> findAll() {
+        List<User> sortedUsers = records.findAll();
+        sortedUsers.sort(Comparator.comparing(User::getLastName,
+        String.CASE_INSENSITIVE_ORDER)
+        .thenComparing(User::getFirstName, String.CASE_INSENSITIVE_ORDER));
+        return Collections.unmodifiableList(sortedUsers);
+    }
+
+    /**
+     * Saves a new user or updates an existing one. A new user is given its
+     * ID in place.
+     *
+     * @param user The User object to save
+     * @return The saved User object
+     * @throws NullPointerException if user is null.
+     */
+    @Override
+    public synchronized User save(User user) {
+        Objects.requireNonNull(user, "User to save cannot be null.");
+        if (user.getUserID() <= 0) {
+            user.setUserID(records.allocateId());
+            LOGGER.log(Level.FINE, "Assigned new ID {0} to user: {1}",
+            new Object[]{user.getUserID(), user.getEmail()});
+        } else {
+            records.reserveId(user.getUserID());
+        }
+        int userId = user.getUserID();
+        records.put(userId, user, records.find(userId).orElse(null));
+        LOGGER.log(Level.INFO, "Saved user: ID={0}, Email=''{1}'', Role={2}",
+        new Object[]{userId, user.getEmail(), user.getRole()});
+        return user;
+    }
+
+    /**
+     * Saves a user unless another profile under the same email, ignoring
+     * case, matches the conflict test. The lookup and the save both hold
+     * the repository monitor, so no other save can slip in between.
+     *
+     * @param user      The User object to save
+     * @param conflicts Tests whether an existing profile blocks the save
+     * @return The saved User, or empty if a conflicting profile exists.
+     * @throws NullPointerException if either argument is null.
+     */
+    @Override
+    public synchronized Optional<User> saveIfEmailAvailable(User user,
+    Predicate<? super User> conflicts) {
+        Objects.requireNonNull(user, "User to save cannot be null.");
+        Objects.requireNonNull(conflicts, "Conflict test cannot be null.");
+        for (User existing : findByEmail(user.getEmail())) {
+            if ((user.getUserID() <= 0
+            || existing.getUserID() != user.getUserID())
+            && conflicts.test(existing)) {
+                LOGGER.log(Level.FINE,
+                "Save of {0} refused: email already used by user ID {1}",
+                new Object[]{user.getEmail(), existing.getUserID()});
+                return Optional.empty();
+            }
+        }
+        return Optional.of(save(user));
+    }
+
+    /**
+     * Deletes a User entity by its unique persistent identifier (ID)
+     *
+     * @param userId The unique ID of the user to delete
+     * @return true if a user was found and deleted, false otherwise.
+     */
+    @Override
+    public synchronized boolean deleteById(int userId) {
+        if (userId <= 0) {
+            LOGGER.log(Level.WARNING,
+            "Attempted to delete user with invalid ID: {0}", userId);
+            return false;
+        }
+        Optional<User> stored = records.find(userId);
+        if (!stored.isPresent()) {
+            LOGGER.log(Level.WARNING, "User ID {0} not found for deletion.",
+            userId);
+            return false;
+        }
+        records.delete(userId, stored.get());
+        return true;
+    }
+
+    /**
+     * Deletes a user by passing the User object instance
+     * @param user The User entity to delete
+     * @return true if the user was deleted, false otherwise.
+     * @throws NullPointerException if user is null.
+     */
+    @Override
+    public boolean delete(User user) {
+        Objects.requireNonNull(user, "User to delete cannot be null.");
+        if (user.getUserID() <= 0) {
+            LOGGER.log(Level.WARNING,
+            "Attempted to delete user with invalid ID via object: {0}",
+            user);
+            return false;
+        }
+        return deleteById(user.getUserID());
+    }
+
+    /**
+     * The engine merges its own segments in the background, so there is
+     * nothing to compact here.
+     *
+     * @return false.
+     */
+    @Override
+    public boolean compactIfNeeded() {
+        return false;
+    }
+
+    /**
+     * Forces every user change so far to disk.
+     */
+    @Override
+    public void flush() {
+        records.sync();
+    }
+
+    /**
+     * Forces every user change so far to disk. The engine is shared, so it
+     * is left open for its owner to close.
+     */
+    @Override
+    public void close() {
+        records.sync();
+    }
+}
@@ -1,40 +1,33 @@
 package com.cafe94.persistence;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
-import java.util.ArrayList;
 import java.util.Collections;
-import java.util.Comparator;
 import java.util.List;
-import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.util.stream.Collectors;
 
 import com.cafe94.domain.Item;
+import com.cafe94.util.primitive.IntObjectConcurrentMap;
 
 /**
  * Concrete implementation of {@link IMenuRepository} using Java Serialization
- * for persistence
+ * for persistence. Reads are served from an immutable {@link MenuSnapshot}
+ * that is rebuilt once per change and published through a volatile field.
  */
-public class MenuRepository implements IMenuRepository {
+public class MenuRepository implements IMenuRepository, DurableRepository {
 
     private static final Logger LOGGER =
     Logger.getLogger(MenuRepository.class.getName());
-    private final Map<Integer, Item> items = new ConcurrentHashMap<>();
+    private final IntObjectConcurrentMap<Item> items =
+    new IntObjectConcurrentMap<>();
     private final AtomicInteger nextId = new AtomicInteger(1);
     private final String storageFilePath;
+    private final RecordStore<Item> store;
+    // Replaced, never modified, under the repository monitor
+    private volatile MenuSnapshot snapshot;
 
     /**
      * Constructs the repository, loading existing data from the specified
@@ -44,14 +37,30 @@ public class MenuRepository implements IMenuRepository {
      * @throws NullPointerException if storageFilePath is null.
      */
     public MenuRepository(String storageFilePath) {
+        this(storageFilePath, StorageOptions.snapshot());
+    }
+
+    /**
+     * Constructs the repository with explicit storage options, loading
+     * existing data and, in journaled mode, replaying the journal.
+     *
+     * @param storageFilePath The path to the file for storing menu item data
+     * @param storageOptions  How mutations are persisted
+     * @throws NullPointerException if any argument is null.
+     */
+    public MenuRepository(String storageFilePath,
+    StorageOptions storageOptions) {
         this.storageFilePath = Objects.requireNonNull(storageFilePath,
         "Storage file path cannot be null.");
+        this.store = new RecordStore<>(storageFilePath, "menu item",
+        Item.class, items, storageOptions, new ItemCodec());
         // Load data on initialisation
-        loadData();
+        store.load();
         // Initialize nextId based on the maximum ID found in loaded data
         int maxId =
         items.keySet().stream().max(Integer::compare).orElse(0);
         nextId.set(maxId + 1);
+        this.snapshot = new MenuSnapshot(1, items.values());
         LOGGER.log(Level.INFO,
         "MenuRepository initialized. Loaded {0} items from {1}. Next ID: {2}",
         new Object[]{items.size(), this.storageFilePath, nextId.get()});
@@ -66,7 +75,14 @@ public class MenuRepository implements IMenuRepository {
      * @throws RuntimeException if assigning new ID fails
      */
     @Override
-    public synchronized Item save(Item item) {
+    public Item save(Item item) {
+        Item saved = applySave(item);
+        // Wait outside the monitor so concurrent saves share one fsync
+        store.awaitDurable();
+        return saved;
+    }
+
+    private synchronized Item applySave(Item item) {
         Objects.requireNonNull(item,
         "Item to save cannot be null.");
         int itemId = item.getItemID();
@@ -95,7 +111,8 @@ public class MenuRepository implements IMenuRepository {
 
         items.put(itemId, item);
         // Persist the changes
-        saveData();
+        store.put(itemId, item);
+        publishSnapshot();
         LOGGER.log(Level.INFO,
         "Saved item: ID={0}, Name='{1}', Category='{2}'",
         new Object[]{itemId, item.getName(), item.getCategory()});
@@ -111,7 +128,14 @@ public class MenuRepository implements IMenuRepository {
      * @return true if an item was found and deleted, false otherwise.
      */
     @Override
-    public synchronized boolean deleteById(int itemId) {
+    public boolean deleteById(int itemId) {
+        boolean deleted = applyDeleteById(itemId);
+        // Wait outside the monitor so concurrent writers share one fsync
+        store.awaitDurable();
+        return deleted;
+    }
+
+    private synchronized boolean applyDeleteById(int itemId) {
         if (itemId <= 0) {
              LOGGER.log(Level.WARNING,
              "Attempted to delete item with invalid ID: {0}", itemId);
@@ -119,7 +143,8 @@ public class MenuRepository implements IMenuRepository {
         }
         Item removedItem = items.remove(itemId);
         if (removedItem != null) {
-            saveData();
+            store.delete(itemId);
+            publishSnapshot();
             LOGGER.log(Level.INFO, "Deleted item ID: {0}", itemId);
             return true;
         } else {
@@ -145,17 +170,32 @@ public class MenuRepository implements IMenuRepository {
         return Optional.ofNullable(items.get(itemId));
     }
 
+    /**
+     * Rebuilds the snapshot after a change. Callers hold the monitor, so
+     * versions are published in order.
+     */
+    private void publishSnapshot() {
+        snapshot = new MenuSnapshot(snapshot.getVersion() + 1,
+        items.values());
+    }
+
+    /**
+     * Returns the current menu snapshot with a single volatile read.
+     *
+     * @return The latest published snapshot.
+     */
+    @Override
+    public MenuSnapshot snapshot() {
+        return snapshot;
+    }
+
     /**
      * Retrieves all items, sorted by category then name
      * @return An unmodifiable List of all Items.
      */
     @Override
     public List<Item> findAll() {
-        List<Item> sortedItems = new ArrayList<>(items.values());
-        sortedItems.sort(Comparator.comparing(Item::getCategory,
-        String.CASE_INSENSITIVE_ORDER)
-        .thenComparing(Item::getName, String.CASE_INSENSITIVE_ORDER));
-        return Collections.unmodifiableList(sortedItems);
+        return snapshot.getItems();
     }
 
     /**
@@ -172,15 +212,7 @@ public class MenuRepository implements IMenuRepository {
              "findByCategory called with blank category.");
              return Collections.emptyList();
         }
-        String lowerCaseCategory = category.toLowerCase();
-        return items.values().stream()
-                .filter(Objects::nonNull)
-                .filter(item -> item.getCategory() != null
-                && item.getCategory().toLowerCase().equals(lowerCaseCategory))
-                .sorted(Comparator.comparing(Item::getName,
-                String.CASE_INSENSITIVE_ORDER))
-                .collect(Collectors.collectingAndThen(Collectors.toList(),
-                Collections::unmodifiableList));
+        return snapshot.getItemsInCategory(category);
     }
 
     /**
@@ -189,13 +221,7 @@ public class MenuRepository implements IMenuRepository {
      */
     @Override
     public List<Item> findDailySpecials() {
-        return items.values().stream()
-                .filter(Objects::nonNull)
-                .filter(Item::isDailySpecial)
-                .sorted(Comparator.comparing(Item::getName,
-                String.CASE_INSENSITIVE_ORDER))
-                .collect(Collectors.collectingAndThen(Collectors.toList(),
-                Collections::unmodifiableList));
+        return snapshot.getDailySpecials();
     }
 
     /**
@@ -204,111 +230,41 @@ public class MenuRepository implements IMenuRepository {
      */
     @Override
     public List<String> findDistinctCategories() {
-        return items.values().stream()
-               .filter(Objects::nonNull)
-               .map(Item::getCategory)
-               .filter(Objects::nonNull)
-               .filter(cat -> !cat.trim().isEmpty())
-               .distinct()
-               .sorted(String.CASE_INSENSITIVE_ORDER)
-               .collect(Collectors.collectingAndThen(Collectors.toList(),
-               Collections::unmodifiableList));
+        return snapshot.getCategories();
     }
 
 
-    /** Loads item data from the storage file. Synchronized.
-     * 
-    */
-    @SuppressWarnings("unchecked")
-    private synchronized void loadData() {
-        File file = new File(storageFilePath);
-        if (!file.exists() || file.length() == 0) {
-             LOGGER.log(Level.INFO,
-             "Item data file not found or empty ({0}). Starting empty.",
-             storageFilePath);
-             ensureDirectoryExists(file);
-             return;
-        }
-
-        try (FileInputStream fis = new FileInputStream(file);
-             BufferedInputStream bis = new BufferedInputStream(fis);
-             ObjectInputStream ois = new ObjectInputStream(bis)) {
-
-            Object readObject = ois.readObject();
-             if (readObject instanceof Map) {
-                items.clear();
-                Map<?,?> rawMap = (Map<?,?>) readObject;
-                rawMap.forEach((key, value) -> {
-                    if (key instanceof Integer && value instanceof Item) {
-                         items.put((Integer)key, (Item)value);
-                    } else {
-                         LOGGER.log(Level.WARNING,
-                         "Skipping invalid entry during load: Key type {0}, " +
-                         "Value type {1}",
-                         new Object[]{key != null ?
-                            key.getClass().getName() : "null",
-                            value != null ? value.getClass().getName() :
-                            "null"});
-                    }
-                });
-                LOGGER.log(Level.INFO,
-                "Loaded {0} item entries from: {1}",
-                new Object[]{items.size(), storageFilePath});
-            } else {
-                LOGGER.log(Level.SEVERE,
-                "Item data file ({0}) does not contain a valid Map.",
-                storageFilePath);
-            }
-        } catch (FileNotFoundException e) {
-             LOGGER.log(Level.SEVERE, "Item data file not found for loading: "
-             + storageFilePath, e);
-        } catch (IOException | ClassNotFoundException | ClassCastException e) {
-             LOGGER.log(Level.SEVERE, "Failed to load item data from file ("
-             + storageFilePath + "). Data might be corrupted or class " +
-             "versions incompatible.", e);
-        }
+    /**
+     * Compacts the menu item journal once it passes the configured thresholds.
+     * Runs without the repository monitor, so saves are not blocked.
+     *
+     * @return true if a compaction ran and succeeded.
+     */
+    @Override
+    public boolean compactIfNeeded() {
+        return store.compactIfNeeded();
     }
 
-    /** Saves the current item map to the storage file. Synchronized.
-    */
-    private synchronized void saveData() {
-        File file = new File(storageFilePath);
-        ensureDirectoryExists(file);
-
-        try (FileOutputStream fos = new FileOutputStream(file);
-             BufferedOutputStream bos = new BufferedOutputStream(fos);
-             ObjectOutputStream oos = new ObjectOutputStream(bos)) {
-
-            oos.writeObject(new ConcurrentHashMap<>(items));
-            LOGGER.log(Level.FINE, "Item data saved successfully to {0}",
-            storageFilePath);
+    /**
+     * Writes any menu item changes still pending in write-behind mode and waits
+     * until they are on disk.
+     */
+    @Override
+    public void flush() {
+        store.flush();
+    }
 
+    /**
+     * Flushes pending menu item changes and closes the journal. The repository
+     * must not be used afterwards.
+     */
+    @Override
+    public void close() {
+        try {
+            store.close();
         } catch (IOException e) {
-            LOGGER.log(Level.SEVERE,
-            "CRITICAL: Failed to save item data to file ({0}). Data loss may "
-            + " occur.", new Object[]{storageFilePath, e});
+            LOGGER.log(Level.WARNING, "Failed to close menu item storage "
+            + "cleanly (" + store.getStorageFilePath() + ")", e);
         }
     }
-
-    /** Ensures the parent directory for the storage file exists.
-     * 
-    */
-     private void ensureDirectoryExists(File file) {
-        Objects.requireNonNull(file, "File cannot be null");
-        File parentDir = file.getParentFile();
-         if (parentDir != null && !parentDir.exists()) {
-             LOGGER.log(Level.INFO,
-             "Attempting to create directory for item data: {0}",
-             parentDir.getAbsolutePath());
-             if (parentDir.mkdirs()) {
-                 LOGGER.log(Level.INFO,
-                 "Successfully created directory: {0}",
-                 parentDir.getAbsolutePath());
-             } else {
-                 LOGGER.log(Level.SEVERE,
-                 "Failed to create directory for item data: {0}",
-                 parentDir.getAbsolutePath());
-             }
-         }
-     }
 }
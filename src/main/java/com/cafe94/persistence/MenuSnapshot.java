@@ -0,0 +1,141 @@
+package com.cafe94.persistence;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+import com.cafe94.domain.Item;
+
+/**
+ * Immutable view of the whole menu at one point in time, as published by
+ * {@link MenuRepository}. The items come pre-sorted by category then name,
+ * with the per-category and daily special sublists already split out, so
+ * screens that list the menu do not copy or sort anything.
+ * <p>
+ * The repository builds a new snapshot once per change and stamps it with
+ * a version that only ever increases. A reader holding a snapshot can
+ * compare versions to tell whether the menu has changed since.
+ * <p>
+ * The snapshot shares the repository's items rather than copying them,
+ * which is safe because a saved item is never changed: an update saves
+ * a new instance, so older snapshots keep the items, order and
+ * categories they were built with.
+ * @author Adigun Lateef
+ * @version 1.0
+ */
+public final class MenuSnapshot {
+
+    private static final Comparator<Item> BY_NAME =
+    Comparator.comparing(Item::getName, String.CASE_INSENSITIVE_ORDER);
+    private static final Comparator<Item> BY_CATEGORY_THEN_NAME =
+    Comparator.comparing(Item::getCategory, String.CASE_INSENSITIVE_ORDER)
+    .thenComparing(BY_NAME);
+
+    private final long version;
+    private final List<Item> items;
+    private final Map<String, List<Item>> byCategory;
+    private final List<Item> dailySpecials;
+    private final List<String> categories;
+
+    /**
+     * Builds a snapshot of the given items.
+     *
+     * @param version The version to stamp it with
+     * @param items   The current menu items
+     * @throws NullPointerException if items is null.
+     */
+    MenuSnapshot(long version, Collection<Item> items) {
+        Objects.requireNonNull(items, "Items cannot be null.");
+        this.version = version;
+        List<Item> sorted = new ArrayList<>(items.size());
+        for (Item item : items) {
+            if (item != null) {
+                sorted.add(item);
+            }
+        }
+        sorted.sort(BY_CATEGORY_THEN_NAME);
+
+        Map<String, List<Item>> categoryLists = new HashMap<>();
+        List<Item> specials = new ArrayList<>();
+        Set<String> names = new LinkedHashSet<>();
+        for (Item item : sorted) {
+            String category = item.getCategory();
+            if (category != null && !category.trim().isEmpty()) {
+                categoryLists.computeIfAbsent(categoryKey(category),
+                key -> new ArrayList<>()).add(item);
+                names.add(category);
+            }
+            if (item.isDailySpecial()) {
+                specials.add(item);
+            }
+        }
+        Map<String, List<Item>> frozen = new HashMap<>();
+        for (Map.Entry<String, List<Item>> entry
+        : categoryLists.entrySet()) {
+            List<Item> list = entry.getValue();
+            // Categories differing only in case sort together, not by name
+            list.sort(BY_NAME);
+            frozen.put(entry.getKey(), Collections.unmodifiableList(list));
+        }
+        specials.sort(BY_NAME);
+
+        this.items = Collections.unmodifiableList(sorted);
+        this.byCategory = Collections.unmodifiableMap(frozen);
+        this.dailySpecials = Collections.unmodifiableList(specials);
+        this.categories = Collections.unmodifiableList(
+        new ArrayList<>(names));
+    }
+
+    private static String categoryKey(String category) {
+        return category.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * @return The version of the menu this snapshot shows. Later snapshots
+     * have higher versions.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * @return Every item, sorted by category then name.
+     */
+    public List<Item> getItems() {
+        return items;
+    }
+
+    /**
+     * @param category The category name, matched ignoring case
+     * @return The items in the category, sorted by name.
+     */
+    public List<Item> getItemsInCategory(String category) {
+        if (category == null) {
+            return Collections.emptyList();
+        }
+        return byCategory.getOrDefault(categoryKey(category),
+        Collections.emptyList());
+    }
+
+    /**
+     * @return The daily specials, sorted by name.
+     */
+    public List<Item> getDailySpecials() {
+        return dailySpecials;
+    }
+
+    /**
+     * @return The distinct category names, sorted ignoring case.
+     */
+    public List<String> getCategories() {
+        return categories;
+    }
+}
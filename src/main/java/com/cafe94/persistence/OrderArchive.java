@@ -0,0 +1,895 @@
+package com.cafe94.persistence;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+import com.cafe94.domain.Order;
+import com.cafe94.enums.OrderStatus;
+import com.cafe94.util.primitive.IntHashSet;
+import com.cafe94.util.primitive.IntLongMap;
+
+/**
+ * Cold tier of the {@link OrderRepository}. Finished orders are appended
+ * to archive segments partitioned by the month the order was placed, and
+ * only a small index entry per order (its location, customer, status and
+ * timestamp) stays in memory. Orders are decoded from disk when they are
+ * looked up.
+ * <p>
+ * Segments live in {@code <data file>.archive/} and are named
+ * {@code <yyyy-MM>.seg}. Each record is an int length, an int CRC32 and a
+ * body holding the operation, order ID, customer ID, status, order
+ * timestamp and, for archived orders, the order in the binary order
+ * format with every item stored inline, so archived orders never depend
+ * on the current menu. A later record for the same order ID supersedes an
+ * earlier one, and a remove record drops the order from the archive.
+ * <p>
+ * Next to each segment an index file {@code <yyyy-MM>.idx} holds one
+ * fixed-size entry per durable record: its offset and length and the
+ * header fields above, with a CRC32. Loading reads only the index files,
+ * so startup time depends on the number of archived orders rather than
+ * their size. Records found after the last index entry (appended just
+ * before a crash) are read from the segment headers and added to the
+ * index, and a missing or damaged index file is rebuilt the same way
+ * from the whole segment. A torn record at the end of a segment is
+ * ignored and overwritten by the next append.
+ * <p>
+ * Segments are read through a read-only memory mapping, and an order is
+ * only decoded when it is first looked up. A bounded cache keeps the most
+ * recently read orders, so the same instance is returned until the order
+ * leaves the archive or the cache, as with the live orders.
+ * @author Adigun Lateef
+ * @version 1.0
+ */
+final class OrderArchive implements Closeable {
+
+    private static final Logger LOGGER =
+    Logger.getLogger(OrderArchive.class.getName());
+
+    private static final int SEGMENT_MAGIC = 0x43393441; // "C94A"
+    private static final short FORMAT_VERSION = 1;
+    private static final int SEGMENT_HEADER_BYTES = 4 + 2;
+    // length + CRC
+    private static final int RECORD_PREFIX_BYTES = 4 + 4;
+    // op + order ID + customer ID + status + order timestamp
+    private static final int RECORD_HEADER_BYTES = 1 + 4 + 4 + 1 + 8;
+    private static final int MAX_RECORD_BYTES = 16 * 1024 * 1024;
+    private static final byte OP_ARCHIVE = 1;
+    private static final byte OP_REMOVE = 2;
+    private static final long NO_TIMESTAMP = Long.MIN_VALUE;
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final String INDEX_SUFFIX = ".idx";
+    private static final int INDEX_MAGIC = 0x43393449; // "C94I"
+    private static final int INDEX_HEADER_BYTES = 4 + 2;
+    // offset + length + record header + CRC
+    private static final int INDEX_ENTRY_BYTES = 8 + 4 + RECORD_HEADER_BYTES
+    + 4;
+    /** Default number of decoded orders kept by the cache. */
+    static final int DEFAULT_CACHE_SIZE = 1024;
+    private static final OrderStatus[] STATUSES = OrderStatus.values();
+    /** By whole second placed, then ID; orders without a time go last. */
+    private static final Comparator<Entry> BY_SECOND =
+    Comparator.comparingLong((Entry entry) -> entry.epochSecond
+    == NO_TIMESTAMP ? Long.MAX_VALUE : entry.epochSecond)
+    .thenComparingInt(entry -> entry.orderId);
+
+    private final File directory;
+    // Archived orders are self-contained, so no menu lookups are needed
+    private final OrderCodec codec = new OrderCodec(itemId -> null);
+    private final Map<YearMonth, Segment> segments = new TreeMap<>();
+    // Recently read orders, least recently used first
+    private final Map<Integer, Order> cache;
+    private final Map<Integer, Entry> entries = new HashMap<>();
+    private final Map<Integer, IntHashSet> idsByCustomer = new HashMap<>();
+    private final NavigableSet<Entry> byTime = new TreeSet<>(BY_SECOND);
+    private int maxOrderId;
+
+    /**
+     * One monthly archive segment.
+     */
+    private static final class Segment {
+        private final File file;
+        private final File indexFile;
+        // Bytes of valid records; anything after is a torn append
+        private long size;
+        private FileChannel channel;
+        private FileChannel indexChannel;
+        // Bytes of usable index entries; anything after is torn or stale
+        private long indexSize;
+        // Covers the segment up to its capacity; remapped once it grows
+        private MappedByteBuffer mapped;
+        // Set when the segment could not be read; it is never appended to
+        private boolean damaged;
+
+        private Segment(File file) {
+            this.file = file;
+            String name = file.getName();
+            this.indexFile = new File(file.getParentFile(), name.substring(0,
+            name.length() - SEGMENT_SUFFIX.length()) + INDEX_SUFFIX);
+        }
+    }
+
+    /**
+     * In-memory index entry for one archived order.
+     */
+    private static final class Entry {
+        private final Segment segment;
+        private final long offset;
+        private final int length;
+        private final int orderId;
+        private final int customerId;
+        private final OrderStatus status;
+        private final long epochSecond;
+
+        private Entry(Segment segment, long offset, int length, int orderId,
+        int customerId, OrderStatus status, long epochSecond) {
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+            this.orderId = orderId;
+            this.customerId = customerId;
+            this.status = status;
+            this.epochSecond = epochSecond;
+        }
+    }
+
+    /**
+     * Creates the archive for an order data file with the default cache
+     * size. Nothing is read until {@link #load()} is called.
+     *
+     * @param dataFile The order repository's data file
+     * @throws NullPointerException if dataFile is null.
+     */
+    OrderArchive(File dataFile) {
+        this(dataFile, DEFAULT_CACHE_SIZE);
+    }
+
+    /**
+     * Creates the archive for an order data file. Nothing is read until
+     * {@link #load()} is called.
+     *
+     * @param dataFile  The order repository's data file
+     * @param cacheSize The most decoded orders to keep, 0 for none
+     * @throws NullPointerException if dataFile is null.
+     * @throws IllegalArgumentException if cacheSize is negative.
+     */
+    OrderArchive(File dataFile, int cacheSize) {
+        Objects.requireNonNull(dataFile, "Data file cannot be null.");
+        if (cacheSize < 0) {
+            throw new IllegalArgumentException(
+            "Cache size cannot be negative.");
+        }
+        this.directory = new File(dataFile.getPath() + ".archive");
+        this.cache = new LinkedHashMap<Integer, Order>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(
+            Map.Entry<Integer, Order> eldest) {
+                return size() > cacheSize;
+            }
+        };
+    }
+
+    /**
+     * Builds the in-memory index from the index file of every segment,
+     * reading record headers only past the last indexed record. Unreadable
+     * segments are logged and skipped.
+     */
+    synchronized void load() {
+        File[] files = directory.listFiles((dir, name) ->
+        name.endsWith(SEGMENT_SUFFIX));
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            String name = file.getName();
+            try {
+                YearMonth month = YearMonth.parse(name.substring(0,
+                name.length() - SEGMENT_SUFFIX.length()));
+                segments.put(month, new Segment(file));
+            } catch (DateTimeParseException e) {
+                LOGGER.log(Level.WARNING,
+                "Ignoring unrecognised order archive file {0}",
+                file.getPath());
+            }
+        }
+        for (Segment segment : segments.values()) {
+            try {
+                List<Entry> indexed = new ArrayList<>();
+                long from = loadIndex(segment, indexed);
+                List<Entry> unindexed = new ArrayList<>();
+                scan(segment, from, unindexed);
+                if (!unindexed.isEmpty() || segment.indexSize == 0) {
+                    appendIndex(segment, unindexed);
+                }
+            } catch (IOException e) {
+                segment.damaged = true;
+                LOGGER.log(Level.SEVERE, "Failed to read order archive "
+                + "segment " + segment.file.getPath() + ". Orders after "
+                + "offset " + segment.size + " are unavailable.", e);
+            }
+        }
+        LOGGER.log(Level.INFO,
+        "Order archive indexed {0} orders in {1} segments from {2}",
+        new Object[]{entries.size(), segments.size(), directory.getPath()});
+    }
+
+    /**
+     * Indexes the records of a segment from its index file.
+     *
+     * @param indexed Collects the entries read
+     * @return The offset just past the last indexed record, or 0 if the
+     * index file is missing or unusable and the segment must be scanned
+     * from the start.
+     */
+    private long loadIndex(Segment segment, List<Entry> indexed) {
+        long fileLength = segment.file.length();
+        long indexLength = segment.indexFile.length();
+        if (indexLength < INDEX_HEADER_BYTES) {
+            return 0;
+        }
+        try (FileChannel channel = FileChannel.open(
+        segment.indexFile.toPath(), StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(
+            FileChannel.MapMode.READ_ONLY, 0, indexLength);
+            if (buffer.getInt() != INDEX_MAGIC
+            || buffer.getShort() != FORMAT_VERSION) {
+                throw new IOException("Not an order archive index");
+            }
+            long covered = SEGMENT_HEADER_BYTES;
+            long usable = INDEX_HEADER_BYTES;
+            byte[] entry = new byte[INDEX_ENTRY_BYTES];
+            CRC32 crc = new CRC32();
+            while (buffer.remaining() >= INDEX_ENTRY_BYTES) {
+                buffer.get(entry);
+                crc.reset();
+                crc.update(entry, 0, INDEX_ENTRY_BYTES - 4);
+                ByteBuffer fields = ByteBuffer.wrap(entry);
+                long offset = fields.getLong();
+                int recordLength = fields.getInt();
+                byte op = fields.get();
+                int orderId = fields.getInt();
+                int customerId = fields.getInt();
+                int status = fields.get();
+                long epochSecond = fields.getLong();
+                // A torn or stale entry ends the usable part of the index
+                if ((int) crc.getValue() != fields.getInt()
+                || offset != covered
+                || offset + recordLength > fileLength) {
+                    break;
+                }
+                if (op == OP_ARCHIVE && status > 0
+                && status <= STATUSES.length) {
+                    Entry archived = new Entry(segment, offset, recordLength,
+                    orderId, customerId, STATUSES[status - 1], epochSecond);
+                    index(orderId, archived);
+                    indexed.add(archived);
+                } else if (op == OP_REMOVE) {
+                    unindex(orderId);
+                } else {
+                    break;
+                }
+                covered = offset + recordLength;
+                usable += INDEX_ENTRY_BYTES;
+            }
+            segment.size = covered;
+            segment.indexSize = usable;
+            return covered;
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Rebuilding order archive index "
+            + segment.indexFile.getPath(), e);
+            for (Entry archived : indexed) {
+                unindex(archived.orderId);
+            }
+            indexed.clear();
+            segment.indexSize = 0;
+            return 0;
+        }
+    }
+
+    /**
+     * Reads the record headers of a segment from an offset on.
+     *
+     * @param from      The offset to start at, or 0 for the whole segment
+     * @param unindexed Collects an index entry for every record read
+     */
+    private void scan(Segment segment, long from, List<Entry> unindexed)
+    throws IOException {
+        long fileLength = segment.file.length();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+        new FileInputStream(segment.file), 64 * 1024))) {
+            long offset;
+            if (from > 0) {
+                skipFully(in, from);
+                offset = from;
+            } else {
+                if (fileLength < SEGMENT_HEADER_BYTES) {
+                    // Crashed while creating the segment; rewritten on
+                    // append
+                    segment.size = 0;
+                    return;
+                }
+                if (in.readInt() != SEGMENT_MAGIC) {
+                    throw new IOException("Not an order archive segment");
+                }
+                short version = in.readShort();
+                if (version != FORMAT_VERSION) {
+                    throw new IOException("Unsupported order archive "
+                    + "version " + version);
+                }
+                offset = SEGMENT_HEADER_BYTES;
+            }
+            segment.size = offset;
+            while (offset + RECORD_PREFIX_BYTES + RECORD_HEADER_BYTES
+            <= fileLength) {
+                int length = in.readInt();
+                in.readInt(); // CRC, checked when the order is read
+                if (length < RECORD_HEADER_BYTES
+                || length > MAX_RECORD_BYTES
+                || offset + RECORD_PREFIX_BYTES + length > fileLength) {
+                    break;
+                }
+                byte op = in.readByte();
+                int orderId = in.readInt();
+                int customerId = in.readInt();
+                int status = in.readByte();
+                long epochSecond = in.readLong();
+                skipFully(in, length - RECORD_HEADER_BYTES);
+                int recordLength = RECORD_PREFIX_BYTES + length;
+                Entry entry;
+                if (op == OP_ARCHIVE && status > 0
+                && status <= STATUSES.length) {
+                    entry = new Entry(segment, offset, recordLength,
+                    orderId, customerId, STATUSES[status - 1],
+                    epochSecond);
+                    index(orderId, entry);
+                } else if (op == OP_REMOVE) {
+                    // Only the ID and customer of a removal matter
+                    entry = new Entry(segment, offset, recordLength,
+                    orderId, customerId, null, epochSecond);
+                    unindex(orderId);
+                } else {
+                    break;
+                }
+                unindexed.add(entry);
+                offset += recordLength;
+                segment.size = offset;
+            }
+        }
+        if (segment.size < fileLength) {
+            LOGGER.log(Level.WARNING,
+            "Ignoring {0} trailing bytes of order archive segment {1}",
+            new Object[]{fileLength - segment.size, segment.file.getPath()});
+        }
+    }
+
+    /**
+     * Appends the given orders to the segments of the months they were
+     * placed in and forces the segments to disk. The orders are indexed
+     * only once every record is durable.
+     *
+     * @param orders The finished orders to archive
+     * @throws IOException if a segment cannot be written or forced; none
+     * of the orders are indexed in that case.
+     */
+    synchronized void archive(Collection<Order> orders) throws IOException {
+        Map<Integer, Entry> written = new HashMap<>();
+        // Every record appended, in file order, for the index files
+        Map<Segment, List<Entry>> appended = new LinkedHashMap<>();
+        for (Order order : orders) {
+            Segment segment = segmentFor(order);
+            byte[] payload = codec.encode(order);
+            long offset = append(segment, OP_ARCHIVE, order.getOrderID(),
+            order.getCustomerID(), order.getStatus(),
+            order.getOrderTimestamp(), payload);
+            Entry entry = new Entry(segment, offset,
+            RECORD_PREFIX_BYTES + RECORD_HEADER_BYTES + payload.length,
+            order.getOrderID(), order.getCustomerID(), order.getStatus(),
+            epochSecond(order.getOrderTimestamp()));
+            written.put(order.getOrderID(), entry);
+            appended.computeIfAbsent(segment, key -> new ArrayList<>())
+            .add(entry);
+        }
+        force(appended.keySet());
+        written.forEach(this::index);
+        appended.forEach(this::appendIndex);
+    }
+
+    /**
+     * Removes an order from the archive, durably recording the removal so
+     * the order does not reappear on the next load.
+     *
+     * @param orderId The order ID
+     * @return true if the order was archived.
+     * @throws IOException if the removal cannot be written.
+     */
+    synchronized boolean remove(int orderId) throws IOException {
+        Entry entry = entries.get(orderId);
+        if (entry == null) {
+            return false;
+        }
+        long offset = append(entry.segment, OP_REMOVE, orderId,
+        entry.customerId, entry.status, null, new byte[0]);
+        force(Collections.singleton(entry.segment));
+        unindex(orderId);
+        appendIndex(entry.segment, Collections.singletonList(new Entry(
+        entry.segment, offset, RECORD_PREFIX_BYTES + RECORD_HEADER_BYTES,
+        orderId, entry.customerId, null, NO_TIMESTAMP)));
+        return true;
+    }
+
+    /**
+     * @param orderId The order ID
+     * @return true if the order is archived.
+     */
+    synchronized boolean contains(int orderId) {
+        return entries.containsKey(orderId);
+    }
+
+    /**
+     * @return The number of archived orders
+     */
+    synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return The highest order ID ever archived, or 0
+     */
+    synchronized int getMaxOrderId() {
+        return maxOrderId;
+    }
+
+    /**
+     * Reads one archived order from disk.
+     *
+     * @param orderId The order ID
+     * @return The order, or empty if it is not archived or unreadable.
+     */
+    synchronized Optional<Order> find(int orderId) {
+        Entry entry = entries.get(orderId);
+        return entry == null ? Optional.empty()
+        : Optional.ofNullable(read(orderId, entry));
+    }
+
+    /**
+     * Reads every archived order placed by a customer.
+     *
+     * @param customerId The customer ID
+     * @return The orders, in no particular order.
+     */
+    synchronized List<Order> findByCustomerId(int customerId) {
+        IntHashSet ids = idsByCustomer.get(customerId);
+        if (ids == null) {
+            return Collections.emptyList();
+        }
+        List<Order> result = new ArrayList<>(ids.size());
+        for (int id : ids.toArray()) {
+            addIfReadable(result, id, entries.get(id));
+        }
+        return result;
+    }
+
+    /**
+     * Reads every archived order in one of the given statuses. Only the
+     * matching orders are decoded.
+     *
+     * @param statuses The statuses to match
+     * @return The orders, in no particular order.
+     */
+    synchronized List<Order> findByStatuses(Set<OrderStatus> statuses) {
+        List<Order> result = new ArrayList<>();
+        entries.forEach((id, entry) -> {
+            if (statuses.contains(entry.status)) {
+                addIfReadable(result, id, entry);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Reads every archived order. This decodes the whole archive.
+     *
+     * @return The orders, in no particular order.
+     */
+    synchronized List<Order> findAll() {
+        List<Order> result = new ArrayList<>(entries.size());
+        entries.forEach((id, entry) -> addIfReadable(result, id, entry));
+        return result;
+    }
+
+    /**
+     * Reads the next archived orders after a keyset cursor, ordered by
+     * timestamp then ID. The index only holds whole seconds, so every
+     * order placed in a second that is reached is read and the exact
+     * order is settled after decoding.
+     *
+     * @param afterTimestamp Timestamp of the last order already seen, or
+     *                       null to start from the oldest order
+     * @param afterId        ID of the last order already seen
+     * @param limit          The most orders to return
+     * @return Up to limit orders ordered after the cursor.
+     */
+    synchronized List<Order> findPage(LocalDateTime afterTimestamp,
+    int afterId, int limit) {
+        NavigableSet<Entry> tail = afterTimestamp == null ? byTime
+        : byTime.tailSet(new Entry(null, 0, 0, Integer.MIN_VALUE, 0, null,
+        epochSecond(afterTimestamp)), true);
+        List<Order> result = new ArrayList<>();
+        long currentSecond = 0;
+        boolean started = false;
+        for (Entry entry : tail) {
+            if (started && entry.epochSecond != currentSecond
+            && result.size() >= limit) {
+                break;
+            }
+            started = true;
+            currentSecond = entry.epochSecond;
+            Order order = read(entry.orderId, entry);
+            if (order != null
+            && OrderRepository.isAfter(order, afterTimestamp, afterId)) {
+                result.add(order);
+            }
+        }
+        result.sort(OrderRepository.OLDEST_FIRST);
+        return result.size() > limit
+        ? new ArrayList<>(result.subList(0, limit)) : result;
+    }
+
+    /**
+     * Counts archived orders per registered customer from the index
+     * alone, adding them to counts already gathered. Orders without a
+     * customer (ID 0 or less) are skipped.
+     *
+     * @param counts The order counts by customer ID to add to
+     */
+    synchronized void addCountsByCustomer(IntLongMap counts) {
+        idsByCustomer.forEach((customerId, ids) -> {
+            if (customerId > 0) {
+                counts.add(customerId, ids.size());
+            }
+        });
+    }
+
+    /**
+     * Closes the open segment files.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        IOException failure = null;
+        for (Segment segment : segments.values()) {
+            // Mappings are released once they are no longer referenced
+            segment.mapped = null;
+            for (FileChannel channel : new FileChannel[]{segment.channel,
+                segment.indexChannel}) {
+                if (channel == null) {
+                    continue;
+                }
+                try {
+                    channel.close();
+                } catch (IOException e) {
+                    failure = e;
+                }
+            }
+            segment.channel = null;
+            segment.indexChannel = null;
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private void addIfReadable(List<Order> result, int orderId,
+    Entry entry) {
+        Order order = read(orderId, entry);
+        if (order != null) {
+            result.add(order);
+        }
+    }
+
+    /**
+     * Returns an archived order from the cache, or decodes it from its
+     * segment and caches it.
+     *
+     * @return The order, or null if it is unreadable.
+     */
+    private Order read(int orderId, Entry entry) {
+        Order cached = cache.get(orderId);
+        if (cached != null) {
+            return cached;
+        }
+        Order order = decode(orderId, entry);
+        if (order != null) {
+            cache.put(orderId, order);
+        }
+        return order;
+    }
+
+    private Order decode(int orderId, Entry entry) {
+        try {
+            ByteBuffer mapped = mapped(entry.segment);
+            if (entry.offset + entry.length > mapped.capacity()) {
+                throw new EOFException("Truncated archived order");
+            }
+            byte[] record = new byte[entry.length];
+            mapped.position((int) entry.offset);
+            mapped.get(record);
+            ByteBuffer buffer = ByteBuffer.wrap(record);
+            int length = buffer.getInt();
+            int checksum = buffer.getInt();
+            CRC32 crc = new CRC32();
+            crc.update(buffer.array(), RECORD_PREFIX_BYTES, length);
+            if (length != entry.length - RECORD_PREFIX_BYTES
+            || (int) crc.getValue() != checksum) {
+                throw new IOException("Checksum mismatch");
+            }
+            byte[] payload = new byte[length - RECORD_HEADER_BYTES];
+            buffer.position(RECORD_PREFIX_BYTES + RECORD_HEADER_BYTES);
+            buffer.get(payload);
+            return codec.decode(payload);
+        } catch (IOException | RuntimeException e) {
+            LOGGER.log(Level.SEVERE, "Failed to read archived order "
+            + orderId + " from " + entry.segment.file.getPath(), e);
+            return null;
+        }
+    }
+
+    /**
+     * Maps a segment for reading, remapping it once it has grown past the
+     * current mapping.
+     *
+     * @return A view of the mapping with its own position.
+     */
+    private ByteBuffer mapped(Segment segment) throws IOException {
+        if (segment.mapped == null
+        || segment.mapped.capacity() < segment.size) {
+            segment.mapped = channel(segment).map(
+            FileChannel.MapMode.READ_ONLY, 0, segment.size);
+        }
+        return segment.mapped.duplicate();
+    }
+
+    /**
+     * Appends index entries for durable records to a segment's index
+     * file, creating it first if needed. The index is only an
+     * accelerator, so failures are logged and the next load reads the
+     * missing records from the segment instead.
+     */
+    private void appendIndex(Segment segment, List<Entry> entries) {
+        if (segment.damaged) {
+            return;
+        }
+        try {
+            FileChannel channel = indexChannel(segment);
+            ByteBuffer buffer = ByteBuffer.allocate(
+            entries.size() * INDEX_ENTRY_BYTES);
+            CRC32 crc = new CRC32();
+            for (Entry entry : entries) {
+                int start = buffer.position();
+                buffer.putLong(entry.offset);
+                buffer.putInt(entry.length);
+                buffer.put(entry.status == null ? OP_REMOVE : OP_ARCHIVE);
+                buffer.putInt(entry.orderId);
+                buffer.putInt(entry.customerId);
+                buffer.put((byte) (entry.status == null ? 0
+                : entry.status.ordinal() + 1));
+                buffer.putLong(entry.epochSecond);
+                crc.reset();
+                crc.update(buffer.array(), start, INDEX_ENTRY_BYTES - 4);
+                buffer.putInt((int) crc.getValue());
+            }
+            buffer.flip();
+            long position = segment.indexSize;
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer, position);
+            }
+            segment.indexSize = position;
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to update order archive index "
+            + segment.indexFile.getPath() + ". It is rebuilt on the next "
+            + "load.", e);
+            segment.indexSize = 0;
+        }
+    }
+
+    /**
+     * Opens a segment's index file for appending, writing its header if it
+     * is new or being rebuilt and cutting off anything after the usable
+     * entries.
+     */
+    private FileChannel indexChannel(Segment segment) throws IOException {
+        if (segment.indexChannel == null) {
+            if (!directory.isDirectory() && !directory.mkdirs()) {
+                throw new IOException("Could not create order archive "
+                + "directory " + directory.getPath());
+            }
+            segment.indexChannel = FileChannel.open(
+            segment.indexFile.toPath(), StandardOpenOption.CREATE,
+            StandardOpenOption.READ, StandardOpenOption.WRITE);
+        }
+        FileChannel channel = segment.indexChannel;
+        if (segment.indexSize < INDEX_HEADER_BYTES) {
+            ByteBuffer header = ByteBuffer.allocate(INDEX_HEADER_BYTES);
+            header.putInt(INDEX_MAGIC);
+            header.putShort(FORMAT_VERSION);
+            header.flip();
+            channel.truncate(0);
+            while (header.hasRemaining()) {
+                channel.write(header, header.position());
+            }
+            segment.indexSize = INDEX_HEADER_BYTES;
+        } else if (channel.size() > segment.indexSize) {
+            channel.truncate(segment.indexSize);
+        }
+        return channel;
+    }
+
+    /**
+     * Writes one record at the end of a segment.
+     *
+     * @return The offset of the record.
+     */
+    private long append(Segment segment, byte op, int orderId,
+    int customerId, OrderStatus status, LocalDateTime orderTimestamp,
+    byte[] payload) throws IOException {
+        if (segment.damaged) {
+            throw new IOException("Order archive segment "
+            + segment.file.getPath() + " is damaged");
+        }
+        int length = RECORD_HEADER_BYTES + payload.length;
+        ByteBuffer buffer = ByteBuffer.allocate(RECORD_PREFIX_BYTES + length);
+        buffer.putInt(length);
+        buffer.putInt(0); // CRC, filled in below
+        buffer.put(op);
+        buffer.putInt(orderId);
+        buffer.putInt(customerId);
+        buffer.put((byte) (status == null ? 0 : status.ordinal() + 1));
+        buffer.putLong(epochSecond(orderTimestamp));
+        buffer.put(payload);
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), RECORD_PREFIX_BYTES, length);
+        buffer.putInt(4, (int) crc.getValue());
+        buffer.flip();
+
+        // Opening a new segment writes its header and moves the end
+        FileChannel channel = channel(segment);
+        long offset = segment.size;
+        long position = offset;
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+        segment.size = position;
+        return offset;
+    }
+
+    private Segment segmentFor(Order order) {
+        LocalDateTime placed = order.getOrderTimestamp() != null
+        ? order.getOrderTimestamp() : order.getLastUpdatedTimestamp();
+        YearMonth month = placed != null ? YearMonth.from(placed)
+        : YearMonth.now();
+        return segments.computeIfAbsent(month, key -> new Segment(
+        new File(directory, key + SEGMENT_SUFFIX)));
+    }
+
+    /**
+     * Opens a segment for reading and appending, creating it with a header
+     * if it is new and cutting off any torn record at its end. Damaged
+     * segments are opened for reading only.
+     */
+    private FileChannel channel(Segment segment) throws IOException {
+        if (segment.channel != null) {
+            return segment.channel;
+        }
+        if (segment.damaged) {
+            segment.channel = FileChannel.open(segment.file.toPath(),
+            StandardOpenOption.READ);
+            return segment.channel;
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create order archive directory "
+            + directory.getPath());
+        }
+        FileChannel channel = FileChannel.open(segment.file.toPath(),
+        StandardOpenOption.CREATE, StandardOpenOption.READ,
+        StandardOpenOption.WRITE);
+        try {
+            if (segment.size < SEGMENT_HEADER_BYTES) {
+                ByteBuffer header = ByteBuffer.allocate(SEGMENT_HEADER_BYTES);
+                header.putInt(SEGMENT_MAGIC);
+                header.putShort(FORMAT_VERSION);
+                header.flip();
+                channel.truncate(0);
+                while (header.hasRemaining()) {
+                    channel.write(header, header.position());
+                }
+                segment.size = SEGMENT_HEADER_BYTES;
+            } else if (channel.size() > segment.size) {
+                channel.truncate(segment.size);
+            }
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        segment.channel = channel;
+        return channel;
+    }
+
+    private void force(Set<Segment> touched) throws IOException {
+        for (Segment segment : touched) {
+            segment.channel.force(false);
+        }
+    }
+
+    private static long epochSecond(LocalDateTime timestamp) {
+        return timestamp == null ? NO_TIMESTAMP
+        : timestamp.toEpochSecond(ZoneOffset.UTC);
+    }
+
+    private void index(int orderId, Entry entry) {
+        unindex(orderId);
+        cache.remove(orderId);
+        entries.put(orderId, entry);
+        byTime.add(entry);
+        idsByCustomer.computeIfAbsent(entry.customerId,
+        key -> new IntHashSet()).add(orderId);
+        maxOrderId = Math.max(maxOrderId, orderId);
+    }
+
+    private void unindex(int orderId) {
+        cache.remove(orderId);
+        Entry previous = entries.remove(orderId);
+        if (previous == null) {
+            return;
+        }
+        byTime.remove(previous);
+        IntHashSet ids = idsByCustomer.get(previous.customerId);
+        if (ids != null) {
+            ids.remove(orderId);
+            if (ids.isEmpty()) {
+                idsByCustomer.remove(previous.customerId);
+            }
+        }
+    }
+
+    private static void skipFully(DataInputStream in, long bytes)
+    throws IOException {
+        long remaining = bytes;
+        while (remaining > 0) {
+            long skipped = in.skip(remaining);
+            if (skipped <= 0) {
+                throw new EOFException("Truncated order archive record");
+            }
+            remaining -= skipped;
+        }
+    }
+}
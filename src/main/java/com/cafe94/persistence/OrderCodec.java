@@ -0,0 +1,318 @@
+package com.cafe94.persistence;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.IntFunction;
+
+import com.cafe94.domain.Delivery;
+import com.cafe94.domain.EatIn;
+import com.cafe94.domain.Item;
+import com.cafe94.domain.Order;
+import com.cafe94.domain.OrderLine;
+import com.cafe94.domain.Takeaway;
+import com.cafe94.enums.OrderStatus;
+
+/**
+ * Binary codec for {@link Order} records of all three kinds.
+ * <p>
+ * Orders are stored as {@link OrderLine}s. Every item is stored with
+ * the values it had when the order was written: ID, unit price charged,
+ * name, category and special flag, so later menu changes never alter a
+ * past order. An item decodes to the menu's own instance only while the
+ * menu item still has the same name, category and flag; otherwise it
+ * decodes to an item interned per codec, so every order decoded with it
+ * shares one instance.
+ * <p>
+ * Version 1 layout: version byte, kind byte, varint order ID and customer
+ * ID, status ordinal, order and last updated timestamps, varint item count
+ * and items, then the table number, pickup time, or delivery address,
+ * estimated time and driver ID. Version 2 appends the varint record
+ * version; version 1 records decode at version 0. Version 3 replaces the
+ * items, one per unit, with a varint line count and lines, each an item
+ * followed by a varint quantity. Before version 4 an item that matched the
+ * menu was written as a reference holding only its ID and unit price;
+ * such references still resolve against the current menu, or to a
+ * placeholder carrying the ID if the item has since been removed. Version
+ * 4 writes every item inline and drops the tag byte.
+ * @author Adigun Lateef
+ * @version 1.0
+ */
+final class OrderCodec implements RecordCodec<Order> {
+
+    private static final int FORMAT_VERSION = 4;
+    // Lines whose items may be menu references
+    private static final int TAGGED_LINES_FORMAT = 3;
+    private static final int UNVERSIONED_FORMAT = 1;
+    // Versions before order lines store one item per unit
+    private static final int UNIT_ITEMS_FORMAT = 2;
+    private static final int KIND_EAT_IN = 1;
+    private static final int KIND_TAKEAWAY = 2;
+    private static final int KIND_DELIVERY = 3;
+    private static final int ITEM_REFERENCE = 0;
+    private static final int ITEM_INLINE = 1;
+    private static final int ITEM_NULL = 2;
+    private static final String PLACEHOLDER_CATEGORY = "Unavailable";
+    private static final OrderStatus[] STATUSES = OrderStatus.values();
+
+    private final IntFunction<Item> menu;
+    private final Map<Integer, Item> placeholders = new ConcurrentHashMap<>();
+    private final Map<InlineKey, Item> inlineItems = new ConcurrentHashMap<>();
+
+    /**
+     * @param menu Looks up current menu items by ID, returning null for
+     *             unknown IDs; used to share unchanged menu items
+     * @throws NullPointerException if menu is null.
+     */
+    OrderCodec(IntFunction<Item> menu) {
+        this.menu = Objects.requireNonNull(menu,
+        "Menu lookup cannot be null.");
+    }
+
+    @Override
+    public byte[] encode(Order order) throws IOException {
+        int kind = kindOf(order);
+        List<OrderLine> lines = order.getLines();
+        BinaryRecordWriter out =
+        new BinaryRecordWriter(32 + lines.size() * 8);
+        out.writeByte(FORMAT_VERSION);
+        out.writeByte(kind);
+        out.writeVarInt(order.getOrderID());
+        out.writeVarInt(order.getCustomerID());
+        out.writeEnum(order.getStatus());
+        out.writeDateTime(order.getOrderTimestamp());
+        out.writeDateTime(order.getLastUpdatedTimestamp());
+        out.writeVarInt(lines.size());
+        for (OrderLine line : lines) {
+            Item item = line.getItem();
+            out.writeVarInt(item.getItemID());
+            out.writePence(line.getUnitPence());
+            out.writeString(item.getName());
+            out.writeString(item.getCategory());
+            out.writeBoolean(item.isDailySpecial());
+            out.writeVarInt(line.getQuantity());
+        }
+        switch (kind) {
+            case KIND_EAT_IN:
+                out.writeVarInt(((EatIn) order).getTableNumber());
+                break;
+            case KIND_TAKEAWAY:
+                out.writeTime(((Takeaway) order).getPickupTime());
+                break;
+            default:
+                Delivery delivery = (Delivery) order;
+                out.writeString(delivery.getDeliveryAddress());
+                out.writeTime(delivery.getEstimatedDeliveryTime());
+                out.writeVarInt(delivery.getAssignedDriverID());
+                break;
+        }
+        out.writeVarLong(order.getVersion());
+        return out.toByteArray();
+    }
+
+    @Override
+    public Order decode(byte[] payload) throws IOException {
+        BinaryRecordReader in = new BinaryRecordReader(payload);
+        int version = in.readByte();
+        if (version < UNVERSIONED_FORMAT || version > FORMAT_VERSION) {
+            throw new IOException("Unsupported order record version "
+            + version);
+        }
+        int kind = in.readByte();
+        int orderId = in.readVarInt();
+        int customerId = in.readVarInt();
+        OrderStatus status = in.readEnum(STATUSES);
+        LocalDateTime orderTimestamp = in.readDateTime();
+        LocalDateTime lastUpdated = in.readDateTime();
+        int count = in.readVarInt();
+        List<Item> items;
+        if (version > UNIT_ITEMS_FORMAT) {
+            List<OrderLine> lines = new ArrayList<>(Math.min(count, 256));
+            for (int i = 0; i < count; i++) {
+                lines.add(version == FORMAT_VERSION ? readLine(in)
+                : readTaggedLine(in));
+            }
+            items = OrderLine.asItems(lines);
+        } else {
+            // The order groups the units into lines
+            items = new ArrayList<>(Math.min(count, 256));
+            for (int i = 0; i < count; i++) {
+                items.add(readUnitItem(in));
+            }
+        }
+
+        Order order;
+        switch (kind) {
+            case KIND_EAT_IN:
+                order = new EatIn(orderId, items, customerId,
+                in.readVarInt(), status);
+                break;
+            case KIND_TAKEAWAY:
+                order = new Takeaway(orderId, items, customerId, status,
+                in.readTime());
+                break;
+            case KIND_DELIVERY:
+                Delivery delivery = new Delivery(orderId, items, customerId,
+                in.readString(), status);
+                LocalTime estimatedTime = in.readTime();
+                int driverId = in.readVarInt();
+                if (estimatedTime != null) {
+                    delivery.setEstimatedDeliveryTime(estimatedTime);
+                }
+                if (driverId > 0) {
+                    delivery.assignDriver(driverId);
+                }
+                order = delivery;
+                break;
+            default:
+                throw new IOException("Unknown order kind " + kind);
+        }
+        if (orderTimestamp != null) {
+            order.restoreTimestamps(orderTimestamp, lastUpdated);
+        }
+        if (version != UNVERSIONED_FORMAT) {
+            order.restoreVersion(in.readVarLong());
+        }
+        return order;
+    }
+
+    /**
+     * Reads a version 4 order line, whose item is always inline.
+     */
+    private OrderLine readLine(BinaryRecordReader in) throws IOException {
+        int itemId = in.readVarInt();
+        long unitPence = in.readPence();
+        Item item = resolveInline(new InlineKey(itemId, in.readString(),
+        in.readString(), unitPence, in.readBoolean()));
+        return new OrderLine(item, in.readVarInt(), unitPence);
+    }
+
+    /**
+     * Reads a version 3 order line. Lines never hold null items.
+     */
+    private OrderLine readTaggedLine(BinaryRecordReader in)
+    throws IOException {
+        int tag = in.readByte();
+        int itemId = in.readVarInt();
+        long unitPence = in.readPence();
+        Item item = resolve(in, tag, itemId, unitPence);
+        return new OrderLine(item, in.readVarInt(), unitPence);
+    }
+
+    /**
+     * Reads one unit of an order written before version 3, or null.
+     */
+    private Item readUnitItem(BinaryRecordReader in) throws IOException {
+        int tag = in.readByte();
+        if (tag == ITEM_NULL) {
+            return null;
+        }
+        int itemId = in.readVarInt();
+        long pence = in.readPence();
+        Item item = resolve(in, tag, itemId, pence);
+        // Units carry the price charged, which the order groups by
+        return item.getPricePence() == pence ? item
+        : ItemCodec.newItem(itemId, item.getName(), item.getCategory(),
+        pence, item.isDailySpecial());
+    }
+
+    /**
+     * Returns the shared item for a tag written before version 4: for an
+     * inline item, whose fields follow, as {@link #resolveInline}; for a
+     * reference, the menu's instance or an interned placeholder, as the
+     * reference never held the item's other values.
+     */
+    private Item resolve(BinaryRecordReader in, int tag, int itemId,
+    long pence) throws IOException {
+        if (tag == ITEM_INLINE) {
+            return resolveInline(new InlineKey(itemId, in.readString(),
+            in.readString(), pence, in.readBoolean()));
+        }
+        if (tag != ITEM_REFERENCE) {
+            throw new IOException("Unknown order item tag " + tag);
+        }
+        Item current = menu.apply(itemId);
+        if (current != null) {
+            return current;
+        }
+        return placeholders.computeIfAbsent(itemId, id -> ItemCodec.newItem(
+        id, "Item #" + id, PLACEHOLDER_CATEGORY, pence, false));
+    }
+
+    /**
+     * Returns the menu's instance if it still has the stored name,
+     * category and flag, otherwise the interned item for the stored
+     * values. The unit price lives on the line, so the menu price may
+     * differ.
+     */
+    private Item resolveInline(InlineKey key) {
+        Item current = key.itemId > 0 ? menu.apply(key.itemId) : null;
+        if (current != null
+        && Objects.equals(current.getName(), key.name)
+        && Objects.equals(current.getCategory(), key.category)
+        && current.isDailySpecial() == key.special) {
+            return current;
+        }
+        return inlineItems.computeIfAbsent(key, InlineKey::toItem);
+    }
+
+    /**
+     * The fields of an inline item, identifying its interned instance.
+     */
+    private static final class InlineKey {
+        private final int itemId;
+        private final String name;
+        private final String category;
+        private final long pence;
+        private final boolean special;
+
+        private InlineKey(int itemId, String name, String category,
+        long pence, boolean special) {
+            this.itemId = itemId;
+            this.name = name;
+            this.category = category;
+            this.pence = pence;
+            this.special = special;
+        }
+
+        private Item toItem() {
+            return ItemCodec.newItem(itemId, name, category, pence, special);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof InlineKey)) return false;
+            InlineKey other = (InlineKey) o;
+            return itemId == other.itemId
+            && pence == other.pence
+            && special == other.special
+            && Objects.equals(name, other.name)
+            && Objects.equals(category, other.category);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(itemId, name, category, pence, special);
+        }
+    }
+
+    private static int kindOf(Order order) throws IOException {
+        Class<?> type = order.getClass();
+        if (type == EatIn.class) {
+            return KIND_EAT_IN;
+        }
+        if (type == Takeaway.class) {
+            return KIND_TAKEAWAY;
+        }
+        if (type == Delivery.class) {
+            return KIND_DELIVERY;
+        }
+        throw new IOException("No binary encoding for " + type.getName());
+    }
+}
@@ -0,0 +1,286 @@
+package com.cafe94.persistence;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Objects;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import com.cafe94.domain.Delivery;
+import com.cafe94.domain.Order;
+import com.cafe94.enums.OrderStatus;
+
+/**
+ * Secondary indexes over the live orders of an {@link OrderRepository}:
+ * orders by customer and by assigned driver, newest first, and orders by
+ * status and all orders, oldest first. Lookups and keyset pages cost time
+ * proportional to the result rather than to the number of orders held.
+ * <p>
+ * Orders are mutable and services change them before saving, so the index
+ * remembers the customer, driver, status and timestamp each order was
+ * indexed under and uses those to unlink it on the next update. Each
+ * update replaces all of an order's entries under the write lock, so
+ * readers never see an order half moved between keys.
+ * @author Adigun Lateef
+ * @version 1.0
+ */
+final class OrderIndex {
+
+    /** Oldest first, matching the status queries of the repository. */
+    private static final Comparator<Entry> OLDEST_FIRST =
+    Comparator.comparing((Entry entry) -> entry.timestamp,
+    Comparator.nullsLast(Comparator.naturalOrder()))
+    .thenComparingInt(entry -> entry.orderId);
+    /** Newest first, matching the customer and driver queries. */
+    private static final Comparator<Entry> NEWEST_FIRST =
+    Comparator.comparing((Entry entry) -> entry.timestamp,
+    Comparator.nullsLast(Comparator.reverseOrder()))
+    .thenComparingInt(entry -> entry.orderId);
+    private static final OrderStatus[] STATUSES = OrderStatus.values();
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<Integer, Entry> entries = new HashMap<>();
+    private final Map<Integer, NavigableSet<Entry>> byCustomer =
+    new HashMap<>();
+    private final Map<Integer, NavigableSet<Entry>> byDriver =
+    new HashMap<>();
+    private final Map<OrderStatus, NavigableSet<Entry>> byStatus =
+    new EnumMap<>(OrderStatus.class);
+    private final NavigableSet<Entry> byTime = new TreeSet<>(OLDEST_FIRST);
+
+    /**
+     * The keys one order was indexed under.
+     */
+    private static final class Entry {
+        private final Order order;
+        private final int orderId;
+        private final int customerId;
+        private final int driverId;
+        private final OrderStatus status;
+        private final LocalDateTime timestamp;
+
+        private Entry(Order order) {
+            this.order = order;
+            this.orderId = order.getOrderID();
+            this.customerId = order.getCustomerID();
+            this.driverId = order instanceof Delivery
+            ? ((Delivery) order).getAssignedDriverID() : 0;
+            this.status = order.getStatus();
+            this.timestamp = order.getOrderTimestamp();
+        }
+
+        /** A search key only, positioned at the given timestamp and ID. */
+        private Entry(LocalDateTime timestamp, int orderId) {
+            this.order = null;
+            this.orderId = orderId;
+            this.customerId = 0;
+            this.driverId = 0;
+            this.status = null;
+            this.timestamp = timestamp;
+        }
+    }
+
+    /**
+     * Indexes a saved order, replacing whatever it was indexed under
+     * before.
+     *
+     * @param order The saved order
+     * @throws NullPointerException if order is null.
+     */
+    void put(Order order) {
+        Objects.requireNonNull(order, "Order cannot be null.");
+        Entry entry = new Entry(order);
+        lock.writeLock().lock();
+        try {
+            unlink(entries.put(entry.orderId, entry));
+            link(entry);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Indexes many orders at once, e.g. after loading.
+     *
+     * @param orders The orders
+     */
+    void putAll(Collection<Order> orders) {
+        lock.writeLock().lock();
+        try {
+            for (Order order : orders) {
+                Entry entry = new Entry(order);
+                unlink(entries.put(entry.orderId, entry));
+                link(entry);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes orders from every index.
+     *
+     * @param orderIds The IDs of the deleted or archived orders
+     */
+    void removeAll(Collection<Integer> orderIds) {
+        lock.writeLock().lock();
+        try {
+            for (Integer orderId : orderIds) {
+                unlink(entries.remove(orderId));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @param customerId The customer ID
+     * @return The customer's orders, newest first.
+     */
+    List<Order> findByCustomerId(int customerId) {
+        return find(byCustomer, customerId);
+    }
+
+    /**
+     * @param driverId The driver's user ID
+     * @return The deliveries assigned to the driver, newest first.
+     */
+    List<Order> findByDriverId(int driverId) {
+        return find(byDriver, driverId);
+    }
+
+    /**
+     * Merges the per-status sets, each already oldest first, so the cost
+     * stays proportional to the result.
+     *
+     * @param statuses The statuses to match
+     * @return The orders indexed under one of the statuses, oldest first.
+     */
+    List<Order> findByStatuses(Collection<OrderStatus> statuses) {
+        lock.readLock().lock();
+        try {
+            List<Iterator<Entry>> cursors = new ArrayList<>();
+            boolean[] seen = new boolean[STATUSES.length];
+            int size = 0;
+            for (OrderStatus status : statuses) {
+                NavigableSet<Entry> set = byStatus.get(status);
+                if (set != null && !seen[status.ordinal()]) {
+                    seen[status.ordinal()] = true;
+                    cursors.add(set.iterator());
+                    size += set.size();
+                }
+            }
+            Entry[] heads = new Entry[cursors.size()];
+            for (int i = 0; i < heads.length; i++) {
+                heads[i] = cursors.get(i).next();
+            }
+            List<Order> result = new ArrayList<>(size);
+            // A handful of statuses at most, so a scan picks the oldest
+            while (true) {
+                int oldest = -1;
+                for (int i = 0; i < heads.length; i++) {
+                    if (heads[i] != null && (oldest < 0
+                    || OLDEST_FIRST.compare(heads[i], heads[oldest]) < 0)) {
+                        oldest = i;
+                    }
+                }
+                if (oldest < 0) {
+                    return result;
+                }
+                result.add(heads[oldest].order);
+                Iterator<Entry> cursor = cursors.get(oldest);
+                heads[oldest] = cursor.hasNext() ? cursor.next() : null;
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Finds the next orders after a keyset cursor, oldest first.
+     *
+     * @param afterTimestamp Timestamp of the last order already seen, or
+     *                       null to start from the oldest order
+     * @param afterId        ID of the last order already seen
+     * @param limit          The most orders to return
+     * @return Up to limit orders ordered after the cursor.
+     */
+    List<Order> findPage(LocalDateTime afterTimestamp, int afterId,
+    int limit) {
+        lock.readLock().lock();
+        try {
+            NavigableSet<Entry> tail = afterTimestamp == null ? byTime
+            : byTime.tailSet(new Entry(afterTimestamp, afterId), false);
+            List<Order> result = new ArrayList<>();
+            for (Entry entry : tail) {
+                if (result.size() >= limit) {
+                    break;
+                }
+                result.add(entry.order);
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private List<Order> find(Map<Integer, NavigableSet<Entry>> index,
+    int key) {
+        lock.readLock().lock();
+        try {
+            NavigableSet<Entry> set = index.get(key);
+            if (set == null) {
+                return Collections.emptyList();
+            }
+            List<Order> result = new ArrayList<>(set.size());
+            for (Entry entry : set) {
+                result.add(entry.order);
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void link(Entry entry) {
+        byCustomer.computeIfAbsent(entry.customerId,
+        key -> new TreeSet<>(NEWEST_FIRST)).add(entry);
+        if (entry.driverId > 0) {
+            byDriver.computeIfAbsent(entry.driverId,
+            key -> new TreeSet<>(NEWEST_FIRST)).add(entry);
+        }
+        if (entry.status != null) {
+            byStatus.computeIfAbsent(entry.status,
+            key -> new TreeSet<>(OLDEST_FIRST)).add(entry);
+        }
+        byTime.add(entry);
+    }
+
+    private void unlink(Entry entry) {
+        if (entry == null) {
+            return;
+        }
+        removeFrom(byCustomer, entry.customerId, entry);
+        removeFrom(byDriver, entry.driverId, entry);
+        removeFrom(byStatus, entry.status, entry);
+        byTime.remove(entry);
+    }
+
+    private static <K> void removeFrom(Map<K, NavigableSet<Entry>> index,
+    K key, Entry entry) {
+        NavigableSet<Entry> set = index.get(key);
+        if (set != null && set.remove(entry) && set.isEmpty()) {
+            index.remove(key);
+        }
+    }
+}
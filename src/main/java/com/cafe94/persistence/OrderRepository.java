@@ -1,49 +1,99 @@
 package com.cafe94.persistence;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
+import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.EnumSet;
-import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.TreeMap;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import com.cafe94.domain.Delivery;
 import com.cafe94.domain.EatIn;
 import com.cafe94.domain.Order;
 import com.cafe94.domain.Takeaway;
 import com.cafe94.enums.OrderStatus;
+import com.cafe94.util.primitive.IntHashSet;
+import com.cafe94.util.primitive.IntLongMap;
+import com.cafe94.util.primitive.IntObjectConcurrentMap;
 
 /**
  * Concrete implementation of {@link IOrderRepository} using Java Serialization
- * for persistence
+ * for persistence. In journaled mode each mutation is appended to a
+ * {@link RecordJournal} instead of rewriting the data file, and the journal
+ * is replayed on top of the data file at startup. A {@link JournalCompactor}
+ * folds the journal back into the data file in the background.
+ * <p>
+ * When archiving is enabled in the {@link StorageOptions}, orders that have
+ * been in a final status for longer than the configured delay are moved
+ * to an {@link OrderArchive} by the same background task and dropped from
+ * memory, so heap usage and startup time follow the number of active
+ * orders rather than the whole history. Lookups by ID and by customer,
+ * {@link #findAll()}, {@link #findOrdersByStatuses(List)} and
+ * {@link #findTopCustomersByOrderCount(int)} include archived orders.
+ * <p>
+ * Live orders are also kept in an {@link OrderIndex} by customer, driver
+ * and status, updated with every save and delete, so those lookups cost
+ * time proportional to the result rather than to the number of orders.
+ * <p>
+ * {@link #findPage(LocalDateTime, int, int)} and {@link #streamAll()} walk
+ * live and archived orders together in timestamp order, one keyset page at
+ * a time, so large histories can be processed in constant memory.
+ * <p>
+ * Saves and deletes lock only the stripe their order ID hashes to, so
+ * updates to different orders run in parallel. The stripe keeps the map,
+ * the journal and the index in the same order for any one order, and the
+ * journal's sequence numbers order the changes on disk. Archiving and
+ * transactions take the mutation lock exclusively to keep every other
+ * writer out.
  * @author Adigun Lateef
  * @version 1.0
  */
-public class OrderRepository implements IOrderRepository {
+public class OrderRepository implements IOrderRepository, DurableRepository {
 
     private static final Logger LOGGER =
     Logger.getLogger(OrderRepository.class.getName());
-    private final Map<Integer, Order> orders = new ConcurrentHashMap<>();
+    private static final Set<OrderStatus> ACTIVE_STATUSES =
+    Collections.unmodifiableSet(Arrays.stream(OrderStatus.values())
+    .filter(status -> !status.isFinalStatus())
+    .collect(Collectors.toCollection(() ->
+    EnumSet.noneOf(OrderStatus.class))));
+    /** Keyset order of the paged queries: timestamp, then ID. */
+    static final Comparator<Order> OLDEST_FIRST =
+    Comparator.comparing(Order::getOrderTimestamp,
+    Comparator.nullsLast(Comparator.naturalOrder()))
+    .thenComparingInt(Order::getOrderID);
+    private static final int STREAM_PAGE_SIZE = 256;
+    /** Number of order lock stripes; a power of two. */
+    private static final int LOCK_STRIPES = 64;
+    private final IntObjectConcurrentMap<Order> orders =
+    new IntObjectConcurrentMap<>();
     private final AtomicInteger nextId = new AtomicInteger(1);
     private final String storageFilePath;
+    private final RecordStore<Order> store;
+    private final OrderIndex index = new OrderIndex();
+    private final OrderArchive archive;
+    private final long archiveAfterMinutes;
+    // Shared by single-order writers, exclusive for archiving/transactions
+    private final ReadWriteLock mutationLock = new ReentrantReadWriteLock();
+    private final Object[] stripes = new Object[LOCK_STRIPES];
 
     /**
      * Constructs the repository, loading existing data from the specified
@@ -54,16 +104,94 @@ public class OrderRepository implements IOrderRepository {
      * @throws NullPointerException if storageFilePath is null.
      */
     public OrderRepository(String storageFilePath) {
+        this(storageFilePath, StorageOptions.snapshot());
+    }
+
+    /**
+     * Constructs the repository with explicit storage options, loading
+     * existing data and, in journaled mode, replaying the journal.
+     *
+     * @param storageFilePath The path to the file for storing order data
+     * @param storageOptions  How mutations are persisted
+     * @throws NullPointerException if any argument is null.
+     */
+    public OrderRepository(String storageFilePath,
+    StorageOptions storageOptions) {
+        this(storageFilePath, storageOptions, null);
+    }
+
+    /**
+     * Constructs the repository with explicit storage options and a menu
+     * to share unchanged items with. With the binary codec, order items
+     * are stored with their values when ordered and decode to the menu's
+     * own instance while it still matches; references written by older
+     * versions resolve against it, so the menu must be loaded before this
+     * repository.
+     *
+     * @param storageFilePath The path to the file for storing order data
+     * @param storageOptions  How mutations are persisted
+     * @param menuRepository  The menu, or null to share no items
+     * @throws NullPointerException if storageFilePath or storageOptions is
+     * null.
+     */
+    public OrderRepository(String storageFilePath,
+    StorageOptions storageOptions, IMenuRepository menuRepository) {
         this.storageFilePath = Objects.requireNonNull(storageFilePath,
         "Storage file path cannot be null.");
-        loadData();
-        int maxId =
-        orders.keySet().stream().max(Integer::compare).orElse(0);
+        Objects.requireNonNull(storageOptions,
+        "Storage options cannot be null.");
+        OrderCodec codec = new OrderCodec(itemId -> menuRepository == null
+        ? null : menuRepository.findById(itemId).orElse(null));
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new Object();
+        }
+        this.store = new RecordStore<>(storageFilePath, "order", Order.class,
+        orders, storageOptions, codec);
+        store.load();
+        // Bounds how many archived orders stay decoded on the heap
+        this.archive = new OrderArchive(new File(storageFilePath),
+        (int) Math.min(Integer.MAX_VALUE, StorageOptions.longProperty(
+        "orders", "archiveCacheSize", OrderArchive.DEFAULT_CACHE_SIZE, 0)));
+        this.archiveAfterMinutes = storageOptions.isArchiving()
+        ? storageOptions.getArchiveAfterMinutes() : 0;
+        if (!storageOptions.isInMemory()) {
+            archive.load();
+        }
+        dropArchivedCopiesOfLiveOrders();
+        index.putAll(orders.values());
+        int maxId = Math.max(archive.getMaxOrderId(),
+        orders.keySet().stream().max(Integer::compare).orElse(0));
         nextId.set(maxId + 1);
         LOGGER.log(Level.INFO,
-        "OrderRepository initialized. Loaded {0} orders from {1}. " +
-        "Next ID: {2}",
-        new Object[]{orders.size(), this.storageFilePath, nextId.get()});
+        "OrderRepository initialized. Loaded {0} orders from {1}, {2} " +
+        "archived. Next ID: {3}",
+        new Object[]{orders.size(), this.storageFilePath, archive.size(),
+            nextId.get()});
+    }
+
+    /**
+     * An order can be both live and archived if the process stopped
+     * between archiving it and removing it from the live store. The live
+     * copy wins; the archived copy is removed so a later deletion of the
+     * live order cannot bring it back.
+     */
+    private void dropArchivedCopiesOfLiveOrders() {
+        for (Integer orderId : orders.keySet()) {
+            removeFromArchive(orderId);
+        }
+    }
+
+    private boolean removeFromArchive(int orderId) {
+        if (!archive.contains(orderId)) {
+            return false;
+        }
+        try {
+            return archive.remove(orderId);
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Failed to remove order " + orderId
+            + " from the archive. It may reappear after a restart.", e);
+            return false;
+        }
     }
 
     /**
@@ -74,7 +202,127 @@ public class OrderRepository implements IOrderRepository {
      * @throws NullPointerException if order is null.
      */
     @Override
-    public synchronized Order save(Order order) {
+    public Order save(Order order) {
+        return saveIfVersion(order, TransactionParticipant.ANY_VERSION);
+    }
+
+    /**
+     * Saves an order only if the stored order is still at the given
+     * version
+     *
+     * @param order           The Order to save or update
+     * @param expectedVersion The version the caller read
+     * @return The saved Order object
+     * @throws StaleRecordException if the stored version differs.
+     * @throws NullPointerException if order is null.
+     */
+    @Override
+    public Order saveIfVersion(Order order, long expectedVersion) {
+        Order saved = applySave(order, expectedVersion);
+        // Wait outside the locks so concurrent saves share one fsync
+        store.awaitDurable();
+        return saved;
+    }
+
+    private Order applySave(Order order, long expectedVersion) {
+        mutationLock.readLock().lock();
+        try {
+            Order orderToSave = prepareSave(order);
+            int orderId = orderToSave.getOrderID();
+            synchronized (stripeFor(orderId)) {
+                stampVersion(orderToSave, expectedVersion, null);
+                applyPrepared(orderToSave);
+                return orders.get(orderId);
+            }
+        } finally {
+            mutationLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Applies a change to a live or archived order and saves it, only if
+     * the order is still at the given version
+     *
+     * @param orderId         The ID of the order
+     * @param expectedVersion The version the caller read
+     * @param change          The change to apply
+     * @return The saved Order object
+     * @throws StaleRecordException if the stored version differs.
+     * @throws NoSuchElementException if no order has the ID.
+     * @throws NullPointerException if change is null.
+     */
+    @Override
+    public Order update(int orderId, long expectedVersion,
+    Consumer<? super Order> change) {
+        Objects.requireNonNull(change, "Change cannot be null.");
+        Order order;
+        mutationLock.readLock().lock();
+        try {
+            synchronized (stripeFor(orderId)) {
+                order = findById(orderId).orElseThrow(() ->
+                new NoSuchElementException(
+                "Order not found with ID: " + orderId));
+                stampVersion(order, expectedVersion, change);
+                applyPrepared(order);
+            }
+        } finally {
+            mutationLock.readLock().unlock();
+        }
+        store.awaitDurable();
+        return order;
+    }
+
+    /**
+     * Checks the stored version of a prepared order, applies the change,
+     * if any, and gives the order the next version. Callers must hold the
+     * order's stripe or the exclusive mutation lock.
+     */
+    private void stampVersion(Order order, long expectedVersion,
+    Consumer<? super Order> change) {
+        long current = checkStoredVersion(order.getOrderID(),
+        expectedVersion);
+        if (change != null) {
+            change.accept(order);
+        }
+        order.restoreVersion(current + 1);
+    }
+
+    /**
+     * @return The stored version of an order, once checked against the
+     * version the caller read.
+     * @throws StaleRecordException if the stored version differs.
+     */
+    private long checkStoredVersion(int orderId, long expectedVersion) {
+        long current = storedVersion(orderId);
+        if (expectedVersion != TransactionParticipant.ANY_VERSION
+        && expectedVersion != current) {
+            throw new StaleRecordException("Order", orderId,
+            expectedVersion, current);
+        }
+        return current;
+    }
+
+    private long storedVersion(int orderId) {
+        Order live = orders.get(orderId);
+        if (live != null) {
+            return live.getVersion();
+        }
+        if (!archive.contains(orderId)) {
+            return 0;
+        }
+        return archive.find(orderId).map(Order::getVersion).orElse(0L);
+    }
+
+    private Object stripeFor(int orderId) {
+        return stripes[orderId & (LOCK_STRIPES - 1)];
+    }
+
+    /**
+     * Assigns a new order its ID by copying it, or reserves the ID of an
+     * existing one. Only touches the atomic ID counter, so it needs no
+     * lock.
+     */
+    private Order prepareSave(Order order) {
         Objects.requireNonNull(order, "Order cannot be null.");
         int orderId = order.getOrderID();
         Order orderToSave = order;
@@ -85,55 +333,132 @@ public class OrderRepository implements IOrderRepository {
                 "DEBUG: Assigning new ID %d to order for " +
                 "customer: %d%n", newId, order.getCustomerID());
     
-            if (order instanceof EatIn) {
-                EatIn eatInOrder = (EatIn) order;
-                orderToSave = new EatIn(
-                        newId,
-                        eatInOrder.getItems(),
-                        eatInOrder.getCustomerID(),
-                        eatInOrder.getTableNumber(),
-                        eatInOrder.getStatus()
-                );
-            } else if (order instanceof Takeaway) {
-                Takeaway takeAwayOrder = (Takeaway) order;
-                orderToSave = new Takeaway(
-                        newId,
-                        takeAwayOrder.getItems(),
-                        takeAwayOrder.getCustomerID(),
-                        takeAwayOrder.getStatus(),
-                        takeAwayOrder.getPickupTime()
-                );
-            } else if (order instanceof Delivery) {
-                Delivery deliveryOrder = (Delivery) order;
-                orderToSave = new Delivery(
-                        newId,
-                        deliveryOrder.getItems(),
-                        deliveryOrder.getCustomerID(),
-                        deliveryOrder.getDeliveryAddress(), 
-                        deliveryOrder.getStatus()
-                );
-                    
-                ((Delivery) orderToSave).setEstimatedDeliveryTime(deliveryOrder
-                .getEstimatedDeliveryTime());
-                ((Delivery) orderToSave).assignDriver(deliveryOrder
-                .getAssignedDriverID());
-            } else {
-                throw new IllegalArgumentException
-                ("Unsupported Order subclass: " + order.getClass().getName());
-            }
-            orderId = newId;
+            orderToSave = copyWithId(order, newId);
         } else {
             
             nextId.accumulateAndGet(orderId + 1, Math::max);
         }
-    
+        return orderToSave;
+    }
+
+    /**
+     * Copies a new order under the ID it has been assigned.
+     *
+     * @param order The unsaved order
+     * @param newId The assigned ID
+     * @return A copy of the order with the new ID.
+     * @throws IllegalArgumentException if the order kind is unknown.
+     */
+    static Order copyWithId(Order order, int newId) {
+        if (order instanceof EatIn) {
+            EatIn eatInOrder = (EatIn) order;
+            return new EatIn(
+                    newId,
+                    eatInOrder.getItems(),
+                    eatInOrder.getCustomerID(),
+                    eatInOrder.getTableNumber(),
+                    eatInOrder.getStatus()
+            );
+        } else if (order instanceof Takeaway) {
+            Takeaway takeAwayOrder = (Takeaway) order;
+            return new Takeaway(
+                    newId,
+                    takeAwayOrder.getItems(),
+                    takeAwayOrder.getCustomerID(),
+                    takeAwayOrder.getStatus(),
+                    takeAwayOrder.getPickupTime()
+            );
+        } else if (order instanceof Delivery) {
+            Delivery deliveryOrder = (Delivery) order;
+            Delivery copy = new Delivery(
+                    newId,
+                    deliveryOrder.getItems(),
+                    deliveryOrder.getCustomerID(),
+                    deliveryOrder.getDeliveryAddress(),
+                    deliveryOrder.getStatus()
+            );
+            copy.setEstimatedDeliveryTime(deliveryOrder
+            .getEstimatedDeliveryTime());
+            if (deliveryOrder.getAssignedDriverID() > 0) {
+                copy.assignDriver(deliveryOrder.getAssignedDriverID());
+            }
+            return copy;
+        } else {
+            throw new IllegalArgumentException
+            ("Unsupported Order subclass: " + order.getClass().getName());
+        }
+    }
+
+    /**
+     * Publishes and persists a prepared order. Callers must hold the
+     * order's stripe or the exclusive mutation lock.
+     */
+    private void applyPrepared(Order orderToSave) {
+        int orderId = orderToSave.getOrderID();
         orders.put(orderId, orderToSave); 
         // Persist the data
-        saveData();
+        store.put(orderId, orderToSave);
+        index.put(orderToSave);
+        // A re-saved archived order lives in memory again
+        removeFromArchive(orderId);
         System.out.printf(
             "INFO: Saved order: ID %d, Customer: %d, Status: %s%n",
             orderId, orderToSave.getCustomerID(), orderToSave.getStatus());
-        return orders.get(orderId);
+    }
+
+    /**
+     * @return This repository as seen by a {@link TransactionManager}.
+     */
+    TransactionParticipant<Order> asParticipant() {
+        return new TransactionParticipant<Order>() {
+            @Override
+            public String getName() {
+                return "orders";
+            }
+
+            @Override
+            public void runExclusive(Runnable action) {
+                mutationLock.writeLock().lock();
+                try {
+                    action.run();
+                } finally {
+                    mutationLock.writeLock().unlock();
+                }
+            }
+
+            @Override
+            public RecordStore<Order> getStore() {
+                return store;
+            }
+
+            @Override
+            public void checkVersion(Order order, long expectedVersion) {
+                checkStoredVersion(order.getOrderID(), expectedVersion);
+            }
+
+            @Override
+            public Order prepare(Order order, long expectedVersion,
+            Consumer<? super Order> change) {
+                Order prepared = prepareSave(order);
+                stampVersion(prepared, expectedVersion, change);
+                return prepared;
+            }
+
+            @Override
+            public Order recover(Order order) {
+                return prepareSave(order);
+            }
+
+            @Override
+            public int getId(Order order) {
+                return order.getOrderID();
+            }
+
+            @Override
+            public void apply(Order order) {
+                applyPrepared(order);
+            }
+        };
     }
 
     /**
@@ -149,7 +474,8 @@ public class OrderRepository implements IOrderRepository {
              "findById called with non-positive ID: {0}", orderId);
             return Optional.empty();
         }
-        return Optional.ofNullable(orders.get(orderId));
+        Order order = orders.get(orderId);
+        return order != null ? Optional.of(order) : archive.find(orderId);
     }
 
     /**
@@ -158,17 +484,37 @@ public class OrderRepository implements IOrderRepository {
      * @return true if an order was found and deleted, false otherwise.
      */
     @Override
-    public synchronized boolean deleteById(int orderId) {
+    public boolean deleteById(int orderId) {
         if (orderId <= 0) {
             LOGGER.log(Level.WARNING,
             "Attempted to delete order with invalid ID: {0}", orderId);
             return false;
         }
+        boolean deleted;
+        mutationLock.readLock().lock();
+        try {
+            synchronized (stripeFor(orderId)) {
+                deleted = applyDeleteById(orderId);
+            }
+        } finally {
+            mutationLock.readLock().unlock();
+        }
+        // Wait outside the locks so concurrent writers share one fsync
+        store.awaitDurable();
+        return deleted;
+    }
+
+    private boolean applyDeleteById(int orderId) {
         Order removedOrder = orders.remove(orderId);
         if (removedOrder != null) {
-            saveData(); // Persist the removal
+            store.delete(orderId); // Persist the removal
+            index.removeAll(Collections.singleton(orderId));
             LOGGER.log(Level.INFO, "Deleted order ID: {0}", orderId);
             return true;
+        } else if (removeFromArchive(orderId)) {
+            LOGGER.log(Level.INFO, "Deleted archived order ID: {0}",
+            orderId);
+            return true;
         } else {
             LOGGER.log(Level.WARNING, "Order ID {0} not found for deletion.",
             orderId);
@@ -191,17 +537,22 @@ public class OrderRepository implements IOrderRepository {
             customerId);
             return Collections.emptyList();
         }
-        return orders.values().stream()
-                .filter(order -> order.getCustomerID() == customerId)
-                .sorted(Comparator.comparing(Order::getOrderTimestamp, 
-                Comparator.nullsLast(Comparator.reverseOrder())))
-                // Collect to an unmodifiable list
-                .collect(Collectors.collectingAndThen(Collectors.toList(),
-                Collections::unmodifiableList));
+        // Already newest first
+        List<Order> customerOrders = index.findByCustomerId(customerId);
+        List<Order> archived = archive.findByCustomerId(customerId);
+        if (archived.isEmpty()) {
+            return Collections.unmodifiableList(customerOrders);
+        }
+        List<Order> merged = new ArrayList<>(archived);
+        merged.addAll(customerOrders);
+        merged.sort(Comparator.comparing(Order::getOrderTimestamp,
+        Comparator.nullsLast(Comparator.reverseOrder())));
+        return Collections.unmodifiableList(merged);
     }
 
     /**
-     * Finds all orders currently assigned to a specific driver
+     * Finds all orders currently assigned to a specific driver. Archived
+     * orders are not included.
      *
      * @param driverId The user ID of the driver
      * @return An unmodifiable List containing Delivery Orders assigned
@@ -214,13 +565,10 @@ public class OrderRepository implements IOrderRepository {
              "findByDriverId called with non-positive ID: {0}", driverId);
             return Collections.emptyList();
         }
-        return orders.values().stream()
-                .filter(Delivery.class::isInstance)
-                .map(Delivery.class::cast)
-                .filter(deliveryOrder -> deliveryOrder
+        // Drop orders reassigned in memory but not yet saved
+        return index.findByDriverId(driverId).stream()
+                .filter(order -> ((Delivery) order)
                 .getAssignedDriverID() == driverId)
-                .sorted(Comparator.comparing(Order::getOrderTimestamp,
-                Comparator.nullsLast(Comparator.reverseOrder())))
                 .collect(Collectors.collectingAndThen(Collectors.toList(),
                 Collections::unmodifiableList));
     }
@@ -241,30 +589,121 @@ public class OrderRepository implements IOrderRepository {
         }
         
         Set<OrderStatus> statusSet = EnumSet.copyOf(statuses);
-        return orders.values().stream()
-                .filter(order -> statusSet.contains(order.getStatus()))
+        List<Order> matching = findLiveByStatuses(statusSet);
+        // Only finished orders are ever archived
+        if (statusSet.stream().anyMatch(OrderStatus::isFinalStatus)) {
+            List<Order> archived = archive.findByStatuses(statusSet);
+            if (!archived.isEmpty()) {
+                matching.addAll(archived);
+                matching.sort(Comparator.comparing(Order::getOrderTimestamp,
+                Comparator.nullsLast(Comparator.naturalOrder())));
+            }
+        }
+        return Collections.unmodifiableList(matching);
+    }
 
-                .sorted(Comparator.comparing(Order::getOrderTimestamp,
-                Comparator.nullsLast(Comparator.naturalOrder())))
-                
-                .collect(Collectors.collectingAndThen(Collectors.toList(),
-                Collections::unmodifiableList));
+    /**
+     * Looks up live orders by status in the index, oldest first.
+     */
+    private List<Order> findLiveByStatuses(Set<OrderStatus> statusSet) {
+        List<Order> matching = index.findByStatuses(statusSet);
+        // Drop orders whose status changed in memory but is not yet saved
+        matching.removeIf(order -> !statusSet.contains(order.getStatus()));
+        return matching;
     }
 
     /**
-     * Retrieves all orders
+     * Retrieves all orders, reading every archived order from disk.
      *
      * @return An unmodifiable List of all Orders.
      */
     @Override
     public List<Order> findAll() {
         // Create a new list for sorting
-        List<Order> sortedOrders = new ArrayList<>(orders.values());
+        List<Order> sortedOrders = new ArrayList<>(archive.findAll());
+        sortedOrders.addAll(orders.values());
         sortedOrders.sort(Comparator.comparing(Order::getOrderTimestamp,
         Comparator.nullsLast(Comparator.naturalOrder())));
         return Collections.unmodifiableList(sortedOrders);
     }
 
+    /**
+     * Finds the next orders after a keyset cursor, merging live and
+     * archived orders. Like {@link #findAll()}, the result is weakly
+     * consistent with orders saved or archived while it is built.
+     *
+     * @param afterTimestamp Timestamp of the last order already seen, or
+     *                       null to start from the oldest order
+     * @param afterId        ID of the last order already seen
+     * @param limit          The most orders to return
+     * @return An unmodifiable List of up to limit Orders, oldest first.
+     * @throws IllegalArgumentException if limit is not positive.
+     */
+    @Override
+    public List<Order> findPage(LocalDateTime afterTimestamp, int afterId,
+    int limit) {
+        if (limit <= 0) {
+            throw new IllegalArgumentException(
+                "Page limit must be positive. Provided: " + limit);
+        }
+        // Live first: an order archived in between then shows up twice
+        // and is dropped below, instead of being missed
+        List<Order> live = index.findPage(afterTimestamp, afterId, limit);
+        List<Order> archived = archive.findPage(afterTimestamp, afterId,
+        limit);
+        int expected = Math.min(limit, live.size() + archived.size());
+        List<Order> page = new ArrayList<>(expected);
+        IntHashSet seen = new IntHashSet(expected);
+        int l = 0;
+        int a = 0;
+        while (page.size() < limit
+        && (l < live.size() || a < archived.size())) {
+            Order next;
+            if (a >= archived.size() || (l < live.size()
+            && OLDEST_FIRST.compare(live.get(l), archived.get(a)) <= 0)) {
+                next = live.get(l++);
+            } else {
+                next = archived.get(a++);
+            }
+            if (seen.add(next.getOrderID())) {
+                page.add(next);
+            }
+        }
+        return Collections.unmodifiableList(page);
+    }
+
+    /**
+     * Streams every live and archived order, oldest first, fetching one
+     * page at a time so the whole history is never held in memory.
+     *
+     * @return A sequential, ordered Stream of all Orders.
+     */
+    @Override
+    public Stream<Order> streamAll() {
+        return StreamSupport.stream(new PageSpliterator<Order>(
+        STREAM_PAGE_SIZE, (last, limit) -> last == null
+        ? findPage(null, 0, limit)
+        : findPage(last.getOrderTimestamp(), last.getOrderID(), limit)),
+        false);
+    }
+
+    /**
+     * @return true if the order comes after the keyset cursor.
+     */
+    static boolean isAfter(Order order, LocalDateTime afterTimestamp,
+    int afterId) {
+        if (afterTimestamp == null) {
+            return true;
+        }
+        LocalDateTime timestamp = order.getOrderTimestamp();
+        if (timestamp == null) {
+            // Orders without a timestamp sort last
+            return true;
+        }
+        int byTime = timestamp.compareTo(afterTimestamp);
+        return byTime > 0 || (byTime == 0 && order.getOrderID() > afterId);
+    }
+
      /**
      * Finds all "outstanding" orders
      * Results are sorted by order timestamp ascending
@@ -273,14 +712,7 @@ public class OrderRepository implements IOrderRepository {
      */
     @Override
     public List<Order> findOutstandingOrders() {
-        List<Order> outstanding = orders.values().stream()
-                // Filter orders where status is not null and not final status
-                .filter(order -> order.getStatus() != null
-                && !order.getStatus().isFinalStatus())
-                .sorted(Comparator.comparing(Order::getOrderTimestamp,
-                Comparator.nullsLast(Comparator.naturalOrder())))
-                // Collect mutable list
-                .collect(Collectors.toList());
+        List<Order> outstanding = findLiveByStatuses(ACTIVE_STATUSES);
         LOGGER.log(Level.FINE, "Found {0} outstanding orders.",
         outstanding.size());
         // Return as unmodifiable
@@ -304,124 +736,118 @@ public class OrderRepository implements IOrderRepository {
         "findTopCustomersByOrderCount performing potentially inefficient " +
         "in-memory aggregation.");
 
-        // Group orders by customer ID and count them
-        Map<Integer, Long> counts = orders.values().stream()
-                // Ensure valid customer ID
-                .filter(o -> o.getCustomerID() > 0)
-                .collect(Collectors.groupingBy(
-                        Order::getCustomerID,
-                        Collectors.counting()
-                ));
-
-        // Sort the results by count descending
-        return counts.entrySet().stream()
-                // Sort by count descending
-                .sorted(Map.Entry.<Integer, Long>comparingByValue().reversed())
-                .limit(limit)
-                .collect(Collectors.toMap(
-                        Map.Entry::getKey,
-                        Map.Entry::getValue,
-                        (e1, e2) -> e1,
-                        LinkedHashMap::new
-                ));
+        // Count orders by customer ID without boxing each count
+        IntLongMap counts = new IntLongMap();
+        for (Order order : orders.values()) {
+            // Ensure valid customer ID
+            if (order.getCustomerID() > 0) {
+                counts.increment(order.getCustomerID());
+            }
+        }
+        // Archived orders are counted from the archive index alone
+        archive.addCountsByCustomer(counts);
+
+        // Only the top entries are boxed, ordered by count descending
+        return counts.top(limit);
     }
 
     /**
-     * Loads order data from the specified storage file
+     * Moves orders that have been in a final status for longer than the
+     * configured archive delay to the archive and drops them from memory.
+     * The archive is forced to disk before the orders are removed from the
+     * live store, so a crash in between leaves an order in both places
+     * rather than in neither. Does nothing if archiving is disabled.
+     *
+     * @return The number of orders archived.
      */
-    @SuppressWarnings("unchecked")
-    private synchronized void loadData() {
-        File file = new File(storageFilePath);
-        if (!file.exists() || file.length() == 0) {
-            LOGGER.log(Level.INFO, "Order data file not found or empty " +
-            "({0}). Starting with an empty repository.", storageFilePath);
-            ensureDirectoryExists(file);
-            return;
-        }
-
-        try (FileInputStream fis = new FileInputStream(file);
-             BufferedInputStream bis = new BufferedInputStream(fis);
-             ObjectInputStream ois = new ObjectInputStream(bis)) {
-
-            Object readObject = ois.readObject();
-             if (readObject instanceof Map) {
-                orders.clear();
-                Map<?,?> rawMap = (Map<?,?>) readObject;
-                rawMap.forEach((key, value) -> {
-                    if (key instanceof Integer && value instanceof Order) {
-                         orders.put((Integer)key, (Order)value);
-                    } else {
-                         LOGGER.log(Level.WARNING,
-                         "Skipping invalid entry during load: Key type {0}, "
-                         + "Value type {1}",
-                         new Object[]{key != null ? key.getClass()
-                            .getName() : "null",
-                            value != null ? value.getClass()
-                            .getName() : "null"});
-                    }
-                });
-                LOGGER.log(Level.INFO,
-                "Successfully loaded {0} order entries from: {1}",
-                new Object[]{orders.size(), storageFilePath});
-            } else {
-                 LOGGER.log(Level.SEVERE,
-                 "Order data file ({0}) does not contain a valid Map.",
-                 storageFilePath);
+    public int archiveFinishedOrders() {
+        if (archiveAfterMinutes <= 0) {
+            return 0;
+        }
+        int archived;
+        mutationLock.writeLock().lock();
+        try {
+            archived = applyArchiveFinishedOrders(
+            LocalDateTime.now().minusMinutes(archiveAfterMinutes));
+        } finally {
+            mutationLock.writeLock().unlock();
+        }
+        if (archived > 0) {
+            store.awaitDurable();
+        }
+        return archived;
+    }
+
+    private int applyArchiveFinishedOrders(
+    LocalDateTime cutoff) {
+        // Oldest first, so each archive pass appends in time order
+        Map<Integer, Order> finished = new TreeMap<>();
+        for (Order order : orders.values()) {
+            LocalDateTime lastUpdated = order.getLastUpdatedTimestamp();
+            if (order.getStatus() != null && order.getStatus().isFinalStatus()
+            && lastUpdated != null && lastUpdated.isBefore(cutoff)) {
+                finished.put(order.getOrderID(), order);
             }
-        } catch (FileNotFoundException e) {
-              LOGGER.log(Level.SEVERE,
-              "Order data file not found for loading: " + storageFilePath, e);
-        } catch (IOException | ClassNotFoundException | ClassCastException e) {
-             LOGGER.log(Level.SEVERE, "Failed to load order data from file ("
-             + storageFilePath + "). Data might be corrupted or class " +
-             "versions incompatible.", e);
         }
+        if (finished.isEmpty()) {
+            return 0;
+        }
+        try {
+            archive.archive(finished.values());
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Failed to archive " + finished.size()
+            + " finished orders. They stay in memory.", e);
+            return 0;
+        }
+        orders.keySet().removeAll(finished.keySet());
+        store.deleteAll(finished.keySet());
+        index.removeAll(finished.keySet());
+        LOGGER.log(Level.INFO,
+        "Archived {0} finished orders. {1} orders remain in memory.",
+        new Object[]{finished.size(), orders.size()});
+        return finished.size();
     }
 
     /**
-     * Saves the current state of the orders map to the storage file
+     * Archives finished orders if archiving is enabled, then compacts the
+     * order journal once it passes the configured thresholds. Only the
+     * archive step takes the mutation lock exclusively, so saves are only
+     * blocked while finished orders are handed over.
+     *
+     * @return true if a compaction ran and succeeded.
      */
-    private synchronized void saveData() {
-        File file = new File(storageFilePath);
-        ensureDirectoryExists(file);
-
-        // Overwrites
-        try (FileOutputStream fos = new FileOutputStream(file);
-             BufferedOutputStream bos = new BufferedOutputStream(fos);
-             ObjectOutputStream oos = new ObjectOutputStream(bos)) {
-
-            oos.writeObject(new ConcurrentHashMap<>(orders));
-             LOGGER.log(Level.FINE, "Order data saved successfully to {0}",
-             storageFilePath);
+    @Override
+    public boolean compactIfNeeded() {
+        archiveFinishedOrders();
+        return store.compactIfNeeded();
+    }
 
-        } catch (IOException e) {
-            LOGGER.log(Level.SEVERE,
-            "CRITICAL: Failed to save order data to file ("
-            + storageFilePath + "). Data loss may occur.", e);
-        }
+    /**
+     * Writes any order changes still pending in write-behind mode and waits
+     * until they are on disk.
+     */
+    @Override
+    public void flush() {
+        store.flush();
     }
 
     /**
-     * Ensures the parent directory for the storage file exists and
-     * creates it if necessary.
-     * @param file The storage file.
+     * Flushes pending order changes and closes the journal and the archive.
+     * The repository must not be used afterwards.
      */
-    private void ensureDirectoryExists(File file) {
-        Objects.requireNonNull(file, "File cannot be null");
-        File parentDir = file.getParentFile();
-         if (parentDir != null && !parentDir.exists()) {
-              LOGGER.log(Level.INFO,
-              "Attempting to create directory for order data: {0}",
-              parentDir.getAbsolutePath());
-             if (parentDir.mkdirs()) {
-                 LOGGER.log(Level.INFO,
-                 "Successfully created directory: {0}",
-                 parentDir.getAbsolutePath());
-             } else {
-                  LOGGER.log(Level.SEVERE,
-                  "Failed to create directory for order data: {0}",
-                  parentDir.getAbsolutePath());
-             }
-         }
-     }
+    @Override
+    public void close() {
+        try {
+            store.close();
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to close order storage cleanly ("
+            + store.getStorageFilePath() + ")", e);
+        }
+        try {
+            archive.close();
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to close order archive cleanly ("
+            + store.getStorageFilePath() + ")", e);
+        }
+    }
 }
@@ -0,0 +1,66 @@
+package com.cafe94.persistence;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+
+/**
+ * Sequential {@link Spliterator} that walks a keyset-paginated query one
+ * page at a time. Each page is fetched with the last element of the
+ * previous page as the cursor, so only one page is held in memory however
+ * many elements the scan covers.
+ *
+ * @param <T> The element type
+ * @author Adigun Lateef
+ * @version 1.0
+ */
+final class PageSpliterator<T> extends Spliterators.AbstractSpliterator<T> {
+
+    private final int pageSize;
+    private final BiFunction<T, Integer, List<T>> nextPage;
+    private Iterator<T> page;
+    private T last;
+    private boolean exhausted;
+
+    /**
+     * @param pageSize How many elements to fetch per page
+     * @param nextPage Fetches up to the given number of elements after the
+     *                 given one, or from the start if it is null
+     * @throws IllegalArgumentException if pageSize is not positive.
+     * @throws NullPointerException if nextPage is null.
+     */
+    PageSpliterator(int pageSize, BiFunction<T, Integer, List<T>> nextPage) {
+        super(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL);
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException(
+                "Page size must be positive. Provided: " + pageSize);
+        }
+        this.pageSize = pageSize;
+        this.nextPage = Objects.requireNonNull(nextPage,
+        "Page query cannot be null.");
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super T> action) {
+        Objects.requireNonNull(action, "Action cannot be null.");
+        while (page == null || !page.hasNext()) {
+            if (exhausted) {
+                return false;
+            }
+            List<T> fetched = nextPage.apply(last, pageSize);
+            // A short page means the query has nothing after it
+            exhausted = fetched.size() < pageSize;
+            if (fetched.isEmpty()) {
+                return false;
+            }
+            page = fetched.iterator();
+        }
+        last = page.next();
+        action.accept(last);
+        return true;
+    }
+}
@@ -0,0 +1,28 @@
+package com.cafe94.persistence;
+
+import java.io.IOException;
+
+/**
+ * Converts one repository record to and from bytes for the journal and
+ * the data file.
+ * @param <V> The record type
+ * @author Adigun Lateef
+ * @version 1.0
+ */
+interface RecordCodec<V> {
+
+    /**
+     * @param record The record to encode
+     * @return The encoded record.
+     * @throws IOException if the record cannot be encoded by this codec.
+     */
+    byte[] encode(V record) throws IOException;
+
+    /**
+     * @param payload Bytes produced by {@link #encode(Object)}
+     * @return The decoded record.
+     * @throws IOException if the payload is corrupt or of an unknown
+     * version.
+     */
+    V decode(byte[] payload) throws IOException;
+}
@@ -0,0 +1,550 @@
+package com.cafe94.persistence;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only mutation log kept next to a repository data file.
+ * Every save or delete is written as one checksummed record to the active
+ * log segment, so the cost of a mutation does not depend on how many
+ * records the repository holds. On startup the segments are replayed in
+ * order on top of the last snapshot.
+ * <p>
+ * Segments are named {@code <data file>.<number>.log}. A segment is only
+ * appended to by the process that created it; a torn record at the end of
+ * a segment (e.g. after a crash) is truncated during replay.
+ * <p>
+ * Appends are written without forcing the file. Callers then wait in
+ * {@link #awaitDurable()} outside their own locks: the first waiter
+ * becomes the leader, lingers for the group commit window and forces
+ * every record appended so far with one {@code fsync}, while later
+ * waiters block until a leader has covered their records. Concurrent
+ * writers therefore share a disk flush instead of queueing for one each.
+ * <p>
+ * Compaction
+ * {@link #roll() rolls} to a new segment, snapshots the repository and
+ * then {@link #discardThrough(Checkpoint) discards} the rolled segments.
+ * @author Adigun Lateef
+ * @version 1.0
+ */
+class RecordJournal implements Closeable {
+
+    private static final Logger LOGGER =
+    Logger.getLogger(RecordJournal.class.getName());
+
+    /** Record operation: insert or replace the record with the given ID. */
+    static final byte OP_PUT = 1;
+    /** Record operation: remove the record with the given ID. */
+    static final byte OP_DELETE = 2;
+
+    private static final int SEGMENT_MAGIC = 0x4339344A; // "C94J"
+    private static final short FORMAT_VERSION = 1;
+    private static final int SEGMENT_HEADER_BYTES = 4 + 2 + 8;
+    // op + sequence + id
+    private static final int RECORD_BODY_HEADER_BYTES = 1 + 8 + 4;
+    private static final int MAX_RECORD_BYTES = 64 * 1024 * 1024;
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    /**
+     * Receives records during replay.
+     */
+    interface Visitor {
+        /**
+         * Called for a put record.
+         * @param sequence The record's sequence number
+         * @param id       The record ID
+         * @param payload  The encoded record
+         * @throws IOException if the payload cannot be decoded.
+         */
+        void onPut(long sequence, int id, byte[] payload) throws IOException;
+
+        /**
+         * Called for a delete record.
+         * @param sequence The record's sequence number
+         * @param id       The record ID
+         */
+        void onDelete(long sequence, int id);
+    }
+
+    /**
+     * Marks the segments closed by {@link #roll()} together with the
+     * record and byte counts they hold.
+     */
+    static final class Checkpoint {
+        private final long segmentNumber;
+        private final long lastSequence;
+        private final long records;
+        private final long bytes;
+
+        private Checkpoint(long segmentNumber, long lastSequence,
+        long records, long bytes) {
+            this.segmentNumber = segmentNumber;
+            this.lastSequence = lastSequence;
+            this.records = records;
+            this.bytes = bytes;
+        }
+
+        /**
+         * @return The highest sequence number in the rolled segments
+         */
+        long getLastSequence() {
+            return lastSequence;
+        }
+
+        /**
+         * @return The number of records in the rolled segments
+         */
+        long getRecords() {
+            return records;
+        }
+    }
+
+    private final File directory;
+    private final String segmentPrefix;
+    private final String description;
+    private final long commitWindowNanos;
+    private FileChannel activeChannel;
+    private File activeSegment;
+    private long nextSequence = 1;
+    private long lastSegmentNumber = 0;
+    // Records and bytes held in segments that have not been discarded
+    private long liveRecords = 0;
+    private long liveBytes = 0;
+
+    // Group commit state, guarded by durabilityLock. Never acquire the
+    // journal monitor while holding durabilityLock.
+    private final Object durabilityLock = new Object();
+    private long durableSequence = 0;
+    private boolean syncInProgress = false;
+
+    /**
+     * Creates a journal for the given data file. No file is touched until
+     * {@link #replay(Visitor, long)} or {@link #append(byte, int, byte[])} is
+     * called.
+     *
+     * @param storageFile       The repository data file
+     * @param commitWindowMicros How long a group commit leader waits for
+     *                          other writers before forcing the segment
+     * @throws NullPointerException if storageFile is null.
+     */
+    RecordJournal(File storageFile, long commitWindowMicros) {
+        Objects.requireNonNull(storageFile, "Storage file cannot be null.");
+        this.commitWindowNanos = TimeUnit.MICROSECONDS.toNanos(
+        Math.max(0, commitWindowMicros));
+        File absolute = storageFile.getAbsoluteFile();
+        this.directory = absolute.getParentFile();
+        this.segmentPrefix = absolute.getName() + ".";
+        this.description = absolute.getPath();
+    }
+
+    /**
+     * Replays every existing segment, oldest first. Records whose sequence
+     * number is covered by the snapshot the caller has already loaded are
+     * skipped, so segments left behind by an interrupted compaction never
+     * roll the snapshot back.
+     *
+     * @param visitor         Receives the records
+     * @param coveredSequence Highest sequence already in the snapshot, or
+     *                        0 if none
+     * @return The number of records replayed.
+     * @throws IOException if a segment cannot be read or a payload cannot
+     * be decoded.
+     */
+    synchronized long replay(Visitor visitor, long coveredSequence)
+    throws IOException {
+        Objects.requireNonNull(visitor, "Visitor cannot be null.");
+        nextSequence = Math.max(nextSequence, coveredSequence + 1);
+        long replayed = 0;
+        for (File segment : listSegments()) {
+            replayed += replaySegment(segment, visitor, coveredSequence);
+            liveBytes += segment.length();
+        }
+        synchronized (durabilityLock) {
+            // Records found on disk at startup need no further forcing
+            durableSequence = Math.max(durableSequence, nextSequence - 1);
+        }
+        if (replayed > 0) {
+            LOGGER.log(Level.INFO,
+            "Replayed {0} journal records for {1}. Next sequence: {2}",
+            new Object[]{replayed, description, nextSequence});
+        }
+        return replayed;
+    }
+
+    /**
+     * Appends a record to the active segment, creating the segment on
+     * first use. The record is not durable until {@link #awaitDurable()}
+     * returns.
+     *
+     * @param op      {@link #OP_PUT} or {@link #OP_DELETE}
+     * @param id      The record ID
+     * @param payload The encoded record, empty for deletes
+     * @return The sequence number assigned to the record.
+     * @throws IOException if the record cannot be written.
+     */
+    synchronized long append(byte op, int id, byte[] payload)
+    throws IOException {
+        Objects.requireNonNull(payload, "Payload cannot be null.");
+        if (activeChannel == null) {
+            openNewSegment();
+        }
+        long sequence = nextSequence++;
+        ByteBuffer record = encodeRecord(op, sequence, id, payload);
+        int length = record.remaining();
+        while (record.hasRemaining()) {
+            activeChannel.write(record);
+        }
+        liveRecords++;
+        liveBytes += length;
+        return sequence;
+    }
+
+    /**
+     * Blocks until every record appended before this call has been forced
+     * to disk. Must not be called while holding a lock that writers need,
+     * otherwise concurrent writers cannot join the same group commit.
+     *
+     * @throws IOException if the segment cannot be forced.
+     */
+    void awaitDurable() throws IOException {
+        long target;
+        synchronized (this) {
+            target = nextSequence - 1;
+        }
+        synchronized (durabilityLock) {
+            while (durableSequence < target && syncInProgress) {
+                try {
+                    durabilityLock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException(
+                    "Interrupted waiting for journal group commit", e);
+                }
+            }
+            if (durableSequence >= target) {
+                return;
+            }
+            syncInProgress = true;
+        }
+        // This thread leads the next group commit
+        try {
+            if (commitWindowNanos > 0) {
+                LockSupport.parkNanos(commitWindowNanos);
+            }
+            long covered;
+            FileChannel channel;
+            synchronized (this) {
+                covered = nextSequence - 1;
+                channel = activeChannel;
+            }
+            if (channel != null) {
+                try {
+                    // Forced outside the journal monitor so appends
+                    // continue into the next group meanwhile
+                    channel.force(false);
+                } catch (ClosedChannelException e) {
+                    // Rolled meanwhile. Closing forces the segment, which
+                    // advances durableSequence, checked below.
+                    synchronized (durabilityLock) {
+                        if (durableSequence < covered) {
+                            throw e;
+                        }
+                    }
+                }
+            }
+            synchronized (durabilityLock) {
+                durableSequence = Math.max(durableSequence, covered);
+            }
+        } finally {
+            synchronized (durabilityLock) {
+                syncInProgress = false;
+                durabilityLock.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Closes the active segment so that later appends go to a new one.
+     * Every record appended before this call lives in a segment covered by
+     * the returned checkpoint, and has a sequence number no higher than
+     * {@link Checkpoint#getLastSequence()}.
+     *
+     * @return A checkpoint covering all existing segments.
+     * @throws IOException if the active segment cannot be closed.
+     */
+    synchronized Checkpoint roll() throws IOException {
+        closeActiveSegment();
+        return new Checkpoint(Math.max(lastSegmentNumber,
+        highestSegmentNumber()), nextSequence - 1, liveRecords, liveBytes);
+    }
+
+    /**
+     * Deletes the segments covered by a checkpoint. Must only be called
+     * once their records have been captured in a durable snapshot.
+     *
+     * @param checkpoint The checkpoint returned by {@link #roll()}
+     */
+    synchronized void discardThrough(Checkpoint checkpoint) {
+        Objects.requireNonNull(checkpoint, "Checkpoint cannot be null.");
+        int deleted = 0;
+        for (File segment : listSegments()) {
+            if (segmentNumber(segment) > checkpoint.segmentNumber) {
+                break;
+            }
+            if (segment.delete()) {
+                deleted++;
+            } else {
+                LOGGER.log(Level.WARNING,
+                "Could not delete journal segment {0}", segment);
+            }
+        }
+        liveRecords = Math.max(0, liveRecords - checkpoint.records);
+        liveBytes = Math.max(0, liveBytes - checkpoint.bytes);
+        LOGGER.log(Level.FINE, "Discarded {0} journal segment(s) for {1}",
+        new Object[]{deleted, description});
+    }
+
+    /**
+     * @return The sequence number of the last record appended or replayed,
+     * or 0 if there has been none.
+     */
+    synchronized long getLastSequence() {
+        return nextSequence - 1;
+    }
+
+    /**
+     * @return The number of records not yet covered by a snapshot.
+     */
+    synchronized long getLiveRecords() {
+        return liveRecords;
+    }
+
+    /**
+     * @return The number of journal bytes not yet covered by a snapshot.
+     */
+    synchronized long getLiveBytes() {
+        return liveBytes;
+    }
+
+    /**
+     * Closes the active segment. A later append opens a new segment.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        closeActiveSegment();
+    }
+
+    private ByteBuffer encodeRecord(byte op, long sequence, int id,
+    byte[] payload) {
+        int bodyLength = RECORD_BODY_HEADER_BYTES + payload.length;
+        ByteBuffer body = ByteBuffer.allocate(bodyLength);
+        body.put(op).putLong(sequence).putInt(id).put(payload);
+        CRC32 crc = new CRC32();
+        crc.update(body.array(), 0, bodyLength);
+
+        ByteBuffer record = ByteBuffer.allocate(8 + bodyLength);
+        record.putInt(bodyLength).putInt((int) crc.getValue())
+        .put(body.array());
+        record.flip();
+        return record;
+    }
+
+    private long replaySegment(File segment, Visitor visitor,
+    long coveredSequence) throws IOException {
+        lastSegmentNumber = Math.max(lastSegmentNumber,
+        segmentNumber(segment));
+        long replayed = 0;
+        long validLength;
+        boolean torn = false;
+        try (DataInputStream in = new DataInputStream(
+             new BufferedInputStream(new FileInputStream(segment)))) {
+            if (segment.length() < SEGMENT_HEADER_BYTES
+            || in.readInt() != SEGMENT_MAGIC) {
+                LOGGER.log(Level.WARNING,
+                "Skipping journal segment with invalid header: {0}",
+                segment);
+                return 0;
+            }
+            short version = in.readShort();
+            if (version != FORMAT_VERSION) {
+                throw new IOException("Unsupported journal format version "
+                + version + " in " + segment);
+            }
+            nextSequence = Math.max(nextSequence, in.readLong());
+            validLength = SEGMENT_HEADER_BYTES;
+
+            while (true) {
+                int bodyLength;
+                try {
+                    bodyLength = in.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                if (bodyLength < RECORD_BODY_HEADER_BYTES
+                || bodyLength > MAX_RECORD_BYTES) {
+                    torn = true;
+                    break;
+                }
+                byte[] body = new byte[bodyLength];
+                int expectedCrc;
+                try {
+                    expectedCrc = in.readInt();
+                    in.readFully(body);
+                } catch (EOFException e) {
+                    torn = true;
+                    break;
+                }
+                CRC32 crc = new CRC32();
+                crc.update(body, 0, bodyLength);
+                if ((int) crc.getValue() != expectedCrc) {
+                    torn = true;
+                    break;
+                }
+
+                ByteBuffer buffer = ByteBuffer.wrap(body);
+                byte op = buffer.get();
+                long sequence = buffer.getLong();
+                int id = buffer.getInt();
+                validLength += 8 + bodyLength;
+                liveRecords++;
+                nextSequence = Math.max(nextSequence, sequence + 1);
+                if (sequence <= coveredSequence) {
+                    continue;
+                }
+                if (op == OP_PUT) {
+                    byte[] payload = new byte[buffer.remaining()];
+                    buffer.get(payload);
+                    visitor.onPut(sequence, id, payload);
+                } else if (op == OP_DELETE) {
+                    visitor.onDelete(sequence, id);
+                } else {
+                    LOGGER.log(Level.WARNING,
+                    "Ignoring journal record with unknown op {0} in {1}",
+                    new Object[]{op, segment});
+                }
+                replayed++;
+            }
+        }
+        if (torn) {
+            LOGGER.log(Level.WARNING,
+            "Truncating torn record at offset {0} in journal segment {1}",
+            new Object[]{validLength, segment});
+            try (RandomAccessFile raf = new RandomAccessFile(segment, "rw")) {
+                raf.setLength(validLength);
+            }
+        }
+        return replayed;
+    }
+
+    private void openNewSegment() throws IOException {
+        if (directory != null && !directory.exists() && !directory.mkdirs()) {
+            throw new IOException("Failed to create directory: " + directory);
+        }
+        long number = Math.max(lastSegmentNumber, highestSegmentNumber()) + 1;
+        File segment = new File(directory,
+        segmentPrefix + String.format("%06d", number) + SEGMENT_SUFFIX);
+        FileChannel channel = FileChannel.open(segment.toPath(),
+        StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        ByteBuffer header = ByteBuffer.allocate(SEGMENT_HEADER_BYTES);
+        header.putInt(SEGMENT_MAGIC).putShort(FORMAT_VERSION)
+        .putLong(nextSequence);
+        header.flip();
+        while (header.hasRemaining()) {
+            channel.write(header);
+        }
+        liveBytes += SEGMENT_HEADER_BYTES;
+        activeChannel = channel;
+        activeSegment = segment;
+        lastSegmentNumber = number;
+        LOGGER.log(Level.FINE, "Opened journal segment {0}", segment);
+    }
+
+    private void closeActiveSegment() throws IOException {
+        if (activeChannel != null) {
+            try {
+                activeChannel.force(false);
+                synchronized (durabilityLock) {
+                    durableSequence = Math.max(durableSequence,
+                    nextSequence - 1);
+                    durabilityLock.notifyAll();
+                }
+            } finally {
+                try {
+                    activeChannel.close();
+                } finally {
+                    activeChannel = null;
+                    activeSegment = null;
+                }
+            }
+        }
+    }
+
+    private long highestSegmentNumber() {
+        List<File> segments = listSegments();
+        return segments.isEmpty() ? 0
+        : segmentNumber(segments.get(segments.size() - 1));
+    }
+
+    /**
+     * @return Existing segments ordered by segment number.
+     */
+    private List<File> listSegments() {
+        if (directory == null || !directory.isDirectory()) {
+            return Collections.emptyList();
+        }
+        File[] files = directory.listFiles((dir, name) ->
+        name.startsWith(segmentPrefix) && name.endsWith(SEGMENT_SUFFIX)
+        && segmentNumber(name) > 0);
+        if (files == null) {
+            return Collections.emptyList();
+        }
+        List<File> segments = new ArrayList<>();
+        Collections.addAll(segments, files);
+        segments.sort((a, b) -> Long.compare(segmentNumber(a),
+        segmentNumber(b)));
+        return segments;
+    }
+
+    private long segmentNumber(File segment) {
+        return segmentNumber(segment.getName());
+    }
+
+    private long segmentNumber(String name) {
+        if (name.length() <= segmentPrefix.length()
+        + SEGMENT_SUFFIX.length()) {
+            return -1;
+        }
+        String number = name.substring(segmentPrefix.length(),
+        name.length() - SEGMENT_SUFFIX.length());
+        try {
+            return Long.parseLong(number);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "RecordJournal[" + description + ", Active="
+        + (activeSegment != null ? activeSegment.getName() : "none") + ']';
+    }
+}
@@ -0,0 +1,1041 @@
+package com.cafe94.persistence;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.io.UncheckedIOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.cafe94.util.primitive.IntLongMap;
+
+/**
+ * Persists the record map of one repository. The repository keeps
+ * ownership of the map and its own locking; this class only moves the
+ * records to and from disk.
+ * <p>
+ * In snapshot mode every change rewrites the data file. In journaled mode
+ * changes are appended to a {@link RecordJournal} and {@link #compact()}
+ * periodically folds the journal into a new data file. Compaction never
+ * takes the repository's monitor: it rolls the journal, copies the
+ * concurrent record map and writes the copy, so saves keep appending to
+ * the new segment while the snapshot is written.
+ * <p>
+ * Journal appends are made durable with group commit: repositories call
+ * {@link #put(int, Serializable)} or {@link #delete(int)} while holding
+ * the lock that orders changes to the record, and
+ * {@link #awaitDurable()} after releasing it. The journal's sequence
+ * numbers then order the changes on disk the same way as in memory.
+ * <p>
+ * In write-behind mode {@code put} and {@code delete} only mark the record
+ * ID dirty. A flusher thread later persists the current value of every
+ * dirty ID once, so repeated saves of the same record between flushes
+ * cost a single write. A flush is scheduled when the first ID is marked
+ * dirty and runs no later than the configured maximum staleness.
+ * <p>
+ * With the Java codec the data file holds the serialized record map,
+ * followed by the highest journal sequence number it covers; files written
+ * before the journal existed simply end after the map. With the binary
+ * codec it holds a header with the covered sequence and record count,
+ * then the records in chunks of a few hundred kilobytes. Each chunk holds
+ * its record count, its length, each record as varint ID, varint length
+ * and payload, and a CRC32 of the records, so chunks decode independently:
+ * loading reads them in one pass and decodes them side by side on a
+ * fork-join pool of {@link StorageOptions#getLoadParallelism()} threads.
+ * Files of the first binary version, with every record in one checksummed
+ * block, are still read. All layouts, and records from either codec, are
+ * recognised when loading, so switching codecs migrates the data on the
+ * next write.
+ * <p>
+ * A {@link TransactionManager} logs multi-repository changes once in its
+ * own journal and then persists them here without waiting for durability.
+ * To tell after a crash which logged changes reached this store, it reads
+ * {@link #position()} before each change and asks {@link #covers(int, long)}
+ * during recovery. In snapshot mode the position is a counter stamped into
+ * every data file, where journaled mode stores the covered sequence.
+ * <p>
+ * A record that cannot be decoded when loading is skipped and logged, and
+ * loading carries on with the rest. What could not be read is never
+ * overwritten: a journaled store stops compacting, so the journal and
+ * data file keep it, and a snapshot-mode store copies its data file
+ * aside before the next change rewrites it.
+ * <p>
+ * In memory mode nothing is read or written: the record map is the only
+ * copy, and every operation here is a no-op that reports success.
+ * @param <V> The record type
+ * @author Adigun Lateef
+ * @version 1.0
+ */
+class RecordStore<V extends Serializable> implements Closeable {
+
+    private static final Logger LOGGER =
+    Logger.getLogger(RecordStore.class.getName());
+
+    private static final int SNAPSHOT_MAGIC = 0x43393453; // "C94S"
+    private static final short SNAPSHOT_VERSION = 2;
+    // Version 1 files hold every record in a single checksummed block
+    private static final short SNAPSHOT_VERSION_SINGLE_BLOCK = 1;
+    /** Record bytes after which the writer starts a new chunk. */
+    private static final int SNAPSHOT_CHUNK_BYTES = 256 * 1024;
+
+    private final String storageFilePath;
+    private final String label;
+    private final Class<V> type;
+    private final Map<Integer, V> records;
+    private final RecordCodec<V> javaCodec;
+    private final RecordCodec<V> binaryCodec;
+    private final boolean writeBinary;
+    private final StorageOptions options;
+    private final RecordJournal journal;
+    private final boolean inMemory;
+    // Serialises snapshot writers, which share the temporary file
+    private final Object snapshotLock = new Object();
+
+    // Write-behind state; flusher is null unless write-behind is enabled
+    private final ScheduledExecutorService flusher;
+    private final Set<Integer> dirty = ConcurrentHashMap.newKeySet();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    // Keeps flushes in order so an older value never overwrites a newer one
+    private final Object flushLock = new Object();
+
+    // Recovery state for transactions; see position() and covers()
+    private long loadedSequence;
+    private IntLongMap replayedSequences = new IntLongMap();
+    // Guarded by snapshotLock
+    private long snapshotStamp;
+    private volatile boolean snapshotFailed;
+    // Records, or whole data files, that could not be read when loading
+    private final AtomicInteger unreadable = new AtomicInteger();
+
+    /**
+     * Creates a store for the given record map. Nothing is read until
+     * {@link #load()} is called.
+     *
+     * @param storageFilePath The path of the data file
+     * @param label           Record name used in log messages, e.g. "order"
+     * @param type            The record type, checked when loading
+     * @param records         The repository's live record map
+     * @param options         How mutations are persisted
+     * @param binaryCodec     The binary codec for the record type, or null
+     *                        if it only supports Java serialization
+     * @throws NullPointerException if any argument other than binaryCodec
+     * is null.
+     */
+    RecordStore(String storageFilePath, String label, Class<V> type,
+    Map<Integer, V> records, StorageOptions options,
+    RecordCodec<V> binaryCodec) {
+        this.storageFilePath = Objects.requireNonNull(storageFilePath,
+        "Storage file path cannot be null.");
+        this.label = Objects.requireNonNull(label, "Label cannot be null.");
+        this.type = Objects.requireNonNull(type, "Type cannot be null.");
+        this.javaCodec = new JavaSerializationCodec<>(type);
+        this.records = Objects.requireNonNull(records,
+        "Records map cannot be null.");
+        this.options = Objects.requireNonNull(options,
+        "Storage options cannot be null.");
+        this.binaryCodec = binaryCodec;
+        this.writeBinary = binaryCodec != null
+        && options.getCodec() == StorageOptions.Codec.BINARY;
+        this.inMemory = options.isInMemory();
+        this.journal = options.isJournaled()
+        ? new RecordJournal(new File(storageFilePath),
+        options.getGroupCommitWindowMicros()) : null;
+        this.flusher = options.isWriteBehind()
+        ? Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable,
+            "cafe94-" + label.replace(' ', '-') + "-flusher");
+            thread.setDaemon(true);
+            return thread;
+        }) : null;
+    }
+
+    /**
+     * Loads the data file into the record map and, in journaled mode,
+     * replays the journal on top of it. Failures are logged and leave
+     * whatever could be read in the map; unreadable records are skipped
+     * and kept on disk.
+     */
+    void load() {
+        if (inMemory) {
+            return;
+        }
+        long coveredSequence = loadSnapshot();
+        loadedSequence = coveredSequence;
+        if (journal == null) {
+            synchronized (snapshotLock) {
+                snapshotStamp = coveredSequence;
+            }
+            if (unreadable.get() > 0) {
+                keepUnreadableDataFile();
+            }
+            return;
+        }
+        try {
+            journal.replay(new RecordJournal.Visitor() {
+                @Override
+                public void onPut(long sequence, int id, byte[] payload) {
+                    V record;
+                    try {
+                        record = decode(payload);
+                    } catch (IOException e) {
+                        // Later changes still apply; the journal keeps this
+                        unreadable.incrementAndGet();
+                        LOGGER.log(Level.SEVERE, "Skipping unreadable "
+                        + label + " " + id + " at journal sequence "
+                        + sequence + " (" + storageFilePath + ").", e);
+                        return;
+                    }
+                    records.put(id, record);
+                    replayedSequences.put(id, sequence);
+                }
+
+                @Override
+                public void onDelete(long sequence, int id) {
+                    records.remove(id);
+                    replayedSequences.put(id, sequence);
+                }
+            }, coveredSequence);
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Failed to replay " + label
+            + " journal for (" + storageFilePath + "). Recent changes may "
+            + "be missing.", e);
+        }
+        if (unreadable.get() > 0) {
+            LOGGER.log(Level.SEVERE, "{0} unreadable {1} records or files "
+            + "in {2} are kept on disk; compaction is disabled until they "
+            + "are repaired or removed.",
+            new Object[]{unreadable.get(), label, storageFilePath});
+        }
+    }
+
+    /**
+     * Copies a snapshot-mode data file that could not be fully read, as
+     * the next change rewrites it from the records that could.
+     */
+    private void keepUnreadableDataFile() {
+        File copy = new File(storageFilePath + ".unreadable-"
+        + System.currentTimeMillis());
+        try {
+            Files.copy(new File(storageFilePath).toPath(), copy.toPath());
+            LOGGER.log(Level.SEVERE, "{0} unreadable {1} records or files "
+            + "in {2}; the data file was copied to {3}.",
+            new Object[]{unreadable.get(), label, storageFilePath, copy});
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Failed to copy partly unreadable "
+            + label + " data file (" + storageFilePath + ").", e);
+        }
+    }
+
+    /**
+     * Persists a saved record. Must be called after the record has been
+     * put into the record map.
+     *
+     * @param id     The record ID
+     * @param record The saved record
+     */
+    void put(int id, V record) {
+        if (inMemory) {
+            return;
+        }
+        if (flusher != null) {
+            markDirty(id);
+            return;
+        }
+        if (journal == null) {
+            writeStampedSnapshot();
+            return;
+        }
+        try {
+            journal.append(RecordJournal.OP_PUT, id, encode(record));
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "CRITICAL: Failed to journal " + label
+            + " " + id + " (" + storageFilePath + "). Data loss may occur.",
+            e);
+        }
+    }
+
+    /**
+     * Persists the removal of a record. Must be called after the record
+     * has been removed from the record map.
+     *
+     * @param id The removed record ID
+     */
+    void delete(int id) {
+        if (inMemory) {
+            return;
+        }
+        if (flusher != null) {
+            markDirty(id);
+            return;
+        }
+        if (journal == null) {
+            writeStampedSnapshot();
+            return;
+        }
+        try {
+            journal.append(RecordJournal.OP_DELETE, id, new byte[0]);
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "CRITICAL: Failed to journal deletion "
+            + "of " + label + " " + id + " (" + storageFilePath + "). Data "
+            + "loss may occur.", e);
+        }
+    }
+
+    /**
+     * Persists the removal of several records at once. In snapshot mode
+     * the data file is rewritten only once. Must be called after the
+     * records have been removed from the record map.
+     *
+     * @param ids The removed record IDs
+     */
+    void deleteAll(Collection<Integer> ids) {
+        if (ids.isEmpty() || inMemory) {
+            return;
+        }
+        if (journal == null && flusher == null) {
+            writeStampedSnapshot();
+            return;
+        }
+        for (Integer id : ids) {
+            delete(id);
+        }
+    }
+
+    /**
+     * Blocks until every change persisted before this call is on disk. In
+     * journaled mode concurrent callers share one {@code fsync}; in
+     * snapshot mode the data file is already synced, so this returns
+     * immediately, as it does in write-behind mode. Must be called without
+     * holding any repository lock.
+     */
+    void awaitDurable() {
+        if (journal == null || flusher != null) {
+            return;
+        }
+        try {
+            journal.awaitDurable();
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "CRITICAL: Failed to force " + label
+            + " journal (" + storageFilePath + "). Recent changes may be "
+            + "lost on a crash.", e);
+        }
+    }
+
+    /**
+     * Persists every record marked dirty by write-behind and waits until
+     * the changes are on disk. Does nothing in other modes.
+     */
+    void flush() {
+        if (flusher == null) {
+            return;
+        }
+        synchronized (flushLock) {
+            // Marks arriving from here on schedule another flush
+            flushScheduled.set(false);
+            if (dirty.isEmpty()) {
+                return;
+            }
+            long start = System.nanoTime();
+            List<Integer> drained = new ArrayList<>(dirty.size());
+            for (Integer id : dirty) {
+                // Unmark before reading, so a concurrent save re-marks it
+                dirty.remove(id);
+                drained.add(id);
+            }
+            List<Integer> failed = journal == null
+            ? flushSnapshot(drained) : flushJournal(drained);
+            if (!failed.isEmpty()) {
+                dirty.addAll(failed);
+                scheduleFlush();
+            }
+            LOGGER.log(Level.FINE,
+            "Flushed {0} dirty {1} records in {2} ms",
+            new Object[]{drained.size() - failed.size(), label,
+                (System.nanoTime() - start) / 1_000_000});
+        }
+    }
+
+    /**
+     * Appends the current value of each drained record to the journal.
+     * @return The IDs that could not be persisted.
+     */
+    private List<Integer> flushJournal(List<Integer> drained) {
+        List<Integer> failed = new ArrayList<>();
+        for (Integer id : drained) {
+            V record = records.get(id);
+            try {
+                if (record == null) {
+                    journal.append(RecordJournal.OP_DELETE, id, new byte[0]);
+                } else {
+                    journal.append(RecordJournal.OP_PUT, id, encode(record));
+                }
+            } catch (IOException e) {
+                LOGGER.log(Level.SEVERE, "Failed to flush " + label + " "
+                + id + " (" + storageFilePath + "). Will retry.", e);
+                failed.add(id);
+            }
+        }
+        try {
+            journal.awaitDurable();
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Failed to force " + label
+            + " journal (" + storageFilePath + "). Will retry.", e);
+            return drained;
+        }
+        return failed;
+    }
+
+    /**
+     * Rewrites the data file once for all drained records.
+     * @return The IDs that could not be persisted.
+     */
+    private List<Integer> flushSnapshot(List<Integer> drained) {
+        return writeStampedSnapshot() ? new ArrayList<>() : drained;
+    }
+
+    private void markDirty(int id) {
+        dirty.add(id);
+        scheduleFlush();
+    }
+
+    private void scheduleFlush() {
+        if (!flushScheduled.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            flusher.schedule(this::flush, options.getMaxStalenessMillis(),
+            TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // Closed: later changes are written by close() or the caller
+            flushScheduled.set(false);
+        }
+    }
+
+    /**
+     * Compacts the journal if it has reached either threshold of the
+     * storage options.
+     *
+     * @return true if a compaction ran and succeeded.
+     */
+    boolean compactIfNeeded() {
+        if (journal == null || unreadable.get() > 0) {
+            return false;
+        }
+        if (journal.getLiveRecords() < options.getCompactAfterRecords()
+        && journal.getLiveBytes() < options.getCompactAfterBytes()) {
+            return false;
+        }
+        return compact();
+    }
+
+    /**
+     * Writes a fresh data file from the record map. In journaled mode the
+     * journal segments it covers are deleted afterwards, unless loading
+     * skipped unreadable records, which they or the data file still hold.
+     *
+     * @return true if the data file was written.
+     */
+    boolean compact() {
+        if (inMemory) {
+            return true;
+        }
+        if (journal == null) {
+            return writeStampedSnapshot();
+        }
+        if (unreadable.get() > 0) {
+            LOGGER.log(Level.WARNING, "Not compacting {0} journal: {1} "
+            + "unreadable records or files are kept on disk.",
+            new Object[]{label, unreadable.get()});
+            return false;
+        }
+        synchronized (snapshotLock) {
+            long start = System.nanoTime();
+            RecordJournal.Checkpoint checkpoint;
+            try {
+                checkpoint = journal.roll();
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Failed to roll " + label
+                + " journal for compaction.", e);
+                return false;
+            }
+            if (!writeSnapshot(checkpoint.getLastSequence())) {
+                return false;
+            }
+            journal.discardThrough(checkpoint);
+            LOGGER.log(Level.INFO,
+            "Compacted {0} journal: {1} records folded into {2} in {3} ms",
+            new Object[]{label, checkpoint.getRecords(), storageFilePath,
+                (System.nanoTime() - start) / 1_000_000});
+            return true;
+        }
+    }
+
+    /**
+     * Returns how far this store has been persisted: the last journal
+     * sequence in journaled mode, or the stamp of the last data file
+     * written in snapshot mode. A change persisted after this call is
+     * always at a higher position. Callers must hold
+     * {@link #transactionLock()} and keep the repository's other writers
+     * out, so that no other change is persisted in between.
+     *
+     * @return The current position.
+     */
+    long position() {
+        if (journal != null) {
+            return journal.getLastSequence();
+        }
+        synchronized (snapshotLock) {
+            return snapshotStamp;
+        }
+    }
+
+    /**
+     * @return The lock that, together with excluding the repository's own
+     * writers, keeps every other writer of this store out.
+     */
+    Object transactionLock() {
+        return flushLock;
+    }
+
+    /**
+     * Tells whether what was loaded at startup already includes a change
+     * to a record made after the given position, i.e. whether a logged
+     * change persisted from that position reached this store. Only valid
+     * between {@link #load()} and {@link #endRecovery()}.
+     *
+     * @param id       The record ID
+     * @param position The position read before the change
+     * @return true if the loaded data is at least as new as the change.
+     */
+    boolean covers(int id, long position) {
+        return loadedSequence > position
+        || replayedSequences.get(id) > position;
+    }
+
+    /**
+     * Drops the state kept for {@link #covers(int, long)}.
+     */
+    void endRecovery() {
+        replayedSequences = new IntLongMap();
+    }
+
+    /**
+     * Forces every change persisted so far to disk, whatever the mode.
+     * Unlike {@link #awaitDurable()} this also drains write-behind and
+     * reports failures instead of logging them.
+     *
+     * @return true if all changes are on disk.
+     */
+    boolean makeDurable() {
+        if (flusher != null) {
+            flush();
+            return dirty.isEmpty();
+        }
+        if (journal == null) {
+            return !snapshotFailed;
+        }
+        try {
+            journal.awaitDurable();
+            return true;
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Failed to force " + label
+            + " journal (" + storageFilePath + ").", e);
+            return false;
+        }
+    }
+
+    /**
+     * @return The path of the data file
+     */
+    String getStorageFilePath() {
+        return storageFilePath;
+    }
+
+    /**
+     * Stops the write-behind flusher, persists any remaining dirty records
+     * and closes the active journal segment. A store must not be used
+     * after it has been closed.
+     */
+    @Override
+    public void close() throws IOException {
+        if (flusher != null) {
+            flusher.shutdown();
+            try {
+                flusher.awaitTermination(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            flush();
+            if (!dirty.isEmpty()) {
+                LOGGER.log(Level.SEVERE,
+                "CRITICAL: {0} {1} changes could not be persisted on close.",
+                new Object[]{dirty.size(), label});
+            }
+        }
+        if (journal != null) {
+            journal.close();
+        }
+    }
+
+    /**
+     * Reads the data file into the record map.
+     * @return The journal sequence number covered by the data file.
+     */
+    private long loadSnapshot() {
+        File file = new File(storageFilePath);
+        if (!file.exists() || file.length() == 0) {
+            LOGGER.log(Level.INFO, "{0} data file not found or empty ({1}).",
+            new Object[]{capitalisedLabel(), storageFilePath});
+            ensureDirectoryExists(file);
+            return 0;
+        }
+
+        long start = System.nanoTime();
+        try (FileInputStream fis = new FileInputStream(file);
+             BufferedInputStream bis = new BufferedInputStream(fis, 65536)) {
+            bis.mark(4);
+            int magic = new DataInputStream(bis).readInt();
+            long coveredSequence;
+            if (magic == SNAPSHOT_MAGIC) {
+                coveredSequence = loadBinarySnapshot(bis, file.length());
+            } else {
+                bis.reset();
+                coveredSequence = loadSerializedSnapshot(bis);
+            }
+            LOGGER.log(Level.INFO,
+            "Successfully loaded {0} {1} entries from: {2} in {3} ms",
+            new Object[]{records.size(), label, storageFilePath,
+                (System.nanoTime() - start) / 1_000_000});
+            return coveredSequence;
+        } catch (IOException | ClassNotFoundException | ClassCastException e) {
+            unreadable.incrementAndGet();
+            LOGGER.log(Level.SEVERE, "Failed to load " + label
+            + " data from file (" + storageFilePath + "). Data might be "
+            + "corrupted or class versions incompatible.", e);
+            return 0;
+        }
+    }
+
+    /**
+     * Reads a data file written with the Java codec: a serialized map,
+     * optionally followed by the covered journal sequence.
+     */
+    private long loadSerializedSnapshot(BufferedInputStream in)
+    throws IOException, ClassNotFoundException {
+        ObjectInputStream ois = new ObjectInputStream(in);
+        Object readObject = ois.readObject();
+        if (!(readObject instanceof Map)) {
+            throw new IOException(capitalisedLabel() + " data file ("
+            + storageFilePath + ") does not contain a valid Map.");
+        }
+        records.clear();
+        Map<?, ?> rawMap = (Map<?, ?>) readObject;
+        rawMap.forEach((key, value) -> {
+            if (key instanceof Integer && type.isInstance(value)) {
+                records.put((Integer) key, type.cast(value));
+            } else {
+                LOGGER.log(Level.WARNING,
+                "Skipping invalid entry during load: Key type {0}, " +
+                "Value type {1}",
+                new Object[]{key != null ? key.getClass().getName() :
+                    "null",
+                    value != null ? value.getClass().getName() :
+                    "null"});
+            }
+        });
+        try {
+            return ois.readLong();
+        } catch (EOFException e) {
+            // Written before journaling existed
+            return 0;
+        }
+    }
+
+    /**
+     * Reads a data file written with the binary codec. The magic number
+     * has already been consumed. Records are only published to the map
+     * once every checksum has been verified.
+     *
+     * @param fileLength Length of the data file, bounding chunk lengths
+     */
+    private long loadBinarySnapshot(BufferedInputStream in, long fileLength)
+    throws IOException {
+        DataInputStream header = new DataInputStream(in);
+        short version = header.readShort();
+        if (version != SNAPSHOT_VERSION
+        && version != SNAPSHOT_VERSION_SINGLE_BLOCK) {
+            throw new IOException("Unsupported " + label
+            + " data file version " + version);
+        }
+        long coveredSequence = header.readLong();
+        int count = header.readInt();
+        if (version == SNAPSHOT_VERSION_SINGLE_BLOCK) {
+            loadSingleBlock(in, count);
+        } else {
+            loadChunks(header, count, fileLength);
+        }
+        return coveredSequence;
+    }
+
+    /**
+     * Reads the records of a version 1 data file, which can only be
+     * decoded in order.
+     */
+    private void loadSingleBlock(BufferedInputStream in, int count)
+    throws IOException {
+        CRC32 crc = new CRC32();
+        DataInputStream body = new DataInputStream(
+        new CheckedInputStream(in, crc));
+        Map<Integer, V> loaded = new HashMap<>(Math.max(16, count * 2));
+        for (int i = 0; i < count; i++) {
+            int id = BinaryRecordReader.readVarInt(body);
+            byte[] payload = new byte[BinaryRecordReader.readVarInt(body)];
+            body.readFully(payload);
+            try {
+                loaded.put(id, decode(payload));
+            } catch (IOException e) {
+                unreadable.incrementAndGet();
+                LOGGER.log(Level.WARNING, "Skipping unreadable " + label
+                + " " + id + " during load.", e);
+            }
+        }
+        if (new DataInputStream(in).readInt() != (int) crc.getValue()) {
+            throw new IOException("Checksum mismatch in " + label
+            + " data file " + storageFilePath);
+        }
+        records.clear();
+        records.putAll(loaded);
+    }
+
+    /**
+     * Reads and verifies every chunk of a version 2 data file, then
+     * decodes the chunks in parallel straight into the record map, which
+     * is always concurrent.
+     */
+    private void loadChunks(DataInputStream in, int count, long fileLength)
+    throws IOException {
+        List<SnapshotChunk> chunks = new ArrayList<>();
+        int remaining = count;
+        while (remaining > 0) {
+            int chunkCount = in.readInt();
+            int length = in.readInt();
+            if (chunkCount <= 0 || chunkCount > remaining || length < 0
+            || length > fileLength) {
+                throw new IOException("Corrupt chunk header in " + label
+                + " data file " + storageFilePath);
+            }
+            byte[] bytes = new byte[length];
+            in.readFully(bytes);
+            CRC32 crc = new CRC32();
+            crc.update(bytes);
+            if (in.readInt() != (int) crc.getValue()) {
+                throw new IOException("Checksum mismatch in chunk "
+                + chunks.size() + " of " + label + " data file "
+                + storageFilePath);
+            }
+            chunks.add(new SnapshotChunk(chunkCount, bytes));
+            remaining -= chunkCount;
+        }
+        records.clear();
+        if (chunks.isEmpty()) {
+            return;
+        }
+        int parallelism = Math.min(options.getLoadParallelism(),
+        chunks.size());
+        LOGGER.log(Level.FINE, "Decoding {0} {1} chunks on {2} threads",
+        new Object[]{chunks.size(), label, parallelism});
+        DecodeChunks task = new DecodeChunks(chunks, 0, chunks.size());
+        try {
+            if (parallelism == 1) {
+                task.decodeAll();
+                return;
+            }
+            ForkJoinPool pool = new ForkJoinPool(parallelism);
+            try {
+                pool.invoke(task);
+            } finally {
+                pool.shutdown();
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * The records of one chunk of a data file, checksum already verified.
+     */
+    private static final class SnapshotChunk {
+        private final int count;
+        private final byte[] bytes;
+
+        private SnapshotChunk(int count, byte[] bytes) {
+            this.count = count;
+            this.bytes = bytes;
+        }
+    }
+
+    /**
+     * Decodes a range of chunks into the record map, splitting it in half
+     * until each task holds a single chunk.
+     */
+    private final class DecodeChunks extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final List<SnapshotChunk> chunks;
+        private final int from;
+        private final int to;
+
+        private DecodeChunks(List<SnapshotChunk> chunks, int from, int to) {
+            this.chunks = chunks;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                decodeAll();
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new DecodeChunks(chunks, from, middle),
+            new DecodeChunks(chunks, middle, to));
+        }
+
+        /**
+         * Decodes the range on the calling thread.
+         */
+        private void decodeAll() {
+            try {
+                for (int i = from; i < to; i++) {
+                    decodeChunk(chunks.get(i));
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    private void decodeChunk(SnapshotChunk chunk) throws IOException {
+        DataInputStream body = new DataInputStream(
+        new ByteArrayInputStream(chunk.bytes));
+        for (int i = 0; i < chunk.count; i++) {
+            int id = BinaryRecordReader.readVarInt(body);
+            byte[] payload = new byte[BinaryRecordReader.readVarInt(body)];
+            body.readFully(payload);
+            try {
+                records.put(id, decode(payload));
+            } catch (IOException e) {
+                unreadable.incrementAndGet();
+                LOGGER.log(Level.WARNING, "Skipping unreadable " + label
+                + " " + id + " during load.", e);
+            }
+        }
+    }
+
+    /**
+     * Writes a snapshot-mode data file stamped with the next position.
+     * @return true if the data file was replaced.
+     */
+    private boolean writeStampedSnapshot() {
+        synchronized (snapshotLock) {
+            boolean written = writeSnapshot(snapshotStamp + 1);
+            if (written) {
+                snapshotStamp++;
+            }
+            snapshotFailed = !written;
+            return written;
+        }
+    }
+
+    /**
+     * Writes a copy of the record map to a temporary file and moves it
+     * over the data file, so a crash mid-write never leaves a truncated
+     * data file.
+     * @param coveredSequence The journal sequence the copy includes
+     * @return true if the data file was replaced.
+     */
+    private boolean writeSnapshot(long coveredSequence) {
+        synchronized (snapshotLock) {
+            File file = new File(storageFilePath);
+            ensureDirectoryExists(file);
+            File tempFile = new File(storageFilePath + ".tmp");
+
+            try (FileOutputStream fos = new FileOutputStream(tempFile);
+                 BufferedOutputStream bos =
+                 new BufferedOutputStream(fos, 65536)) {
+
+                if (writeBinary) {
+                    writeBinarySnapshot(bos, coveredSequence);
+                } else {
+                    ObjectOutputStream oos = new ObjectOutputStream(bos);
+                    oos.writeObject(new ConcurrentHashMap<>(records));
+                    oos.writeLong(coveredSequence);
+                    oos.flush();
+                }
+                bos.flush();
+                fos.getFD().sync();
+            } catch (IOException e) {
+                LOGGER.log(Level.SEVERE, "CRITICAL: Failed to save " + label
+                + " data to file (" + storageFilePath + "). Data loss may "
+                + "occur.", e);
+                return false;
+            }
+            try {
+                try {
+                    Files.move(tempFile.toPath(), file.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+                } catch (AtomicMoveNotSupportedException e) {
+                    Files.move(tempFile.toPath(), file.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING);
+                }
+                LOGGER.log(Level.FINE, "{0} data saved successfully to {1}",
+                new Object[]{capitalisedLabel(), storageFilePath});
+                return true;
+            } catch (IOException e) {
+                LOGGER.log(Level.SEVERE, "CRITICAL: Failed to replace "
+                + label + " data file (" + storageFilePath + "). Data loss "
+                + "may occur.", e);
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Writes the binary data file layout for a copy of the record map.
+     */
+    private void writeBinarySnapshot(BufferedOutputStream out,
+    long coveredSequence) throws IOException {
+        Map<Integer, V> copy = new HashMap<>(records);
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(SNAPSHOT_MAGIC);
+        data.writeShort(SNAPSHOT_VERSION);
+        data.writeLong(coveredSequence);
+        data.writeInt(copy.size());
+        ByteArrayOutputStream chunk = new ByteArrayOutputStream(
+        SNAPSHOT_CHUNK_BYTES + 8192);
+        int chunkCount = 0;
+        for (Map.Entry<Integer, V> entry : copy.entrySet()) {
+            byte[] payload = encode(entry.getValue());
+            BinaryRecordWriter.writeVarInt(chunk, entry.getKey());
+            BinaryRecordWriter.writeVarInt(chunk, payload.length);
+            chunk.write(payload);
+            chunkCount++;
+            if (chunk.size() >= SNAPSHOT_CHUNK_BYTES) {
+                writeChunk(data, chunk, chunkCount);
+                chunkCount = 0;
+            }
+        }
+        if (chunkCount > 0) {
+            writeChunk(data, chunk, chunkCount);
+        }
+    }
+
+    /**
+     * Writes one chunk of records and empties the buffer holding it.
+     */
+    private static void writeChunk(DataOutputStream out,
+    ByteArrayOutputStream chunk, int count) throws IOException {
+        byte[] bytes = chunk.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+        out.writeInt(count);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+        out.writeInt((int) crc.getValue());
+        chunk.reset();
+    }
+
+    /**
+     * Encodes a record with the configured codec. Records the binary
+     * codec cannot represent are written with Java serialization instead.
+     */
+    byte[] encode(V record) throws IOException {
+        if (writeBinary) {
+            try {
+                return binaryCodec.encode(record);
+            } catch (IOException | RuntimeException e) {
+                LOGGER.log(Level.FINE, "Falling back to Java serialization "
+                + "for " + label + " record: " + e.getMessage());
+            }
+        }
+        return javaCodec.encode(record);
+    }
+
+    /**
+     * Decodes a record written by either codec, told apart by the Java
+     * serialization stream header.
+     */
+    V decode(byte[] payload) throws IOException {
+        if (binaryCodec == null
+        || JavaSerializationCodec.isJavaSerialized(payload)) {
+            return javaCodec.decode(payload);
+        }
+        try {
+            return binaryCodec.decode(payload);
+        } catch (RuntimeException e) {
+            // Domain validation rejected the decoded values
+            throw new IOException("Invalid " + label + " record", e);
+        }
+    }
+
+    private String capitalisedLabel() {
+        return Character.toUpperCase(label.charAt(0)) + label.substring(1);
+    }
+
+    /**
+     * Ensures the parent directory for the storage file exists and
+     * creates it if necessary.
+     * @param file The storage file.
+     */
+    private void ensureDirectoryExists(File file) {
+        File parentDir = file.getParentFile();
+        if (parentDir != null && !parentDir.exists()) {
+            LOGGER.log(Level.INFO,
+            "Attempting to create directory for {0} data: {1}",
+            new Object[]{label, parentDir.getAbsolutePath()});
+            if (parentDir.mkdirs()) {
+                LOGGER.log(Level.INFO,
+                "Successfully created directory: {0}",
+                parentDir.getAbsolutePath());
+            } else {
+                LOGGER.log(Level.SEVERE,
+                "Failed to create directory for {0} data: {1}",
+                new Object[]{label, parentDir.getAbsolutePath()});
+            }
+        }
+    }
+}
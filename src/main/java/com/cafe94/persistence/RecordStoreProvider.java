@@ -0,0 +1,215 @@
+package com.cafe94.persistence;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.cafe94.domain.Table;
+
+/**
+ * Base of the providers whose repositories keep their records in memory
+ * and persist them through a {@link RecordStore}: one data file per
+ * repository, named after it, in the data directory, and a
+ * {@link TransactionManager} logging to {@code transactions.dat}. The
+ * repositories read their own files, so they are loaded side by side on
+ * a small pool; orders wait for the menu, which they resolve items
+ * against.
+ * <p>
+ * Subclasses only choose the default {@link StorageOptions}. Every
+ * repository still honours the {@code cafe94.storage.*} overrides of
+ * {@link StorageOptions#fromSystemProperties(String, StorageOptions)},
+ * except in memory mode, which ignores them and runs transactions
+ * without a log.
+ * @author Adigun Lateef
+ * @version 1.0
+ */
+abstract class RecordStoreProvider implements StorageProvider {
+
+    private static final Logger LOGGER =
+    Logger.getLogger(RecordStoreProvider.class.getName());
+    /** Upper bound on threads loading repositories at startup. */
+    private static final int MAX_LOADER_THREADS = 4;
+
+    private final String name;
+    private final StorageOptions defaults;
+    private final long orderArchiveAfterMinutes;
+
+    /**
+     * @param name                     The backend name
+     * @param defaults                 Options of every repository
+     * @param orderArchiveAfterMinutes Minutes finished orders stay in
+     *                                 memory, or 0 to never archive
+     */
+    RecordStoreProvider(String name, StorageOptions defaults,
+    long orderArchiveAfterMinutes) {
+        this.name = Objects.requireNonNull(name, "Name cannot be null.");
+        this.defaults = Objects.requireNonNull(defaults,
+        "Default options cannot be null.");
+        this.orderArchiveAfterMinutes = orderArchiveAfterMinutes;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public StorageBackend open(File dataDirectory,
+    List<Table> initialTables) {
+        Objects.requireNonNull(dataDirectory,
+        "Data directory cannot be null.");
+        String dataDir = dataDirectory.getPath();
+        String userDataFile = dataDir + File.separator + "users.dat";
+        String tableDataFile = dataDir + File.separator + "tables.dat";
+        String menuDataFile = dataDir + File.separator + "menu.dat";
+        String orderDataFile = dataDir + File.separator + "orders.dat";
+        String bookingDataFile = dataDir + File.separator + "bookings.dat";
+        String transactionLogFile = dataDir + File.separator
+        + "transactions.dat";
+        ExecutorService loader = Executors.newFixedThreadPool(
+        Math.max(2, Math.min(MAX_LOADER_THREADS,
+        Runtime.getRuntime().availableProcessors())),
+        loaderThreadFactory());
+        List<CompletableFuture<? extends DurableRepository>> loads =
+        new ArrayList<>();
+        try {
+            long start = System.nanoTime();
+            CompletableFuture<TableRepository> tableLoad = load(loader,
+            loads, "tables", () -> new TableRepository(tableDataFile,
+            initialTables, options("tables")));
+            CompletableFuture<UserRepository> userLoad = load(loader, loads,
+            "users", () -> new UserRepository(userDataFile,
+            options("users")));
+            CompletableFuture<MenuRepository> menuLoad = load(loader, loads,
+            "menu", () -> new MenuRepository(menuDataFile, options("menu")));
+            CompletableFuture<BookingRepository> bookingLoad = load(loader,
+            loads, "bookings", () -> new BookingRepository(bookingDataFile,
+            options("bookings")));
+            CompletableFuture<OrderRepository> orderLoad =
+            menuLoad.thenApplyAsync(loadedMenu -> timed("orders",
+            () -> new OrderRepository(orderDataFile, orderOptions(),
+            loadedMenu)), loader);
+            loads.add(orderLoad);
+            CompletableFuture.allOf(loads.toArray(
+            new CompletableFuture<?>[0])).join();
+            TableRepository tables = tableLoad.join();
+            UserRepository users = userLoad.join();
+            MenuRepository menu = menuLoad.join();
+            OrderRepository orders = orderLoad.join();
+            BookingRepository bookings = bookingLoad.join();
+            LOGGER.log(Level.INFO, "All {0} repositories loaded in {1} ms",
+            new Object[]{name, (System.nanoTime() - start) / 1_000_000});
+
+            // Recovers committed changes the repositories lost in a crash
+            TransactionManager transactionManager = defaults.isInMemory()
+            ? new TransactionManager(orders, tables, bookings)
+            : new TransactionManager(transactionLogFile, orders, tables,
+            bookings);
+
+            List<DurableRepository> repositories = Arrays.asList(tables,
+            users, menu, orders, bookings);
+            List<Compactable> compactables = new ArrayList<>(repositories);
+            compactables.add(transactionManager);
+            // The log is checkpointed while the repositories are open
+            List<AutoCloseable> resources = new ArrayList<>();
+            resources.add(transactionManager);
+            resources.addAll(repositories);
+            return new StorageBackend(name, users, menu, tables, orders,
+            bookings, transactionManager, compactables, resources);
+        } catch (RuntimeException e) {
+            closeLoaded(loads);
+            Throwable cause = e instanceof CompletionException
+            && e.getCause() != null ? e.getCause() : e;
+            throw new IllegalStateException("Failed to open " + name
+            + " storage in " + dataDir, cause);
+        } finally {
+            loader.shutdown();
+        }
+    }
+
+    private StorageOptions options(String repositoryName) {
+        return options(repositoryName, defaults);
+    }
+
+    private StorageOptions orderOptions() {
+        return options("orders",
+        defaults.withArchiveAfter(orderArchiveAfterMinutes));
+    }
+
+    private static StorageOptions options(String repositoryName,
+    StorageOptions repositoryDefaults) {
+        return repositoryDefaults.isInMemory() ? repositoryDefaults
+        : StorageOptions.fromSystemProperties(repositoryName,
+        repositoryDefaults);
+    }
+
+    /**
+     * Starts loading a repository on the loader pool.
+     * @param loader The pool to load on
+     * @param loads  Collects the load so open can wait for all of them
+     * @param name   Repository name for the timing log
+     * @param create Constructs, and so loads, the repository
+     * @return The pending repository.
+     */
+    private static <T extends DurableRepository> CompletableFuture<T> load(
+    ExecutorService loader,
+    List<CompletableFuture<? extends DurableRepository>> loads,
+    String name, Supplier<T> create) {
+        CompletableFuture<T> future = CompletableFuture.supplyAsync(
+        () -> timed(name, create), loader);
+        loads.add(future);
+        return future;
+    }
+
+    private static <T> T timed(String name, Supplier<T> create) {
+        long start = System.nanoTime();
+        T repository = create.get();
+        LOGGER.log(Level.INFO, "Loaded {0} repository in {1} ms on {2}",
+        new Object[]{name, (System.nanoTime() - start) / 1_000_000,
+            Thread.currentThread().getName()});
+        return repository;
+    }
+
+    /**
+     * Waits for the other loads when one failed and closes whatever did
+     * load, so their journals and flusher threads are released.
+     */
+    private static void closeLoaded(
+    List<CompletableFuture<? extends DurableRepository>> loads) {
+        for (CompletableFuture<? extends DurableRepository> load : loads) {
+            DurableRepository repository;
+            try {
+                repository = load.join();
+            } catch (CompletionException e) {
+                continue;
+            }
+            try {
+                repository.close();
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.WARNING,
+                "Failed to close repository after failed open", e);
+            }
+        }
+    }
+
+    private static ThreadFactory loaderThreadFactory() {
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable,
+            "cafe94-loader-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
@@ -0,0 +1,64 @@
+package com.cafe94.persistence;
+
+/**
+ * Thrown by a conditional save when the record was saved by someone else
+ * since the caller read it, so the caller's change was decided on stale
+ * data. Nothing is saved; the caller should read the record again and
+ * either retry or report the conflict.
+ * @author Adigun Lateef
+ * @version 1.0
+ */
+public class StaleRecordException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String recordType;
+    private final int recordId;
+    private final long expectedVersion;
+    private final long actualVersion;
+
+    /**
+     * @param recordType      The kind of record, e.g. "Order"
+     * @param recordId        The record's ID
+     * @param expectedVersion The version the caller read
+     * @param actualVersion   The version now stored
+     */
+    public StaleRecordException(String recordType, int recordId,
+    long expectedVersion, long actualVersion) {
+        super(recordType + " " + recordId + " was changed by someone else "
+        + "(expected version " + expectedVersion + ", found "
+        + actualVersion + ").");
+        this.recordType = recordType;
+        this.recordId = recordId;
+        this.expectedVersion = expectedVersion;
+        this.actualVersion = actualVersion;
+    }
+
+    /**
+     * @return The kind of record, e.g. "Order".
+     */
+    public String getRecordType() {
+        return recordType;
+    }
+
+    /**
+     * @return The ID of the record.
+     */
+    public int getRecordId() {
+        return recordId;
+    }
+
+    /**
+     * @return The version the caller expected to overwrite.
+     */
+    public long getExpectedVersion() {
+        return expectedVersion;
+    }
+
+    /**
+     * @return The version that was stored instead.
+     */
+    public long getActualVersion() {
+        return actualVersion;
+    }
+}
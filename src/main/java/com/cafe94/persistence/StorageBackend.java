@@ -0,0 +1,151 @@
+package com.cafe94.persistence;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The repositories and transaction manager opened by a
+ * {@link StorageProvider}, together with whatever they need compacted in
+ * the background and closed on shutdown.
+ * @author Adigun Lateef
+ * @version 1.0
+ */
+public final class StorageBackend implements AutoCloseable {
+
+    private static final Logger LOGGER =
+    Logger.getLogger(StorageBackend.class.getName());
+
+    private final String name;
+    private final IUserRepository userRepository;
+    private final IMenuRepository menuRepository;
+    private final ITableRepository tableRepository;
+    private final IOrderRepository orderRepository;
+    private final IBookingRepository bookingRepository;
+    private final ITransactionManager transactionManager;
+    private final List<Compactable> compactables;
+    private final List<AutoCloseable> resources;
+
+    /**
+     * @param name               The name of the provider that opened it
+     * @param userRepository     The user repository
+     * @param menuRepository     The menu repository
+     * @param tableRepository    The table repository
+     * @param orderRepository    The order repository
+     * @param bookingRepository  The booking repository
+     * @param transactionManager Commits units of work across orders,
+     *                           tables and bookings
+     * @param compactables       What the background compactor should
+     *                           call, possibly nothing
+     * @param resources          What to close on shutdown, in order
+     * @throws NullPointerException if any argument is null.
+     */
+    public StorageBackend(String name, IUserRepository userRepository,
+    IMenuRepository menuRepository, ITableRepository tableRepository,
+    IOrderRepository orderRepository, IBookingRepository bookingRepository,
+    ITransactionManager transactionManager, List<Compactable> compactables,
+    List<AutoCloseable> resources) {
+        this.name = Objects.requireNonNull(name, "Name cannot be null.");
+        this.userRepository = Objects.requireNonNull(userRepository,
+        "User repository cannot be null.");
+        this.menuRepository = Objects.requireNonNull(menuRepository,
+        "Menu repository cannot be null.");
+        this.tableRepository = Objects.requireNonNull(tableRepository,
+        "Table repository cannot be null.");
+        this.orderRepository = Objects.requireNonNull(orderRepository,
+        "Order repository cannot be null.");
+        this.bookingRepository = Objects.requireNonNull(bookingRepository,
+        "Booking repository cannot be null.");
+        this.transactionManager = Objects.requireNonNull(transactionManager,
+        "Transaction manager cannot be null.");
+        this.compactables = Collections.unmodifiableList(new ArrayList<>(
+        Objects.requireNonNull(compactables,
+        "Compactables cannot be null.")));
+        this.resources = Collections.unmodifiableList(new ArrayList<>(
+        Objects.requireNonNull(resources, "Resources cannot be null.")));
+    }
+
+    /**
+     * @return The name of the provider that opened this backend
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return The user repository
+     */
+    public IUserRepository getUserRepository() {
+        return userRepository;
+    }
+
+    /**
+     * @return The menu repository
+     */
+    public IMenuRepository getMenuRepository() {
+        return menuRepository;
+    }
+
+    /**
+     * @return The table repository
+     */
+    public ITableRepository getTableRepository() {
+        return tableRepository;
+    }
+
+    /**
+     * @return The order repository
+     */
+    public IOrderRepository getOrderRepository() {
+        return orderRepository;
+    }
+
+    /**
+     * @return The booking repository
+     */
+    public IBookingRepository getBookingRepository() {
+        return bookingRepository;
+    }
+
+    /**
+     * @return The transaction manager
+     */
+    public ITransactionManager getTransactionManager() {
+        return transactionManager;
+    }
+
+    /**
+     * @return What a {@link JournalCompactor} should compact
+     */
+    public List<Compactable> getCompactables() {
+        return compactables;
+    }
+
+    /**
+     * Closes every resource in order, logging and skipping failures so
+     * the rest still get closed. Write-behind repositories persist their
+     * remaining changes here.
+     */
+    @Override
+    public void close() {
+        closeAll(resources);
+    }
+
+    /**
+     * Closes resources in order, logging failures.
+     *
+     * @param resources What to close
+     */
+    static void closeAll(List<? extends AutoCloseable> resources) {
+        for (AutoCloseable resource : resources) {
+            try {
+                resource.close();
+            } catch (Exception e) {
+                LOGGER.log(Level.SEVERE, "Failed to close " + resource, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,448 @@
+package com.cafe94.persistence;
+
+import java.util.Locale;
+import java.util.Objects;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Immutable settings describing how a repository persists its records.
+ * Repositories constructed without options keep the original behaviour of
+ * rewriting the whole data file on every change.
+ * @author Adigun Lateef
+ * @version 1.0
+ */
+public final class StorageOptions {
+
+    private static final Logger LOGGER =
+    Logger.getLogger(StorageOptions.class.getName());
+
+    /** System property prefix shared by all storage settings. */
+    static final String PROPERTY_PREFIX = "cafe94.storage.";
+
+    /**
+     * How mutations reach the disk.
+     */
+    public enum Mode {
+        /** Every change rewrites the complete data file. */
+        SNAPSHOT,
+        /**
+         * Every change appends one record to a journal segment that is
+         * replayed on top of the data file at startup.
+         */
+        JOURNALED,
+        /**
+         * Nothing is read or written; records live only as long as the
+         * process. Meant for benchmarks that should not measure the disk.
+         */
+        MEMORY
+    }
+
+    /**
+     * How individual records are encoded on disk. Either codec can read
+     * files written by the other, so switching is safe in both directions.
+     */
+    public enum Codec {
+        /** Default Java serialization of the domain objects. */
+        JAVA,
+        /**
+         * Hand-written versioned binary format, for record types that
+         * provide one. Other record types keep using Java serialization.
+         */
+        BINARY
+    }
+
+    /** Journal records written before a background compaction. */
+    public static final long DEFAULT_COMPACT_AFTER_RECORDS = 1000;
+    /** Journal bytes written before a background compaction. */
+    public static final long DEFAULT_COMPACT_AFTER_BYTES = 4L * 1024 * 1024;
+    /** Time a group commit waits for more writers before forcing. */
+    public static final long DEFAULT_GROUP_COMMIT_WINDOW_MICROS = 500;
+
+    private final Mode mode;
+    private final Codec codec;
+    private final long compactAfterRecords;
+    private final long compactAfterBytes;
+    private final long groupCommitWindowMicros;
+    private final long maxStalenessMillis;
+    private final long archiveAfterMinutes;
+    private final int loadParallelism;
+
+    private StorageOptions(Mode mode, Codec codec, long compactAfterRecords,
+    long compactAfterBytes, long groupCommitWindowMicros,
+    long maxStalenessMillis, long archiveAfterMinutes, int loadParallelism) {
+        this.mode = Objects.requireNonNull(mode, "Mode cannot be null.");
+        this.codec = Objects.requireNonNull(codec, "Codec cannot be null.");
+        if (compactAfterRecords <= 0 || compactAfterBytes <= 0) {
+            throw new IllegalArgumentException(
+            "Compaction thresholds must be positive.");
+        }
+        if (groupCommitWindowMicros < 0) {
+            throw new IllegalArgumentException(
+            "Group commit window cannot be negative.");
+        }
+        if (maxStalenessMillis < 0) {
+            throw new IllegalArgumentException(
+            "Maximum staleness cannot be negative.");
+        }
+        if (archiveAfterMinutes < 0) {
+            throw new IllegalArgumentException(
+            "Archive delay cannot be negative.");
+        }
+        if (loadParallelism < 0) {
+            throw new IllegalArgumentException(
+            "Load parallelism cannot be negative.");
+        }
+        this.compactAfterRecords = compactAfterRecords;
+        this.compactAfterBytes = compactAfterBytes;
+        this.groupCommitWindowMicros = groupCommitWindowMicros;
+        this.maxStalenessMillis = maxStalenessMillis;
+        this.archiveAfterMinutes = archiveAfterMinutes;
+        this.loadParallelism = loadParallelism;
+    }
+
+    /**
+     * @return Options for the original full-file rewrite behaviour.
+     */
+    public static StorageOptions snapshot() {
+        return new StorageOptions(Mode.SNAPSHOT, Codec.JAVA,
+        DEFAULT_COMPACT_AFTER_RECORDS, DEFAULT_COMPACT_AFTER_BYTES,
+        DEFAULT_GROUP_COMMIT_WINDOW_MICROS, 0, 0, 0);
+    }
+
+    /**
+     * @return Options for journaled persistence.
+     */
+    public static StorageOptions journaled() {
+        return new StorageOptions(Mode.JOURNALED, Codec.JAVA,
+        DEFAULT_COMPACT_AFTER_RECORDS, DEFAULT_COMPACT_AFTER_BYTES,
+        DEFAULT_GROUP_COMMIT_WINDOW_MICROS, 0, 0, 0);
+    }
+
+    /**
+     * @return Options that keep records in memory only. Write-behind and
+     * archiving are ignored in this mode.
+     */
+    public static StorageOptions memory() {
+        return new StorageOptions(Mode.MEMORY, Codec.JAVA,
+        DEFAULT_COMPACT_AFTER_RECORDS, DEFAULT_COMPACT_AFTER_BYTES,
+        DEFAULT_GROUP_COMMIT_WINDOW_MICROS, 0, 0, 0);
+    }
+
+    /**
+     * Returns a copy of these options using a different record codec.
+     *
+     * @param codec The codec for newly written records
+     * @return The new options.
+     * @throws NullPointerException if codec is null.
+     */
+    public StorageOptions withCodec(Codec codec) {
+        return new StorageOptions(mode, codec, compactAfterRecords,
+        compactAfterBytes, groupCommitWindowMicros, maxStalenessMillis,
+        archiveAfterMinutes, loadParallelism);
+    }
+
+    /**
+     * Returns a copy of these options with different compaction
+     * thresholds. The journal is compacted once either is reached.
+     *
+     * @param records Journal records that trigger a compaction
+     * @param bytes   Journal bytes that trigger a compaction
+     * @return The new options.
+     * @throws IllegalArgumentException if a threshold is not positive.
+     */
+    public StorageOptions withCompactionThresholds(long records,
+    long bytes) {
+        return new StorageOptions(mode, codec, records, bytes,
+        groupCommitWindowMicros, maxStalenessMillis, archiveAfterMinutes,
+        loadParallelism);
+    }
+
+    /**
+     * Returns a copy of these options with a different group commit
+     * window. A longer window batches more concurrent saves into one
+     * {@code fsync} at the cost of latency for a lone writer.
+     *
+     * @param micros Microseconds to wait for other writers, 0 for none
+     * @return The new options.
+     * @throws IllegalArgumentException if micros is negative.
+     */
+    public StorageOptions withGroupCommitWindow(long micros) {
+        return new StorageOptions(mode, codec, compactAfterRecords,
+        compactAfterBytes, micros, maxStalenessMillis, archiveAfterMinutes,
+        loadParallelism);
+    }
+
+    /**
+     * Returns a copy of these options with write-behind enabled or
+     * disabled. With write-behind, saves only mark records dirty and
+     * return; a background flusher persists each dirty record once, no
+     * later than the given staleness after it was first marked. Changes
+     * not yet flushed are lost if the process dies, so repositories must
+     * be closed on shutdown.
+     *
+     * @param millis Maximum time a change may stay unpersisted, or 0 to
+     *               persist every save before it returns
+     * @return The new options.
+     * @throws IllegalArgumentException if millis is negative.
+     */
+    public StorageOptions withWriteBehind(long millis) {
+        return new StorageOptions(mode, codec, compactAfterRecords,
+        compactAfterBytes, groupCommitWindowMicros, millis,
+        archiveAfterMinutes, loadParallelism);
+    }
+
+    /**
+     * Returns a copy of these options with archiving of finished records
+     * enabled or disabled. Repositories that support it move records in a
+     * final state out of memory into archive segments once they have not
+     * changed for the given time. Only orders are archived.
+     *
+     * @param minutes Minutes a finished record stays in memory, or 0 to
+     *                never archive
+     * @return The new options.
+     * @throws IllegalArgumentException if minutes is negative.
+     */
+    public StorageOptions withArchiveAfter(long minutes) {
+        return new StorageOptions(mode, codec, compactAfterRecords,
+        compactAfterBytes, groupCommitWindowMicros, maxStalenessMillis,
+        minutes, loadParallelism);
+    }
+
+    /**
+     * Returns a copy of these options decoding data files on a different
+     * number of threads. Binary data files are split into chunks that are
+     * decoded side by side at startup; files written with the Java codec
+     * are always read by one thread.
+     *
+     * @param threads Threads decoding one data file, or 0 for one per
+     *                available processor
+     * @return The new options.
+     * @throws IllegalArgumentException if threads is negative.
+     */
+    public StorageOptions withLoadParallelism(int threads) {
+        return new StorageOptions(mode, codec, compactAfterRecords,
+        compactAfterBytes, groupCommitWindowMicros, maxStalenessMillis,
+        archiveAfterMinutes, threads);
+    }
+
+    /**
+     * Reads options for a repository from system properties, starting
+     * from the defaults for the given mode.
+     *
+     * @param repositoryName Short repository name, e.g. "orders"
+     * @param defaultMode    Mode to use when no property is set
+     * @return The resolved options.
+     * @throws NullPointerException if any argument is null.
+     * @see #fromSystemProperties(String, StorageOptions)
+     */
+    public static StorageOptions fromSystemProperties(String repositoryName,
+    Mode defaultMode) {
+        Objects.requireNonNull(defaultMode, "Default mode cannot be null.");
+        return fromSystemProperties(repositoryName,
+        defaultMode == Mode.JOURNALED ? journaled()
+        : defaultMode == Mode.MEMORY ? memory() : snapshot());
+    }
+
+    /**
+     * Reads options for a repository from system properties. The
+     * repository specific property {@code cafe94.storage.<name>.mode} wins
+     * over the global {@code cafe94.storage.mode}; {@code codec}, the
+     * compaction thresholds {@code compactAfterRecords} and
+     * {@code compactAfterBytes}, {@code groupCommitWindowMicros}, the
+     * write-behind {@code maxStalenessMillis}, {@code archiveAfterMinutes}
+     * and {@code loadParallelism} are resolved the same way. Settings
+     * without a property keep the value from the defaults.
+     *
+     * @param repositoryName Short repository name, e.g. "orders"
+     * @param defaults       Options to use where no property is set
+     * @return The resolved options.
+     * @throws NullPointerException if any argument is null.
+     */
+    public static StorageOptions fromSystemProperties(String repositoryName,
+    StorageOptions defaults) {
+        Objects.requireNonNull(repositoryName,
+        "Repository name cannot be null.");
+        Objects.requireNonNull(defaults, "Default options cannot be null.");
+        return new StorageOptions(
+        enumProperty(repositoryName, "mode", Mode.class, defaults.mode),
+        enumProperty(repositoryName, "codec", Codec.class, defaults.codec),
+        longProperty(repositoryName, "compactAfterRecords",
+        defaults.compactAfterRecords),
+        longProperty(repositoryName, "compactAfterBytes",
+        defaults.compactAfterBytes),
+        longProperty(repositoryName, "groupCommitWindowMicros",
+        defaults.groupCommitWindowMicros, 0),
+        longProperty(repositoryName, "maxStalenessMillis",
+        defaults.maxStalenessMillis, 0),
+        longProperty(repositoryName, "archiveAfterMinutes",
+        defaults.archiveAfterMinutes, 0),
+        (int) Math.min(Integer.MAX_VALUE, longProperty(repositoryName,
+        "loadParallelism", defaults.loadParallelism, 0)));
+    }
+
+    /**
+     * Looks up {@code cafe94.storage.<repository>.<key>}, falling back to
+     * {@code cafe94.storage.<key>}.
+     */
+    static String property(String repositoryName, String key) {
+        String value = System.getProperty(PROPERTY_PREFIX + repositoryName
+        + "." + key);
+        if (value == null || value.trim().isEmpty()) {
+            value = System.getProperty(PROPERTY_PREFIX + key);
+        }
+        return (value == null || value.trim().isEmpty()) ? null : value;
+    }
+
+    /**
+     * Reads an enum setting by constant name, logging and falling back to
+     * the default if the property is missing or unknown.
+     */
+    static <E extends Enum<E>> E enumProperty(String repositoryName,
+    String key, Class<E> type, E defaultValue) {
+        String value = property(repositoryName, key);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Enum.valueOf(type, value.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            LOGGER.log(Level.WARNING,
+            "Unknown storage {0} ''{1}'' for {2}. Using {3}.",
+            new Object[]{key, value, repositoryName, defaultValue});
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Reads a positive long setting, logging and falling back to the
+     * default if the property is missing or invalid.
+     */
+    static long longProperty(String repositoryName, String key,
+    long defaultValue) {
+        return longProperty(repositoryName, key, defaultValue, 1);
+    }
+
+    /**
+     * Reads a long setting of at least {@code minimum}, logging and
+     * falling back to the default if the property is missing or invalid.
+     */
+    static long longProperty(String repositoryName, String key,
+    long defaultValue, long minimum) {
+        String value = property(repositoryName, key);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            long parsed = Long.parseLong(value.trim());
+            if (parsed >= minimum) {
+                return parsed;
+            }
+        } catch (NumberFormatException e) {
+            // Logged below
+        }
+        LOGGER.log(Level.WARNING,
+        "Invalid value ''{0}'' for storage setting {1} of {2}. Using {3}.",
+        new Object[]{value, key, repositoryName, defaultValue});
+        return defaultValue;
+    }
+
+    /**
+     * @return The persistence mode
+     */
+    public Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * @return The codec for newly written records
+     */
+    public Codec getCodec() {
+        return codec;
+    }
+
+    /**
+     * @return true if mutations are appended to a journal.
+     */
+    public boolean isJournaled() {
+        return mode == Mode.JOURNALED;
+    }
+
+    /**
+     * @return true if records are never read from or written to disk.
+     */
+    public boolean isInMemory() {
+        return mode == Mode.MEMORY;
+    }
+
+    /**
+     * @return Journal records that trigger a background compaction
+     */
+    public long getCompactAfterRecords() {
+        return compactAfterRecords;
+    }
+
+    /**
+     * @return Journal bytes that trigger a background compaction
+     */
+    public long getCompactAfterBytes() {
+        return compactAfterBytes;
+    }
+
+    /**
+     * @return Microseconds a group commit waits for other writers
+     */
+    public long getGroupCommitWindowMicros() {
+        return groupCommitWindowMicros;
+    }
+
+    /**
+     * @return true if saves return before their changes are persisted
+     */
+    public boolean isWriteBehind() {
+        return maxStalenessMillis > 0 && !isInMemory();
+    }
+
+    /**
+     * @return Maximum time a write-behind change stays unpersisted, or 0
+     * if write-behind is disabled
+     */
+    public long getMaxStalenessMillis() {
+        return maxStalenessMillis;
+    }
+
+    /**
+     * @return true if finished records are moved to archive segments
+     */
+    public boolean isArchiving() {
+        return archiveAfterMinutes > 0 && !isInMemory();
+    }
+
+    /**
+     * @return Minutes a finished record stays in memory before it is
+     * archived, or 0 if archiving is disabled
+     */
+    public long getArchiveAfterMinutes() {
+        return archiveAfterMinutes;
+    }
+
+    /**
+     * @return Threads decoding one data file at startup; never less than
+     * one
+     */
+    public int getLoadParallelism() {
+        return loadParallelism > 0 ? loadParallelism
+        : Runtime.getRuntime().availableProcessors();
+    }
+
+    @Override
+    public String toString() {
+        return "StorageOptions[Mode=" + mode + ", Codec=" + codec
+        + ", CompactAfterRecords="
+        + compactAfterRecords + ", CompactAfterBytes=" + compactAfterBytes
+        + ", GroupCommitWindowMicros=" + groupCommitWindowMicros
+        + ", MaxStalenessMillis=" + maxStalenessMillis
+        + ", ArchiveAfterMinutes=" + archiveAfterMinutes
+        + ", LoadParallelism=" + loadParallelism + ']';
+    }
+}
@@ -0,0 +1,38 @@
+package com.cafe94.persistence;
+
+import java.io.File;
+import java.util.List;
+
+import com.cafe94.domain.Table;
+
+/**
+ * Service provider interface for a storage backend: something that can
+ * open all five repositories, and the transaction manager spanning
+ * orders, tables and bookings, over a data directory. Implementations are
+ * discovered with {@link java.util.ServiceLoader} and chosen by name at
+ * startup, see {@link StorageProviders}, so a backend can be swapped or
+ * compared against another without touching the services or the GUI.
+ * Implementations must be public and have a public no-argument
+ * constructor.
+ * @author Adigun Lateef
+ * @version 1.0
+ */
+public interface StorageProvider {
+
+    /**
+     * @return The name the backend is selected by, e.g. "journaled".
+     */
+    String getName();
+
+    /**
+     * Opens, and so loads, every repository of this backend.
+     *
+     * @param dataDirectory The directory holding the data files
+     * @param initialTables Tables to store if none are stored yet
+     * @return The open backend, which the caller must close.
+     * @throws NullPointerException if dataDirectory is null.
+     * @throws IllegalStateException if the backend cannot be opened.
+     * Anything opened before the failure has been closed again.
+     */
+    StorageBackend open(File dataDirectory, List<Table> initialTables);
+}
@@ -0,0 +1,70 @@
+package com.cafe94.persistence;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.ServiceLoader;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Looks up {@link StorageProvider} implementations with
+ * {@link ServiceLoader}. The backend is named by the system property
+ * {@value #BACKEND_PROPERTY}; "legacy", "journaled", "memory" and "lsm"
+ * ship with the application and are registered in {@code module-info}
+ * and under {@code META-INF/services}. The module exports this package,
+ * so another module can add a backend by declaring
+ * {@code provides com.cafe94.persistence.StorageProvider}, or a jar on
+ * the class path by listing it in its own {@code META-INF/services}.
+ * @author Adigun Lateef
+ * @version 1.0
+ */
+public final class StorageProviders {
+
+    private static final Logger LOGGER =
+    Logger.getLogger(StorageProviders.class.getName());
+
+    /** System property naming the storage backend. */
+    public static final String BACKEND_PROPERTY = "cafe94.storage.backend";
+    /** Backend used when the property is not set. */
+    public static final String DEFAULT_BACKEND = "journaled";
+
+    private StorageProviders() {
+    }
+
+    /**
+     * @return The provider named by {@value #BACKEND_PROPERTY}, or the
+     * {@value #DEFAULT_BACKEND} provider if it is not set.
+     * @throws IllegalArgumentException if no provider has that name.
+     */
+    public static StorageProvider fromSystemProperties() {
+        String name = System.getProperty(BACKEND_PROPERTY);
+        if (name == null || name.trim().isEmpty()) {
+            name = DEFAULT_BACKEND;
+        }
+        return find(name.trim());
+    }
+
+    /**
+     * Finds a provider by name, ignoring case.
+     *
+     * @param name The backend name
+     * @return The provider.
+     * @throws IllegalArgumentException if no provider has that name.
+     */
+    public static StorageProvider find(String name) {
+        List<String> available = new ArrayList<>();
+        for (StorageProvider provider
+        : ServiceLoader.load(StorageProvider.class)) {
+            if (provider.getName().equalsIgnoreCase(name)) {
+                LOGGER.log(Level.CONFIG, "Using storage backend {0} ({1})",
+                new Object[]{provider.getName(),
+                    provider.getClass().getName()});
+                return provider;
+            }
+            available.add(provider.getName().toLowerCase(Locale.ROOT));
+        }
+        throw new IllegalArgumentException("Unknown storage backend '"
+        + name + "'. Available: " + available);
+    }
+}
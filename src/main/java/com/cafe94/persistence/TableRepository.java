@@ -1,40 +1,42 @@
 package com.cafe94.persistence;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
-import java.util.Map;
+import java.util.NavigableMap;
 import java.util.Objects;
 import java.util.Optional;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Consumer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.util.stream.Collectors;
 
 import com.cafe94.domain.Table;
+import com.cafe94.enums.TableStatus;
+import com.cafe94.util.primitive.IntObjectConcurrentMap;
 
 /**
  * Concrete implementation of {@link ITableRepository} using Java Serialization
- * for persistence
+ * for persistence. Tables are also kept in a sorted map by capacity, so
+ * capacity queries return a ready-ordered tail view instead of a sorted
+ * copy.
  * @author Adigun Lateef
  * @version 1.0
  */
-public class TableRepository implements ITableRepository {
+public class TableRepository implements ITableRepository, DurableRepository {
 
     private static final Logger LOGGER =
     Logger.getLogger(TableRepository.class.getName());
-    private final Map<Integer, Table> tables = new ConcurrentHashMap<>();
+    private final IntObjectConcurrentMap<Table> tables =
+    new IntObjectConcurrentMap<>();
+    // Keyed by capacity in the high word and table number in the low word
+    private final NavigableMap<Long, Table> byCapacity =
+    new ConcurrentSkipListMap<>();
     private final String storageFilePath;
+    private final RecordStore<Table> store;
 
     /**
      * Constructs the repository, loading existing table data from the storage
@@ -46,10 +48,27 @@ public class TableRepository implements ITableRepository {
      */
     public TableRepository(String storageFilePath,
     List<Table> initialTables) {
+        this(storageFilePath, initialTables, StorageOptions.snapshot());
+    }
+
+    /**
+     * Constructs the repository with explicit storage options, loading
+     * existing table data and, in journaled mode, replaying the journal.
+     * @param storageFilePath Path to the data file
+     * @param initialTables   A list of tables to populate if the data file is
+     * empty or not found
+     * @param storageOptions  How mutations are persisted
+     * @throws NullPointerException if storageFilePath or storageOptions is
+     * null.
+     */
+    public TableRepository(String storageFilePath,
+    List<Table> initialTables, StorageOptions storageOptions) {
         this.storageFilePath = Objects.requireNonNull(storageFilePath,
         "Storage file path cannot be null.");
+        this.store = new RecordStore<>(storageFilePath, "table", Table.class,
+        tables, storageOptions, null);
         // Attempt loading existing data first
-        loadData();
+        store.load();
 
         // If the map is empty after loading, populate with initial tables
         if (this.tables.isEmpty()) {
@@ -70,7 +89,7 @@ public class TableRepository implements ITableRepository {
                 }
                 if (addedCount > 0) {
                     // Save the initial state
-                    saveData();
+                    store.compact();
                 }
             } else {
                 // Log warning if file was empty and no initial tables
@@ -80,6 +99,10 @@ public class TableRepository implements ITableRepository {
                 "provided or loaded.");
             }
         }
+        for (Table table : tables.values()) {
+            byCapacity.put(capacityKey(table.getCapacity(),
+            table.getTableNumber()), table);
+        }
         LOGGER.log(Level.INFO,
         "TableRepository initialised. Contains {0} tables.", tables.size());
     }
@@ -92,7 +115,23 @@ public class TableRepository implements ITableRepository {
      * @throws IllegalArgumentException if table number is not positive.
      */
     @Override
-    public synchronized Table save(Table table) {
+    public Table save(Table table) {
+        Table saved = applySave(table);
+        // Wait outside the monitor so concurrent saves share one fsync
+        store.awaitDurable();
+        return saved;
+    }
+
+    private synchronized Table applySave(Table table) {
+        applyPrepared(prepareSave(table));
+        // Return the saved table object
+        return table;
+    }
+
+    /**
+     * Checks a table can be saved. Callers must hold the monitor.
+     */
+    private Table prepareSave(Table table) {
         Objects.requireNonNull(table, "Table to save cannot be null.");
         int tableNumber = table.getTableNumber();
         if (tableNumber <= 0) {
@@ -100,11 +139,23 @@ public class TableRepository implements ITableRepository {
                 "Table must have a valid positive table number to be saved. " +
                 "Provided: " + tableNumber);
         }
+        return table;
+    }
 
-
+    /**
+     * Publishes and persists a checked table. Callers must hold the
+     * monitor.
+     */
+    private void applyPrepared(Table table) {
+        int tableNumber = table.getTableNumber();
         Table previousValue = tables.put(tableNumber, table);
         // Persist the tate
-        saveData();
+        store.put(tableNumber, table);
+        if (previousValue != null) {
+            byCapacity.remove(capacityKey(previousValue.getCapacity(),
+            tableNumber));
+        }
+        byCapacity.put(capacityKey(table.getCapacity(), tableNumber), table);
 
         if (previousValue == null) {
              LOGGER.log(Level.INFO,
@@ -115,9 +166,60 @@ public class TableRepository implements ITableRepository {
              "Updated table: Number={0}, Cap={1}, Status={2}",
              new Object[]{tableNumber, table.getCapacity()});
         }
+    }
 
-        // Return the saved table object
-        return table;
+    /**
+     * @return This repository as seen by a {@link TransactionManager}.
+     */
+    TransactionParticipant<Table> asParticipant() {
+        return new TransactionParticipant<Table>() {
+            @Override
+            public String getName() {
+                return "tables";
+            }
+
+            @Override
+            public void runExclusive(Runnable action) {
+                synchronized (TableRepository.this) {
+                    action.run();
+                }
+            }
+
+            @Override
+            public RecordStore<Table> getStore() {
+                return store;
+            }
+
+            @Override
+            public void checkVersion(Table table, long expectedVersion) {
+                // Tables are not versioned
+            }
+
+            @Override
+            public Table prepare(Table table, long expectedVersion,
+            Consumer<? super Table> change) {
+                // Tables are not versioned
+                if (change != null) {
+                    change.accept(table);
+                }
+                return prepareSave(table);
+            }
+
+            @Override
+            public Table recover(Table table) {
+                return prepareSave(table);
+            }
+
+            @Override
+            public int getId(Table table) {
+                return table.getTableNumber();
+            }
+
+            @Override
+            public void apply(Table table) {
+                applyPrepared(table);
+            }
+        };
     }
 
     /**
@@ -156,11 +258,12 @@ public class TableRepository implements ITableRepository {
      * specified requirement
      *
      * @param requiredCapacity The minimum number of seats required
-     * @return An unmodifiable List containing Table objects meeting
-     * the capacity requirement.
+     * @return An unmodifiable view of the Table objects meeting the capacity
+     * requirement, ordered by capacity then table number. It is not copied,
+     * so later saves show through.
      */
     @Override
-    public List<Table> findWithCapacityGreaterThanOrEqual(
+    public Collection<Table> findWithCapacityGreaterThanOrEqual(
         int requiredCapacity) {
         if (requiredCapacity <= 0) {
             LOGGER.log(Level.FINER,
@@ -169,112 +272,66 @@ public class TableRepository implements ITableRepository {
             // Return empty list for non-positive capacity
             return Collections.emptyList();
         }
-        return tables.values().stream()
-                .filter(table -> table.getCapacity() >= requiredCapacity)
-                .sorted(Comparator.comparingInt(Table::getTableNumber))
-                // Collect to an unmodifiable list
-                .collect(Collectors.collectingAndThen(Collectors.toList(),
-                Collections::unmodifiableList));
+        return Collections.unmodifiableCollection(
+        byCapacity.tailMap(capacityKey(requiredCapacity, 0)).values());
     }
 
-
     /**
-     * Loads table data from the specified storage file
+     * Retrieves the available tables with capacity greater than or equal to
+     * the specified requirement, smallest first
+     *
+     * @param requiredCapacity The minimum number of seats required
+     * @return An unmodifiable List of the matching tables, ordered by
+     * capacity then table number.
      */
-    @SuppressWarnings("unchecked")
-    private synchronized void loadData() {
-        File file = new File(storageFilePath);
-        if (!file.exists() || file.length() == 0) {
-            LOGGER.log(Level.INFO, "Table data file not found or empty " +
-            "({0}). Will use initial tables if provided upon initialization.",
-            storageFilePath);
-            // Ensure directory exists for future saves
-            ensureDirectoryExists(file);
-            return;
-        }
-
-        try (FileInputStream fis = new FileInputStream(file);
-             BufferedInputStream bis = new BufferedInputStream(fis);
-             ObjectInputStream ois = new ObjectInputStream(bis)) {
-
-            Object readObject = ois.readObject();
-            if (readObject instanceof Map) {
-                tables.clear();
-                Map<?, ?> rawMap = (Map<?, ?>) readObject;
-                rawMap.forEach((key, value) -> {
-                    if (key instanceof Integer && value instanceof Table) {
-                        tables.put((Integer) key, (Table) value);
-                    } else {
-                        LOGGER.log(Level.WARNING,
-                        "Skipping invalid entry during load: Key type {0}, " +
-                        "Value type {1}",
-                        new Object[]{key != null ? key.getClass().getName() :
-                            "null",
-                            value != null ? value.getClass().getName() :
-                            "null"});
-                    }
-                });
-                LOGGER.log(Level.INFO,
-                "Successfully loaded {0} table entries from: {1}",
-                new Object[]{tables.size(), storageFilePath});
-            } else {
-                LOGGER.log(Level.SEVERE,
-                "Table data file ({0}) does not contain a valid Map.",
-                storageFilePath);
+    @Override
+    public List<Table> findAvailableWithCapacityAtLeast(int requiredCapacity) {
+        List<Table> available = new ArrayList<>();
+        for (Table table
+        : findWithCapacityGreaterThanOrEqual(requiredCapacity)) {
+            if (table.getStatus() == TableStatus.AVAILABLE) {
+                available.add(table);
             }
-        } catch (FileNotFoundException e) {
-            LOGGER.log(Level.SEVERE, "Table data file not found for loading: "
-            + storageFilePath, e);
-        } catch (IOException | ClassNotFoundException | ClassCastException e) {
-            LOGGER.log(Level.SEVERE, "Failed to load table data from file ("
-            + storageFilePath + "). Data might be corrupted or class " +
-            "versions incompatible.", e);
         }
+        return Collections.unmodifiableList(available);
     }
 
-    /**
-     * Saves the current state of the tables map to the storage file
-     */
-    private synchronized void saveData() {
-        File file = new File(storageFilePath);
-        ensureDirectoryExists(file);
+    private static long capacityKey(int capacity, int tableNumber) {
+        return ((long) capacity << 32) | (tableNumber & 0xFFFFFFFFL);
+    }
 
-        try (FileOutputStream fos = new FileOutputStream(file);
-             BufferedOutputStream bos = new BufferedOutputStream(fos);
-             ObjectOutputStream oos = new ObjectOutputStream(bos)) {
 
-            oos.writeObject(new ConcurrentHashMap<>(tables));
-            LOGGER.log(Level.FINE, "Table data saved successfully to {0}",
-            storageFilePath);
+    /**
+     * Compacts the table journal once it passes the configured thresholds.
+     * Runs without the repository monitor, so saves are not blocked.
+     *
+     * @return true if a compaction ran and succeeded.
+     */
+    @Override
+    public boolean compactIfNeeded() {
+        return store.compactIfNeeded();
+    }
 
-        } catch (IOException e) {
-            LOGGER.log(Level.SEVERE,
-            "CRITICAL: Failed to save table data to file (" +
-            storageFilePath + "). Data loss may occur.", e);
-        }
+    /**
+     * Writes any table changes still pending in write-behind mode and waits
+     * until they are on disk.
+     */
+    @Override
+    public void flush() {
+        store.flush();
     }
 
     /**
-     * Ensures the parent directory for the storage file exists and
-     * creates it if necessary.
-     * @param file The storage file.
+     * Flushes pending table changes and closes the journal. The repository
+     * must not be used afterwards.
      */
-    private void ensureDirectoryExists(File file) {
-        Objects.requireNonNull(file, "File cannot be null");
-        File parentDir = file.getParentFile();
-        if (parentDir != null && !parentDir.exists()) {
-            LOGGER.log(Level.INFO,
-            "Attempting to create directory for table data: {0}",
-            parentDir.getAbsolutePath());
-            if (parentDir.mkdirs()) {
-                 LOGGER.log(Level.INFO,
-                 "Successfully created directory: {0}",
-                 parentDir.getAbsolutePath());
-            } else {
-                 LOGGER.log(Level.SEVERE,
-                 "Failed to create directory for table data: {0}",
-                 parentDir.getAbsolutePath());
-            }
+    @Override
+    public void close() {
+        try {
+            store.close();
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to close table storage cleanly ("
+            + store.getStorageFilePath() + ")", e);
         }
     }
 }
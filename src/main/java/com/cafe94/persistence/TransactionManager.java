@@ -0,0 +1,498 @@
+package com.cafe94.persistence;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.cafe94.domain.Booking;
+import com.cafe94.domain.Order;
+import com.cafe94.domain.Table;
+
+/**
+ * Commits units of work spanning the order, table and booking
+ * repositories with one durable write. A commit locks the repositories
+ * involved in a fixed order, checks the versions of all staged records,
+ * then prepares every save (running staged changes and assigning new IDs),
+ * appends all of them as a single record to a {@link RecordJournal} of its
+ * own and forces it, then applies the saves to the repositories without
+ * waiting for their stores to reach disk. A crash can therefore lose the
+ * repository writes but never half a transaction.
+ * <p>
+ * Saves are prepared on copies of the staged records, so until the log
+ * write succeeds neither the repositories nor the callers see any change:
+ * a stale version, a staged change that throws or a failed log write
+ * leaves every record as it was. Only the IDs handed to new records are
+ * not reused.
+ * <p>
+ * Each logged save carries the position its store had reached before the
+ * save. On startup the log is replayed and every save the store has no
+ * newer data for is applied again, so recovery never rolls back a change
+ * made after the transaction. Periodically, and on close, the stores are
+ * forced to disk and the log segments they cover are deleted.
+ * <p>
+ * In snapshot mode the stores still rewrite their data files on every
+ * save, so the single durable write only pays off with journaled or
+ * write-behind storage. Repositories kept in memory only have nothing to
+ * recover, so their manager is created without a log and a commit simply
+ * applies the saves under the same locks.
+ * @author Adigun Lateef
+ * @version 1.0
+ */
+public class TransactionManager
+implements ITransactionManager, Compactable, AutoCloseable {
+
+    private static final Logger LOGGER =
+    Logger.getLogger(TransactionManager.class.getName());
+
+    // Null when the repositories are kept in memory only
+    private final RecordJournal journal;
+    private final String logFilePath;
+    private final TransactionParticipant<Order> orders;
+    private final TransactionParticipant<Table> tables;
+    private final TransactionParticipant<Booking> bookings;
+    // Also the order in which commits lock the repositories
+    private final List<TransactionParticipant<?>> participants;
+    private final Map<String, TransactionParticipant<?>> byName =
+    new HashMap<>();
+    // Commits hold the read lock, so a roll sees every applied commit
+    private final ReadWriteLock checkpointLock = new ReentrantReadWriteLock();
+
+    /**
+     * Opens the transaction log and applies any committed changes the
+     * repositories lost in a crash.
+     *
+     * @param logFilePath        Base path of the transaction log segments
+     * @param orderRepository    The order repository
+     * @param tableRepository    The table repository
+     * @param bookingRepository  The booking repository
+     * @throws NullPointerException if any argument is null.
+     */
+    public TransactionManager(String logFilePath,
+    OrderRepository orderRepository, TableRepository tableRepository,
+    BookingRepository bookingRepository) {
+        this(Objects.requireNonNull(logFilePath,
+        "Log file path cannot be null."), orderRepository, tableRepository,
+        bookingRepository, true);
+    }
+
+    /**
+     * Creates a manager without a transaction log, for repositories kept
+     * in memory only. Commits still lock the repositories and prepare
+     * every save before applying any.
+     *
+     * @param orderRepository    The order repository
+     * @param tableRepository    The table repository
+     * @param bookingRepository  The booking repository
+     * @throws NullPointerException if any argument is null.
+     */
+    public TransactionManager(OrderRepository orderRepository,
+    TableRepository tableRepository, BookingRepository bookingRepository) {
+        this(null, orderRepository, tableRepository, bookingRepository,
+        false);
+    }
+
+    private TransactionManager(String logFilePath,
+    OrderRepository orderRepository, TableRepository tableRepository,
+    BookingRepository bookingRepository, boolean logged) {
+        this.logFilePath = logFilePath;
+        this.orders = Objects.requireNonNull(orderRepository,
+        "OrderRepository cannot be null.").asParticipant();
+        this.tables = Objects.requireNonNull(tableRepository,
+        "TableRepository cannot be null.").asParticipant();
+        this.bookings = Objects.requireNonNull(bookingRepository,
+        "BookingRepository cannot be null.").asParticipant();
+        this.participants = Collections.unmodifiableList(
+        Arrays.asList(orders, tables, bookings));
+        for (TransactionParticipant<?> participant : participants) {
+            byName.put(participant.getName(), participant);
+        }
+        // Every commit is forced on its own; there is nothing to batch
+        this.journal = logged ? new RecordJournal(new File(logFilePath), 0)
+        : null;
+        if (logged) {
+            recover();
+        }
+    }
+
+    @Override
+    public IUnitOfWork begin() {
+        return new UnitOfWork();
+    }
+
+    /**
+     * One staged save and, once prepared, what was logged for it.
+     */
+    private static final class Staged<V extends Serializable> {
+        private final TransactionParticipant<V> participant;
+        private final V record;
+        private final long expectedVersion;
+        private final Consumer<? super V> change;
+        private V prepared;
+        private long position;
+
+        private Staged(TransactionParticipant<V> participant, V record,
+        long expectedVersion, Consumer<? super V> change) {
+            this.participant = participant;
+            this.record = record;
+            this.expectedVersion = expectedVersion;
+            this.change = change;
+        }
+
+        private void checkVersion() {
+            participant.checkVersion(record, expectedVersion);
+        }
+
+        private void prepare() {
+            prepared = participant.prepare(copy(), expectedVersion, change);
+            position = participant.getStore().position();
+        }
+
+        /**
+         * @return A copy of the staged record, made with the store's codec
+         * so it is exactly what a reload would give.
+         */
+        private V copy() {
+            RecordStore<V> store = participant.getStore();
+            try {
+                return store.decode(store.encode(record));
+            } catch (IOException e) {
+                throw new IllegalStateException("Failed to copy staged "
+                + participant.getName() + " record: " + e.getMessage(), e);
+            }
+        }
+
+        private void writeTo(DataOutputStream out) throws IOException {
+            byte[] payload = participant.getStore().encode(prepared);
+            out.writeUTF(participant.getName());
+            out.writeLong(position);
+            out.writeInt(participant.getId(prepared));
+            out.writeInt(payload.length);
+            out.write(payload);
+        }
+
+        private void apply() {
+            participant.apply(prepared);
+        }
+    }
+
+    private final class UnitOfWork implements IUnitOfWork {
+        private final List<Staged<?>> staged = new ArrayList<>();
+        private final Map<Object, Object> saved = new IdentityHashMap<>();
+        private boolean committed;
+
+        @Override
+        public void save(Order order) {
+            stage(orders, Objects.requireNonNull(order,
+            "Order cannot be null."));
+        }
+
+        @Override
+        public void save(Table table) {
+            stage(tables, Objects.requireNonNull(table,
+            "Table cannot be null."));
+        }
+
+        @Override
+        public void save(Booking booking) {
+            stage(bookings, Objects.requireNonNull(booking,
+            "Booking cannot be null."));
+        }
+
+        @Override
+        public void update(Order order, long expectedVersion,
+        Consumer<? super Order> change) {
+            stage(orders, Objects.requireNonNull(order,
+            "Order cannot be null."), expectedVersion,
+            Objects.requireNonNull(change, "Change cannot be null."));
+        }
+
+        @Override
+        public void update(Booking booking, long expectedVersion,
+        Consumer<? super Booking> change) {
+            stage(bookings, Objects.requireNonNull(booking,
+            "Booking cannot be null."), expectedVersion,
+            Objects.requireNonNull(change, "Change cannot be null."));
+        }
+
+        private <V extends Serializable> void stage(
+        TransactionParticipant<V> participant, V record) {
+            stage(participant, record, TransactionParticipant.ANY_VERSION,
+            null);
+        }
+
+        private <V extends Serializable> void stage(
+        TransactionParticipant<V> participant, V record,
+        long expectedVersion, Consumer<? super V> change) {
+            if (committed) {
+                throw new IllegalStateException(
+                "Unit of work has already been committed.");
+            }
+            staged.add(new Staged<>(participant, record, expectedVersion,
+            change));
+        }
+
+        @Override
+        public void commit() {
+            if (committed) {
+                throw new IllegalStateException(
+                "Unit of work has already been committed.");
+            }
+            committed = true;
+            TransactionManager.this.commit(staged);
+            for (Staged<?> entry : staged) {
+                saved.put(entry.record, entry.prepared);
+            }
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> T getSaved(T staged) {
+            if (!committed) {
+                throw new IllegalStateException(
+                "Unit of work has not been committed.");
+            }
+            Object result = saved.get(staged);
+            if (result == null) {
+                throw new IllegalArgumentException(
+                "Record was not saved in this unit of work.");
+            }
+            return (T) result;
+        }
+    }
+
+    private void commit(List<Staged<?>> staged) {
+        if (staged.isEmpty()) {
+            return;
+        }
+        List<TransactionParticipant<?>> involved = new ArrayList<>();
+        for (TransactionParticipant<?> participant : participants) {
+            for (Staged<?> entry : staged) {
+                if (entry.participant == participant) {
+                    involved.add(participant);
+                    break;
+                }
+            }
+        }
+        long start = System.nanoTime();
+        checkpointLock.readLock().lock();
+        try {
+            commitHolding(involved, 0, staged);
+        } finally {
+            checkpointLock.readLock().unlock();
+        }
+        LOGGER.log(Level.FINE, "Committed {0} saves in {1} ms",
+        new Object[]{staged.size(), (System.nanoTime() - start) / 1_000_000});
+    }
+
+    /**
+     * Locks each involved repository and its store in turn, so no other
+     * writer can persist to them during the commit.
+     */
+    private void commitHolding(List<TransactionParticipant<?>> involved,
+    int next, List<Staged<?>> staged) {
+        if (next == involved.size()) {
+            commitLocked(staged);
+            return;
+        }
+        TransactionParticipant<?> participant = involved.get(next);
+        participant.runExclusive(() -> {
+            synchronized (participant.getStore().transactionLock()) {
+                commitHolding(involved, next + 1, staged);
+            }
+        });
+    }
+
+    private void commitLocked(List<Staged<?>> staged) {
+        // Every version first, so a stale record aborts the commit before
+        // any staged change has run
+        for (Staged<?> entry : staged) {
+            entry.checkVersion();
+        }
+        // Only copies change until the log write succeeds
+        for (Staged<?> entry : staged) {
+            entry.prepare();
+        }
+        if (journal != null) {
+            log(staged);
+        }
+        for (Staged<?> entry : staged) {
+            entry.apply();
+        }
+    }
+
+    /**
+     * Appends the prepared saves to the log as one record and forces it.
+     */
+    private void log(List<Staged<?>> staged) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(staged.size());
+            for (Staged<?> entry : staged) {
+                entry.writeTo(out);
+            }
+            out.flush();
+            journal.append(RecordJournal.OP_PUT, 0, bytes.toByteArray());
+            journal.awaitDurable();
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Failed to log transaction ("
+            + logFilePath + "). Nothing was applied.", e);
+            throw new IllegalStateException("Transaction could not be "
+            + "logged: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Replays the log and applies every logged save that did not reach its
+     * store, then checkpoints so the log starts empty.
+     */
+    private void recover() {
+        int[] redone = new int[1];
+        try {
+            journal.replay(new RecordJournal.Visitor() {
+                @Override
+                public void onPut(long sequence, int id, byte[] payload)
+                throws IOException {
+                    redone[0] += redoTransaction(payload);
+                }
+
+                @Override
+                public void onDelete(long sequence, int id) {
+                    // Transactions only ever log saves
+                }
+            }, 0);
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Failed to replay transaction log ("
+            + logFilePath + "). Recent changes may be missing.", e);
+        }
+        for (TransactionParticipant<?> participant : participants) {
+            participant.getStore().endRecovery();
+        }
+        if (redone[0] > 0) {
+            LOGGER.log(Level.INFO,
+            "Recovered {0} saves from the transaction log {1}",
+            new Object[]{redone[0], logFilePath});
+        }
+        checkpoint();
+    }
+
+    /**
+     * Applies the saves of one logged transaction that their stores do not
+     * already cover.
+     * @return How many saves were applied.
+     */
+    private int redoTransaction(byte[] body) throws IOException {
+        DataInputStream in = new DataInputStream(
+        new ByteArrayInputStream(body));
+        int count = in.readInt();
+        int applied = 0;
+        for (int i = 0; i < count; i++) {
+            String name = in.readUTF();
+            long position = in.readLong();
+            int id = in.readInt();
+            byte[] payload = new byte[in.readInt()];
+            in.readFully(payload);
+            TransactionParticipant<?> participant = byName.get(name);
+            if (participant == null) {
+                LOGGER.log(Level.WARNING,
+                "Skipping logged save for unknown repository {0}", name);
+            } else if (redoSave(participant, position, id, payload)) {
+                applied++;
+            }
+        }
+        return applied;
+    }
+
+    private static <V extends Serializable> boolean redoSave(
+    TransactionParticipant<V> participant, long position, int id,
+    byte[] payload) throws IOException {
+        RecordStore<V> store = participant.getStore();
+        if (store.covers(id, position)) {
+            return false;
+        }
+        V record = store.decode(payload);
+        participant.runExclusive(() ->
+        participant.apply(participant.recover(record)));
+        return true;
+    }
+
+    /**
+     * Forces every repository store to disk and deletes the log segments
+     * they now cover.
+     *
+     * @return true if the log was trimmed.
+     */
+    private boolean checkpoint() {
+        RecordJournal.Checkpoint checkpoint;
+        checkpointLock.writeLock().lock();
+        try {
+            checkpoint = journal.roll();
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to roll transaction log ("
+            + logFilePath + ").", e);
+            return false;
+        } finally {
+            checkpointLock.writeLock().unlock();
+        }
+        // Every commit in the rolled segments has been applied by now
+        for (TransactionParticipant<?> participant : participants) {
+            if (!participant.getStore().makeDurable()) {
+                LOGGER.log(Level.WARNING,
+                "Keeping transaction log: {0} changes are not yet durable.",
+                participant.getName());
+                return false;
+            }
+        }
+        journal.discardThrough(checkpoint);
+        return true;
+    }
+
+    /**
+     * Checkpoints once the log holds any committed transaction.
+     *
+     * @return true if a checkpoint ran and succeeded.
+     */
+    @Override
+    public boolean compactIfNeeded() {
+        if (journal == null || journal.getLiveRecords() == 0) {
+            return false;
+        }
+        return checkpoint();
+    }
+
+    /**
+     * Checkpoints and closes the log. Must be called before the
+     * repositories are closed, and no unit of work may be committed
+     * afterwards.
+     */
+    @Override
+    public void close() {
+        if (journal == null) {
+            return;
+        }
+        checkpoint();
+        try {
+            journal.close();
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to close transaction log "
+            + "cleanly (" + logFilePath + ")", e);
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.cafe94.persistence;
+
+import java.io.Serializable;
+import java.util.function.Consumer;
+
+/**
+ * The hooks a repository gives a {@link TransactionManager} so that saves
+ * staged in a unit of work go through the same ID assignment, indexing
+ * and persistence as a plain save. {@link #checkVersion},
+ * {@link #prepare}, {@link #recover} and {@link #apply(Serializable)}
+ * must only be called from an action passed to
+ * {@link #runExclusive(Runnable)}.
+ *
+ * @param <V> The record type
+ * @author Adigun Lateef
+ * @version 1.0
+ */
+interface TransactionParticipant<V extends Serializable> {
+
+    /**
+     * Passed to {@link #prepare} to save whatever version is stored.
+     */
+    long ANY_VERSION = -1;
+
+    /**
+     * @return The name written to the transaction log for this repository,
+     * which must never change.
+     */
+    String getName();
+
+    /**
+     * Runs an action while no other save or delete can change the
+     * repository.
+     *
+     * @param action The action
+     */
+    void runExclusive(Runnable action);
+
+    /**
+     * @return The store the repository persists its records with.
+     */
+    RecordStore<V> getStore();
+
+    /**
+     * Checks a record is still at the version the caller read, without
+     * changing anything. A commit checks every staged record this way
+     * before it runs any staged change. Records without versions always
+     * pass.
+     *
+     * @param record          The record as staged by the caller
+     * @param expectedVersion The version the caller read, or
+     *                        {@link #ANY_VERSION}
+     * @throws StaleRecordException if the stored version differs.
+     */
+    void checkVersion(V record, long expectedVersion);
+
+    /**
+     * Readies a record for saving: checks it is still at the expected
+     * version, runs the staged change on it, assigns an ID to a new record
+     * or reserves the ID of an existing one, and raises its version.
+     * Nothing is visible to readers yet. Records without versions ignore
+     * the expected version.
+     *
+     * @param record          A private copy of the record as staged by
+     *                        the caller, which may be changed freely
+     * @param expectedVersion The version the caller read, or
+     *                        {@link #ANY_VERSION}
+     * @param change          A change to run on the record first, or null
+     * @return The record to save, which may be a copy.
+     * @throws StaleRecordException if the stored version differs.
+     */
+    V prepare(V record, long expectedVersion, Consumer<? super V> change);
+
+    /**
+     * Readies a record read back from the transaction log for saving
+     * again, keeping the version it was logged with.
+     *
+     * @param record The logged record
+     * @return The record to save.
+     */
+    V recover(V record);
+
+    /**
+     * @param record A prepared record
+     * @return Its ID.
+     */
+    int getId(V record);
+
+    /**
+     * Publishes a prepared record to the repository and its indexes and
+     * persists it to the store, without waiting for durability.
+     *
+     * @param record A prepared record
+     */
+    void apply(V record);
+}
@@ -0,0 +1,121 @@
+package com.cafe94.persistence;
+
+import java.io.IOException;
+
+import com.cafe94.domain.Chef;
+import com.cafe94.domain.Customer;
+import com.cafe94.domain.Driver;
+import com.cafe94.domain.Manager;
+import com.cafe94.domain.Staff;
+import com.cafe94.domain.User;
+import com.cafe94.domain.Waiter;
+import com.cafe94.enums.UserRole;
+
+/**
+ * Binary codec for {@link User} records. The role selects the subclass.
+ * <p>
+ * Version 1 layout: version byte, role ordinal, varint user ID, first
+ * name, last name, email, password hash, then for customers the address,
+ * phone number and optional associated staff ID, and for staff the staff
+ * ID and optional associated customer ID.
+ * @author Adigun Lateef
+ * @version 1.0
+ */
+final class UserCodec implements RecordCodec<User> {
+
+    private static final int FORMAT_VERSION = 1;
+    private static final UserRole[] ROLES = UserRole.values();
+
+    @Override
+    public byte[] encode(User user) throws IOException {
+        if (user.getClass() != expectedClass(user.getRole())) {
+            throw new IOException("No binary encoding for "
+            + user.getClass().getName() + " with role " + user.getRole());
+        }
+        BinaryRecordWriter out = new BinaryRecordWriter(128);
+        out.writeByte(FORMAT_VERSION);
+        out.writeEnum(user.getRole());
+        out.writeVarInt(user.getUserID());
+        out.writeString(user.getFirstName());
+        out.writeString(user.getLastName());
+        out.writeString(user.getEmail());
+        out.writeString(user.getHashedPassword());
+        if (user instanceof Customer) {
+            Customer customer = (Customer) user;
+            out.writeString(customer.getAddress());
+            out.writeString(customer.getPhoneNumber());
+            out.writeNullableInt(customer.getAssociatedStaffUserId());
+        } else {
+            Staff staff = (Staff) user;
+            out.writeString(staff.getStaffId());
+            out.writeNullableInt(staff.getAssociatedCustomerUserId());
+        }
+        return out.toByteArray();
+    }
+
+    @Override
+    public User decode(byte[] payload) throws IOException {
+        BinaryRecordReader in = new BinaryRecordReader(payload);
+        int version = in.readByte();
+        if (version != FORMAT_VERSION) {
+            throw new IOException("Unsupported user record version "
+            + version);
+        }
+        UserRole role = in.readEnum(ROLES);
+        if (role == null) {
+            throw new IOException("User record without a role");
+        }
+        int userId = in.readVarInt();
+        String firstName = in.readString();
+        String lastName = in.readString();
+        String email = in.readString();
+        String hashedPassword = in.readString();
+        if (role == UserRole.CUSTOMER) {
+            Customer customer = new Customer(userId, firstName, lastName,
+            email, hashedPassword, in.readString(), in.readString());
+            customer.setAssociatedStaffUserId(in.readNullableInt());
+            return customer;
+        }
+        String staffId = in.readString();
+        Staff staff;
+        switch (role) {
+            case MANAGER:
+                staff = new Manager(userId, firstName, lastName, email,
+                hashedPassword, staffId);
+                break;
+            case CHEF:
+                staff = new Chef(userId, firstName, lastName, email,
+                hashedPassword, staffId);
+                break;
+            case WAITER:
+                staff = new Waiter(userId, firstName, lastName, email,
+                hashedPassword, staffId);
+                break;
+            case DRIVER:
+                staff = new Driver(userId, firstName, lastName, email,
+                hashedPassword, staffId);
+                break;
+            default:
+                throw new IOException("Unsupported user role " + role);
+        }
+        staff.linkAssociatedCustomer(in.readNullableInt());
+        return staff;
+    }
+
+    private static Class<?> expectedClass(UserRole role) {
+        switch (role) {
+            case CUSTOMER:
+                return Customer.class;
+            case MANAGER:
+                return Manager.class;
+            case CHEF:
+                return Chef.class;
+            case WAITER:
+                return Waiter.class;
+            case DRIVER:
+                return Driver.class;
+            default:
+                return null;
+        }
+    }
+}
@@ -0,0 +1,282 @@
+package com.cafe94.persistence;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Objects;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import com.cafe94.domain.Staff;
+import com.cafe94.domain.User;
+import com.cafe94.enums.UserRole;
+
+/**
+ * Secondary indexes over the users of a {@link UserRepository}: from the
+ * case-folded email address to every profile registered under it, and
+ * from staff role to the staff holding it, sorted by last then first name.
+ * A person can hold both a customer and a staff profile, so each email key
+ * maps to a short list. Staff lookups never touch customer records.
+ * <p>
+ * The email lists are immutable and replaced as a whole, so readers never
+ * lock. The staff sets are read under a read lock. Updates must be
+ * serialised by the caller, which the repository does by holding its
+ * monitor. Users are mutable, so the index remembers the email and names
+ * each user was indexed under and uses them to unlink the user on the next
+ * update.
+ * @author Adigun Lateef
+ * @version 1.0
+ */
+final class UserIndex {
+
+    /** Same order as comparing names with String.CASE_INSENSITIVE_ORDER. */
+    private static final Comparator<StaffEntry> BY_NAME =
+    Comparator.comparing((StaffEntry entry) -> entry.lastNameKey,
+    UserIndex::compareKeys)
+    .thenComparing(entry -> entry.firstNameKey, UserIndex::compareKeys)
+    .thenComparingInt(entry -> entry.userId);
+
+    private final Map<String, List<User>> byEmail = new ConcurrentHashMap<>();
+    // Guarded by the repository monitor
+    private final Map<Integer, String> emailKeys = new HashMap<>();
+
+    private final ReadWriteLock staffLock = new ReentrantReadWriteLock();
+    private final Map<Integer, StaffEntry> staffEntries = new HashMap<>();
+    private final NavigableSet<StaffEntry> allStaff = new TreeSet<>(BY_NAME);
+    private final Map<UserRole, NavigableSet<StaffEntry>> staffByRole =
+    new EnumMap<>(UserRole.class);
+
+    /**
+     * The role and collation keys one staff member was indexed under.
+     */
+    private static final class StaffEntry {
+        private final Staff staff;
+        private final int userId;
+        private final UserRole role;
+        private final String lastNameKey;
+        private final String firstNameKey;
+
+        private StaffEntry(Staff staff) {
+            this.staff = staff;
+            this.userId = staff.getUserID();
+            this.role = staff.getRole();
+            this.lastNameKey = collationKey(staff.getLastName());
+            this.firstNameKey = collationKey(staff.getFirstName());
+        }
+    }
+
+    /**
+     * Folds an email address to its index key.
+     *
+     * @param email The email address, may be null
+     * @return The key, or null if email is null.
+     */
+    static String emailKey(String email) {
+        return email == null ? null : email.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Folds a name so that comparing keys by code point, as
+     * {@link #compareKeys} and UTF-8 encoded keys do, matches
+     * {@link String#CASE_INSENSITIVE_ORDER}, which folds each code point
+     * to upper and then lower case.
+     */
+    static String collationKey(String name) {
+        if (name == null) {
+            return "";
+        }
+        StringBuilder folded = new StringBuilder(name.length());
+        for (int i = 0; i < name.length(); ) {
+            int codePoint = name.codePointAt(i);
+            folded.appendCodePoint(Character.toLowerCase(
+            Character.toUpperCase(codePoint)));
+            i += Character.charCount(codePoint);
+        }
+        return folded.toString();
+    }
+
+    /**
+     * Compares collation keys by code point. Plain string order compares
+     * UTF-16 chars, which puts characters outside the Basic Multilingual
+     * Plane before U+E000 to U+FFFF.
+     */
+    static int compareKeys(String a, String b) {
+        int i = 0;
+        int j = 0;
+        while (i < a.length() && j < b.length()) {
+            int x = a.codePointAt(i);
+            int y = b.codePointAt(j);
+            if (x != y) {
+                return Integer.compare(x, y);
+            }
+            i += Character.charCount(x);
+            j += Character.charCount(y);
+        }
+        return Integer.compare(a.length() - i, b.length() - j);
+    }
+
+    /**
+     * Indexes a saved user, replacing whatever it was indexed under before.
+     *
+     * @param user The saved user
+     * @throws NullPointerException if user is null.
+     */
+    void put(User user) {
+        Objects.requireNonNull(user, "User cannot be null.");
+        int userId = user.getUserID();
+        String key = emailKey(user.getEmail());
+        String previousKey = key == null ? emailKeys.remove(userId)
+        : emailKeys.put(userId, key);
+        if (previousKey != null && !previousKey.equals(key)) {
+            unlink(previousKey, userId);
+        }
+        if (key != null) {
+            // Replace any earlier entry for the user in the same list swap
+            List<User> current = byEmail.getOrDefault(key,
+            Collections.emptyList());
+            List<User> updated = new ArrayList<>(current.size() + 1);
+            for (User indexed : current) {
+                if (indexed.getUserID() != userId) {
+                    updated.add(indexed);
+                }
+            }
+            updated.add(user);
+            byEmail.put(key, Collections.unmodifiableList(updated));
+        }
+        if (user instanceof Staff || staffEntries.containsKey(userId)) {
+            putStaff(user);
+        }
+    }
+
+    /**
+     * Indexes many users at once, e.g. after loading.
+     *
+     * @param users The users
+     */
+    void putAll(Collection<User> users) {
+        for (User user : users) {
+            put(user);
+        }
+    }
+
+    /**
+     * Removes a deleted user.
+     *
+     * @param userId The user ID
+     */
+    void remove(int userId) {
+        String key = emailKeys.remove(userId);
+        if (key != null) {
+            unlink(key, userId);
+        }
+        if (staffEntries.containsKey(userId)) {
+            staffLock.writeLock().lock();
+            try {
+                unlinkStaff(staffEntries.remove(userId));
+            } finally {
+                staffLock.writeLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * @param email The email address, matched ignoring case
+     * @return The profiles registered under it, as an immutable list.
+     */
+    List<User> findByEmail(String email) {
+        String key = emailKey(email);
+        return key == null ? Collections.emptyList()
+        : byEmail.getOrDefault(key, Collections.emptyList());
+    }
+
+    /**
+     * @return Every staff member, by last then first name.
+     */
+    List<Staff> findAllStaff() {
+        staffLock.readLock().lock();
+        try {
+            return toStaffList(allStaff);
+        } finally {
+            staffLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @param role The staff role
+     * @return The staff holding the role, by last then first name.
+     */
+    List<Staff> findStaffByRole(UserRole role) {
+        staffLock.readLock().lock();
+        try {
+            NavigableSet<StaffEntry> set = staffByRole.get(role);
+            return set == null ? Collections.emptyList() : toStaffList(set);
+        } finally {
+            staffLock.readLock().unlock();
+        }
+    }
+
+    private static List<Staff> toStaffList(Collection<StaffEntry> entries) {
+        List<Staff> result = new ArrayList<>(entries.size());
+        for (StaffEntry entry : entries) {
+            result.add(entry.staff);
+        }
+        return result;
+    }
+
+    private void putStaff(User user) {
+        StaffEntry entry = user instanceof Staff
+        ? new StaffEntry((Staff) user) : null;
+        staffLock.writeLock().lock();
+        try {
+            unlinkStaff(entry == null ? staffEntries.remove(user.getUserID())
+            : staffEntries.put(entry.userId, entry));
+            if (entry != null) {
+                allStaff.add(entry);
+                if (entry.role != null) {
+                    staffByRole.computeIfAbsent(entry.role,
+                    key -> new TreeSet<>(BY_NAME)).add(entry);
+                }
+            }
+        } finally {
+            staffLock.writeLock().unlock();
+        }
+    }
+
+    private void unlinkStaff(StaffEntry entry) {
+        if (entry == null) {
+            return;
+        }
+        allStaff.remove(entry);
+        NavigableSet<StaffEntry> set = staffByRole.get(entry.role);
+        if (set != null && set.remove(entry) && set.isEmpty()) {
+            staffByRole.remove(entry.role);
+        }
+    }
+
+    private void unlink(String key, int userId) {
+        List<User> current = byEmail.get(key);
+        if (current == null) {
+            return;
+        }
+        List<User> updated = new ArrayList<>(current.size());
+        for (User user : current) {
+            if (user.getUserID() != userId) {
+                updated.add(user);
+            }
+        }
+        if (updated.isEmpty()) {
+            byEmail.remove(key);
+        } else {
+            byEmail.put(key, Collections.unmodifiableList(updated));
+        }
+    }
+}
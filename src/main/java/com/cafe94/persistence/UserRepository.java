@@ -1,23 +1,14 @@
 package com.cafe94.persistence;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
-import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
@@ -25,18 +16,24 @@ import java.util.stream.Collectors;
 import com.cafe94.domain.Staff;
 import com.cafe94.domain.User;
 import com.cafe94.enums.UserRole;
+import com.cafe94.util.primitive.IntObjectConcurrentMap;
 
 /**
  * Concrete implementation of {@link IUserRepository} using Java Serialization
- * for persistence
+ * for persistence. Users are also kept in a {@link UserIndex} by case-folded
+ * email and by staff role, so logins, registration checks and staff lists
+ * do not scan every user.
  */
-public class UserRepository implements IUserRepository {
+public class UserRepository implements IUserRepository, DurableRepository {
 
     private static final Logger LOGGER =
     Logger.getLogger(UserRepository.class.getName());
-    private final Map<Integer, User> users = new ConcurrentHashMap<>();
+    private final IntObjectConcurrentMap<User> users =
+    new IntObjectConcurrentMap<>();
     private final AtomicInteger nextId = new AtomicInteger(1);
     private final String storageFilePath;
+    private final RecordStore<User> store;
+    private final UserIndex index = new UserIndex();
 
     /**
      * Constructs the repository, loading existing data from the
@@ -46,10 +43,28 @@ public class UserRepository implements IUserRepository {
      * @throws NullPointerException if storageFilePath is null.
      */
     public UserRepository(String storageFilePath) {
+        this(storageFilePath, StorageOptions.snapshot());
+    }
+
+    /**
+     * Constructs the repository with explicit storage options, loading
+     * existing data and, in journaled mode, replaying the journal.
+     *
+     * @param storageFilePath The path to the file used for storing user data
+     * @param storageOptions  How mutations are persisted
+     * @throws NullPointerException if any argument is null.
+     */
+    public UserRepository(String storageFilePath,
+    StorageOptions storageOptions) {
         this.storageFilePath = Objects.requireNonNull(storageFilePath,
         "Storage file path cannot be null.");
+        this.store = new RecordStore<>(storageFilePath, "user", User.class,
+        users, storageOptions, new UserCodec());
         // Load data
-        loadData();
+        store.load();
+        synchronized (this) {
+            index.putAll(users.values());
+        }
         int maxId = users.keySet().stream().max(Integer::compare).orElse(0);
         nextId.set(maxId + 1);
         LOGGER.log(Level.INFO,
@@ -92,11 +107,11 @@ public class UserRepository implements IUserRepository {
             "findByEmail called with null or blank email.");
             return Collections.emptyList();
         }
-        String lowerCaseEmail = email.toLowerCase();
-        List<User> foundUsers = users.values().stream()
-                .filter(user -> user.getEmail() != null &&
-                user.getEmail().toLowerCase().equals(lowerCaseEmail))
-                // Collect to a standard list first
+        String emailKey = UserIndex.emailKey(email);
+        // Drop users whose email changed in memory but is not yet saved
+        List<User> foundUsers = index.findByEmail(email).stream()
+                .filter(user -> emailKey.equals(
+                UserIndex.emailKey(user.getEmail())))
                 .collect(Collectors.toList());
         LOGGER.log(Level.FINE, "findByEmail({0}) - Found: {1} users",
         new Object[]{email, foundUsers.size()});
@@ -111,16 +126,8 @@ public class UserRepository implements IUserRepository {
      */
     @Override
     public List<Staff> findAllStaff() {
-        List<Staff> staffList = users.values().stream()
-                .filter(Staff.class::isInstance)
-                .map(Staff.class::cast)
-                .sorted(Comparator.comparing(User::getLastName,
-                String.CASE_INSENSITIVE_ORDER)
-                                  .thenComparing(User::getFirstName,
-                                  String.CASE_INSENSITIVE_ORDER))
-                 // Collect to an unmodifiable list
-                .collect(Collectors.collectingAndThen(Collectors.toList(),
-            Collections::unmodifiableList));
+        List<Staff> staffList = Collections.unmodifiableList(
+        index.findAllStaff());
         LOGGER.log(Level.FINE, "findAllStaff - Found: {0} staff members",
         staffList.size());
         return staffList;
@@ -143,17 +150,8 @@ public class UserRepository implements IUserRepository {
              "Attempted to find staff by non-staff role: {0}", role);
              return Collections.emptyList();
          }
-        List<Staff> staffList = users.values().stream()
-                .filter(Staff.class::isInstance)
-                .map(Staff.class::cast)
-                .filter(staff -> staff.getRole() == role)
-                .sorted(Comparator.comparing(User::getLastName,
-                String.CASE_INSENSITIVE_ORDER)
-                                  .thenComparing(User::getFirstName,
-                                  String.CASE_INSENSITIVE_ORDER))
-                // Collect to an unmodifiable list
-                .collect(Collectors.collectingAndThen(Collectors.toList(),
-                Collections::unmodifiableList));
+        List<Staff> staffList = Collections.unmodifiableList(
+        index.findStaffByRole(role));
         LOGGER.log(Level.FINE,
         "findStaffByRole({0}) - Found: {1} staff members",
         new Object[]{role, staffList.size()});
@@ -186,7 +184,14 @@ public class UserRepository implements IUserRepository {
      * @throws NullPointerException if user is null.
      */
     @Override
-    public synchronized User save(User user) {
+    public User save(User user) {
+        User saved = applySave(user);
+        // Wait outside the monitor so concurrent saves share one fsync
+        store.awaitDurable();
+        return saved;
+    }
+
+    private synchronized User applySave(User user) {
         Objects.requireNonNull(user, "User to save cannot be null.");
 
         int currentUserId = user.getUserID();
@@ -217,13 +222,53 @@ public class UserRepository implements IUserRepository {
 
         users.put(finalUserId, user);
         // Persist the changes
-        saveData();
+        store.put(finalUserId, user);
+        index.put(user);
         LOGGER.log(Level.INFO, "Saved user: ID={0}, Email='{1}', Role={2}",
                    new Object[]{finalUserId, user.getEmail(), user.getRole()});
 
                 return user;
     }
 
+    /**
+     * Saves a user unless another profile under the same email, ignoring
+     * case, matches the conflict test. The lookup in the email index and
+     * the save happen under the repository monitor, so no other save can
+     * slip in between.
+     *
+     * @param user      The User object to save
+     * @param conflicts Tests whether an existing profile blocks the save
+     * @return The saved User, or empty if a conflicting profile exists.
+     * @throws NullPointerException if either argument is null.
+     */
+    @Override
+    public Optional<User> saveIfEmailAvailable(User user,
+    Predicate<? super User> conflicts) {
+        Optional<User> saved = applySaveIfEmailAvailable(user, conflicts);
+        if (saved.isPresent()) {
+            // Wait outside the monitor so concurrent saves share one fsync
+            store.awaitDurable();
+        }
+        return saved;
+    }
+
+    private synchronized Optional<User> applySaveIfEmailAvailable(User user,
+    Predicate<? super User> conflicts) {
+        Objects.requireNonNull(user, "User to save cannot be null.");
+        Objects.requireNonNull(conflicts, "Conflict test cannot be null.");
+        for (User existing : index.findByEmail(user.getEmail())) {
+            if (existing != user && (user.getUserID() <= 0
+            || existing.getUserID() != user.getUserID())
+            && conflicts.test(existing)) {
+                LOGGER.log(Level.FINE,
+                "Save of {0} refused: email already used by user ID {1}",
+                new Object[]{user.getEmail(), existing.getUserID()});
+                return Optional.empty();
+            }
+        }
+        return Optional.of(applySave(user));
+    }
+
      /**
      * Deletes a User entity by its unique persistent identifier (ID)
      *
@@ -231,7 +276,14 @@ public class UserRepository implements IUserRepository {
      * @return true if a user was found and deleted, false otherwise.
      */
     @Override
-    public synchronized boolean deleteById(int userId) {
+    public boolean deleteById(int userId) {
+        boolean deleted = applyDeleteById(userId);
+        // Wait outside the monitor so concurrent writers share one fsync
+        store.awaitDurable();
+        return deleted;
+    }
+
+    private synchronized boolean applyDeleteById(int userId) {
          if (userId <= 0) {
              LOGGER.log(Level.WARNING,
              "Attempted to delete user with invalid ID: {0}", userId);
@@ -241,7 +293,8 @@ public class UserRepository implements IUserRepository {
         User removedUser = users.remove(userId);
         if (removedUser != null) {
             // Persist the changes
-            saveData();
+            store.delete(userId);
+            index.remove(userId);
             return true;
         } else {
             LOGGER.log(Level.WARNING, "User ID {0} not found for deletion.",
@@ -257,7 +310,7 @@ public class UserRepository implements IUserRepository {
      * @throws NullPointerException if user is null.
      */
     @Override
-    public synchronized boolean delete(User user) {
+    public boolean delete(User user) {
         Objects.requireNonNull(user, "User to delete cannot be null.");
         if (user.getUserID() <= 0) {
              LOGGER.log(Level.WARNING,
@@ -272,99 +325,36 @@ public class UserRepository implements IUserRepository {
   
 
     /**
-     * Loads user data from the specified storage file.
-     * This method is synchronized to prevent conflicts during loading.
+     * Compacts the user journal once it passes the configured thresholds.
+     * Runs without the repository monitor, so saves are not blocked.
+     *
+     * @return true if a compaction ran and succeeded.
      */
-    @SuppressWarnings("unchecked")
-    private synchronized void loadData() {
-        File file = new File(storageFilePath);
-        if (!file.exists() || file.length() == 0) {
-            LOGGER.log(Level.INFO,"User data file not found or empty ({0}). " +
-            "Starting with empty repository.", storageFilePath);
-            ensureDirectoryExists(file);
-            return;
-        }
-
-        try (FileInputStream fis = new FileInputStream(file);
-             BufferedInputStream bis = new BufferedInputStream(fis);
-             ObjectInputStream ois = new ObjectInputStream(bis)) {
-
-            Object readObject = ois.readObject();
-            if (readObject instanceof Map) {
-                users.clear();
-                Map<?, ?> rawMap = (Map<?, ?>) readObject;
-                rawMap.forEach((key, value) -> {
-                    if (key instanceof Integer && value instanceof User) {
-                        users.put((Integer) key, (User) value);
-                    } else {
-                         LOGGER.log(Level.WARNING,"Skipping invalid entry " +
-                         "during load: Key type {0}, Value type {1}",
-                         new Object[]{key != null ? key.getClass()
-                            .getName() : "null",
-                            value != null ? value.getClass()
-                            .getName() : "null"});
-                    }
-                });
-                LOGGER.log(Level.INFO,
-                "Successfully loaded {0} user entries from: {1}",
-                new Object[]{users.size(), storageFilePath});
-            } else {
-                LOGGER.log(Level.SEVERE,
-                "User data file ({0}) does not contain a valid Map.",
-                storageFilePath);
-            }
-        } catch (FileNotFoundException e) {
-             LOGGER.log(Level.SEVERE, "User data file not found for loading: "
-             + storageFilePath, e);
-        } catch (IOException | ClassNotFoundException | ClassCastException e) {
-             LOGGER.log(Level.SEVERE, "Failed to load user data from file ("
-             + storageFilePath + "). Data might be corrupted or class " +
-             "versions incompatible.", e);
-        }
+    @Override
+    public boolean compactIfNeeded() {
+        return store.compactIfNeeded();
     }
 
-     /**
-     * Saves the current state of the users map to the storage file
+    /**
+     * Writes any user changes still pending in write-behind mode and waits
+     * until they are on disk.
      */
-    private synchronized void saveData() {
-        File file = new File(storageFilePath);
-        ensureDirectoryExists(file);
-
-        try (FileOutputStream fos = new FileOutputStream(file);
-             BufferedOutputStream bos = new BufferedOutputStream(fos);
-             ObjectOutputStream oos = new ObjectOutputStream(bos)) {
+    @Override
+    public void flush() {
+        store.flush();
+    }
 
-            oos.writeObject(new ConcurrentHashMap<>(users));
-            LOGGER.log(Level.FINE, "User data saved successfully to: {0}",
-            storageFilePath);
+    /**
+     * Flushes pending user changes and closes the journal. The repository
+     * must not be used afterwards.
+     */
+    @Override
+    public void close() {
+        try {
+            store.close();
         } catch (IOException e) {
-            LOGGER.log(Level.SEVERE, "CRITICAL ERROR: Failed to save user " +
-            "data to file ({0}). Data loss may occur.",
-            new Object[]{storageFilePath, e});
+            LOGGER.log(Level.WARNING, "Failed to close user storage cleanly ("
+            + store.getStorageFilePath() + ")", e);
         }
     }
-
-     /**
-     * Ensures the parent directory for the storage file exists and 
-     * creates it if necessary.
-     * @param file The storage file.
-     */
-    private void ensureDirectoryExists(File file) {
-        Objects.requireNonNull(file, "File cannot be null");
-        File parentDir = file.getParentFile();
-         if (parentDir != null && !parentDir.exists()) {
-             LOGGER.log(Level.INFO,
-             "Attempting to create directory for user data: {0}",
-             parentDir.getAbsolutePath());
-             if (parentDir.mkdirs()) {
-                  LOGGER.log(Level.INFO,
-                  "Successfully created directory: {0}",
-                  parentDir.getAbsolutePath());
-             } else {
-                  LOGGER.log(Level.SEVERE,
-                  "Failed to create directory for user data: {0}",
-                  parentDir.getAbsolutePath());
-             }
-         }
-     }
 }
@@ -0,0 +1,89 @@
+package com.cafe94.persistence.lsm;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Bloom filter over the keys of one segment, so point lookups skip
+ * segments that cannot hold the key without reading them. Uses about ten
+ * bits and seven probes per key, for roughly a 1% false positive rate.
+ * Probe positions come from one 64-bit hash split in two, combined as
+ * {@code h1 + i * h2}.
+ * @author Adigun Lateef
+ * @version 1.0
+ */
+final class BloomFilter {
+
+    private static final int BITS_PER_KEY = 10;
+    private static final int PROBES = 7;
+
+    private final long[] bits;
+    private final int probes;
+
+    private BloomFilter(long[] bits, int probes) {
+        this.bits = bits;
+        this.probes = probes;
+    }
+
+    /**
+     * @param expectedKeys How many keys will be added
+     * @return An empty filter sized for that many keys.
+     */
+    static BloomFilter forKeys(long expectedKeys) {
+        long bitCount = Math.max(64, expectedKeys * BITS_PER_KEY);
+        int words = (int) Math.min(Integer.MAX_VALUE - 8,
+        (bitCount + 63) / 64);
+        return new BloomFilter(new long[words], PROBES);
+    }
+
+    void add(byte[] key) {
+        long hash = Bytes.hash(key);
+        long bitCount = (long) bits.length * 64;
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 0; i < probes; i++) {
+            long bit = ((h1 + (long) i * h2) & Long.MAX_VALUE) % bitCount;
+            bits[(int) (bit >>> 6)] |= 1L << bit;
+        }
+    }
+
+    /**
+     * @param key A key
+     * @return false if the key was certainly never added.
+     */
+    boolean mightContain(byte[] key) {
+        long hash = Bytes.hash(key);
+        long bitCount = (long) bits.length * 64;
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 0; i < probes; i++) {
+            long bit = ((h1 + (long) i * h2) & Long.MAX_VALUE) % bitCount;
+            if ((bits[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    void writeTo(DataOutputStream out) throws IOException {
+        out.writeInt(probes);
+        out.writeInt(bits.length);
+        for (long word : bits) {
+            out.writeLong(word);
+        }
+    }
+
+    static BloomFilter readFrom(DataInputStream in) throws IOException {
+        int probes = in.readInt();
+        int words = in.readInt();
+        if (probes <= 0 || words <= 0) {
+            throw new IOException("Corrupt bloom filter header");
+        }
+        long[] bits = new long[words];
+        for (int i = 0; i < words; i++) {
+            bits[i] = in.readLong();
+        }
+        return new BloomFilter(bits, probes);
+    }
+}
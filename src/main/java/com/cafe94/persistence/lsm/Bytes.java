@@ -0,0 +1,73 @@
+package com.cafe94.persistence.lsm;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Byte array helpers shared by the storage engine. Keys are compared as
+ * unsigned bytes, lexicographically, so keys built by {@link KeyBuilder}
+ * sort in the order of the values they encode.
+ * @author Adigun Lateef
+ * @version 1.0
+ */
+final class Bytes {
+
+    /** Unsigned lexicographic order of keys. */
+    static final Comparator<byte[]> COMPARATOR = Arrays::compareUnsigned;
+
+    /**
+     * Marks a deleted key in memtables and scans. Compared by identity,
+     * so it never clashes with a real empty value.
+     */
+    static final byte[] TOMBSTONE = new byte[0];
+
+    private Bytes() {
+    }
+
+    /**
+     * @param a A key
+     * @param b Another key
+     * @return Negative, zero or positive as a sorts before, with or after b.
+     */
+    static int compare(byte[] a, byte[] b) {
+        return Arrays.compareUnsigned(a, b);
+    }
+
+    /**
+     * Returns the smallest key greater than every key starting with the
+     * prefix, for use as an exclusive upper bound.
+     *
+     * @param prefix The prefix
+     * @return The bound, or null if the prefix is all 0xFF bytes and so
+     * has no upper bound.
+     */
+    static byte[] prefixEnd(byte[] prefix) {
+        for (int i = prefix.length - 1; i >= 0; i--) {
+            if (prefix[i] != (byte) 0xFF) {
+                byte[] end = Arrays.copyOf(prefix, i + 1);
+                end[i]++;
+                return end;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 64-bit FNV-1a hash of a key, used by the bloom filters.
+     *
+     * @param key The key
+     * @return The hash.
+     */
+    static long hash(byte[] key) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : key) {
+            hash ^= b & 0xFF;
+            hash *= 0x100000001b3L;
+        }
+        // FNV mixes the low bits poorly; finish like a 64-bit murmur
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
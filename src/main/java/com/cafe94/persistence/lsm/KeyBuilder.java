@@ -0,0 +1,162 @@
+package com.cafe94.persistence.lsm;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+
+/**
+ * Builds composite keys whose unsigned byte order, as used by
+ * {@link LsmEngine}, matches the natural order of their parts. Numbers are
+ * written big-endian with the sign bit flipped, and strings as UTF-8
+ * followed by a zero byte, so a shorter string sorts before any longer
+ * one it prefixes.
+ * <p>
+ * A key made of some leading parts is a prefix of every longer key that
+ * starts with the same parts, so {@link #prefixEnd(byte[])} turns it into
+ * the bounds of a range scan.
+ * @author Adigun Lateef
+ * @version 1.0
+ */
+public final class KeyBuilder {
+
+    private byte[] bytes;
+    private int length;
+
+    /**
+     * Creates an empty key.
+     */
+    public KeyBuilder() {
+        this.bytes = new byte[16];
+    }
+
+    /**
+     * Appends one unsigned byte, e.g. a key space or index tag.
+     *
+     * @param value The byte
+     * @return This builder.
+     */
+    public KeyBuilder addByte(int value) {
+        ensure(1);
+        bytes[length++] = (byte) value;
+        return this;
+    }
+
+    /**
+     * Appends a signed int in sort order.
+     *
+     * @param value The int
+     * @return This builder.
+     */
+    public KeyBuilder addInt(int value) {
+        ensure(4);
+        int flipped = value ^ Integer.MIN_VALUE;
+        bytes[length++] = (byte) (flipped >>> 24);
+        bytes[length++] = (byte) (flipped >>> 16);
+        bytes[length++] = (byte) (flipped >>> 8);
+        bytes[length++] = (byte) flipped;
+        return this;
+    }
+
+    /**
+     * Appends a signed long in sort order.
+     *
+     * @param value The long
+     * @return This builder.
+     */
+    public KeyBuilder addLong(long value) {
+        ensure(8);
+        long flipped = value ^ Long.MIN_VALUE;
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            bytes[length++] = (byte) (flipped >>> shift);
+        }
+        return this;
+    }
+
+    /**
+     * Appends a string in sort order. The string must not contain the
+     * character U+0000.
+     *
+     * @param value The string
+     * @return This builder.
+     * @throws IllegalArgumentException if the string contains U+0000.
+     */
+    public KeyBuilder addString(String value) {
+        if (value.indexOf('\0') >= 0) {
+            throw new IllegalArgumentException(
+                "Key strings cannot contain U+0000.");
+        }
+        byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+        ensure(utf8.length + 1);
+        System.arraycopy(utf8, 0, bytes, length, utf8.length);
+        length += utf8.length;
+        bytes[length++] = 0;
+        return this;
+    }
+
+    /**
+     * Appends a date and time in sort order. Null sorts after every date.
+     *
+     * @param value The date and time, may be null
+     * @return This builder.
+     */
+    public KeyBuilder addDateTime(LocalDateTime value) {
+        if (value == null) {
+            return addByte(1);
+        }
+        addByte(0);
+        addLong(value.toEpochSecond(ZoneOffset.UTC));
+        return addInt(value.getNano());
+    }
+
+    /**
+     * @return A copy of the key built so far.
+     */
+    public byte[] build() {
+        return Arrays.copyOf(bytes, length);
+    }
+
+    /**
+     * Reads back an int written by {@link #addInt(int)}.
+     *
+     * @param key    The key
+     * @param offset Where the int starts
+     * @return The int.
+     */
+    public static int readInt(byte[] key, int offset) {
+        int flipped = (key[offset] & 0xFF) << 24
+        | (key[offset + 1] & 0xFF) << 16
+        | (key[offset + 2] & 0xFF) << 8
+        | (key[offset + 3] & 0xFF);
+        return flipped ^ Integer.MIN_VALUE;
+    }
+
+    /**
+     * Reads back the int written last, e.g. the record ID that ends an
+     * index key.
+     *
+     * @param key The key
+     * @return The int.
+     */
+    public static int readLastInt(byte[] key) {
+        return readInt(key, key.length - 4);
+    }
+
+    /**
+     * Returns the smallest key greater than every key starting with the
+     * prefix, for use as the exclusive end of a range scan.
+     *
+     * @param prefix The prefix
+     * @return The bound, or null if there is none.
+     */
+    public static byte[] prefixEnd(byte[] prefix) {
+        return Bytes.prefixEnd(prefix);
+    }
+
+    private void ensure(int extra) {
+        if (length + extra > bytes.length) {
+            bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2,
+            length + extra));
+        }
+    }
+}
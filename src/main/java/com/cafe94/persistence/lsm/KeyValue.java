@@ -0,0 +1,31 @@
+package com.cafe94.persistence.lsm;
+
+/**
+ * One live key and its value, as returned by a range scan.
+ * @author Adigun Lateef
+ * @version 1.0
+ */
+public final class KeyValue {
+
+    private final byte[] key;
+    private final byte[] value;
+
+    KeyValue(byte[] key, byte[] value) {
+        this.key = key;
+        this.value = value;
+    }
+
+    /**
+     * @return The key. Callers must not modify it.
+     */
+    public byte[] getKey() {
+        return key;
+    }
+
+    /**
+     * @return The value. Callers must not modify it.
+     */
+    public byte[] getValue() {
+        return value;
+    }
+}
@@ -0,0 +1,654 @@
+package com.cafe94.persistence.lsm;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * An embedded, log-structured key-value store. Keys and values are byte
+ * arrays; keys are ordered as unsigned bytes, and {@link KeyBuilder} builds
+ * keys that sort in the order of the values they encode.
+ * <p>
+ * Every write goes to a write-ahead log and then to an in-memory sorted
+ * memtable. When the memtable is full it is frozen, a new log is started
+ * and a background thread writes the frozen memtable to an immutable
+ * sorted segment file. Once {@code mergeThreshold} segments have built up
+ * the same thread merges them into one, dropping overwritten values and
+ * deletes. A MANIFEST file, replaced atomically, lists the live segments;
+ * on startup any logs left by the last run are replayed.
+ * <p>
+ * Reads check the memtables and then the segments from newest to oldest;
+ * each segment keeps a bloom filter, so a point read rarely touches more
+ * than one file. Writes are serialized; reads never wait for writes, only
+ * for the brief moment in which a flush or merge swaps in its result.
+ * @author Adigun Lateef
+ * @version 1.0
+ */
+public final class LsmEngine implements AutoCloseable {
+
+    private static final Logger LOGGER =
+    Logger.getLogger(LsmEngine.class.getName());
+
+    /** Default memtable size before it is flushed to a segment. */
+    public static final long DEFAULT_MEMTABLE_BYTES = 4L * 1024 * 1024;
+    /** Default number of segments that triggers a merge. */
+    public static final int DEFAULT_MERGE_THRESHOLD = 4;
+
+    private static final String MANIFEST = "MANIFEST";
+    private static final String MANIFEST_HEADER = "C94 LSM 1";
+    private static final String LOG_PREFIX = "wal-";
+    private static final String LOG_SUFFIX = ".log";
+    private static final String SEGMENT_PREFIX = "seg-";
+    private static final long MAX_FLUSH_BACKOFF_MILLIS = 30_000;
+
+    /**
+     * What a reader sees: the memtables and the live segments. Replaced
+     * as a whole, never changed in place.
+     */
+    private static final class State {
+        private final Memtable active;
+        private final Memtable flushing;
+        private final List<Segment> segments; // oldest first
+
+        private State(Memtable active, Memtable flushing,
+        List<Segment> segments) {
+            this.active = active;
+            this.flushing = flushing;
+            this.segments = Collections.unmodifiableList(segments);
+        }
+    }
+
+    private final File directory;
+    private final long memtableBytes;
+    private final int mergeThreshold;
+    private final boolean syncWrites;
+
+    // Held for reading while a read uses a State, for writing to swap it
+    private final ReadWriteLock stateLock = new ReentrantReadWriteLock();
+    private volatile State state;
+
+    // Serializes writes; guards log, nextFileNumber and closed
+    private final Object writeLock = new Object();
+    private WriteAheadLog log;
+    private long nextFileNumber;
+    private boolean closed;
+
+    // Runs flushes and merges, one at a time and in order
+    private final ExecutorService background;
+
+    /**
+     * Opens, or creates, an engine with the default settings and durable
+     * writes.
+     *
+     * @param directory The directory holding the engine's files
+     * @throws IOException if the directory cannot be opened or recovered.
+     */
+    public LsmEngine(File directory) throws IOException {
+        this(directory, DEFAULT_MEMTABLE_BYTES, DEFAULT_MERGE_THRESHOLD,
+        true);
+    }
+
+    /**
+     * Opens, or creates, an engine, replaying the write-ahead logs left by
+     * the last run.
+     *
+     * @param directory      The directory holding the engine's files
+     * @param memtableBytes  About how many bytes of writes to hold in memory
+     *                       before flushing them to a segment
+     * @param mergeThreshold How many segments trigger a merge, at least 2
+     * @param syncWrites     Whether each write is forced to disk before it
+     *                       returns; if not, {@link #sync()} does it
+     * @throws IOException if the directory cannot be opened or recovered.
+     */
+    public LsmEngine(File directory, long memtableBytes, int mergeThreshold,
+    boolean syncWrites) throws IOException {
+        Objects.requireNonNull(directory, "Directory cannot be null");
+        if (memtableBytes <= 0) {
+            throw new IllegalArgumentException(
+            "Memtable size must be positive");
+        }
+        if (mergeThreshold < 2) {
+            throw new IllegalArgumentException(
+            "Merge threshold must be at least 2");
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create directory " + directory);
+        }
+        this.directory = directory;
+        this.memtableBytes = memtableBytes;
+        this.mergeThreshold = mergeThreshold;
+        this.syncWrites = syncWrites;
+        this.background = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable,
+            "lsm-" + directory.getName());
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            recover();
+        } catch (IOException | RuntimeException e) {
+            background.shutdownNow();
+            throw e;
+        }
+        if (state.segments.size() >= mergeThreshold) {
+            background.execute(this::mergeInBackground);
+        }
+    }
+
+    /**
+     * Loads the segments named in the MANIFEST, removes files a crash left
+     * behind, and flushes the surviving logs into a new segment.
+     */
+    private void recover() throws IOException {
+        List<String> live = readManifest();
+        long highest = 0;
+        List<File> logs = new ArrayList<>();
+        File[] files = directory.listFiles();
+        if (files == null) {
+            throw new IOException("Cannot list " + directory);
+        }
+        for (File file : files) {
+            String name = file.getName();
+            long number = fileNumber(name);
+            highest = Math.max(highest, number);
+            if (name.endsWith(".tmp")
+            || (name.endsWith(Segment.SUFFIX) && !live.contains(name))) {
+                // An unfinished flush or merge, or a merge's inputs
+                Files.deleteIfExists(file.toPath());
+            } else if (name.startsWith(LOG_PREFIX)
+            && name.endsWith(LOG_SUFFIX) && number >= 0) {
+                logs.add(file);
+            }
+        }
+        nextFileNumber = highest + 1;
+        logs.sort((a, b) -> Long.compare(fileNumber(a.getName()),
+        fileNumber(b.getName())));
+
+        List<Segment> segments = new ArrayList<>();
+        try {
+            for (String name : live) {
+                segments.add(Segment.open(new File(directory, name)));
+            }
+            Memtable replayed = new Memtable();
+            int batches = 0;
+            for (File file : logs) {
+                batches += WriteAheadLog.replay(file, replayed::apply);
+            }
+            if (!replayed.isEmpty()) {
+                Segment segment = Segment.write(newSegmentFile(),
+                replayed.range(null, null), replayed.size(), false);
+                if (segment != null) {
+                    segments.add(segment);
+                    writeManifest(segments);
+                }
+                LOGGER.log(Level.INFO,
+                "Replayed {0} batches from {1} write-ahead logs in {2}",
+                new Object[]{batches, logs.size(), directory});
+            }
+        } catch (IOException | RuntimeException e) {
+            for (Segment segment : segments) {
+                closeQuietly(segment);
+            }
+            throw e;
+        }
+        for (File file : logs) {
+            Files.deleteIfExists(file.toPath());
+        }
+        log = new WriteAheadLog(newLogFile());
+        state = new State(new Memtable(), null, segments);
+    }
+
+    /**
+     * @param key The key
+     * @return The value, or null if the key is not present.
+     * @throws IOException if a segment cannot be read.
+     */
+    public byte[] get(byte[] key) throws IOException {
+        Objects.requireNonNull(key, "Key cannot be null");
+        stateLock.readLock().lock();
+        try {
+            State current = state;
+            byte[] value = current.active.get(key);
+            if (value == null && current.flushing != null) {
+                value = current.flushing.get(key);
+            }
+            for (int i = current.segments.size() - 1;
+            value == null && i >= 0; i--) {
+                value = current.segments.get(i).get(key);
+            }
+            return value == Bytes.TOMBSTONE ? null : value;
+        } finally {
+            stateLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the entries whose keys fall in a range, in key order.
+     *
+     * @param fromInclusive First key, or null for the start
+     * @param toExclusive   End key, or null for the end
+     * @param limit         The most entries to return
+     * @return The entries.
+     * @throws IOException if a segment cannot be read.
+     */
+    public List<KeyValue> scan(byte[] fromInclusive, byte[] toExclusive,
+    int limit) throws IOException {
+        if (limit < 0) {
+            throw new IllegalArgumentException("Limit cannot be negative");
+        }
+        List<KeyValue> result = new ArrayList<>();
+        if (limit == 0 || (fromInclusive != null && toExclusive != null
+        && Bytes.compare(fromInclusive, toExclusive) >= 0)) {
+            return result;
+        }
+        stateLock.readLock().lock();
+        try {
+            State current = state;
+            List<Iterator<Map.Entry<byte[], byte[]>>> sources =
+            new ArrayList<>();
+            sources.add(current.active.range(fromInclusive, toExclusive));
+            if (current.flushing != null) {
+                sources.add(current.flushing.range(fromInclusive,
+                toExclusive));
+            }
+            for (int i = current.segments.size() - 1; i >= 0; i--) {
+                sources.add(current.segments.get(i).range(fromInclusive,
+                toExclusive));
+            }
+            Iterator<Map.Entry<byte[], byte[]>> merged =
+            new MergingIterator(sources);
+            while (result.size() < limit && merged.hasNext()) {
+                Map.Entry<byte[], byte[]> entry = merged.next();
+                if (entry.getValue() != Bytes.TOMBSTONE) {
+                    result.add(new KeyValue(entry.getKey(),
+                    entry.getValue()));
+                }
+            }
+            return result;
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            stateLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the entries whose keys start with a prefix, in key order.
+     *
+     * @param prefix The key prefix
+     * @param limit  The most entries to return
+     * @return The entries.
+     * @throws IOException if a segment cannot be read.
+     */
+    public List<KeyValue> scanPrefix(byte[] prefix, int limit)
+    throws IOException {
+        Objects.requireNonNull(prefix, "Prefix cannot be null");
+        return scan(prefix, Bytes.prefixEnd(prefix), limit);
+    }
+
+    /**
+     * @param key   The key
+     * @param value The value
+     * @throws IOException if the write cannot be logged.
+     */
+    public void put(byte[] key, byte[] value) throws IOException {
+        write(new WriteBatch().put(key, value));
+    }
+
+    /**
+     * @param key The key to remove
+     * @throws IOException if the write cannot be logged.
+     */
+    public void delete(byte[] key) throws IOException {
+        write(new WriteBatch().delete(key));
+    }
+
+    /**
+     * Applies a batch of writes. The batch is logged as one record, so
+     * after a crash either all of it or none of it is recovered. A
+     * concurrent reader may see part of a batch while it is applied.
+     *
+     * @param batch The writes
+     * @throws IOException if the batch cannot be logged.
+     */
+    public void write(WriteBatch batch) throws IOException {
+        Objects.requireNonNull(batch, "Batch cannot be null");
+        if (batch.isEmpty()) {
+            return;
+        }
+        byte[] body = batch.encode();
+        synchronized (writeLock) {
+            ensureOpen();
+            log.append(body, syncWrites);
+            State current = state;
+            current.active.apply(batch);
+            if (current.active.approximateBytes() >= memtableBytes) {
+                rotate();
+            }
+        }
+    }
+
+    /**
+     * Freezes the active memtable, starts a new log and hands the frozen
+     * memtable to the background thread. Waits while an earlier memtable
+     * is still being flushed, which holds back writers that outpace the
+     * disk. Called holding the write lock.
+     */
+    private void rotate() throws IOException {
+        while (state.flushing != null) {
+            try {
+                writeLock.wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException(
+                "Interrupted waiting for a flush");
+            }
+            ensureOpen();
+        }
+        WriteAheadLog frozenLog = log;
+        frozenLog.sync();
+        log = new WriteAheadLog(newLogFile());
+        closeQuietly(frozenLog);
+        stateLock.writeLock().lock();
+        try {
+            State current = state;
+            state = new State(new Memtable(), current.active,
+            current.segments);
+        } finally {
+            stateLock.writeLock().unlock();
+        }
+        background.execute(() -> flushInBackground(frozenLog.getFile()));
+    }
+
+    /**
+     * Writes the frozen memtable to a segment, retrying with a growing
+     * delay if the disk fails, then deletes the log it replaces.
+     */
+    private void flushInBackground(File frozenLog) {
+        Memtable frozen = state.flushing;
+        long backoff = 500;
+        while (true) {
+            try {
+                Segment segment = Segment.write(newSegmentFile(),
+                frozen.range(null, null), frozen.size(), false);
+                List<Segment> segments = new ArrayList<>(state.segments);
+                if (segment != null) {
+                    segments.add(segment);
+                    writeManifest(segments);
+                }
+                install(segments, true);
+                break;
+            } catch (IOException | RuntimeException e) {
+                LOGGER.log(Level.SEVERE,
+                "Failed to flush memtable in {0}; retrying",
+                new Object[]{directory});
+                LOGGER.log(Level.FINE, "Flush failure", e);
+                if (!sleep(backoff)) {
+                    // Closing; the log still holds the data
+                    return;
+                }
+                backoff = Math.min(backoff * 2, MAX_FLUSH_BACKOFF_MILLIS);
+            }
+        }
+        try {
+            Files.deleteIfExists(frozenLog.toPath());
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Could not delete {0}",
+            new Object[]{frozenLog});
+        }
+        synchronized (writeLock) {
+            writeLock.notifyAll();
+        }
+        if (state.segments.size() >= mergeThreshold) {
+            mergeInBackground();
+        }
+    }
+
+    /**
+     * Merges every segment into one. As no older segment is left, deletes
+     * and overwritten values are dropped.
+     */
+    private void mergeInBackground() {
+        List<Segment> inputs = state.segments;
+        if (inputs.size() < 2) {
+            return;
+        }
+        List<Iterator<Map.Entry<byte[], byte[]>>> sources = new ArrayList<>();
+        long entries = 0;
+        for (int i = inputs.size() - 1; i >= 0; i--) {
+            sources.add(inputs.get(i).range(null, null));
+            entries += inputs.get(i).getEntryCount();
+        }
+        try {
+            Segment merged = Segment.write(newSegmentFile(),
+            new MergingIterator(sources), entries, true);
+            List<Segment> segments = new ArrayList<>();
+            if (merged != null) {
+                segments.add(merged);
+            }
+            writeManifest(segments);
+            install(segments, false);
+        } catch (IOException | RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Failed to merge segments in {0}",
+            new Object[]{directory});
+            LOGGER.log(Level.FINE, "Merge failure", e);
+            return;
+        }
+        // No reader can still hold the old state once install returns
+        for (Segment input : inputs) {
+            input.delete();
+        }
+        LOGGER.log(Level.FINE, "Merged {0} segments in {1}",
+        new Object[]{inputs.size(), directory});
+    }
+
+    private void install(List<Segment> segments, boolean flushed) {
+        stateLock.writeLock().lock();
+        try {
+            State current = state;
+            state = new State(current.active,
+            flushed ? null : current.flushing, segments);
+        } finally {
+            stateLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Forces every write so far to disk. Only needed when the engine was
+     * opened without synchronous writes.
+     *
+     * @throws IOException if the log cannot be forced.
+     */
+    public void sync() throws IOException {
+        synchronized (writeLock) {
+            ensureOpen();
+            log.sync();
+        }
+    }
+
+    /**
+     * @return How many segment files are live.
+     */
+    public int getSegmentCount() {
+        return state.segments.size();
+    }
+
+    /**
+     * @return The directory holding the engine's files.
+     */
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Stops the background thread, forces the log and closes every file.
+     * Writes still in the memtable are recovered from the log on the next
+     * open.
+     *
+     * @throws IOException if the log cannot be forced.
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (writeLock) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            writeLock.notifyAll();
+        }
+        background.shutdown();
+        try {
+            if (!background.awaitTermination(10, TimeUnit.SECONDS)) {
+                background.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            background.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        synchronized (writeLock) {
+            try {
+                log.sync();
+            } finally {
+                closeQuietly(log);
+                stateLock.writeLock().lock();
+                try {
+                    for (Segment segment : state.segments) {
+                        closeQuietly(segment);
+                    }
+                } finally {
+                    stateLock.writeLock().unlock();
+                }
+            }
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("Engine is closed: " + directory);
+        }
+    }
+
+    private List<String> readManifest() throws IOException {
+        File manifest = new File(directory, MANIFEST);
+        if (!manifest.exists()) {
+            return new ArrayList<>();
+        }
+        List<String> lines = Files.readAllLines(manifest.toPath(),
+        StandardCharsets.UTF_8);
+        if (lines.isEmpty() || !MANIFEST_HEADER.equals(lines.get(0))) {
+            throw new IOException("Unrecognised manifest: " + manifest);
+        }
+        List<String> names = new ArrayList<>();
+        for (String line : lines.subList(1, lines.size())) {
+            if (!line.isEmpty()) {
+                names.add(line);
+            }
+        }
+        return names;
+    }
+
+    /**
+     * Replaces the MANIFEST atomically, so a crash leaves either the old
+     * list of segments or the new one.
+     */
+    private void writeManifest(List<Segment> segments) throws IOException {
+        File manifest = new File(directory, MANIFEST);
+        File temp = new File(directory, MANIFEST + ".tmp");
+        try (FileOutputStream stream = new FileOutputStream(temp);
+             BufferedWriter writer = new BufferedWriter(
+             new OutputStreamWriter(stream, StandardCharsets.UTF_8))) {
+            writer.write(MANIFEST_HEADER);
+            writer.newLine();
+            for (Segment segment : segments) {
+                writer.write(segment.getFile().getName());
+                writer.newLine();
+            }
+            writer.flush();
+            stream.getFD().sync();
+        }
+        Files.move(temp.toPath(), manifest.toPath(),
+        StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private File newLogFile() {
+        return new File(directory,
+        String.format("%s%08d%s", LOG_PREFIX, nextNumber(), LOG_SUFFIX));
+    }
+
+    private File newSegmentFile() {
+        return new File(directory, String.format("%s%08d%s",
+        SEGMENT_PREFIX, nextNumber(), Segment.SUFFIX));
+    }
+
+    private long nextNumber() {
+        synchronized (writeLock) {
+            return nextFileNumber++;
+        }
+    }
+
+    /**
+     * @return The number in a log or segment file name, or -1 for any
+     * other file.
+     */
+    private static long fileNumber(String name) {
+        String digits;
+        if (name.startsWith(LOG_PREFIX) && name.endsWith(LOG_SUFFIX)) {
+            digits = name.substring(LOG_PREFIX.length(),
+            name.length() - LOG_SUFFIX.length());
+        } else if (name.startsWith(SEGMENT_PREFIX)) {
+            int end = name.indexOf('.');
+            digits = name.substring(SEGMENT_PREFIX.length(),
+            end < 0 ? name.length() : end);
+        } else {
+            return -1;
+        }
+        try {
+            return Long.parseLong(digits);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private boolean sleep(long millis) {
+        synchronized (writeLock) {
+            if (closed) {
+                return false;
+            }
+        }
+        try {
+            Thread.sleep(millis);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private static void closeQuietly(AutoCloseable closeable) {
+        try {
+            closeable.close();
+        } catch (Exception e) {
+            LOGGER.log(Level.FINE, "Close failed", e);
+        }
+    }
+}
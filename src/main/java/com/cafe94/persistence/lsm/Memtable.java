@@ -0,0 +1,73 @@
+package com.cafe94.persistence.lsm;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The in-memory, sorted part of an {@link LsmEngine}: every write since
+ * the last flush, with deletes kept as {@link Bytes#TOMBSTONE} so they
+ * shadow older values in the segments. Readers need no lock; writes are
+ * serialized by the engine.
+ * @author Adigun Lateef
+ * @version 1.0
+ */
+final class Memtable {
+
+    private final ConcurrentSkipListMap<byte[], byte[]> entries =
+    new ConcurrentSkipListMap<>(Bytes.COMPARATOR);
+    private final AtomicLong approximateBytes = new AtomicLong();
+
+    void apply(WriteBatch batch) {
+        for (WriteBatch.Operation operation : batch.operations()) {
+            byte[] value = operation.op == WriteBatch.OP_PUT
+            ? operation.value : Bytes.TOMBSTONE;
+            entries.put(operation.key, value);
+        }
+        approximateBytes.addAndGet(batch.approximateBytes());
+    }
+
+    /**
+     * @param key A key
+     * @return The value, {@link Bytes#TOMBSTONE} if the key was deleted, or
+     * null if this memtable does not know the key.
+     */
+    byte[] get(byte[] key) {
+        return entries.get(key);
+    }
+
+    /**
+     * @param from First key, inclusive, or null for the start
+     * @param to   End key, exclusive, or null for the end
+     * @return The entries in the range, deletes included, in key order.
+     */
+    Iterator<Map.Entry<byte[], byte[]>> range(byte[] from, byte[] to) {
+        NavigableMap<byte[], byte[]> view = entries;
+        if (from != null && to != null) {
+            if (Bytes.compare(from, to) >= 0) {
+                return Collections.emptyIterator();
+            }
+            view = entries.subMap(from, true, to, false);
+        } else if (from != null) {
+            view = entries.tailMap(from, true);
+        } else if (to != null) {
+            view = entries.headMap(to, false);
+        }
+        return view.entrySet().iterator();
+    }
+
+    boolean isEmpty() {
+        return entries.isEmpty();
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    long approximateBytes() {
+        return approximateBytes.get();
+    }
+}
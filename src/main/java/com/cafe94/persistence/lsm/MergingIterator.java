@@ -0,0 +1,83 @@
+package com.cafe94.persistence.lsm;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+/**
+ * Merges sorted entry iterators into one, in key order. Sources are given
+ * newest first; when several hold the same key, only the newest entry is
+ * returned, so an overwrite or delete in a memtable shadows the value in
+ * a segment. Deletes are returned as {@link Bytes#TOMBSTONE}.
+ * @author Adigun Lateef
+ * @version 1.0
+ */
+final class MergingIterator implements Iterator<Map.Entry<byte[], byte[]>> {
+
+    /**
+     * The current entry of one source.
+     */
+    private static final class Head {
+        private final Iterator<Map.Entry<byte[], byte[]>> source;
+        private final int rank;
+        private Map.Entry<byte[], byte[]> entry;
+
+        private Head(Iterator<Map.Entry<byte[], byte[]>> source, int rank) {
+            this.source = source;
+            this.rank = rank;
+        }
+
+        private boolean advance() {
+            if (!source.hasNext()) {
+                return false;
+            }
+            entry = source.next();
+            return true;
+        }
+    }
+
+    private final PriorityQueue<Head> heads = new PriorityQueue<>((a, b) -> {
+        int order = Bytes.compare(a.entry.getKey(), b.entry.getKey());
+        return order != 0 ? order : Integer.compare(a.rank, b.rank);
+    });
+
+    /**
+     * @param sources Sorted iterators, newest first
+     */
+    MergingIterator(List<Iterator<Map.Entry<byte[], byte[]>>> sources) {
+        for (int rank = 0; rank < sources.size(); rank++) {
+            Head head = new Head(sources.get(rank), rank);
+            if (head.advance()) {
+                heads.add(head);
+            }
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        return !heads.isEmpty();
+    }
+
+    @Override
+    public Map.Entry<byte[], byte[]> next() {
+        Head newest = heads.poll();
+        if (newest == null) {
+            throw new NoSuchElementException();
+        }
+        Map.Entry<byte[], byte[]> result = newest.entry;
+        // Skip the same key in older sources
+        while (!heads.isEmpty() && Bytes.compare(heads.peek().entry.getKey(),
+        result.getKey()) == 0) {
+            Head older = heads.poll();
+            if (older.advance()) {
+                heads.add(older);
+            }
+        }
+        if (newest.advance()) {
+            heads.add(newest);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,375 @@
+package com.cafe94.persistence.lsm;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * An immutable, sorted segment file of an {@link LsmEngine}.
+ * <p>
+ * Layout: the entries in key order, each a flag byte (put or delete), an
+ * int key length, an int value length, the key and the value; then a
+ * sparse index holding the key and file offset of every
+ * {@value #BLOCK_ENTRIES}th entry; then a {@link BloomFilter} of all keys;
+ * then a fixed footer with the index and filter offsets, the entry count,
+ * a magic number and the format version.
+ * <p>
+ * Opening a segment reads only the index and the filter. A point lookup
+ * consults the filter, binary searches the index and reads one block of
+ * at most {@value #BLOCK_ENTRIES} entries; a range scan reads block by
+ * block from the first one that can hold its start key. Reads use
+ * positional channel reads, so any number of threads can share a segment.
+ * @author Adigun Lateef
+ * @version 1.0
+ */
+final class Segment implements Closeable {
+
+    static final String SUFFIX = ".sst";
+    private static final int MAGIC = 0x43393453; // "C94S"
+    private static final int FORMAT_VERSION = 1;
+    private static final int FOOTER_BYTES = 8 + 8 + 8 + 4 + 4;
+    private static final int BLOCK_ENTRIES = 16;
+    private static final byte FLAG_PUT = 0;
+    private static final byte FLAG_DELETE = 1;
+
+    private final File file;
+    private final FileChannel channel;
+    private final byte[][] indexKeys;
+    private final long[] indexOffsets;
+    private final long dataEnd;
+    private final long entryCount;
+    private final BloomFilter bloom;
+
+    private Segment(File file, FileChannel channel, byte[][] indexKeys,
+    long[] indexOffsets, long dataEnd, long entryCount, BloomFilter bloom) {
+        this.file = file;
+        this.channel = channel;
+        this.indexKeys = indexKeys;
+        this.indexOffsets = indexOffsets;
+        this.dataEnd = dataEnd;
+        this.entryCount = entryCount;
+        this.bloom = bloom;
+    }
+
+    /**
+     * Writes a segment from sorted entries and forces it to disk. The file
+     * is written under a temporary name and renamed when complete, so a
+     * crash never leaves a partial segment under the final name.
+     *
+     * @param file           The segment file to create
+     * @param entries        Entries in strictly increasing key order,
+     *                       deletes as {@link Bytes#TOMBSTONE}
+     * @param expectedKeys   About how many entries there are, to size the
+     *                       bloom filter
+     * @param dropTombstones Whether deletes can be left out, because no
+     *                       older segment remains for them to shadow
+     * @return The opened segment, or null if no entries were written.
+     * @throws IOException if the segment cannot be written.
+     */
+    static Segment write(File file, Iterator<Map.Entry<byte[], byte[]>> entries,
+    long expectedKeys, boolean dropTombstones) throws IOException {
+        File temp = new File(file.getPath() + ".tmp");
+        BloomFilter filter = BloomFilter.forKeys(Math.max(1, expectedKeys));
+        List<byte[]> keys = new ArrayList<>();
+        List<Long> offsets = new ArrayList<>();
+        long offset = 0;
+        long count = 0;
+        try (FileOutputStream stream = new FileOutputStream(temp);
+             DataOutputStream out = new DataOutputStream(
+             new BufferedOutputStream(stream, 64 * 1024))) {
+            while (entries.hasNext()) {
+                Map.Entry<byte[], byte[]> entry = entries.next();
+                byte[] value = entry.getValue();
+                boolean deleted = value == Bytes.TOMBSTONE;
+                if (deleted && dropTombstones) {
+                    continue;
+                }
+                byte[] key = entry.getKey();
+                if (count % BLOCK_ENTRIES == 0) {
+                    keys.add(key);
+                    offsets.add(offset);
+                }
+                out.writeByte(deleted ? FLAG_DELETE : FLAG_PUT);
+                out.writeInt(key.length);
+                out.writeInt(deleted ? 0 : value.length);
+                out.write(key);
+                if (!deleted) {
+                    out.write(value);
+                }
+                offset += 9 + key.length + (deleted ? 0 : value.length);
+                filter.add(key);
+                count++;
+            }
+            long indexOffset = offset;
+            out.writeInt(keys.size());
+            for (int i = 0; i < keys.size(); i++) {
+                out.writeInt(keys.get(i).length);
+                out.write(keys.get(i));
+                out.writeLong(offsets.get(i));
+            }
+            out.flush();
+            long bloomOffset = stream.getChannel().position();
+            filter.writeTo(out);
+            out.writeLong(indexOffset);
+            out.writeLong(bloomOffset);
+            out.writeLong(count);
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.flush();
+            stream.getFD().sync();
+        }
+        if (count == 0) {
+            deleteQuietly(temp);
+            return null;
+        }
+        if (!temp.renameTo(file)) {
+            deleteQuietly(temp);
+            throw new IOException("Could not rename " + temp + " to " + file);
+        }
+        return open(file);
+    }
+
+    /**
+     * Opens an existing segment, reading its index and bloom filter.
+     *
+     * @param file The segment file
+     * @return The segment.
+     * @throws IOException if the file cannot be read or is corrupt.
+     */
+    static Segment open(File file) throws IOException {
+        FileChannel channel = FileChannel.open(file.toPath(),
+        StandardOpenOption.READ);
+        try {
+            long size = channel.size();
+            if (size < FOOTER_BYTES) {
+                throw new IOException("Segment too short: " + file);
+            }
+            ByteBuffer footer = readAt(channel, size - FOOTER_BYTES,
+            FOOTER_BYTES);
+            long indexOffset = footer.getLong();
+            long bloomOffset = footer.getLong();
+            long entryCount = footer.getLong();
+            if (footer.getInt() != MAGIC
+            || footer.getInt() != FORMAT_VERSION
+            || indexOffset < 0 || bloomOffset < indexOffset
+            || bloomOffset > size - FOOTER_BYTES) {
+                throw new IOException("Corrupt segment footer: " + file);
+            }
+            DataInputStream in = new DataInputStream(new BufferedInputStream(
+            Channels.newInputStream(channel.position(indexOffset))));
+            int indexSize = in.readInt();
+            byte[][] indexKeys = new byte[indexSize][];
+            long[] indexOffsets = new long[indexSize];
+            for (int i = 0; i < indexSize; i++) {
+                indexKeys[i] = new byte[in.readInt()];
+                in.readFully(indexKeys[i]);
+                indexOffsets[i] = in.readLong();
+            }
+            in = new DataInputStream(new BufferedInputStream(
+            Channels.newInputStream(channel.position(bloomOffset))));
+            BloomFilter bloom = BloomFilter.readFrom(in);
+            return new Segment(file, channel, indexKeys, indexOffsets,
+            indexOffset, entryCount, bloom);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            if (e instanceof EOFException
+            || e instanceof NegativeArraySizeException) {
+                throw new IOException("Corrupt segment: " + file, e);
+            }
+            throw e;
+        }
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    long getEntryCount() {
+        return entryCount;
+    }
+
+    /**
+     * @param key A key
+     * @return The value, {@link Bytes#TOMBSTONE} if the key was deleted, or
+     * null if this segment does not hold the key.
+     * @throws IOException if the segment cannot be read.
+     */
+    byte[] get(byte[] key) throws IOException {
+        if (!bloom.mightContain(key)) {
+            return null;
+        }
+        int block = floorBlock(key);
+        if (block < 0) {
+            return null;
+        }
+        ByteBuffer buffer = readBlock(block);
+        while (buffer.hasRemaining()) {
+            byte flag = buffer.get();
+            byte[] entryKey = new byte[buffer.getInt()];
+            int valueLength = buffer.getInt();
+            buffer.get(entryKey);
+            int order = Bytes.compare(entryKey, key);
+            if (order == 0) {
+                if (flag == FLAG_DELETE) {
+                    return Bytes.TOMBSTONE;
+                }
+                byte[] value = new byte[valueLength];
+                buffer.get(value);
+                return value;
+            }
+            if (order > 0) {
+                return null;
+            }
+            buffer.position(buffer.position() + valueLength);
+        }
+        return null;
+    }
+
+    /**
+     * @param from First key, inclusive, or null for the start
+     * @param to   End key, exclusive, or null for the end
+     * @return The entries in the range, deletes included, in key order.
+     * The iterator reads lazily and throws {@link UncheckedIOException} if
+     * the file cannot be read.
+     */
+    Iterator<Map.Entry<byte[], byte[]>> range(byte[] from, byte[] to) {
+        int first = from == null ? 0 : Math.max(0, floorBlock(from));
+        return new Iterator<Map.Entry<byte[], byte[]>>() {
+            private int block = first;
+            private ByteBuffer buffer;
+            private Map.Entry<byte[], byte[]> next;
+            private boolean done;
+
+            @Override
+            public boolean hasNext() {
+                while (next == null && !done) {
+                    advance();
+                }
+                return next != null;
+            }
+
+            @Override
+            public Map.Entry<byte[], byte[]> next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                Map.Entry<byte[], byte[]> result = next;
+                next = null;
+                return result;
+            }
+
+            private void advance() {
+                if (buffer == null || !buffer.hasRemaining()) {
+                    if (block >= indexOffsets.length) {
+                        done = true;
+                        return;
+                    }
+                    try {
+                        buffer = readBlock(block++);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    return;
+                }
+                byte flag = buffer.get();
+                byte[] key = new byte[buffer.getInt()];
+                int valueLength = buffer.getInt();
+                buffer.get(key);
+                if (to != null && Bytes.compare(key, to) >= 0) {
+                    done = true;
+                    return;
+                }
+                byte[] value;
+                if (flag == FLAG_DELETE) {
+                    value = Bytes.TOMBSTONE;
+                } else {
+                    value = new byte[valueLength];
+                    buffer.get(value);
+                }
+                if (from == null || Bytes.compare(key, from) >= 0) {
+                    next = new AbstractMap.SimpleImmutableEntry<>(key, value);
+                }
+            }
+        };
+    }
+
+    /**
+     * @return The index of the last block whose first key is not after the
+     * key, or -1 if the key sorts before the whole segment.
+     */
+    private int floorBlock(byte[] key) {
+        int low = 0;
+        int high = indexKeys.length - 1;
+        int found = -1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (Bytes.compare(indexKeys[mid], key) <= 0) {
+                found = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return found;
+    }
+
+    private ByteBuffer readBlock(int block) throws IOException {
+        long start = indexOffsets[block];
+        long end = block + 1 < indexOffsets.length ? indexOffsets[block + 1]
+        : dataEnd;
+        return readAt(channel, start, (int) (end - start));
+    }
+
+    private static ByteBuffer readAt(FileChannel channel, long position,
+    int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                throw new EOFException("Segment truncated");
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Closes the segment and deletes its file.
+     */
+    void delete() {
+        try {
+            close();
+        } catch (IOException e) {
+            // Deleting anyway
+        }
+        deleteQuietly(file);
+    }
+
+    private static void deleteQuietly(File file) {
+        if (file.exists() && !file.delete()) {
+            file.deleteOnExit();
+        }
+    }
+}
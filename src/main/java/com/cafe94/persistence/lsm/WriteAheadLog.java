@@ -0,0 +1,147 @@
+package com.cafe94.persistence.lsm;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * Write-ahead log of one memtable. Every {@link WriteBatch} is appended as
+ * one record, an int length, an int CRC32 and the encoded batch, before it
+ * is applied to the memtable; the log is deleted once the memtable has
+ * been flushed to a segment. On startup the surviving logs are replayed,
+ * and a torn record at the end of one is ignored.
+ * @author Adigun Lateef
+ * @version 1.0
+ */
+final class WriteAheadLog implements Closeable {
+
+    private static final int MAGIC = 0x4339344C; // "C94L"
+    private static final short FORMAT_VERSION = 1;
+    private static final int MAX_RECORD_BYTES = 64 * 1024 * 1024;
+
+    /**
+     * Receives each replayed batch.
+     */
+    interface Visitor {
+        void onBatch(WriteBatch batch) throws IOException;
+    }
+
+    private final File file;
+    private final FileChannel channel;
+
+    /**
+     * Creates a new, empty log.
+     *
+     * @param file The log file, which must not exist yet
+     * @throws IOException if the file cannot be created.
+     */
+    WriteAheadLog(File file) throws IOException {
+        this.file = file;
+        this.channel = FileChannel.open(file.toPath(),
+        StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        ByteBuffer header = ByteBuffer.allocate(6);
+        header.putInt(MAGIC).putShort(FORMAT_VERSION).flip();
+        writeFully(header);
+        channel.force(true);
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    /**
+     * Appends one batch.
+     *
+     * @param body The encoded batch
+     * @param sync Whether to force the record to disk before returning
+     * @throws IOException if the write fails.
+     */
+    void append(byte[] body, boolean sync) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(body);
+        ByteBuffer record = ByteBuffer.allocate(8 + body.length);
+        record.putInt(body.length).putInt((int) crc.getValue()).put(body);
+        record.flip();
+        writeFully(record);
+        if (sync) {
+            channel.force(false);
+        }
+    }
+
+    /**
+     * Forces every appended record to disk.
+     *
+     * @throws IOException if the force fails.
+     */
+    void sync() throws IOException {
+        channel.force(false);
+    }
+
+    private void writeFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Replays a log written by an earlier run.
+     *
+     * @param file    The log file
+     * @param visitor Receives the batches in append order
+     * @return How many batches were replayed.
+     * @throws IOException if the file cannot be read or the visitor fails.
+     */
+    static int replay(File file, Visitor visitor) throws IOException {
+        int replayed = 0;
+        try (DataInputStream in = new DataInputStream(
+             new BufferedInputStream(new FileInputStream(file)))) {
+            try {
+                if (in.readInt() != MAGIC
+                || in.readShort() != FORMAT_VERSION) {
+                    throw new IOException("Not a write-ahead log: " + file);
+                }
+            } catch (EOFException e) {
+                // Crashed while creating the log; nothing was appended
+                return 0;
+            }
+            while (true) {
+                int length;
+                int checksum;
+                byte[] body;
+                try {
+                    length = in.readInt();
+                    checksum = in.readInt();
+                    if (length < 0 || length > MAX_RECORD_BYTES) {
+                        break;
+                    }
+                    body = new byte[length];
+                    in.readFully(body);
+                } catch (EOFException e) {
+                    break;
+                }
+                CRC32 crc = new CRC32();
+                crc.update(body);
+                if ((int) crc.getValue() != checksum) {
+                    // A torn write: nothing after it was acknowledged
+                    break;
+                }
+                visitor.onBatch(WriteBatch.decode(body));
+                replayed++;
+            }
+        }
+        return replayed;
+    }
+}
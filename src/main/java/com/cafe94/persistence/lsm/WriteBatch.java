@@ -0,0 +1,134 @@
+package com.cafe94.persistence.lsm;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Puts and deletes that {@link LsmEngine#write(WriteBatch)} applies
+ * atomically: they are logged as one write-ahead log record, so after a
+ * crash either all of them or none are recovered. Later operations on the
+ * same key win. Used by one thread only.
+ * @author Adigun Lateef
+ * @version 1.0
+ */
+public final class WriteBatch {
+
+    static final byte OP_PUT = 1;
+    static final byte OP_DELETE = 2;
+
+    /**
+     * One operation of a batch.
+     */
+    static final class Operation {
+        final byte op;
+        final byte[] key;
+        final byte[] value;
+
+        private Operation(byte op, byte[] key, byte[] value) {
+            this.op = op;
+            this.key = key;
+            this.value = value;
+        }
+    }
+
+    private final List<Operation> operations = new ArrayList<>();
+    private long approximateBytes;
+
+    /**
+     * Adds a put of a key.
+     *
+     * @param key   The key
+     * @param value The value, which may be empty
+     * @return This batch.
+     * @throws NullPointerException if key or value is null.
+     */
+    public WriteBatch put(byte[] key, byte[] value) {
+        Objects.requireNonNull(key, "Key cannot be null.");
+        Objects.requireNonNull(value, "Value cannot be null.");
+        operations.add(new Operation(OP_PUT, key, value));
+        approximateBytes += key.length + value.length + 16;
+        return this;
+    }
+
+    /**
+     * Adds a delete of a key. Deleting a missing key is not an error.
+     *
+     * @param key The key
+     * @return This batch.
+     * @throws NullPointerException if key is null.
+     */
+    public WriteBatch delete(byte[] key) {
+        Objects.requireNonNull(key, "Key cannot be null.");
+        operations.add(new Operation(OP_DELETE, key, null));
+        approximateBytes += key.length + 16;
+        return this;
+    }
+
+    /**
+     * @return true if the batch holds no operations.
+     */
+    public boolean isEmpty() {
+        return operations.isEmpty();
+    }
+
+    List<Operation> operations() {
+        return Collections.unmodifiableList(operations);
+    }
+
+    long approximateBytes() {
+        return approximateBytes;
+    }
+
+    /**
+     * Encodes the batch as one write-ahead log record body: the operation
+     * count, then per operation its type, key and, for puts, value, each
+     * length-prefixed.
+     */
+    byte[] encode() throws IOException {
+        ByteArrayOutputStream bytes =
+        new ByteArrayOutputStream((int) Math.min(approximateBytes + 4,
+        Integer.MAX_VALUE));
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(operations.size());
+        for (Operation operation : operations) {
+            out.writeByte(operation.op);
+            out.writeInt(operation.key.length);
+            out.write(operation.key);
+            if (operation.op == OP_PUT) {
+                out.writeInt(operation.value.length);
+                out.write(operation.value);
+            }
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    static WriteBatch decode(byte[] body) throws IOException {
+        DataInputStream in = new DataInputStream(
+        new ByteArrayInputStream(body));
+        WriteBatch batch = new WriteBatch();
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            byte op = in.readByte();
+            byte[] key = new byte[in.readInt()];
+            in.readFully(key);
+            if (op == OP_PUT) {
+                byte[] value = new byte[in.readInt()];
+                in.readFully(value);
+                batch.put(key, value);
+            } else if (op == OP_DELETE) {
+                batch.delete(key);
+            } else {
+                throw new IOException("Unknown batch operation " + op);
+            }
+        }
+        return batch;
+    }
+}
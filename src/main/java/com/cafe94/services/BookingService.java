@@ -4,13 +4,15 @@ import java.time.Duration;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
-import java.util.Comparator;
 import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.stream.Collectors;
 import com.cafe94.domain.Booking;
 import com.cafe94.domain.Table;
 import com.cafe94.domain.User;
@@ -24,7 +26,10 @@ import static com.cafe94.enums.Permission.CANCEL_ANY_BOOKING;
 
 import com.cafe94.persistence.IBookingRepository;
 import com.cafe94.persistence.ITableRepository;
+import com.cafe94.persistence.ITransactionManager;
+import com.cafe94.persistence.IUnitOfWork;
 import com.cafe94.persistence.IUserRepository;
+import com.cafe94.persistence.StaleRecordException;
 
 /**
  * Implementation of the IBookingService interface
@@ -35,6 +40,8 @@ public class BookingService implements IBookingService {
         Logger.getLogger(BookingService.class.getName());
     private static final Duration DEFAULT_BOOKING_DURATION =
         Duration.ofHours(1);
+    // Saves to retry when someone else changes the same booking meanwhile
+    private static final int MAX_UPDATE_ATTEMPTS = 3;
 
     // Dependencies
     private final IBookingRepository bookingRepository;
@@ -42,6 +49,7 @@ public class BookingService implements IBookingService {
     private final ITableRepository tableRepository;
     private final AuthorizationService authService;
     private final INotificationService notificationService;
+    private final ITransactionManager transactionManager;
 
     /**
      * Constructor for Dependency Injection.
@@ -50,12 +58,14 @@ public class BookingService implements IBookingService {
                           IUserRepository userRepository,
                           ITableRepository tableRepository,
                           AuthorizationService authService,
-                          INotificationService notificationService) {
+                          INotificationService notificationService,
+                          ITransactionManager transactionManager) {
         this.bookingRepository = Objects.requireNonNull(bookingRepository);
         this.userRepository = Objects.requireNonNull(userRepository);
         this.tableRepository = Objects.requireNonNull(tableRepository);
         this.authService = Objects.requireNonNull(authService);
         this.notificationService = Objects.requireNonNull(notificationService);
+        this.transactionManager = Objects.requireNonNull(transactionManager);
     }
 
     @Override
@@ -104,26 +114,60 @@ public class BookingService implements IBookingService {
         authService.checkPermission(approver, APPROVE_BOOKING);
 
         Booking booking = findBookingByIdOrThrow(bookingId);
+        int assignedTableNumber;
+        for (int attempt = 1; ; attempt++) {
+            if (booking.getStatus() != BookingStatus.PENDING_APPROVAL) {
+                LOGGER.log(Level.WARNING, "Booking {0} is not pending " +
+                    "approval (Status: {1}). No action taken.",
+                    new Object[]{bookingId, booking.getStatus()});
+                return false;
+            }
 
-        if (booking.getStatus() != BookingStatus.PENDING_APPROVAL) {
-            LOGGER.log(Level.WARNING, "Booking {0} is not pending " +
-                "approval (Status: {1}). No action taken.",
-                new Object[]{bookingId, booking.getStatus()});
-            return false;
-        }
+            long version = booking.getVersion();
+            Table table = findAndReserveSuitableTable(booking);
 
-        int assignedTableNumber = findAndReserveSuitableTable(booking);
+            if (table == null) {
+                LOGGER.log(Level.WARNING, "No suitable table could be " +
+                    "reserved for booking {0}. Rejecting.", bookingId);
+                return rejectBookingInternal(booking, approver,
+                    "No suitable table available at the requested time.");
+            }
 
-        if (assignedTableNumber <= 0) {
-            LOGGER.log(Level.WARNING, "No suitable table could be " +
-                "reserved for booking {0}. Rejecting.", bookingId);
-            return rejectBookingInternal(booking, approver,
-                "No suitable table available at the requested time.");
+            int tableNumber = table.getTableNumber();
+            // The reserved table and the confirmed booking become durable
+            // together, and only if nobody changed the booking meanwhile
+            try {
+                IUnitOfWork work = transactionManager.begin();
+                work.save(table);
+                work.update(booking, version, current -> {
+                    current.assignTable(tableNumber);
+                    current.setStatus(BookingStatus.CONFIRMED);
+                });
+                work.commit();
+                booking = work.getSaved(booking);
+                assignedTableNumber = tableNumber;
+                break;
+            } catch (StaleRecordException e) {
+                table.makeAvailable();
+                if (attempt >= MAX_UPDATE_ATTEMPTS) {
+                    LOGGER.log(Level.WARNING, "Giving up approving booking " +
+                        "{0} after {1} conflicting saves.",
+                        new Object[]{bookingId, attempt});
+                    throw e;
+                }
+                LOGGER.log(Level.FINE, "Booking {0} changed meanwhile " +
+                    "(version {1}), retrying approval.",
+                    new Object[]{bookingId, e.getActualVersion()});
+                booking = findBookingByIdOrThrow(bookingId);
+            } catch (RuntimeException e) {
+                // A failed commit leaves the booking as it was
+                table.makeAvailable();
+                LOGGER.log(Level.SEVERE, "CRITICAL: Failed to save " +
+                    "approval of booking {0} with table T{1}",
+                    new Object[]{bookingId, tableNumber, e});
+                throw new RuntimeException("Failed to approve booking.", e);
+            }
         }
-
-        booking.assignTable(assignedTableNumber);
-        booking.setStatus(BookingStatus.CONFIRMED);
-        bookingRepository.save(booking);
         LOGGER.log(Level.INFO,
             "Booking {0} approved by User {1}, assigned Table {2}",
             new Object[]{bookingId, approver.getUserID(),
@@ -152,8 +196,16 @@ public class BookingService implements IBookingService {
             return false;
         }
 
-        booking.setStatus(BookingStatus.REJECTED);
-        bookingRepository.save(booking);
+        try {
+            booking = updateBooking(booking, current -> {
+                requireStatus(current, BookingStatus.PENDING_APPROVAL,
+                    "rejected");
+                current.setStatus(BookingStatus.REJECTED);
+            });
+        } catch (IllegalStateException e) {
+            LOGGER.log(Level.WARNING, e.getMessage());
+            return false;
+        }
         String reasonText = (reason != null && !reason.trim().isEmpty()) ?
             reason : "Not specified";
         LOGGER.log(Level.INFO,
@@ -184,19 +236,19 @@ public class BookingService implements IBookingService {
         }
 
 
-        BookingStatus currentStatus = booking.getStatus();
-        if (currentStatus != BookingStatus.PENDING_APPROVAL &&
-            currentStatus != BookingStatus.CONFIRMED) {
-             throw new IllegalStateException("Booking " + bookingId +
-                 " cannot be cancelled from status: " + currentStatus);
-        }
+        requireCancellable(booking);
 
         BookingStatus cancelledStatus = isOwner ?
             BookingStatus.CANCELLED_BY_CUSTOMER :
             BookingStatus.CANCELLED_BY_STAFF;
-        booking.setStatus(cancelledStatus);
-
-        bookingRepository.save(booking);
+        // The status the winning attempt cancelled from
+        BookingStatus[] previousStatus = new BookingStatus[1];
+        booking = updateBooking(booking, current -> {
+            requireCancellable(current);
+            previousStatus[0] = current.getStatus();
+            current.setStatus(cancelledStatus);
+        });
+        BookingStatus currentStatus = previousStatus[0];
         LOGGER.log(Level.INFO,
             "User {0} cancelled booking {1}. New Status: {2}",
             new Object[]{canceller.getUserID(), bookingId, cancelledStatus});
@@ -239,6 +291,69 @@ public class BookingService implements IBookingService {
         return bookingRepository.findByDate(date);
     }
 
+    @Override
+    public List<Booking> getBookingsBetween(LocalDate startDate,
+                                            LocalDate endDate) {
+        Objects.requireNonNull(startDate, "Start date cannot be null.");
+        Objects.requireNonNull(endDate, "End date cannot be null.");
+        LOGGER.log(Level.FINE, "Retrieving bookings from {0} to {1}",
+            new Object[]{startDate, endDate});
+        return bookingRepository.findBetween(startDate, endDate);
+    }
+
+    /**
+     * Applies a change to a booking and saves it, provided no one else has
+     * saved the booking since it was read. On such a conflict the change
+     * is retried against the latest booking, so it must check itself that
+     * the booking still allows it. Gives up with a
+     * {@link StaleRecordException} after {@value #MAX_UPDATE_ATTEMPTS}
+     * attempts.
+     *
+     * @param booking The booking as read
+     * @param change  The change to apply
+     * @return The saved booking.
+     */
+    private Booking updateBooking(Booking booking,
+                                  Consumer<Booking> change) {
+        int bookingId = booking.getBookingID();
+        long version = booking.getVersion();
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return bookingRepository.update(bookingId, version, change);
+            } catch (StaleRecordException e) {
+                if (attempt >= MAX_UPDATE_ATTEMPTS) {
+                    LOGGER.log(Level.WARNING, "Giving up on booking {0} " +
+                        "after {1} conflicting saves.",
+                        new Object[]{bookingId, attempt});
+                    throw e;
+                }
+                LOGGER.log(Level.FINE, "Booking {0} changed meanwhile " +
+                    "(version {1}), retrying.",
+                    new Object[]{bookingId, e.getActualVersion()});
+                version = findBookingByIdOrThrow(bookingId).getVersion();
+            }
+        }
+    }
+
+    private static void requireStatus(Booking booking, BookingStatus status,
+                                      String action) {
+        if (booking.getStatus() != status) {
+            throw new IllegalStateException("Booking " +
+                booking.getBookingID() + " cannot be " + action +
+                " from status: " + booking.getStatus());
+        }
+    }
+
+    private static void requireCancellable(Booking booking) {
+        BookingStatus status = booking.getStatus();
+        if (status != BookingStatus.PENDING_APPROVAL &&
+            status != BookingStatus.CONFIRMED) {
+             throw new IllegalStateException("Booking " +
+                 booking.getBookingID() +
+                 " cannot be cancelled from status: " + status);
+        }
+    }
+
     private Booking findBookingByIdOrThrow(int bookingId) {
          if (bookingId <= 0) throw new IllegalArgumentException(
             "Booking ID must be positive.");
@@ -247,7 +362,12 @@ public class BookingService implements IBookingService {
                     "Booking not found with ID: " + bookingId));
     }
 
-    private int findAndReserveSuitableTable(Booking booking) {
+    /**
+     * Finds a free table for the booking and marks it reserved in memory.
+     * The caller saves it together with the booking.
+     * @return The reserved table, or null if there is none.
+     */
+    private Table findAndReserveSuitableTable(Booking booking) {
         
         int requiredCapacity = booking.getNumberOfGuests();
         LocalDateTime bookingStart = booking.getBookingDateTime();
@@ -257,65 +377,57 @@ public class BookingService implements IBookingService {
             "from {1} to {2}", new Object[]{requiredCapacity,
             bookingStart, bookingEnd});
 
+        // Already ordered by capacity then number, so the snuggest fit wins
         List<Table> potentialTables = tableRepository
-            .findWithCapacityGreaterThanOrEqual(requiredCapacity);
+            .findAvailableWithCapacityAtLeast(requiredCapacity);
 
-        potentialTables.sort(
-            Comparator.comparingInt(Table::getCapacity)
-                      .thenComparingInt(Table::getTableNumber)
-        );
-
-        LOGGER.log(Level.FINE, "Found {0} potential tables by capacity.",
+        LOGGER.log(Level.FINE, "Found {0} available tables by capacity.",
                    potentialTables.size());
 
+        // One schedule lookup for all candidates instead of one per table
+        Set<Integer> freeTables = bookingRepository.findFreeTables(
+            potentialTables.stream()
+                .map(Table::getTableNumber)
+                .collect(Collectors.toList()),
+            bookingStart, bookingEnd);
+
         for (Table table : potentialTables) {
             int tableNum = table.getTableNumber();
             LOGGER.log(Level.FINER,
                 "Checking table T{0} (Cap: {1})...",
                 new Object[]{tableNum, table.getCapacity()});
 
-            List<Booking> conflictingBookings = bookingRepository
-                .findByTableAndDateTimeRange(tableNum, bookingStart, bookingEnd);
-
-            if (conflictingBookings.isEmpty()) {
+            if (freeTables.contains(tableNum)) {
                 LOGGER.log(Level.INFO,
                     "Table T{0} has no conflicting bookings.", tableNum);
                 try {
-                    Table freshTable = tableRepository
-                                        .findByTableNumber(tableNum)
-                                        .orElse(table);
-
-                    if (freshTable.getStatus() == TableStatus.AVAILABLE) {
-                        freshTable.reserve();
-                        tableRepository.save(freshTable);
+                    // The repository hands out its live tables; re-check in
+                    // case another approval reserved this one meanwhile
+                    if (table.getStatus() == TableStatus.AVAILABLE) {
+                        table.reserve();
                         LOGGER.log(Level.INFO,
                             "Reserved table T{0} for booking {1}",
                             new Object[]{tableNum, booking.getBookingID()});
-                        return tableNum; // Success
+                        return table; // Success
                     } else {
                         LOGGER.log(Level.INFO, "Table T{0} no conflicts, " +
                             "but status {1} != AVAILABLE.",
-                            new Object[]{tableNum, freshTable.getStatus()});
+                            new Object[]{tableNum, table.getStatus()});
                     }
                 } catch (IllegalStateException e) {
                     LOGGER.log(Level.WARNING,
                         "Failed reserve table T{0} state: {1}",
                         new Object[]{tableNum, e.getMessage()});
-                } catch (Exception e) {
-                     LOGGER.log(Level.SEVERE,
-                        "Error saving reserved status for table T{0}",
-                        new Object[]{tableNum, e});
                 }
             } else {
                  LOGGER.log(Level.INFO,
-                    "Table T{0} has {1} conflicting booking(s).",
-                    new Object[]{tableNum, conflictingBookings.size()});
+                    "Table T{0} has conflicting booking(s).", tableNum);
             }
         }
         LOGGER.log(Level.WARNING,
             "No suitable table found for booking {0}.",
             booking.getBookingID());
-        return 0;
+        return null;
     }
 
     private void releaseReservedTable(int tableNumber) {
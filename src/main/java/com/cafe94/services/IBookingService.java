@@ -119,6 +119,19 @@ public interface IBookingService {
      */
     List<Booking> getBookingsByDate(LocalDate date);
 
+    /**
+     * Retrieves all bookings scheduled between two dates, both inclusive,
+     * e.g. today and tomorrow for the front-of-house view.
+     *
+     * @param startDate The first {@link LocalDate} to include (non-null)
+     * @param endDate   The last {@link LocalDate} to include (non-null)
+     * @return A {@code List<Booking>} sorted by date and time. Returns an
+     * empty list if no bookings exist in the range.
+     * @throws NullPointerException if either date is null.
+     * @throws IllegalArgumentException if endDate is before startDate.
+     */
+    List<Booking> getBookingsBetween(LocalDate startDate, LocalDate endDate);
+
     /**
      * Finds all bookings currently matching the specified status.
      * Results are potentially sorted (e.g., chronologically).
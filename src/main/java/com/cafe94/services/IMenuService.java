@@ -27,7 +27,8 @@ public interface IMenuService {
                  double price, User staffMember);
 
     /**
-     * Updates an existing menu item
+     * Updates an existing menu item by saving a new instance in its place,
+     * so orders and snapshots holding the old one keep its values
      * @param itemId ID of item to update.
      * @param name Updated name.
      * @param category Updated category
@@ -35,6 +36,8 @@ public interface IMenuService {
      * @param isSpecial Updated special status.
      * @param staffMember Staff performing action.
      * @return The updated Item.
+     * @throws IllegalArgumentException if name/category is blank, or price
+     * is negative.
      */
     Item updateItem(int itemId, String name, String category, double price,
     boolean isSpecial, User staffMember);
@@ -49,4 +49,17 @@ public interface IReportingService {
      */
     Report generateMostActiveCustomerReport(User callingUser, int limit);
 
+    /**
+     * Generates a report of the revenue taken by orders that were not
+     * cancelled, in total and for the top earning items. Sums are exact
+     * in pence.
+     *
+     * @param callingUser The user requesting the report
+     * @return A {@link Report} object with the order count, the total and
+     * the revenue per item, formatted in pounds
+     * @throws SecurityException if callingUser is null or does not have
+     * the required Manager role/permissions
+     */
+    Report generateRevenueReport(User callingUser);
+
 }
\ No newline at end of file
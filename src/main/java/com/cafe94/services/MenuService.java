@@ -58,12 +58,10 @@ public class MenuService implements IMenuService {
     public Item updateItem(int itemId, String name, String category,
     double price, boolean isSpecial, User staffMember) {
         authService.checkPermission(staffMember, MANAGE_MENU_ITEMS);
-        Item itemToUpdate = findItemByIdOrThrow(itemId);
-        // Update properties
-        itemToUpdate.setName(name);
-        itemToUpdate.setCategory(category);
-        itemToUpdate.setPrice(price);
-        itemToUpdate.setDailySpecial(isSpecial);
+        Item current = findItemByIdOrThrow(itemId);
+        // A new instance: orders and snapshots share the current one
+        Item itemToUpdate = new Item(current.getItemID(), name, category,
+        price, isSpecial);
         Item updatedItem = menuRepository.save(itemToUpdate);
         LOGGER.log(Level.INFO, "Staff {0} updated item: {1}",
                    new Object[]{staffMember.getUserID(), updatedItem});
@@ -94,9 +92,8 @@ public class MenuService implements IMenuService {
          List<Item> currentSpecials = menuRepository.findDailySpecials();
          for (Item item : currentSpecials) {
              if (item.isDailySpecial()) {
-                 item.setDailySpecial(false);
                  // Persist the change
-                 menuRepository.save(item);
+                 menuRepository.save(withSpecial(item, false));
                  LOGGER.log(Level.FINER, "Cleared special status for " +
                      "persisted item ID: {0}", item.getItemID());
              }
@@ -108,8 +105,7 @@ public class MenuService implements IMenuService {
         authService.checkPermission(staffMember, SET_DAILY_SPECIAL);
         Item item = findItemByIdOrThrow(itemId);
         clearAllExistingSpecials(staffMember);
-        item.setDailySpecial(true);
-        Item updatedItem = menuRepository.save(item);
+        Item updatedItem = menuRepository.save(withSpecial(item, true));
         LOGGER.log(Level.INFO, "Staff {0} set existing item as special: {1}",
                    new Object[]{staffMember.getUserID(), updatedItem});
         return updatedItem;
@@ -120,8 +116,7 @@ public class MenuService implements IMenuService {
         authService.checkPermission(staffMember, SET_DAILY_SPECIAL);
         Item item = findItemByIdOrThrow(itemId);
         if (item.isDailySpecial()) {
-            item.setDailySpecial(false);
-            Item updatedItem = menuRepository.save(item);
+            Item updatedItem = menuRepository.save(withSpecial(item, false));
              LOGGER.log(Level.INFO, "Staff {0} cleared special status " +
                         "for item: {1}",
                         new Object[]{staffMember.getUserID(), updatedItem});
@@ -201,20 +196,33 @@ public class MenuService implements IMenuService {
 
     @Override
     public List<Item> getDailySpecials() {
-        List<Item> specials = new ArrayList<>(
-            menuRepository.findDailySpecials()
-        );
-        if (transientDailySpecial != null) {
-             if (specials.stream().noneMatch(
-                 item -> item.getItemID() == transientDailySpecial.getItemID()
-                )) {
-                 specials.add(transientDailySpecial);
-             }
+        List<Item> persisted = menuRepository.findDailySpecials();
+        if (transientDailySpecial == null) {
+            // Already an immutable snapshot list; no copy needed
+            return persisted;
+        }
+        List<Item> specials = new ArrayList<>(persisted);
+        if (specials.stream().noneMatch(
+            item -> item.getItemID() == transientDailySpecial.getItemID()
+           )) {
+            specials.add(transientDailySpecial);
         }
         // Return combined list
         return specials;
     }
 
+    /**
+     * Copies an item with its special flag changed. Saved items are
+     * shared with menu snapshots and past orders, so they are replaced
+     * rather than changed in place.
+     */
+    private static Item withSpecial(Item item, boolean special) {
+        Item copy = new Item(item.getItemID(), item.getName(),
+        item.getCategory(), 0, special);
+        copy.setPricePence(item.getPricePence());
+        return copy;
+    }
+
     /** Finds item by ID or throws NoSuchElementException. */
     private Item findItemByIdOrThrow(int itemId) {
         return getItemById(itemId)
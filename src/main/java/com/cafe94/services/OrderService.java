@@ -6,6 +6,7 @@ import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.function.Consumer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -24,7 +25,10 @@ import static com.cafe94.enums.Permission.*;
 
 import com.cafe94.persistence.IOrderRepository;
 import com.cafe94.persistence.ITableRepository;
+import com.cafe94.persistence.ITransactionManager;
+import com.cafe94.persistence.IUnitOfWork;
 import com.cafe94.persistence.IUserRepository;
+import com.cafe94.persistence.StaleRecordException;
 import com.cafe94.util.ValidationUtils;
 
 /**
@@ -34,24 +38,29 @@ public class OrderService implements IOrderService {
 
     private static final Logger LOGGER =
         Logger.getLogger(OrderService.class.getName());
+    // Saves to retry when someone else changes the same order meanwhile
+    private static final int MAX_UPDATE_ATTEMPTS = 3;
 
     private final IOrderRepository orderRepository;
     private final ITableRepository tableRepository;
     private final IUserRepository userRepository;
     private final AuthorizationService authService;
     private final INotificationService notificationService;
+    private final ITransactionManager transactionManager;
 
     /** Constructor for Dependency Injection. */
     public OrderService(IOrderRepository orderRepository,
                         ITableRepository tableRepository,
                         IUserRepository userRepository,
                         AuthorizationService authService,
-                        INotificationService notificationService) {
+                        INotificationService notificationService,
+                        ITransactionManager transactionManager) {
         this.orderRepository = Objects.requireNonNull(orderRepository);
         this.tableRepository = Objects.requireNonNull(tableRepository);
         this.userRepository = Objects.requireNonNull(userRepository);
         this.authService = Objects.requireNonNull(authService);
         this.notificationService = Objects.requireNonNull(notificationService);
+        this.transactionManager = Objects.requireNonNull(transactionManager);
     }
 
     @Override
@@ -72,30 +81,37 @@ public class OrderService implements IOrderService {
 
         EatIn newOrder = new EatIn(0, items, customerId, tableNumber,
             OrderStatus.CONFIRMED); 
-        EatIn savedOrder = (EatIn) orderRepository.save(newOrder);
-        LOGGER.log(Level.INFO, "Staff {0} created Eat-In Order ID: {1} " +
-            "for Customer {2} at Table {3}", new Object[]{
-            staffMember.getUserID(), savedOrder.getOrderID(), customerId,
-            tableNumber});
-
         try {
              table.occupy();
-             tableRepository.save(table);
-             LOGGER.log(Level.INFO,
-                 "Table {0} marked OCCUPIED for order {1}",
-                 new Object[]{tableNumber, savedOrder.getOrderID()});
         } catch (IllegalStateException e) {
              LOGGER.log(Level.SEVERE, "Failed to occupy table {0} for " +
-                 "order {1}: {2}.", new Object[]{tableNumber,
-                 savedOrder.getOrderID(), e.getMessage()});
+                 "new order: {1}.", new Object[]{tableNumber,
+                 e.getMessage()});
              throw new IllegalStateException("Table " + tableNumber +
                  " could not be occupied.", e);
-        } catch (Exception e) {
-            LOGGER.log(Level.SEVERE, "CRITICAL: Failed save table status " +
-                "T{0} after order {1}", new Object[]{tableNumber,
-                savedOrder.getOrderID(), e});
+        }
+
+        // The order and the occupied table become durable together
+        EatIn savedOrder;
+        try {
+            IUnitOfWork work = transactionManager.begin();
+            work.save(newOrder);
+            work.save(table);
+            work.commit();
+            savedOrder = work.getSaved(newOrder);
+        } catch (RuntimeException e) {
+            table.makeAvailable();
+            LOGGER.log(Level.SEVERE, "CRITICAL: Failed to save order and " +
+                "table status T{0}", new Object[]{tableNumber, e});
             throw new RuntimeException("Failed table status update.", e);
         }
+        LOGGER.log(Level.INFO, "Staff {0} created Eat-In Order ID: {1} " +
+            "for Customer {2} at Table {3}", new Object[]{
+            staffMember.getUserID(), savedOrder.getOrderID(), customerId,
+            tableNumber});
+        LOGGER.log(Level.INFO,
+            "Table {0} marked OCCUPIED for order {1}",
+            new Object[]{tableNumber, savedOrder.getOrderID()});
         notificationService.sendOrderConfirmation(savedOrder);
         return savedOrder;
     }
@@ -156,8 +172,8 @@ public class OrderService implements IOrderService {
         }
         Delivery deliveryOrder = (Delivery) order;
         try {
-            deliveryOrder.markReadyForDispatch();
-            orderRepository.save(deliveryOrder);
+            deliveryOrder = (Delivery) updateOrder(deliveryOrder,
+                current -> ((Delivery) current).markReadyForDispatch());
             LOGGER.log(Level.INFO, "Staff {0} approved Delivery Order {1}.",
                        new Object[]{staffMember.getUserID(), orderId});
             notificationService.sendOrderStatusUpdate(deliveryOrder);
@@ -186,11 +202,7 @@ public class OrderService implements IOrderService {
                 " is not a Delivery Order.");
         }
         Delivery deliveryOrder = (Delivery) order;
-        if (deliveryOrder.getStatus() != OrderStatus.READY_FOR_DISPATCH) {
-            throw new IllegalStateException("Order " + orderId +
-                " not ready for driver (Status: " +
-                deliveryOrder.getStatus() + ").");
-        }
+        requireReadyForDriver(deliveryOrder);
         User driverUser = userRepository.findById(driverId).orElseThrow(() ->
             new NoSuchElementException("Driver user ID " + driverId));
         if (driverUser.getRole() != UserRole.DRIVER) {
@@ -198,8 +210,11 @@ public class OrderService implements IOrderService {
                  " is not a Driver.");
         }
         try {
-            deliveryOrder.assignDriver(driverId);
-            orderRepository.save(deliveryOrder);
+            deliveryOrder = (Delivery) updateOrder(deliveryOrder,
+                current -> {
+                    requireReadyForDriver(current);
+                    ((Delivery) current).assignDriver(driverId);
+                });
             LOGGER.log(Level.INFO, "Driver {0} assigned to Order {1} by " +
                 "Staff {2}", new Object[]{driverId, orderId,
                 staffMember.getUserID()});
@@ -224,8 +239,7 @@ public class OrderService implements IOrderService {
         authService.checkPermission(chef, UPDATE_ORDER_STATUS_PREPARING);
         Order order = findOrderByIdOrThrow(orderId);
         try {
-            order.startPreparation();
-            Order savedOrder = orderRepository.save(order);
+            Order savedOrder = updateOrder(order, Order::startPreparation);
             notificationService.sendOrderStatusUpdate(savedOrder);
             LOGGER.log(Level.INFO, "Order {0} status set to PREPARING by " +
                 "Chef {1}", new Object[]{orderId, chef.getUserID()});
@@ -244,8 +258,7 @@ public class OrderService implements IOrderService {
         authService.checkPermission(chef, UPDATE_ORDER_STATUS_READY);
         Order order = findOrderByIdOrThrow(orderId);
         try {
-            order.markAsReady();
-            Order savedOrder = orderRepository.save(order);
+            Order savedOrder = updateOrder(order, Order::markAsReady);
             notificationService.sendOrderStatusUpdate(savedOrder);
             notificationService.notifyOrderReady(savedOrder);
             LOGGER.log(Level.INFO, "Order {0} status set to READY by Chef " +
@@ -269,13 +282,13 @@ public class OrderService implements IOrderService {
                  " is not a Delivery order.");
         }
         Delivery deliveryOrder = (Delivery) order;
-        if (deliveryOrder.getAssignedDriverID() != driver.getUserID()) {
-            throw new SecurityException("Driver " + driver.getUserID() +
-                " not assigned to order " + orderId);
-        }
+        requireAssignedDriver(deliveryOrder, driver);
         try {
-             deliveryOrder.markAsOutForDelivery();
-             orderRepository.save(deliveryOrder);
+             deliveryOrder = (Delivery) updateOrder(deliveryOrder,
+                 current -> {
+                     requireAssignedDriver((Delivery) current, driver);
+                     ((Delivery) current).markAsOutForDelivery();
+                 });
              notificationService.sendOrderStatusUpdate(deliveryOrder);
              LOGGER.log(Level.INFO,
                  "Order {0} marked OUT_FOR_DELIVERY by Driver {1}",
@@ -303,13 +316,13 @@ public class OrderService implements IOrderService {
                  " is not a Delivery order.");
         }
         Delivery deliveryOrder = (Delivery) order;
-        if (deliveryOrder.getAssignedDriverID() != driver.getUserID()) {
-            throw new SecurityException("Driver " + driver.getUserID() +
-                " not assigned to order " + orderId);
-        }
+        requireAssignedDriver(deliveryOrder, driver);
         try {
-             deliveryOrder.markAsDelivered();
-             orderRepository.save(deliveryOrder);
+             deliveryOrder = (Delivery) updateOrder(deliveryOrder,
+                 current -> {
+                     requireAssignedDriver((Delivery) current, driver);
+                     ((Delivery) current).markAsDelivered();
+                 });
              notificationService.sendOrderStatusUpdate(deliveryOrder);
              notificationService.sendOrderDeliveredNotification(deliveryOrder);
              LOGGER.log(Level.INFO,
@@ -338,8 +351,8 @@ public class OrderService implements IOrderService {
         }
         EatIn eatInOrder = (EatIn) order;
         try {
-            eatInOrder.markAsServed();
-            orderRepository.save(eatInOrder);
+            eatInOrder = (EatIn) updateOrder(eatInOrder,
+                current -> ((EatIn) current).markAsServed());
             notificationService.sendOrderStatusUpdate(eatInOrder);
             LOGGER.log(Level.INFO, "Order {0} marked SERVED by Waiter {1}",
                 new Object[]{orderId, waiter.getUserID()});
@@ -370,8 +383,8 @@ public class OrderService implements IOrderService {
         }
         Takeaway takeawayOrder = (Takeaway) order;
         try {
-            takeawayOrder.markAsCollected();
-            orderRepository.save(takeawayOrder);
+            takeawayOrder = (Takeaway) updateOrder(takeawayOrder,
+                current -> ((Takeaway) current).markAsCollected());
             notificationService.sendOrderStatusUpdate(takeawayOrder);
             LOGGER.log(Level.INFO,
                 "Order {0} marked COLLECTED by Staff {1}",
@@ -407,7 +420,7 @@ public class OrderService implements IOrderService {
         }
 
         try {
-            order.cancelOrder();
+            order = updateOrder(order, Order::cancelOrder);
         } catch (IllegalStateException e) {
              LOGGER.log(Level.WARNING,
                  "Cancellation rejected for {0} due to state: {1}",
@@ -415,7 +428,6 @@ public class OrderService implements IOrderService {
               throw e;
         }
 
-        orderRepository.save(order);
         LOGGER.log(Level.INFO,
             "Order {0} cancelled by User {1}.",
             new Object[]{orderId, canceller.getUserID()});
@@ -428,6 +440,54 @@ public class OrderService implements IOrderService {
         return true;
     }
 
+    /**
+     * Applies a change to an order and saves it, provided no one else has
+     * saved the order since it was read. On such a conflict the change is
+     * retried against the latest order, so it must check itself that the
+     * order still allows it, as the status transitions do. Gives up with a
+     * {@link StaleRecordException} after {@value #MAX_UPDATE_ATTEMPTS}
+     * attempts.
+     *
+     * @param order  The order as read
+     * @param change The change to apply
+     * @return The saved order.
+     */
+    private Order updateOrder(Order order, Consumer<Order> change) {
+        int orderId = order.getOrderID();
+        long version = order.getVersion();
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return orderRepository.update(orderId, version, change);
+            } catch (StaleRecordException e) {
+                if (attempt >= MAX_UPDATE_ATTEMPTS) {
+                    LOGGER.log(Level.WARNING, "Giving up on order {0} " +
+                        "after {1} conflicting saves.",
+                        new Object[]{orderId, attempt});
+                    throw e;
+                }
+                LOGGER.log(Level.FINE, "Order {0} changed meanwhile " +
+                    "(version {1}), retrying.",
+                    new Object[]{orderId, e.getActualVersion()});
+                version = findOrderByIdOrThrow(orderId).getVersion();
+            }
+        }
+    }
+
+    private static void requireReadyForDriver(Order order) {
+        if (order.getStatus() != OrderStatus.READY_FOR_DISPATCH) {
+            throw new IllegalStateException("Order " + order.getOrderID() +
+                " not ready for driver (Status: " + order.getStatus() +
+                ").");
+        }
+    }
+
+    private static void requireAssignedDriver(Delivery order, User driver) {
+        if (order.getAssignedDriverID() != driver.getUserID()) {
+            throw new SecurityException("Driver " + driver.getUserID() +
+                " not assigned to order " + order.getOrderID());
+        }
+    }
+
     @Override
     public Optional<Order> getOrderById(int orderId) {
          if (orderId <= 0) return Optional.empty();
@@ -1,28 +1,35 @@
 package com.cafe94.services;
 
+import java.time.DayOfWeek;
 import java.time.format.TextStyle;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Objects;
-import java.util.function.Function;
+import java.util.function.LongFunction;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import com.cafe94.domain.Booking;
-import com.cafe94.domain.Item;
 import com.cafe94.domain.Order;
+import com.cafe94.domain.OrderLine;
 import com.cafe94.domain.Report;
 import com.cafe94.domain.User;
 import com.cafe94.enums.BookingStatus;
+import com.cafe94.enums.OrderStatus;
 import static com.cafe94.enums.Permission.GENERATE_REPORTS;
 import com.cafe94.enums.ReportType;
 import com.cafe94.persistence.IBookingRepository;
 import com.cafe94.persistence.IOrderRepository;
 import com.cafe94.persistence.IUserRepository;
+import com.cafe94.util.MoneyUtils;
+import com.cafe94.util.primitive.IntLongMap;
 
 /**
  * Implementation of the {@link IReportingService} interface.
@@ -67,19 +74,19 @@ public class ReportingService implements IReportingService {
         LOGGER.log(Level.INFO, "Generating Popular Items Report " +
             "requested by Manager ID: {0}", manager.getUserID());
 
-        Map<String, Long> itemCounts;
-        try {
-            List<Order> allOrders = orderRepository.findAll();
-            // Flatten list of items from all orders and count occurrences
-            itemCounts = allOrders.stream()
-                .flatMap(order -> order.getItems().stream())
-                .filter(Objects::nonNull)
-                .map(Item::getName)
-                .filter(Objects::nonNull)
-                .collect(Collectors.groupingBy(
-                    Function.identity(),
-                    Collectors.counting()
-                ));
+        TotalsByName itemCounts = new TotalsByName();
+        // Streams the history page by page instead of loading it all
+        try (Stream<Order> allOrders = orderRepository.streamAll()) {
+            // Sum the quantity of each line, keyed by item name
+            Iterator<Order> orders = allOrders.iterator();
+            while (orders.hasNext()) {
+                for (OrderLine line : orders.next().getLines()) {
+                    if (line.getItem().getName() != null) {
+                        itemCounts.add(line.getItem().getName(),
+                            line.getQuantity());
+                    }
+                }
+            }
         } catch (Exception e) {
              LOGGER.log(Level.SEVERE, "Error accessing order data " +
                  "for popular items report", e);
@@ -90,15 +97,8 @@ public class ReportingService implements IReportingService {
         }
 
         // Sort by count descending and limit results
-        Map<String, Object> reportData = itemCounts.entrySet().stream()
-            .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
-            .limit(REPORT_LIMIT)
-            .collect(Collectors.toMap(
-                Map.Entry::getKey,
-                Map.Entry::getValue,
-                (e1, e2) -> e1,
-                LinkedHashMap::new
-            ));
+        Map<String, Object> reportData =
+            itemCounts.top(REPORT_LIMIT, Long::valueOf);
 
         String reportTitle = String.format(
             "Most Popular Menu Items (Top %d)", REPORT_LIMIT);
@@ -116,35 +116,23 @@ public class ReportingService implements IReportingService {
         LOGGER.log(Level.INFO, "Generating Busiest Periods Report " +
             "requested by Manager ID: {0}", manager.getUserID());
 
-        Map<String, Long> bookingsByHour;
-        Map<String, Long> bookingsByDay;
-
-        try {
-            List<Booking> allBookings = bookingRepository.findAll();
+        // Keyed by hour of the day and ISO day of the week
+        IntLongMap bookingsByHour = new IntLongMap();
+        IntLongMap bookingsByDay = new IntLongMap();
 
-            // Filter for relevant bookings
-            List<Booking> relevantBookings = allBookings.stream()
+        // One streamed pass counts both, without a list of all bookings
+        try (Stream<Booking> allBookings = bookingRepository.streamAll()) {
+            allBookings
                 .filter(b -> b.getStatus() == BookingStatus.CONFIRMED ||
                              b.getStatus() == BookingStatus.COMPLETED)
                 .filter(b -> b.getBookingDateTime() != null)
-                .collect(Collectors.toList());
-
-            // Count bookings per hour of the day
-            bookingsByHour = relevantBookings.stream()
-                .collect(Collectors.groupingBy(
-                    b -> String.format("%02d:00",
-                                       b.getBookingTime().getHour()),
-                    Collectors.counting()
-                ));
-
-            // Count bookings per day of the week
-            bookingsByDay = relevantBookings.stream()
-                .collect(Collectors.groupingBy(
-                     b -> b.getBookingDate().getDayOfWeek().getDisplayName(
-                         TextStyle.FULL, Locale.UK),
-                     Collectors.counting()
-                ));
-
+                .forEach(b -> {
+                    // Count bookings per hour of the day
+                    bookingsByHour.increment(b.getBookingTime().getHour());
+                    // Count bookings per day of the week
+                    bookingsByDay.increment(
+                        b.getBookingDate().getDayOfWeek().getValue());
+                });
         } catch (Exception e) {
              LOGGER.log(Level.SEVERE, "Error accessing booking data " +
                  "for busiest periods report", e);
@@ -156,17 +144,15 @@ public class ReportingService implements IReportingService {
         // Sort results by count descending
         Map<String, Object> reportData = new LinkedHashMap<>();
 
-        Map<String, Long> sortedHours = bookingsByHour.entrySet().stream()
-             .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
-             .limit(REPORT_LIMIT)
-             .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue,
-                 (e1, e2) -> e1, LinkedHashMap::new));
+        Map<String, Long> sortedHours = new LinkedHashMap<>();
+        bookingsByHour.top(REPORT_LIMIT).forEach((hour, count) ->
+            sortedHours.put(String.format("%02d:00", hour), count));
 
-        Map<String, Long> sortedDays = bookingsByDay.entrySet().stream()
-             .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
-             // No limit applied to days, show all 7 if present
-             .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue,
-                 (e1, e2) -> e1, LinkedHashMap::new));
+        Map<String, Long> sortedDays = new LinkedHashMap<>();
+        // No limit applied to days, show all 7 if present
+        bookingsByDay.top(DayOfWeek.values().length).forEach((day, count) ->
+            sortedDays.put(DayOfWeek.of(day)
+                .getDisplayName(TextStyle.FULL, Locale.UK), count));
 
         reportData.put("BookingsByHourOfDay (Top " + REPORT_LIMIT + ")",
                        sortedHours);
@@ -228,4 +214,92 @@ public class ReportingService implements IReportingService {
                           customerActivityData);
     }
 
+    /**
+     * Generates report on revenue from orders that were not cancelled.
+     * Line totals are summed in pence, so the result is exact however
+     * many lines are added up.
+     */
+    @Override
+    public Report generateRevenueReport(User manager) {
+        Objects.requireNonNull(manager, "Calling manager cannot be null.");
+        authService.checkPermission(manager, GENERATE_REPORTS);
+        LOGGER.log(Level.INFO, "Generating Revenue Report " +
+            "requested by Manager ID: {0}", manager.getUserID());
+
+        TotalsByName revenueByItem = new TotalsByName();
+        long totalPence = 0;
+        long orderCount = 0;
+        // Streams the history page by page instead of loading it all
+        try (Stream<Order> allOrders = orderRepository.streamAll()) {
+            Iterator<Order> orders = allOrders
+                .filter(order -> order.getStatus() != OrderStatus.CANCELLED)
+                .iterator();
+            while (orders.hasNext()) {
+                Order order = orders.next();
+                totalPence = Math.addExact(totalPence,
+                    order.getTotalPence());
+                orderCount++;
+                for (OrderLine line : order.getLines()) {
+                    if (line.getItem().getName() != null) {
+                        revenueByItem.add(line.getItem().getName(),
+                            line.getLineTotalPence());
+                    }
+                }
+            }
+        } catch (Exception e) {
+             LOGGER.log(Level.SEVERE, "Error accessing order data " +
+                 "for revenue report", e);
+             return new Report(ReportType.REVENUE,
+                 "Error Generating Revenue Report",
+                 Collections.emptyMap());
+        }
+
+        // Sort by revenue descending and limit results
+        Map<String, String> topItems =
+            revenueByItem.top(REPORT_LIMIT, MoneyUtils::format);
+
+        Map<String, Object> reportData = new LinkedHashMap<>();
+        reportData.put("Orders", orderCount);
+        reportData.put("TotalRevenue", MoneyUtils.format(totalPence));
+        reportData.put("RevenueByItem (Top " + REPORT_LIMIT + ")",
+                       topItems);
+        return new Report(ReportType.REVENUE, "Revenue Summary",
+                          reportData);
+    }
+
+    /**
+     * Running totals keyed by name. Each distinct name is numbered once
+     * and the totals are kept unboxed by number, so adding a line boxes
+     * nothing; ties rank the name seen first higher.
+     */
+    private static final class TotalsByName {
+        private final Map<String, Integer> numbers = new HashMap<>();
+        private final List<String> names = new ArrayList<>();
+        private final IntLongMap totals = new IntLongMap();
+
+        /**
+         * @throws ArithmeticException if a total overflows a long.
+         */
+        void add(String name, long amount) {
+            Integer number = numbers.get(name);
+            if (number == null) {
+                number = names.size();
+                numbers.put(name, number);
+                names.add(name);
+            }
+            totals.add(number, amount);
+        }
+
+        /**
+         * @return The largest totals by name, largest first, each
+         * converted for display.
+         */
+        <T> Map<String, T> top(int limit, LongFunction<T> display) {
+            Map<String, T> result = new LinkedHashMap<>();
+            totals.top(limit).forEach((number, total) ->
+                result.put(names.get(number), display.apply(total)));
+            return result;
+        }
+    }
+
 }
\ No newline at end of file
@@ -7,6 +7,7 @@ import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.function.Predicate;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
@@ -113,6 +114,7 @@ public class UserService implements IUserService {
         ValidationUtils.requireNonBlank(rawPassword, "Password");
         ValidationUtils.requireNonBlank(address, "Address");
 
+        // Fails fast before hashing; the atomic save below closes the race
         List<User> existing = userRepository.findByEmail(email);
         if (existing.stream().anyMatch(u -> u instanceof Customer)) {
             LOGGER.log(Level.WARNING, "Registration failed: Email {0} " +
@@ -125,7 +127,9 @@ public class UserService implements IUserService {
         Customer newCustomer = new Customer(0, firstName, lastName,
         email, hashedPassword, address, phoneNumber);
 
-        User savedUser = savePrimaryUser(newCustomer);
+        User savedUser = savePrimaryUser(newCustomer,
+        Customer.class::isInstance, "Email address '" + email +
+        "' is already registered to a customer.");
         Customer primaryCustomer = (Customer) savedUser;
         Optional<User> counterpartOpt =
         findCounterpartProfile(primaryCustomer);
@@ -157,7 +161,7 @@ public class UserService implements IUserService {
         "Calling user cannot be null for hiring staff.");
         authService.checkPermission(callingUser, MANAGE_STAFF);
 
-        // Check for uniqueness
+        // Check for uniqueness; the atomic save below closes the race
         List<User> existingByEmail = userRepository.findByEmail(email);
         if (existingByEmail.stream().anyMatch(u -> u instanceof Staff)) {
              LOGGER.log(Level.WARNING, "Hire staff failed: Email {0} " +
@@ -170,7 +174,9 @@ public class UserService implements IUserService {
         Staff newStaff = createStaffInstance(0, firstName, lastName, email,
         hashedPassword, role, staffId, initialHours);
 
-        User savedUser = savePrimaryUser(newStaff);
+        User savedUser = savePrimaryUser(newStaff, Staff.class::isInstance,
+        "Email address '" + email +
+        "' is already registered to a staff member.");
         Staff primaryStaff = (Staff) savedUser;
         Optional<User> counterpartOpt = findCounterpartProfile(primaryStaff);
         if (counterpartOpt.isPresent()) {
@@ -315,11 +321,20 @@ public class UserService implements IUserService {
 
 
 
-    /** Saves the primary user using the repository. */
-    private User savePrimaryUser(User userToSave) {
+    /**
+     * Saves the primary user using the repository, atomically refusing the
+     * save if a conflicting profile already holds the email.
+     */
+    private User savePrimaryUser(User userToSave,
+    Predicate<? super User> conflicts, String conflictMessage) {
         LOGGER.log(Level.FINE, "Attempting to save primary user: Email={0}, " +
         "ID={1}", new Object[]{userToSave.getEmail(), userToSave.getUserID()});
-        User savedUser = userRepository.save(userToSave);
+        User savedUser = userRepository.saveIfEmailAvailable(userToSave,
+        conflicts).orElseThrow(() -> {
+            LOGGER.log(Level.WARNING, "Save of primary user refused: {0}",
+            conflictMessage);
+            return new IllegalArgumentException(conflictMessage);
+        });
         if (savedUser == null || savedUser.getUserID() <= 0) {
              LOGGER.log(Level.SEVERE, "Failed to save primary user or " +
              "retrieve valid saved ID for email {0}", userToSave.getEmail());
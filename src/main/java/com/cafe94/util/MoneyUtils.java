@@ -0,0 +1,73 @@
+package com.cafe94.util;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Conversions for money amounts, which are held as whole pence in a long
+ * so that totals and report sums are exact. Amounts in pounds as doubles
+ * only appear at the edges, where prices are entered or displayed.
+ * @author Adigun Lateef
+ * @version 1.0
+ */
+public final class MoneyUtils {
+
+    private static final long PENCE_PER_POUND = 100;
+
+    private MoneyUtils() {
+    }
+
+    /**
+     * Converts an amount in pounds to pence, rounding half up to the
+     * nearest penny as the amount is written, so 1.005 becomes 101.
+     *
+     * @param pounds The amount in pounds
+     * @return The amount in pence.
+     * @throws IllegalArgumentException if pounds is not finite or too
+     * large for a long number of pence.
+     */
+    public static long toPence(double pounds) {
+        if (Double.isNaN(pounds) || Double.isInfinite(pounds)) {
+            throw new IllegalArgumentException(
+            "Money amount must be finite. Value: " + pounds);
+        }
+        try {
+            return BigDecimal.valueOf(pounds).setScale(2,
+            RoundingMode.HALF_UP).movePointRight(2).longValueExact();
+        } catch (ArithmeticException e) {
+            throw new IllegalArgumentException(
+            "Money amount out of range. Value: " + pounds, e);
+        }
+    }
+
+    /**
+     * Converts an amount in pence to pounds for display or for callers
+     * still working in doubles.
+     *
+     * @param pence The amount in pence
+     * @return The nearest double amount in pounds.
+     */
+    public static double toPounds(long pence) {
+        return pence / (double) PENCE_PER_POUND;
+    }
+
+    /**
+     * Formats an amount in pence as pounds, e.g. {@code £12.05} or
+     * {@code -£0.50}, without going through a double.
+     *
+     * @param pence The amount in pence
+     * @return The formatted amount.
+     */
+    public static String format(long pence) {
+        String sign = pence < 0 ? "-" : "";
+        long magnitude = Math.abs(pence);
+        if (magnitude < 0) {
+            // Long.MIN_VALUE has no positive counterpart
+            return "-£" + BigDecimal.valueOf(pence).negate()
+            .movePointLeft(2).toPlainString();
+        }
+        long remainder = magnitude % PENCE_PER_POUND;
+        return sign + "£" + (magnitude / PENCE_PER_POUND) + "."
+        + (remainder < 10 ? "0" : "") + remainder;
+    }
+}
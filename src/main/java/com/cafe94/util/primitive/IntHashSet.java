@@ -0,0 +1,222 @@
+package com.cafe94.util.primitive;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.function.IntConsumer;
+
+/**
+ * A set of ints held unboxed in one open-addressing table, probed
+ * linearly. Removal shifts later entries back instead of leaving
+ * tombstones, so lookups never slow down as keys come and go. A slot
+ * holding 0 is free; the key 0 itself is tracked by a flag.
+ * <p>
+ * Not thread-safe.
+ * @author Adigun Lateef
+ * @version 1.0
+ */
+public final class IntHashSet {
+
+    private static final int FREE = 0;
+
+    private int[] keys;
+    private int mask;
+    private int resizeAt;
+    private int size;
+    private boolean containsZero;
+
+    /**
+     * Creates an empty set.
+     */
+    public IntHashSet() {
+        this(0);
+    }
+
+    /**
+     * Creates an empty set sized for some keys.
+     *
+     * @param expectedSize The number of keys to hold without resizing
+     * @throws IllegalArgumentException if expectedSize is negative.
+     */
+    public IntHashSet(int expectedSize) {
+        allocate(IntHashing.capacityFor(expectedSize));
+    }
+
+    /**
+     * @param key The key to add
+     * @return true if the key was not already present.
+     */
+    public boolean add(int key) {
+        if (key == FREE) {
+            if (containsZero) {
+                return false;
+            }
+            containsZero = true;
+            size++;
+            return true;
+        }
+        int slot = IntHashing.mix(key) & mask;
+        while (keys[slot] != FREE) {
+            if (keys[slot] == key) {
+                return false;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        if (++size > resizeAt) {
+            rehash(IntHashing.grow(keys.length));
+        }
+        return true;
+    }
+
+    /**
+     * @param key The key to look for
+     * @return true if the set holds the key.
+     */
+    public boolean contains(int key) {
+        if (key == FREE) {
+            return containsZero;
+        }
+        return slotOf(key) >= 0;
+    }
+
+    /**
+     * @param key The key to remove
+     * @return true if the key was present.
+     */
+    public boolean remove(int key) {
+        if (key == FREE) {
+            if (!containsZero) {
+                return false;
+            }
+            containsZero = false;
+            size--;
+            return true;
+        }
+        int slot = slotOf(key);
+        if (slot < 0) {
+            return false;
+        }
+        shiftBack(slot);
+        size--;
+        return true;
+    }
+
+    /**
+     * @return The number of keys
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return true if the set holds no keys
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Removes every key, keeping the table.
+     */
+    public void clear() {
+        Arrays.fill(keys, FREE);
+        containsZero = false;
+        size = 0;
+    }
+
+    /**
+     * Passes each key to an action, in no particular order. The set must
+     * not be changed by the action.
+     *
+     * @param action The action
+     * @throws NullPointerException if action is null.
+     */
+    public void forEach(IntConsumer action) {
+        Objects.requireNonNull(action, "Action cannot be null.");
+        if (containsZero) {
+            action.accept(FREE);
+        }
+        for (int key : keys) {
+            if (key != FREE) {
+                action.accept(key);
+            }
+        }
+    }
+
+    /**
+     * @return The keys in a new array, in no particular order.
+     */
+    public int[] toArray() {
+        int[] result = new int[size];
+        int next = 0;
+        if (containsZero) {
+            result[next++] = FREE;
+        }
+        for (int key : keys) {
+            if (key != FREE) {
+                result[next++] = key;
+            }
+        }
+        return result;
+    }
+
+    private int slotOf(int key) {
+        int slot = IntHashing.mix(key) & mask;
+        while (keys[slot] != FREE) {
+            if (keys[slot] == key) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * Frees a slot and moves back any later key of the same run that
+     * could no longer be reached past the gap.
+     */
+    private void shiftBack(int gap) {
+        int slot = gap;
+        while (true) {
+            slot = (slot + 1) & mask;
+            int key = keys[slot];
+            if (key == FREE) {
+                break;
+            }
+            int home = IntHashing.mix(key) & mask;
+            if (IntHashing.distance(slot, home, mask)
+            >= IntHashing.distance(slot, gap, mask)) {
+                keys[gap] = key;
+                gap = slot;
+            }
+        }
+        keys[gap] = FREE;
+    }
+
+    private void allocate(int capacity) {
+        keys = new int[capacity];
+        mask = capacity - 1;
+        resizeAt = IntHashing.resizeAt(capacity);
+    }
+
+    private void rehash(int capacity) {
+        int[] old = keys;
+        allocate(capacity);
+        for (int key : old) {
+            if (key != FREE) {
+                int slot = IntHashing.mix(key) & mask;
+                while (keys[slot] != FREE) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = key;
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        int[] sorted = toArray();
+        Arrays.sort(sorted);
+        return Arrays.toString(sorted);
+    }
+}
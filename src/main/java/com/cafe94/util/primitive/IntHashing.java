@@ -0,0 +1,75 @@
+package com.cafe94.util.primitive;
+
+/**
+ * Hashing and sizing shared by the open-addressing tables of this package.
+ * Keys are probed linearly, so their hash spreads nearby IDs apart.
+ * @author Adigun Lateef
+ * @version 1.0
+ */
+final class IntHashing {
+
+    static final int MIN_CAPACITY = 8;
+    static final int MAX_CAPACITY = 1 << 30;
+
+    private IntHashing() {
+    }
+
+    /**
+     * @param key The key
+     * @return A hash whose low and high bits both depend on every bit of
+     * the key.
+     */
+    static int mix(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * @param expectedSize The number of keys to hold without resizing
+     * @return A power of two table length keeping the load under 3/4.
+     * @throws IllegalArgumentException if expectedSize is negative.
+     */
+    static int capacityFor(int expectedSize) {
+        if (expectedSize < 0) {
+            throw new IllegalArgumentException(
+            "Expected size cannot be negative. Value: " + expectedSize);
+        }
+        long needed = (long) expectedSize * 4 / 3 + 1;
+        if (needed >= MAX_CAPACITY) {
+            return MAX_CAPACITY;
+        }
+        return Math.max(MIN_CAPACITY,
+        Integer.highestOneBit((int) needed - 1) << 1);
+    }
+
+    /**
+     * @param capacity The table length
+     * @return The size at which the table grows.
+     */
+    static int resizeAt(int capacity) {
+        return capacity == MAX_CAPACITY ? MAX_CAPACITY - 1
+        : capacity - (capacity >>> 2);
+    }
+
+    /**
+     * @param capacity The current table length
+     * @return The doubled length.
+     * @throws IllegalStateException if the table cannot grow.
+     */
+    static int grow(int capacity) {
+        if (capacity == MAX_CAPACITY) {
+            throw new IllegalStateException("Table is full.");
+        }
+        return capacity << 1;
+    }
+
+    /**
+     * @param slot  A slot of the table
+     * @param home  The slot a key hashes to
+     * @param mask  The table length minus one
+     * @return How many steps a probe from home takes to reach slot.
+     */
+    static int distance(int slot, int home, int mask) {
+        return (slot - home) & mask;
+    }
+}
@@ -0,0 +1,364 @@
+package com.cafe94.util.primitive;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Counters and sums keyed by int, with keys and values held unboxed in
+ * parallel open-addressing tables probed linearly. Made for aggregations
+ * such as orders per customer or pence per item, where a
+ * {@code Map<Integer, Long>} would box every key and every running total.
+ * A slot holding key 0 is free; the key 0 itself is tracked by a flag.
+ * <p>
+ * Not thread-safe.
+ * @author Adigun Lateef
+ * @version 1.0
+ */
+public final class IntLongMap {
+
+    private static final int FREE = 0;
+
+    /**
+     * Receives the entries of a map.
+     */
+    @FunctionalInterface
+    public interface EntryConsumer {
+        /**
+         * @param key   The key
+         * @param value Its value
+         */
+        void accept(int key, long value);
+    }
+
+    private int[] keys;
+    private long[] values;
+    private int mask;
+    private int resizeAt;
+    private int size;
+    private boolean containsZero;
+    private long zeroValue;
+
+    /**
+     * Creates an empty map.
+     */
+    public IntLongMap() {
+        this(0);
+    }
+
+    /**
+     * Creates an empty map sized for some keys.
+     *
+     * @param expectedSize The number of keys to hold without resizing
+     * @throws IllegalArgumentException if expectedSize is negative.
+     */
+    public IntLongMap(int expectedSize) {
+        allocate(IntHashing.capacityFor(expectedSize));
+    }
+
+    /**
+     * @param key The key
+     * @return Its value, or 0 if absent.
+     */
+    public long get(int key) {
+        return getOrDefault(key, 0);
+    }
+
+    /**
+     * @param key          The key
+     * @param defaultValue The value to return if the key is absent
+     * @return The value of the key, or defaultValue.
+     */
+    public long getOrDefault(int key, long defaultValue) {
+        if (key == FREE) {
+            return containsZero ? zeroValue : defaultValue;
+        }
+        int slot = slotOf(key);
+        return slot < 0 ? defaultValue : values[slot];
+    }
+
+    /**
+     * @param key The key
+     * @return true if the map holds the key.
+     */
+    public boolean containsKey(int key) {
+        return key == FREE ? containsZero : slotOf(key) >= 0;
+    }
+
+    /**
+     * Sets the value of a key.
+     *
+     * @param key   The key
+     * @param value The value
+     */
+    public void put(int key, long value) {
+        if (key == FREE) {
+            if (!containsZero) {
+                containsZero = true;
+                size++;
+            }
+            zeroValue = value;
+            return;
+        }
+        // The slot first: finding it may replace the arrays
+        int slot = insertionSlot(key);
+        values[slot] = value;
+    }
+
+    /**
+     * Adds to the value of a key, starting from 0 if it is absent.
+     *
+     * @param key   The key
+     * @param delta The amount to add
+     * @return The new value.
+     * @throws ArithmeticException if the value overflows a long.
+     */
+    public long add(int key, long delta) {
+        if (key == FREE) {
+            long sum = Math.addExact(containsZero ? zeroValue : 0, delta);
+            put(FREE, sum);
+            return sum;
+        }
+        int slot = insertionSlot(key);
+        long sum = Math.addExact(values[slot], delta);
+        values[slot] = sum;
+        return sum;
+    }
+
+    /**
+     * Adds one to the value of a key, starting from 0 if it is absent.
+     *
+     * @param key The key
+     * @return The new value.
+     */
+    public long increment(int key) {
+        return add(key, 1);
+    }
+
+    /**
+     * @return The number of keys
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return true if the map holds no keys
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Passes each entry to an action, in no particular order. The map
+     * must not be changed by the action.
+     *
+     * @param action The action
+     * @throws NullPointerException if action is null.
+     */
+    public void forEach(EntryConsumer action) {
+        Objects.requireNonNull(action, "Action cannot be null.");
+        if (containsZero) {
+            action.accept(FREE, zeroValue);
+        }
+        for (int slot = 0; slot < keys.length; slot++) {
+            if (keys[slot] != FREE) {
+                action.accept(keys[slot], values[slot]);
+            }
+        }
+    }
+
+    /**
+     * Returns the keys with the largest values, largest first, ties
+     * broken by the smaller key. Only the selected entries are boxed.
+     *
+     * @param limit The maximum number of entries to return
+     * @return A new map ordered by value descending.
+     * @throws IllegalArgumentException if limit is negative.
+     */
+    public Map<Integer, Long> top(int limit) {
+        if (limit < 0) {
+            throw new IllegalArgumentException(
+            "Limit cannot be negative. Provided: " + limit);
+        }
+        TopEntries top = new TopEntries(Math.min(limit, size));
+        forEach(top::offer);
+        return top.toMap();
+    }
+
+    private int slotOf(int key) {
+        int slot = IntHashing.mix(key) & mask;
+        while (keys[slot] != FREE) {
+            if (keys[slot] == key) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * @return The slot of a non-zero key, added with value 0 if absent.
+     */
+    private int insertionSlot(int key) {
+        int slot = IntHashing.mix(key) & mask;
+        while (keys[slot] != FREE) {
+            if (keys[slot] == key) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        if (size + 1 > resizeAt) {
+            rehash(IntHashing.grow(keys.length));
+            slot = IntHashing.mix(key) & mask;
+            while (keys[slot] != FREE) {
+                slot = (slot + 1) & mask;
+            }
+        }
+        keys[slot] = key;
+        values[slot] = 0;
+        size++;
+        return slot;
+    }
+
+    private void allocate(int capacity) {
+        keys = new int[capacity];
+        values = new long[capacity];
+        mask = capacity - 1;
+        resizeAt = IntHashing.resizeAt(capacity);
+    }
+
+    private void rehash(int capacity) {
+        int[] oldKeys = keys;
+        long[] oldValues = values;
+        allocate(capacity);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != FREE) {
+                int slot = IntHashing.mix(oldKeys[i]) & mask;
+                while (keys[slot] != FREE) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    /**
+     * A bounded min-heap of the best entries offered so far, with the
+     * weakest at the root.
+     */
+    private static final class TopEntries {
+        private final int[] keys;
+        private final long[] values;
+        private int size;
+
+        private TopEntries(int limit) {
+            this.keys = new int[limit];
+            this.values = new long[limit];
+        }
+
+        private void offer(int key, long value) {
+            if (keys.length == 0) {
+                return;
+            }
+            if (size < keys.length) {
+                keys[size] = key;
+                values[size] = value;
+                siftUp(size++);
+            } else if (weaker(keys[0], values[0], key, value)) {
+                keys[0] = key;
+                values[0] = value;
+                siftDown(0);
+            }
+        }
+
+        /**
+         * @return true if the first entry ranks below the second.
+         */
+        private static boolean weaker(int key, long value, int otherKey,
+        long otherValue) {
+            return value != otherValue ? value < otherValue
+            : key > otherKey;
+        }
+
+        private void siftUp(int index) {
+            while (index > 0) {
+                int parent = (index - 1) >>> 1;
+                if (!weaker(keys[index], values[index], keys[parent],
+                values[parent])) {
+                    return;
+                }
+                swap(index, parent);
+                index = parent;
+            }
+        }
+
+        private void siftDown(int index) {
+            while (true) {
+                int weakest = index;
+                for (int child = 2 * index + 1;
+                child <= 2 * index + 2 && child < size; child++) {
+                    if (weaker(keys[child], values[child], keys[weakest],
+                    values[weakest])) {
+                        weakest = child;
+                    }
+                }
+                if (weakest == index) {
+                    return;
+                }
+                swap(index, weakest);
+                index = weakest;
+            }
+        }
+
+        private void swap(int a, int b) {
+            int key = keys[a];
+            keys[a] = keys[b];
+            keys[b] = key;
+            long value = values[a];
+            values[a] = values[b];
+            values[b] = value;
+        }
+
+        /**
+         * Empties the heap weakest first, so the map fills from the back.
+         */
+        private Map<Integer, Long> toMap() {
+            int[] orderedKeys = new int[size];
+            long[] orderedValues = new long[size];
+            for (int i = size - 1; i >= 0; i--) {
+                orderedKeys[i] = keys[0];
+                orderedValues[i] = values[0];
+                size--;
+                if (size > 0) {
+                    keys[0] = keys[size];
+                    values[0] = values[size];
+                    siftDown(0);
+                }
+            }
+            Map<Integer, Long> result = new LinkedHashMap<>();
+            for (int i = 0; i < orderedKeys.length; i++) {
+                result.put(orderedKeys[i], orderedValues[i]);
+            }
+            return result;
+        }
+    }
+
+    @Override
+    public String toString() {
+        int[] sorted = new int[size];
+        int[] next = {0};
+        forEach((key, value) -> sorted[next[0]++] = key);
+        Arrays.sort(sorted);
+        StringBuilder text = new StringBuilder("{");
+        for (int key : sorted) {
+            if (text.length() > 1) {
+                text.append(", ");
+            }
+            text.append(key).append('=').append(get(key));
+        }
+        return text.append('}').toString();
+    }
+}
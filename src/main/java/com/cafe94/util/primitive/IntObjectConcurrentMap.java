@@ -0,0 +1,726 @@
+package com.cafe94.util.primitive;
+
+import java.util.AbstractCollection;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * A concurrent map from int keys to objects, for the repositories' records
+ * by ID. Keys are split over a fixed number of segments, each an
+ * open-addressing table of unboxed keys and values probed linearly, so an
+ * entry costs a key and a reference instead of a boxed key and a node.
+ * <p>
+ * Reads within a segment are optimistic and take no lock unless a write
+ * overlapped them; writes lock their segment only. Iterators and
+ * {@link #forEach(BiConsumer)} copy one segment at a time, so like those
+ * of {@link java.util.concurrent.ConcurrentHashMap} they are weakly
+ * consistent and never throw ConcurrentModificationException. Null keys
+ * and values are not allowed. The functions passed to the compute and
+ * merge methods run while their segment is locked and must not use this
+ * map.
+ * @author Adigun Lateef
+ * @version 1.0
+ * @param <V> The type of the values
+ */
+public final class IntObjectConcurrentMap<V> extends AbstractMap<Integer, V>
+implements ConcurrentMap<Integer, V> {
+
+    private static final int SEGMENTS = 16;
+    // Segment from the top hash bits, slot from the bottom ones
+    private static final int SEGMENT_SHIFT = 28;
+
+    private final Segment[] segments;
+
+    private transient Set<Integer> keySet;
+    private transient Collection<V> values;
+    private transient Set<Map.Entry<Integer, V>> entrySet;
+
+    /**
+     * Creates an empty map.
+     */
+    public IntObjectConcurrentMap() {
+        this(0);
+    }
+
+    /**
+     * Creates an empty map sized for some entries.
+     *
+     * @param expectedSize The number of entries to hold without resizing
+     * @throws IllegalArgumentException if expectedSize is negative.
+     */
+    public IntObjectConcurrentMap(int expectedSize) {
+        int perSegment = IntHashing.capacityFor(
+        (int) Math.min(Integer.MAX_VALUE, (long) expectedSize / SEGMENTS + 1));
+        this.segments = new Segment[SEGMENTS];
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(perSegment);
+        }
+    }
+
+    private Segment segmentFor(int hash) {
+        return segments[hash >>> SEGMENT_SHIFT];
+    }
+
+    // Primitive access
+
+    /**
+     * @param key The key
+     * @return Its value, or null if absent.
+     */
+    @SuppressWarnings("unchecked")
+    public V get(int key) {
+        int hash = IntHashing.mix(key);
+        return (V) segmentFor(hash).get(key, hash);
+    }
+
+    /**
+     * @param key The key
+     * @return true if the map holds the key.
+     */
+    public boolean containsKey(int key) {
+        return get(key) != null;
+    }
+
+    /**
+     * @param key   The key
+     * @param value The value
+     * @return The previous value, or null if absent.
+     * @throws NullPointerException if value is null.
+     */
+    @SuppressWarnings("unchecked")
+    public V put(int key, V value) {
+        Objects.requireNonNull(value, "Value cannot be null.");
+        int hash = IntHashing.mix(key);
+        return (V) segmentFor(hash).put(key, hash, value, false);
+    }
+
+    /**
+     * @param key   The key
+     * @param value The value to set if the key is absent
+     * @return The current value, or null if the value was set.
+     * @throws NullPointerException if value is null.
+     */
+    @SuppressWarnings("unchecked")
+    public V putIfAbsent(int key, V value) {
+        Objects.requireNonNull(value, "Value cannot be null.");
+        int hash = IntHashing.mix(key);
+        return (V) segmentFor(hash).put(key, hash, value, true);
+    }
+
+    /**
+     * @param key The key
+     * @return The removed value, or null if absent.
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(int key) {
+        int hash = IntHashing.mix(key);
+        return (V) segmentFor(hash).remove(key, hash, null);
+    }
+
+    // Map
+
+    @Override
+    public V get(Object key) {
+        return key instanceof Integer ? get(((Integer) key).intValue())
+        : null;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return get(key) != null;
+    }
+
+    @Override
+    public V put(Integer key, V value) {
+        return put(requireKey(key), value);
+    }
+
+    @Override
+    public V remove(Object key) {
+        return key instanceof Integer ? remove(((Integer) key).intValue())
+        : null;
+    }
+
+    @Override
+    public int size() {
+        long total = 0;
+        for (Segment segment : segments) {
+            total += segment.size;
+        }
+        return (int) Math.min(Integer.MAX_VALUE, total);
+    }
+
+    @Override
+    public boolean isEmpty() {
+        for (Segment segment : segments) {
+            if (segment.size != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void clear() {
+        for (Segment segment : segments) {
+            segment.clear();
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void forEach(BiConsumer<? super Integer, ? super V> action) {
+        Objects.requireNonNull(action, "Action cannot be null.");
+        for (Segment segment : segments) {
+            Snapshot snapshot = segment.snapshot();
+            for (int i = 0; i < snapshot.keys.length; i++) {
+                action.accept(snapshot.keys[i], (V) snapshot.values[i]);
+            }
+        }
+    }
+
+    @Override
+    public Set<Integer> keySet() {
+        Set<Integer> keys = keySet;
+        if (keys == null) {
+            keys = new KeySet();
+            keySet = keys;
+        }
+        return keys;
+    }
+
+    @Override
+    public Collection<V> values() {
+        Collection<V> view = values;
+        if (view == null) {
+            view = new Values();
+            values = view;
+        }
+        return view;
+    }
+
+    @Override
+    public Set<Map.Entry<Integer, V>> entrySet() {
+        Set<Map.Entry<Integer, V>> entries = entrySet;
+        if (entries == null) {
+            entries = new EntrySet();
+            entrySet = entries;
+        }
+        return entries;
+    }
+
+    // ConcurrentMap
+
+    @Override
+    public V putIfAbsent(Integer key, V value) {
+        return putIfAbsent(requireKey(key), value);
+    }
+
+    @Override
+    public boolean remove(Object key, Object value) {
+        if (!(key instanceof Integer) || value == null) {
+            return false;
+        }
+        int hash = IntHashing.mix((Integer) key);
+        return segmentFor(hash).remove((Integer) key, hash, value) != null;
+    }
+
+    @Override
+    public boolean replace(Integer key, V oldValue, V newValue) {
+        Objects.requireNonNull(oldValue, "Old value cannot be null.");
+        Objects.requireNonNull(newValue, "New value cannot be null.");
+        boolean[] replaced = new boolean[1];
+        computeIfPresent(key, (k, current) -> {
+            replaced[0] = current.equals(oldValue);
+            return replaced[0] ? newValue : current;
+        });
+        return replaced[0];
+    }
+
+    @Override
+    public V replace(Integer key, V value) {
+        Objects.requireNonNull(value, "Value cannot be null.");
+        Object[] previous = new Object[1];
+        computeIfPresent(key, (k, current) -> {
+            previous[0] = current;
+            return value;
+        });
+        @SuppressWarnings("unchecked")
+        V result = (V) previous[0];
+        return result;
+    }
+
+    @Override
+    public V computeIfAbsent(Integer key,
+    Function<? super Integer, ? extends V> mappingFunction) {
+        Objects.requireNonNull(mappingFunction,
+        "Mapping function cannot be null.");
+        return compute(key, (k, current) -> current != null ? current
+        : mappingFunction.apply(k));
+    }
+
+    @Override
+    public V computeIfPresent(Integer key,
+    BiFunction<? super Integer, ? super V, ? extends V> remappingFunction) {
+        Objects.requireNonNull(remappingFunction,
+        "Remapping function cannot be null.");
+        return compute(key, (k, current) -> current == null ? null
+        : remappingFunction.apply(k, current));
+    }
+
+    @Override
+    public V merge(Integer key, V value,
+    BiFunction<? super V, ? super V, ? extends V> remappingFunction) {
+        Objects.requireNonNull(value, "Value cannot be null.");
+        Objects.requireNonNull(remappingFunction,
+        "Remapping function cannot be null.");
+        return compute(key, (k, current) -> current == null ? value
+        : remappingFunction.apply(current, value));
+    }
+
+    /**
+     * Computes a new value for a key atomically, removing the key if the
+     * function returns null.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public V compute(Integer key,
+    BiFunction<? super Integer, ? super V, ? extends V> remappingFunction) {
+        Objects.requireNonNull(remappingFunction,
+        "Remapping function cannot be null.");
+        int k = requireKey(key);
+        int hash = IntHashing.mix(k);
+        return (V) segmentFor(hash).compute(k, hash,
+        current -> remappingFunction.apply(key, (V) current));
+    }
+
+    private static int requireKey(Integer key) {
+        return Objects.requireNonNull(key, "Key cannot be null.");
+    }
+
+    // Segments
+
+    /**
+     * The entries of one segment copied under its read lock.
+     */
+    private static final class Snapshot {
+        private final int[] keys;
+        private final Object[] values;
+
+        private Snapshot(int[] keys, Object[] values) {
+            this.keys = keys;
+            this.values = values;
+        }
+    }
+
+    /**
+     * One open-addressing table. A null value marks a free slot, so any
+     * int is a valid key. Fields are only written under the write lock.
+     */
+    private static final class Segment {
+        private final StampedLock lock = new StampedLock();
+        private int[] keys;
+        private Object[] values;
+        private int resizeAt;
+        private volatile int size;
+
+        private Segment(int capacity) {
+            allocate(capacity);
+        }
+
+        private void allocate(int capacity) {
+            keys = new int[capacity];
+            values = new Object[capacity];
+            resizeAt = IntHashing.resizeAt(capacity);
+        }
+
+        private Object get(int key, int hash) {
+            long stamp = lock.tryOptimisticRead();
+            if (stamp != 0) {
+                Object value = find(keys, values, key, hash);
+                if (lock.validate(stamp)) {
+                    return value;
+                }
+            }
+            stamp = lock.readLock();
+            try {
+                return find(keys, values, key, hash);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        /**
+         * Probes for a key. An optimistic reader may see the arrays of two
+         * table generations, so their lengths are checked and the probe is
+         * bounded; the caller discards the result if a write overlapped.
+         */
+        private static Object find(int[] keys, Object[] values, int key,
+        int hash) {
+            if (keys.length != values.length) {
+                return null;
+            }
+            int mask = keys.length - 1;
+            int slot = hash & mask;
+            for (int probes = 0; probes < keys.length; probes++) {
+                Object value = values[slot];
+                if (value == null) {
+                    return null;
+                }
+                if (keys[slot] == key) {
+                    return value;
+                }
+                slot = (slot + 1) & mask;
+            }
+            return null;
+        }
+
+        /**
+         * @return The slot of a key, or -1; called under a lock.
+         */
+        private int slotOf(int key, int hash) {
+            int mask = keys.length - 1;
+            int slot = hash & mask;
+            while (values[slot] != null) {
+                if (keys[slot] == key) {
+                    return slot;
+                }
+                slot = (slot + 1) & mask;
+            }
+            return -1;
+        }
+
+        private Object put(int key, int hash, Object value,
+        boolean onlyIfAbsent) {
+            long stamp = lock.writeLock();
+            try {
+                int slot = slotOf(key, hash);
+                if (slot >= 0) {
+                    Object previous = values[slot];
+                    if (!onlyIfAbsent) {
+                        values[slot] = value;
+                    }
+                    return previous;
+                }
+                insert(key, hash, value);
+                return null;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        /**
+         * @param expected The value to remove, or null for any
+         * @return The removed value, or null if nothing was removed.
+         */
+        private Object remove(int key, int hash, Object expected) {
+            long stamp = lock.writeLock();
+            try {
+                int slot = slotOf(key, hash);
+                if (slot < 0 || (expected != null
+                && !expected.equals(values[slot]))) {
+                    return null;
+                }
+                Object previous = values[slot];
+                delete(slot);
+                return previous;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        private Object compute(int key, int hash,
+        Function<Object, Object> remapping) {
+            long stamp = lock.writeLock();
+            try {
+                int slot = slotOf(key, hash);
+                Object current = slot < 0 ? null : values[slot];
+                Object next = remapping.apply(current);
+                if (next == null) {
+                    if (slot >= 0) {
+                        delete(slot);
+                    }
+                } else if (slot >= 0) {
+                    values[slot] = next;
+                } else {
+                    insert(key, hash, next);
+                }
+                return next;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        private void clear() {
+            long stamp = lock.writeLock();
+            try {
+                allocate(IntHashing.MIN_CAPACITY);
+                size = 0;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        private Snapshot snapshot() {
+            long stamp = lock.readLock();
+            try {
+                int count = size;
+                int[] copiedKeys = new int[count];
+                Object[] copiedValues = new Object[count];
+                int next = 0;
+                for (int slot = 0; slot < values.length; slot++) {
+                    if (values[slot] != null) {
+                        copiedKeys[next] = keys[slot];
+                        copiedValues[next] = values[slot];
+                        next++;
+                    }
+                }
+                return new Snapshot(copiedKeys, copiedValues);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        /**
+         * Adds an absent key; called under the write lock.
+         */
+        private void insert(int key, int hash, Object value) {
+            if (size + 1 > resizeAt) {
+                rehash(IntHashing.grow(keys.length));
+            }
+            int mask = keys.length - 1;
+            int slot = hash & mask;
+            while (values[slot] != null) {
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = key;
+            values[slot] = value;
+            size++;
+        }
+
+        /**
+         * Frees a slot and moves back any later entry of the same run
+         * that could no longer be reached past the gap; called under the
+         * write lock.
+         */
+        private void delete(int gap) {
+            int mask = keys.length - 1;
+            int slot = gap;
+            while (true) {
+                slot = (slot + 1) & mask;
+                if (values[slot] == null) {
+                    break;
+                }
+                int home = IntHashing.mix(keys[slot]) & mask;
+                if (IntHashing.distance(slot, home, mask)
+                >= IntHashing.distance(slot, gap, mask)) {
+                    keys[gap] = keys[slot];
+                    values[gap] = values[slot];
+                    gap = slot;
+                }
+            }
+            values[gap] = null;
+            size--;
+        }
+
+        private void rehash(int capacity) {
+            int[] oldKeys = keys;
+            Object[] oldValues = values;
+            int[] newKeys = new int[capacity];
+            Object[] newValues = new Object[capacity];
+            int mask = capacity - 1;
+            for (int i = 0; i < oldValues.length; i++) {
+                if (oldValues[i] != null) {
+                    int slot = IntHashing.mix(oldKeys[i]) & mask;
+                    while (newValues[slot] != null) {
+                        slot = (slot + 1) & mask;
+                    }
+                    newKeys[slot] = oldKeys[i];
+                    newValues[slot] = oldValues[i];
+                }
+            }
+            keys = newKeys;
+            values = newValues;
+            resizeAt = IntHashing.resizeAt(capacity);
+        }
+    }
+
+    // Views
+
+    /**
+     * Walks the segments, copying each in turn.
+     */
+    private abstract class SnapshotIterator<T> implements Iterator<T> {
+        private int nextSegment;
+        private Snapshot snapshot;
+        private int index;
+        private int lastKey;
+        private boolean canRemove;
+
+        @Override
+        public boolean hasNext() {
+            while (snapshot == null || index >= snapshot.keys.length) {
+                if (nextSegment == segments.length) {
+                    return false;
+                }
+                snapshot = segments[nextSegment++].snapshot();
+                index = 0;
+            }
+            return true;
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public T next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            lastKey = snapshot.keys[index];
+            canRemove = true;
+            Object value = snapshot.values[index++];
+            return element(lastKey, (V) value);
+        }
+
+        abstract T element(int key, V value);
+
+        @Override
+        public void remove() {
+            if (!canRemove) {
+                throw new IllegalStateException();
+            }
+            canRemove = false;
+            IntObjectConcurrentMap.this.remove(lastKey);
+        }
+    }
+
+    /**
+     * An entry whose setValue writes through to the map.
+     */
+    private final class WriteThroughEntry extends SimpleEntry<Integer, V> {
+        private static final long serialVersionUID = 1L;
+
+        private WriteThroughEntry(int key, V value) {
+            super(key, value);
+        }
+
+        @Override
+        public V setValue(V value) {
+            Objects.requireNonNull(value, "Value cannot be null.");
+            V previous = super.setValue(value);
+            put(getKey(), value);
+            return previous;
+        }
+    }
+
+    private final class KeySet extends AbstractSet<Integer> {
+        @Override
+        public Iterator<Integer> iterator() {
+            return new SnapshotIterator<Integer>() {
+                @Override
+                Integer element(int key, V value) {
+                    return key;
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            return IntObjectConcurrentMap.this.size();
+        }
+
+        @Override
+        public boolean contains(Object key) {
+            return containsKey(key);
+        }
+
+        @Override
+        public boolean remove(Object key) {
+            return IntObjectConcurrentMap.this.remove(key) != null;
+        }
+
+        @Override
+        public void clear() {
+            IntObjectConcurrentMap.this.clear();
+        }
+    }
+
+    private final class Values extends AbstractCollection<V> {
+        @Override
+        public Iterator<V> iterator() {
+            return new SnapshotIterator<V>() {
+                @Override
+                V element(int key, V value) {
+                    return value;
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            return IntObjectConcurrentMap.this.size();
+        }
+
+        @Override
+        public boolean contains(Object value) {
+            return containsValue(value);
+        }
+
+        @Override
+        public void clear() {
+            IntObjectConcurrentMap.this.clear();
+        }
+    }
+
+    private final class EntrySet extends AbstractSet<Map.Entry<Integer, V>> {
+        @Override
+        public Iterator<Map.Entry<Integer, V>> iterator() {
+            return new SnapshotIterator<Map.Entry<Integer, V>>() {
+                @Override
+                Map.Entry<Integer, V> element(int key, V value) {
+                    return new WriteThroughEntry(key, value);
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            return IntObjectConcurrentMap.this.size();
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            if (!(o instanceof Map.Entry)) {
+                return false;
+            }
+            Map.Entry<?, ?> entry = (Map.Entry<?, ?>) o;
+            V value = get(entry.getKey());
+            return value != null && value.equals(entry.getValue());
+        }
+
+        @Override
+        public boolean remove(Object o) {
+            if (!(o instanceof Map.Entry)) {
+                return false;
+            }
+            Map.Entry<?, ?> entry = (Map.Entry<?, ?>) o;
+            return IntObjectConcurrentMap.this.remove(entry.getKey(),
+            entry.getValue());
+        }
+
+        @Override
+        public void clear() {
+            IntObjectConcurrentMap.this.clear();
+        }
+    }
+}
@@ -7,4 +7,19 @@ module com.cafe94.gui {
 
     opens com.cafe94.gui to javafx.fxml;
     exports com.cafe94.gui;
+
+    // The storage SPI and the types its signatures use, so providers can
+    // be written outside this module
+    exports com.cafe94.domain;
+    exports com.cafe94.dto;
+    exports com.cafe94.enums;
+    exports com.cafe94.persistence;
+    exports com.cafe94.persistence.lsm;
+
+    uses com.cafe94.persistence.StorageProvider;
+    provides com.cafe94.persistence.StorageProvider with
+        com.cafe94.persistence.JournaledStorageProvider,
+        com.cafe94.persistence.LegacyStorageProvider,
+        com.cafe94.persistence.InMemoryStorageProvider,
+        com.cafe94.persistence.LsmStorageProvider;
 }
\ No newline at end of file
@@ -0,0 +1,76 @@
+package com.cafe94.persistence;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+
+import org.junit.jupiter.api.Test;
+
+import com.cafe94.domain.Booking;
+import com.cafe94.enums.BookingStatus;
+
+/**
+ * Tests for {@link BookingCodec}, including records written before
+ * bookings carried a version.
+ * @author Adigun Lateef
+ * @version 1.0
+ */
+class BookingCodecTest {
+
+    private static final LocalDate DATE = LocalDate.of(2024, 5, 17);
+    private static final LocalTime TIME = LocalTime.of(19, 30);
+    private static final LocalDateTime CREATED =
+    LocalDateTime.of(2024, 5, 1, 9, 0);
+
+    private final BookingCodec codec = new BookingCodec();
+
+    @Test
+    void roundTrip() throws IOException {
+        Booking booking = new Booking(3, 9, DATE, TIME, 4,
+        BookingStatus.CONFIRMED);
+        booking.assignTable(6);
+        booking.restoreCreationTimestamp(CREATED);
+        booking.restoreVersion(2);
+
+        Booking decoded = codec.decode(codec.encode(booking));
+        assertEquals(3, decoded.getBookingID());
+        assertEquals(9, decoded.getCustomerID());
+        assertEquals(6, decoded.getTableNumber());
+        assertEquals(DATE, decoded.getBookingDate());
+        assertEquals(TIME, decoded.getBookingTime());
+        assertEquals(4, decoded.getNumberOfGuests());
+        assertEquals(BookingStatus.CONFIRMED, decoded.getStatus());
+        assertEquals(CREATED, decoded.getCreationTimestamp());
+        assertEquals(2, decoded.getVersion());
+    }
+
+    @Test
+    void version1DecodesUnassignedAtVersionZero() throws IOException {
+        BinaryRecordWriter out = new BinaryRecordWriter(32);
+        out.writeByte(1);
+        out.writeVarInt(3);
+        out.writeVarInt(9);
+        // No table assigned
+        out.writeVarInt(0);
+        out.writeDate(DATE);
+        out.writeTime(TIME);
+        out.writeVarInt(2);
+        out.writeEnum(BookingStatus.PENDING_APPROVAL);
+        out.writeDateTime(CREATED);
+
+        Booking decoded = codec.decode(out.toByteArray());
+        assertEquals(0, decoded.getTableNumber());
+        assertEquals(BookingStatus.PENDING_APPROVAL, decoded.getStatus());
+        assertEquals(CREATED, decoded.getCreationTimestamp());
+        assertEquals(0, decoded.getVersion());
+    }
+
+    @Test
+    void unknownVersionIsRejected() {
+        assertThrows(IOException.class, () -> codec.decode(new byte[]{3}));
+    }
+}
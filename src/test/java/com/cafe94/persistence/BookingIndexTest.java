@@ -0,0 +1,136 @@
+package com.cafe94.persistence;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+
+import com.cafe94.domain.Booking;
+import com.cafe94.enums.BookingStatus;
+
+/**
+ * Tests for {@link BookingIndex}: date ranges, statuses and keyset pages
+ * that cross from one day to the next.
+ * @author Adigun Lateef
+ * @version 1.0
+ */
+class BookingIndexTest {
+
+    private static final LocalDate DAY = LocalDate.of(2024, 5, 17);
+
+    private final BookingIndex index = new BookingIndex();
+
+    @Test
+    void rangeIncludesBothEndDates() {
+        index.put(booking(1, DAY.minusDays(1), 12));
+        index.put(booking(2, DAY.plusDays(1), 9));
+        index.put(booking(3, DAY, 19));
+        index.put(booking(4, DAY, 12));
+        index.put(booking(5, DAY.plusDays(2), 12));
+
+        assertEquals(List.of(4, 3, 2), ids(index.findBetween(DAY,
+        DAY.plusDays(1))));
+        assertEquals(List.of(4, 3), ids(index.findBetween(DAY, DAY)));
+        assertEquals(List.of(), ids(index.findBetween(DAY.plusDays(5),
+        DAY.plusDays(9))));
+    }
+
+    @Test
+    void unsavedMoveOutOfTheRangeIsSkipped() {
+        Booking moved = booking(1, DAY, 12);
+        index.put(moved);
+        index.put(booking(2, DAY, 13));
+
+        moved.updateDetails(DAY.plusDays(3), LocalTime.of(12, 0), 2);
+        assertEquals(List.of(2), ids(index.findBetween(DAY, DAY)));
+        // Not found under its new date until it is saved
+        assertEquals(List.of(), ids(index.findBetween(DAY.plusDays(3),
+        DAY.plusDays(3))));
+
+        index.put(moved);
+        assertEquals(List.of(1), ids(index.findBetween(DAY.plusDays(3),
+        DAY.plusDays(3))));
+    }
+
+    @Test
+    void statusesAreListedChronologically() {
+        index.put(booking(1, DAY.plusDays(1), 12));
+        index.put(booking(2, DAY, 19));
+        Booking approved = booking(3, DAY, 12);
+        index.put(approved);
+
+        approved.setStatus(BookingStatus.CONFIRMED);
+        // Changed in memory only: in neither list until it is saved
+        assertEquals(List.of(2, 1), ids(index.findByStatus(
+        BookingStatus.PENDING_APPROVAL)));
+        assertEquals(List.of(), ids(index.findByStatus(
+        BookingStatus.CONFIRMED)));
+
+        index.put(approved);
+        assertEquals(List.of(3), ids(index.findByStatus(
+        BookingStatus.CONFIRMED)));
+        index.remove(2);
+        assertEquals(List.of(1), ids(index.findByStatus(
+        BookingStatus.PENDING_APPROVAL)));
+    }
+
+    @Test
+    void pagesCrossDayBoundaries() {
+        List<Integer> expected = new ArrayList<>();
+        int id = 1;
+        for (int day = 0; day < 4; day++) {
+            // Two bookings share each time slot
+            for (int hour = 12; hour <= 13; hour++) {
+                for (int slot = 0; slot < 2; slot++) {
+                    index.put(booking(id, DAY.plusDays(day), hour));
+                    expected.add(id++);
+                }
+            }
+        }
+        // Leaves an empty day between the second and fourth day
+        for (int removed = 9; removed <= 12; removed++) {
+            index.remove(removed);
+            expected.remove(Integer.valueOf(removed));
+        }
+
+        for (int limit = 1; limit <= 5; limit++) {
+            assertEquals(expected, pageThrough(limit), "Limit " + limit);
+        }
+        // A cursor at the last booking of a day continues on the next
+        assertEquals(List.of(13, 14), ids(index.findPage(
+        DAY.plusDays(1).atTime(13, 0), 8, 2)));
+        // A cursor on a day without bookings continues after it
+        assertEquals(List.of(13), ids(index.findPage(
+        DAY.plusDays(2).atTime(12, 0), 9, 1)));
+    }
+
+    private List<Integer> pageThrough(int limit) {
+        List<Integer> paged = new ArrayList<>();
+        Booking last = null;
+        while (true) {
+            List<Booking> page = last == null ? index.findPage(null, 0, limit)
+            : index.findPage(last.getBookingDateTime(),
+            last.getBookingID(), limit);
+            if (page.isEmpty()) {
+                return paged;
+            }
+            paged.addAll(ids(page));
+            last = page.get(page.size() - 1);
+        }
+    }
+
+    private static Booking booking(int id, LocalDate date, int hour) {
+        return new Booking(id, 9, date, LocalTime.of(hour, 0), 2,
+        BookingStatus.PENDING_APPROVAL);
+    }
+
+    private static List<Integer> ids(List<Booking> bookings) {
+        return bookings.stream().map(Booking::getBookingID)
+        .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,76 @@
+package com.cafe94.persistence;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.File;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.cafe94.domain.Booking;
+import com.cafe94.enums.BookingStatus;
+
+/**
+ * Tests for {@link BookingRepository}: streaming every booking one page
+ * at a time.
+ * @author Adigun Lateef
+ * @version 1.0
+ */
+class BookingRepositoryTest {
+
+    private static final LocalDate DAY = LocalDate.of(2024, 5, 17);
+
+    @TempDir
+    File directory;
+
+    private BookingRepository bookings;
+
+    @BeforeEach
+    void open() {
+        bookings = new BookingRepository(new File(directory, "bookings.dat")
+        .getPath(), StorageOptions.journaled());
+    }
+
+    @AfterEach
+    void close() {
+        bookings.close();
+    }
+
+    @Test
+    void streamVisitsEveryBookingOnce() {
+        List<Booking> saved = new ArrayList<>();
+        // More than two stream pages, many sharing a date and time
+        for (int i = 0; i < 700; i++) {
+            saved.add(bookings.save(new Booking(0, 9,
+            DAY.plusDays(i % 5), LocalTime.of(12 + i % 3, 0), 2,
+            BookingStatus.PENDING_APPROVAL)));
+        }
+        saved.sort(Comparator.comparing(Booking::getBookingDateTime)
+        .thenComparingInt(Booking::getBookingID));
+
+        assertEquals(ids(saved), ids(bookings.streamAll()
+        .collect(Collectors.toList())));
+        close();
+        open();
+        assertEquals(ids(saved), ids(bookings.streamAll()
+        .collect(Collectors.toList())));
+    }
+
+    @Test
+    void emptyRepositoryStreamsNothing() {
+        assertEquals(0, bookings.streamAll().count());
+    }
+
+    private static List<Integer> ids(List<Booking> bookings) {
+        return bookings.stream().map(Booking::getBookingID)
+        .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,127 @@
+package com.cafe94.persistence;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+
+import com.cafe94.domain.Booking;
+import com.cafe94.enums.BookingStatus;
+
+/**
+ * Tests for {@link BookingSchedule}: the edges of the overlap range and
+ * bookings changed in memory but not yet saved.
+ * @author Adigun Lateef
+ * @version 1.0
+ */
+class BookingScheduleTest {
+
+    private static final LocalDate DAY = LocalDate.of(2024, 5, 17);
+    private static final LocalDateTime SEVEN_PM = DAY.atTime(19, 0);
+    private static final LocalDateTime EIGHT_PM = DAY.atTime(20, 0);
+
+    private final BookingSchedule schedule = new BookingSchedule();
+
+    @Test
+    void bookingEndingAtTheRangeStartDoesNotOverlap() {
+        // 18:00 to 19:00, then 20:00 to 21:00
+        schedule.put(booking(1, 3, LocalTime.of(18, 0)));
+        schedule.put(booking(2, 3, LocalTime.of(20, 0)));
+
+        assertEquals(List.of(), ids(schedule.findOverlapping(3, SEVEN_PM,
+        EIGHT_PM)));
+        assertEquals(Set.of(3), schedule.findFreeTables(List.of(3),
+        SEVEN_PM, EIGHT_PM));
+    }
+
+    @Test
+    void lowerBoundIsExclusiveByOneBookingDuration() {
+        LocalDateTime start = SEVEN_PM.minus(
+        BookingSchedule.BOOKING_DURATION);
+        schedule.put(booking(1, 3, start.toLocalTime()));
+        schedule.put(booking(2, 3, start.toLocalTime().plusNanos(1)));
+        schedule.put(booking(3, 3, LocalTime.of(19, 0)));
+        schedule.put(booking(4, 3, LocalTime.of(19, 59)));
+
+        assertEquals(List.of(2, 3, 4), ids(schedule.findOverlapping(3,
+        SEVEN_PM, EIGHT_PM)));
+    }
+
+    @Test
+    void freeTablesKeepTheGivenOrder() {
+        schedule.put(booking(1, 2, LocalTime.of(19, 30)));
+        // Rejected bookings hold no table
+        Booking rejected = booking(2, 5, LocalTime.of(19, 0));
+        rejected.setStatus(BookingStatus.REJECTED);
+        schedule.put(rejected);
+
+        assertEquals(List.of(5, 1, 4), List.copyOf(schedule.findFreeTables(
+        Arrays.asList(5, 2, 1, null, 4), SEVEN_PM, EIGHT_PM)));
+    }
+
+    @Test
+    void unsavedCancellationFreesTheTable() {
+        Booking booking = booking(1, 3, LocalTime.of(19, 0));
+        schedule.put(booking);
+
+        booking.setStatus(BookingStatus.CANCELLED_BY_CUSTOMER);
+        assertEquals(List.of(), ids(schedule.findOverlapping(3, SEVEN_PM,
+        EIGHT_PM)));
+        assertEquals(Set.of(3), schedule.findFreeTables(List.of(3),
+        SEVEN_PM, EIGHT_PM));
+    }
+
+    @Test
+    void unsavedMoveIsOnlyIndexedOnceSaved() {
+        Booking booking = booking(1, 3, LocalTime.of(19, 0));
+        schedule.put(booking);
+        LocalDateTime ninePm = DAY.atTime(21, 0);
+
+        booking.updateDetails(DAY, LocalTime.of(21, 0), 2);
+        assertEquals(List.of(), ids(schedule.findOverlapping(3, SEVEN_PM,
+        EIGHT_PM)));
+        // Still indexed under its old start until it is saved
+        assertEquals(List.of(), ids(schedule.findOverlapping(3, ninePm,
+        ninePm.plusHours(1))));
+
+        schedule.put(booking);
+        assertEquals(List.of(1), ids(schedule.findOverlapping(3, ninePm,
+        ninePm.plusHours(1))));
+    }
+
+    @Test
+    void unsavedTableChangeIsOnlyIndexedOnceSaved() {
+        Booking booking = booking(1, 3, LocalTime.of(19, 0));
+        schedule.put(booking);
+
+        booking.assignTable(4);
+        assertEquals(Set.of(3, 4), schedule.findFreeTables(List.of(3, 4),
+        SEVEN_PM, EIGHT_PM));
+
+        schedule.put(booking);
+        assertEquals(Set.of(3), schedule.findFreeTables(List.of(3, 4),
+        SEVEN_PM, EIGHT_PM));
+        schedule.remove(1);
+        assertEquals(Set.of(3, 4), schedule.findFreeTables(List.of(3, 4),
+        SEVEN_PM, EIGHT_PM));
+    }
+
+    private static Booking booking(int id, int tableNumber, LocalTime time) {
+        Booking booking = new Booking(id, 9, DAY, time, 2,
+        BookingStatus.CONFIRMED);
+        booking.assignTable(tableNumber);
+        return booking;
+    }
+
+    private static List<Integer> ids(List<Booking> bookings) {
+        return bookings.stream().map(Booking::getBookingID)
+        .collect(Collectors.toList());
+    }
+}
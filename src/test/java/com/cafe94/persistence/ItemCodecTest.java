@@ -0,0 +1,87 @@
+package com.cafe94.persistence;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.cafe94.domain.Item;
+
+/**
+ * Tests for {@link ItemCodec}.
+ * @author Adigun Lateef
+ * @version 1.0
+ */
+class ItemCodecTest {
+
+    private final ItemCodec codec = new ItemCodec();
+
+    @Test
+    void roundTrip() throws IOException {
+        Item item = ItemCodec.newItem(8, "Scone", "Bakery", 225, true);
+
+        Item decoded = codec.decode(codec.encode(item));
+        assertEquals(8, decoded.getItemID());
+        assertEquals("Scone", decoded.getName());
+        assertEquals("Bakery", decoded.getCategory());
+        assertEquals(225, decoded.getPricePence());
+        assertEquals(true, decoded.isDailySpecial());
+    }
+
+    @Test
+    void readsRawDoublePriceOfOlderRecords() throws IOException {
+        BinaryRecordWriter out = new BinaryRecordWriter(32);
+        out.writeByte(1);
+        out.writeVarInt(5);
+        out.writeString("Tea");
+        out.writeString("Drinks");
+        out.writeSignedVarLong(1);
+        long bits = Double.doubleToLongBits(2.499);
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            out.writeByte((int) (bits >>> shift));
+        }
+        out.writeBoolean(false);
+
+        assertEquals(250, codec.decode(out.toByteArray()).getPricePence());
+    }
+
+    @Test
+    void negativePriceIsRejected() {
+        assertThrows(IllegalArgumentException.class, () ->
+        ItemCodec.newItem(8, "Scone", "Bakery", -1, false));
+        Item item = ItemCodec.newItem(8, "Scone", "Bakery", 225, false);
+        assertThrows(IllegalArgumentException.class, () ->
+        item.setPricePence(-225));
+        assertThrows(IllegalArgumentException.class, () ->
+        item.setPrice(-1.5));
+        assertEquals(225, item.getPricePence());
+    }
+
+    @Test
+    void rejectedPriceIsNeverSaved(@TempDir File directory) {
+        String path = new File(directory, "menu.dat").getPath();
+        MenuRepository menu = new MenuRepository(path,
+        StorageOptions.journaled().withCodec(StorageOptions.Codec.BINARY));
+        Item tea = menu.save(ItemCodec.newItem(0, "Tea", "Drinks", 150,
+        false));
+        assertThrows(IllegalArgumentException.class, () ->
+        tea.setPrice(-1.5));
+        menu.save(tea);
+        menu.save(ItemCodec.newItem(0, "Coffee", "Drinks", 250, false));
+
+        MenuRepository reloaded = new MenuRepository(path,
+        StorageOptions.journaled().withCodec(StorageOptions.Codec.BINARY));
+        assertEquals(2, reloaded.findAll().size());
+        assertEquals(150, reloaded.findById(tea.getItemID()).get()
+        .getPricePence());
+    }
+
+    @Test
+    void unknownVersionIsRejected() {
+        assertThrows(IOException.class, () -> codec.decode(new byte[]{2}));
+    }
+}
@@ -0,0 +1,139 @@
+package com.cafe94.persistence;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.cafe94.domain.Customer;
+import com.cafe94.domain.Item;
+import com.cafe94.domain.User;
+
+/**
+ * Tests for {@link JavaSerializationCodec} and the fallback to it when a
+ * binary codec cannot encode a record or meets a serialized one.
+ * @author Adigun Lateef
+ * @version 1.0
+ */
+class JavaSerializationCodecTest {
+
+    @TempDir
+    File directory;
+
+    @Test
+    void roundTripChecksTheType() throws IOException {
+        JavaSerializationCodec<Item> codec =
+        new JavaSerializationCodec<>(Item.class);
+        byte[] payload = codec.encode(
+        ItemCodec.newItem(1, "Latte", "Drinks", 300, false));
+
+        assertTrue(JavaSerializationCodec.isJavaSerialized(payload));
+        assertEquals("Latte", codec.decode(payload).getName());
+        assertThrows(IOException.class, () ->
+        new JavaSerializationCodec<>(User.class).decode(payload));
+    }
+
+    @Test
+    void binaryPayloadsAreNotMistakenForSerialized() throws IOException {
+        byte[] payload = new ItemCodec().encode(
+        ItemCodec.newItem(1, "Latte", "Drinks", 300, false));
+        assertFalse(JavaSerializationCodec.isJavaSerialized(payload));
+    }
+
+    @Test
+    void recordsTheBinaryCodecRejectsAreSerialized() throws IOException {
+        Map<Integer, User> users = new ConcurrentHashMap<>();
+        Customer regular = new Customer(1, "Ada", "Lovelace",
+        "ada@example.com", "hash", "2 Mill Lane", "07700900000");
+        Customer member = new MemberCustomer(2, "Alan", "Turing",
+        "alan@example.com", "hash", "3 Mill Lane", "07700900001");
+        try (RecordStore<User> store = openUsers(users)) {
+            users.put(1, regular);
+            store.put(1, regular);
+            users.put(2, member);
+            store.put(2, member);
+            assertFalse(JavaSerializationCodec.isJavaSerialized(
+            store.encode(regular)));
+            assertTrue(JavaSerializationCodec.isJavaSerialized(
+            store.encode(member)));
+        }
+
+        Map<Integer, User> reloaded = new ConcurrentHashMap<>();
+        openUsers(reloaded).close();
+        assertSame(Customer.class, reloaded.get(1).getClass());
+        assertSame(MemberCustomer.class, reloaded.get(2).getClass());
+    }
+
+    @Test
+    void switchingCodecsKeepsEveryRecordReadable() throws IOException {
+        Map<Integer, Item> items = new ConcurrentHashMap<>();
+        try (RecordStore<Item> store = openItems(items,
+        StorageOptions.journaled())) {
+            put(store, items, ItemCodec.newItem(1, "Latte", "Drinks", 300,
+            false));
+        }
+        StorageOptions binary = StorageOptions.journaled()
+        .withCodec(StorageOptions.Codec.BINARY);
+        try (RecordStore<Item> store = openItems(items, binary)) {
+            put(store, items, ItemCodec.newItem(2, "Cake", "Desserts", 450,
+            true));
+            // The data file is now binary, the older journal record not
+            store.compact();
+            put(store, items, ItemCodec.newItem(3, "Tea", "Drinks", 200,
+            false));
+        }
+
+        Map<Integer, Item> reloaded = new ConcurrentHashMap<>();
+        openItems(reloaded, StorageOptions.journaled()).close();
+        assertEquals(3, reloaded.size());
+        assertEquals(450, reloaded.get(2).getPricePence());
+        assertEquals("Tea", reloaded.get(3).getName());
+    }
+
+    private RecordStore<User> openUsers(Map<Integer, User> users) {
+        RecordStore<User> store = new RecordStore<>(
+        new File(directory, "users.dat").getPath(), "user", User.class,
+        users, StorageOptions.journaled()
+        .withCodec(StorageOptions.Codec.BINARY), new UserCodec());
+        store.load();
+        return store;
+    }
+
+    private RecordStore<Item> openItems(Map<Integer, Item> items,
+    StorageOptions options) {
+        RecordStore<Item> store = new RecordStore<>(
+        new File(directory, "menu.dat").getPath(), "menu item", Item.class,
+        items, options, new ItemCodec());
+        store.load();
+        return store;
+    }
+
+    private static void put(RecordStore<Item> store, Map<Integer, Item> items,
+    Item item) {
+        items.put(item.getItemID(), item);
+        store.put(item.getItemID(), item);
+    }
+
+    /**
+     * A customer subclass the binary codec has no layout for.
+     */
+    static final class MemberCustomer extends Customer {
+        private static final long serialVersionUID = 1L;
+
+        MemberCustomer(int userId, String firstName, String lastName,
+        String email, String hashedPassword, String address,
+        String phoneNumber) {
+            super(userId, firstName, lastName, email, hashedPassword,
+            address, phoneNumber);
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package com.cafe94.persistence;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.cafe94.domain.Booking;
+import com.cafe94.domain.EatIn;
+import com.cafe94.domain.Item;
+import com.cafe94.domain.Order;
+import com.cafe94.enums.BookingStatus;
+import com.cafe94.enums.OrderStatus;
+import com.cafe94.persistence.lsm.LsmEngine;
+
+/**
+ * Tests for the version checks of {@link LsmTransactionManager}.
+ * @author Adigun Lateef
+ * @version 1.0
+ */
+class LsmTransactionManagerTest {
+
+    @TempDir
+    File directory;
+
+    private LsmEngine engine;
+    private LsmOrderRepository orders;
+    private LsmBookingRepository bookings;
+    private LsmTransactionManager transactions;
+
+    @BeforeEach
+    void open() throws IOException {
+        engine = new LsmEngine(directory);
+        orders = new LsmOrderRepository(engine, null);
+        bookings = new LsmBookingRepository(engine);
+        transactions = new LsmTransactionManager(orders,
+        new LsmTableRepository(engine, Collections.emptyList()), bookings);
+    }
+
+    @AfterEach
+    void close() throws IOException {
+        engine.close();
+    }
+
+    @Test
+    void staleUpdateRunsNoChange() {
+        Order order = orders.save(newOrder());
+        Booking booking = bookings.save(newBooking());
+
+        IUnitOfWork unit = transactions.begin();
+        unit.update(order, order.getVersion(), Order::confirmOrder);
+        unit.update(booking, booking.getVersion() + 1,
+        b -> b.assignTable(3));
+        assertThrows(StaleRecordException.class, unit::commit);
+
+        assertEquals(OrderStatus.PENDING_CONFIRMATION, order.getStatus());
+        assertEquals(1, order.getVersion());
+        assertEquals(OrderStatus.PENDING_CONFIRMATION,
+        orders.findById(order.getOrderID()).get().getStatus());
+        assertEquals(0, bookings.findById(booking.getBookingID()).get()
+        .getTableNumber());
+    }
+
+    @Test
+    void throwingChangeLeavesTheStagedRecordsUnchanged() {
+        Order order = orders.save(newOrder());
+        Booking booking = bookings.save(newBooking());
+
+        IUnitOfWork unit = transactions.begin();
+        unit.update(order, order.getVersion(), Order::confirmOrder);
+        unit.update(booking, booking.getVersion(), b -> {
+            throw new IllegalStateException("No table fits");
+        });
+        assertThrows(IllegalStateException.class, unit::commit);
+
+        assertEquals(OrderStatus.PENDING_CONFIRMATION, order.getStatus());
+        assertEquals(1, order.getVersion());
+        assertEquals(OrderStatus.PENDING_CONFIRMATION,
+        orders.findById(order.getOrderID()).get().getStatus());
+    }
+
+    @Test
+    void recordStagedTwiceIsCheckedAgainstItsEarlierSave() {
+        Booking booking = bookings.save(newBooking());
+        Booking again = bookings.findById(booking.getBookingID()).get();
+
+        IUnitOfWork unit = transactions.begin();
+        unit.update(booking, 1, b -> b.assignTable(3));
+        unit.update(again, 2, b -> b.updateDetails(b.getBookingDate(),
+        b.getBookingTime(), 5));
+        unit.commit();
+
+        Booking stored = bookings.findById(booking.getBookingID()).get();
+        assertEquals(3, stored.getVersion());
+        assertEquals(5, stored.getNumberOfGuests());
+
+        IUnitOfWork stale = transactions.begin();
+        stale.update(stored, 3, b -> b.assignTable(3));
+        stale.update(stored, 3, b -> b.assignTable(3));
+        assertThrows(StaleRecordException.class, stale::commit);
+        assertEquals(3, stored.getVersion());
+        assertEquals(0, stored.getTableNumber());
+    }
+
+    private static Order newOrder() {
+        Item latte = ItemCodec.newItem(1, "Latte", "Drinks", 300, false);
+        return new EatIn(0, List.of(latte), 5, 1,
+        OrderStatus.PENDING_CONFIRMATION);
+    }
+
+    private static Booking newBooking() {
+        return new Booking(0, 9, LocalDate.of(2024, 5, 17),
+        LocalTime.of(19, 0), 2, BookingStatus.PENDING_APPROVAL);
+    }
+}
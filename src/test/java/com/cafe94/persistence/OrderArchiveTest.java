@@ -0,0 +1,234 @@
+package com.cafe94.persistence;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.cafe94.domain.EatIn;
+import com.cafe94.domain.Item;
+import com.cafe94.domain.Order;
+import com.cafe94.enums.OrderStatus;
+
+/**
+ * Tests for {@link OrderArchive}: reloading from the index files,
+ * rebuilding an index file that is missing, torn or damaged from its
+ * segment, and the cache of decoded orders.
+ * @author Adigun Lateef
+ * @version 1.0
+ */
+class OrderArchiveTest {
+
+    private static final LocalDateTime START =
+    LocalDateTime.of(2024, 3, 1, 8, 0);
+    // Index file header, then fixed-size entries
+    private static final int INDEX_HEADER_BYTES = 6;
+    private static final int INDEX_ENTRY_BYTES = 34;
+
+    @TempDir
+    File directory;
+
+    private final Item latte =
+    ItemCodec.newItem(1, "Latte", "Drinks", 300, false);
+
+    @Test
+    void archivedOrdersAreFoundAfterReload() throws IOException {
+        OrderArchive archive = open();
+        archive.archive(orders(1, 6));
+        archive.close();
+
+        OrderArchive reloaded = open();
+        assertEquals(6, reloaded.size());
+        assertEquals(6, reloaded.getMaxOrderId());
+        Order order = reloaded.find(4).get();
+        assertEquals(OrderStatus.COMPLETED, order.getStatus());
+        assertEquals(START.plusMinutes(4), order.getOrderTimestamp());
+        assertEquals("Latte", order.getItems().get(0).getName());
+        // Customers alternate between 7 and 8
+        assertEquals(List.of(2, 4, 6), ids(reloaded.findByCustomerId(8)));
+        assertFalse(reloaded.find(7).isPresent());
+        reloaded.close();
+    }
+
+    @Test
+    void removedOrderStaysRemovedAfterReload() throws IOException {
+        OrderArchive archive = open();
+        archive.archive(orders(1, 3));
+        assertTrue(archive.remove(2));
+        assertFalse(archive.remove(2));
+        archive.close();
+
+        OrderArchive reloaded = open();
+        assertFalse(reloaded.contains(2));
+        assertEquals(List.of(1, 3), ids(reloaded.findAll()));
+        reloaded.close();
+    }
+
+    @Test
+    void missingIndexIsRebuiltFromTheSegment() throws IOException {
+        OrderArchive archive = open();
+        archive.archive(orders(1, 5));
+        archive.close();
+        assertTrue(indexFile().delete());
+
+        assertAllFound(5);
+        // The rebuilt index is used on the next load
+        assertTrue(indexFile().length() > INDEX_HEADER_BYTES);
+        assertAllFound(5);
+    }
+
+    @Test
+    void recordsPastATornIndexEntryAreScanned() throws IOException {
+        OrderArchive archive = open();
+        archive.archive(orders(1, 5));
+        archive.close();
+        // Two whole entries, then half of the third
+        truncate(indexFile(), INDEX_HEADER_BYTES + 2 * INDEX_ENTRY_BYTES
+        + INDEX_ENTRY_BYTES / 2);
+
+        assertAllFound(5);
+        assertEquals(INDEX_HEADER_BYTES + 5 * INDEX_ENTRY_BYTES,
+        indexFile().length());
+        assertAllFound(5);
+    }
+
+    @Test
+    void damagedIndexEntryIsRebuiltFromTheSegment() throws IOException {
+        OrderArchive archive = open();
+        archive.archive(orders(1, 5));
+        archive.close();
+        // Corrupt the order ID of the first entry; its CRC no longer fits
+        try (RandomAccessFile file = new RandomAccessFile(indexFile(),
+        "rw")) {
+            file.seek(INDEX_HEADER_BYTES + 13);
+            file.writeInt(99);
+        }
+
+        assertAllFound(5);
+        assertAllFound(5);
+    }
+
+    @Test
+    void appendAfterTornIndexKeepsEveryOrder() throws IOException {
+        OrderArchive archive = open();
+        archive.archive(orders(1, 3));
+        archive.close();
+        truncate(indexFile(), INDEX_HEADER_BYTES + INDEX_ENTRY_BYTES + 5);
+
+        OrderArchive reopened = open();
+        reopened.archive(orders(4, 6));
+        reopened.close();
+        assertAllFound(6);
+    }
+
+    @Test
+    void evictedOrderIsReadAgainFromDisk() throws IOException {
+        OrderArchive archive = new OrderArchive(
+        new File(directory, "orders.dat"), 2);
+        archive.load();
+        archive.archive(orders(1, 4));
+
+        Order first = archive.find(1).get();
+        assertSame(first, archive.find(1).get());
+        archive.find(2);
+        archive.find(3);
+        Order reread = archive.find(1).get();
+        assertNotSame(first, reread);
+        assertEquals(first.getOrderTimestamp(), reread.getOrderTimestamp());
+        assertEquals(first.getTotalPence(), reread.getTotalPence());
+        archive.close();
+    }
+
+    @Test
+    void uncachedArchiveDecodesOnEveryRead() throws IOException {
+        OrderArchive archive = new OrderArchive(
+        new File(directory, "orders.dat"), 0);
+        archive.load();
+        archive.archive(orders(1, 2));
+
+        assertNotSame(archive.find(1).get(), archive.find(1).get());
+        assertEquals(2, archive.findAll().size());
+        archive.close();
+    }
+
+    @Test
+    void indexEntryPastTheSegmentEndIsDropped() throws IOException {
+        OrderArchive archive = open();
+        archive.archive(orders(1, 5));
+        archive.close();
+        // The index still covers order 5, the segment lost its tail
+        File segment = new File(directory, "orders.dat.archive/2024-03.seg");
+        truncate(segment, segment.length() - 10);
+
+        OrderArchive reloaded = open();
+        assertEquals(4, reloaded.size());
+        assertFalse(reloaded.find(5).isPresent());
+        assertEquals(List.of(1, 2, 3, 4), ids(reloaded.findAll()));
+        // The torn record is overwritten by the next append
+        reloaded.archive(orders(6, 6));
+        reloaded.close();
+
+        OrderArchive appended = open();
+        assertEquals(List.of(1, 2, 3, 4, 6), ids(appended.findAll()));
+        appended.close();
+    }
+
+    private void assertAllFound(int count) throws IOException {
+        OrderArchive archive = open();
+        assertEquals(count, archive.size());
+        for (int id = 1; id <= count; id++) {
+            assertEquals(id, archive.find(id).get().getOrderID());
+        }
+        archive.close();
+    }
+
+    private OrderArchive open() {
+        OrderArchive archive = new OrderArchive(
+        new File(directory, "orders.dat"));
+        archive.load();
+        return archive;
+    }
+
+    /**
+     * @return Finished orders with the given IDs, all placed in March
+     * 2024 so they share one segment.
+     */
+    private List<Order> orders(int firstId, int lastId) {
+        List<Order> orders = new ArrayList<>();
+        for (int id = firstId; id <= lastId; id++) {
+            Order order = new EatIn(id, List.of(latte), 7 + (id + 1) % 2,
+            1, OrderStatus.COMPLETED);
+            order.restoreTimestamps(START.plusMinutes(id),
+            START.plusMinutes(id));
+            orders.add(order);
+        }
+        return orders;
+    }
+
+    private File indexFile() {
+        return new File(directory, "orders.dat.archive/2024-03.idx");
+    }
+
+    private static void truncate(File file, long length) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(length);
+        }
+    }
+
+    private static List<Integer> ids(List<Order> orders) {
+        return orders.stream().map(Order::getOrderID).sorted()
+        .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,268 @@
+package com.cafe94.persistence;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import com.cafe94.domain.Delivery;
+import com.cafe94.domain.EatIn;
+import com.cafe94.domain.Item;
+import com.cafe94.domain.Order;
+import com.cafe94.domain.OrderLine;
+import com.cafe94.domain.Takeaway;
+import com.cafe94.enums.OrderStatus;
+
+/**
+ * Tests for {@link OrderCodec}: round trips of the current format and
+ * decoding of records written by every earlier version.
+ * @author Adigun Lateef
+ * @version 1.0
+ */
+class OrderCodecTest {
+
+    private static final LocalDateTime ORDERED =
+    LocalDateTime.of(2024, 3, 1, 12, 30);
+    private static final LocalDateTime UPDATED = ORDERED.plusMinutes(20);
+
+    private final Map<Integer, Item> menu = new HashMap<>();
+    private final OrderCodec codec = new OrderCodec(menu::get);
+
+    private final Item latte = menuItem(1, "Latte", "Drinks", 300, false);
+    private final Item cake = menuItem(2, "Cake", "Desserts", 450, true);
+
+    @Test
+    void eatInRoundTrip() throws IOException {
+        Order order = new EatIn(10, List.of(latte, latte, cake), 5, 4,
+        OrderStatus.PREPARING);
+        order.restoreTimestamps(ORDERED, UPDATED);
+        order.restoreVersion(7);
+
+        EatIn decoded = (EatIn) roundTrip(order);
+        assertCommonFields(order, decoded);
+        assertEquals(4, decoded.getTableNumber());
+    }
+
+    @Test
+    void takeawayRoundTrip() throws IOException {
+        Order order = new Takeaway(11, List.of(cake), 6,
+        OrderStatus.READY, LocalTime.of(13, 15));
+
+        Takeaway decoded = (Takeaway) roundTrip(order);
+        assertCommonFields(order, decoded);
+        assertEquals(LocalTime.of(13, 15), decoded.getPickupTime());
+    }
+
+    @Test
+    void deliveryRoundTrip() throws IOException {
+        Delivery order = new Delivery(12, List.of(latte), 7,
+        "1 High Street", OrderStatus.OUT_FOR_DELIVERY);
+        order.setEstimatedDeliveryTime(LocalTime.of(18, 45));
+        order.assignDriver(3);
+
+        Delivery decoded = (Delivery) roundTrip(order);
+        assertCommonFields(order, decoded);
+        assertEquals("1 High Street", decoded.getDeliveryAddress());
+        assertEquals(LocalTime.of(18, 45),
+        decoded.getEstimatedDeliveryTime());
+        assertEquals(3, decoded.getAssignedDriverID());
+    }
+
+    @Test
+    void unchangedMenuItemDecodesToTheMenuInstance() throws IOException {
+        Order decoded = roundTrip(new EatIn(1, List.of(latte), 5, 1,
+        OrderStatus.CONFIRMED));
+        assertSame(latte, decoded.getLines().get(0).getItem());
+    }
+
+    @Test
+    void repricedMenuItemKeepsTheChargedPrice() throws IOException {
+        byte[] payload = codec.encode(new EatIn(1, List.of(latte, latte),
+        5, 1, OrderStatus.CONFIRMED));
+        latte.setPricePence(350);
+
+        OrderLine line = codec.decode(payload).getLines().get(0);
+        assertSame(latte, line.getItem());
+        assertEquals(300, line.getUnitPence());
+        assertEquals(600, line.getLineTotalPence());
+    }
+
+    @Test
+    void renamedMenuItemKeepsItsStoredValues() throws IOException {
+        byte[] payload = codec.encode(new EatIn(1, List.of(latte), 5, 1,
+        OrderStatus.CONFIRMED));
+        latte.setName("Oat Latte");
+
+        Item item = codec.decode(payload).getLines().get(0).getItem();
+        assertNotSame(latte, item);
+        assertEquals("Latte", item.getName());
+        assertEquals("Drinks", item.getCategory());
+        assertEquals(1, item.getItemID());
+    }
+
+    @Test
+    void deletedMenuItemKeepsItsStoredValues() throws IOException {
+        byte[] payload = codec.encode(new EatIn(1, List.of(cake), 5, 1,
+        OrderStatus.CONFIRMED));
+        menu.remove(2);
+
+        Order first = codec.decode(payload);
+        Item item = first.getLines().get(0).getItem();
+        assertEquals("Cake", item.getName());
+        assertEquals("Desserts", item.getCategory());
+        assertTrue(item.isDailySpecial());
+        assertEquals(450, item.getPricePence());
+        // Interned, so every decoded order shares it
+        assertSame(item, codec.decode(payload).getLines().get(0).getItem());
+    }
+
+    @Test
+    void version3ResolvesReferencesAndInlineItems() throws IOException {
+        BinaryRecordWriter out = header(3, 2);
+        // A reference to the menu latte, charged at the old price
+        out.writeByte(0);
+        out.writeVarInt(1);
+        out.writePence(280);
+        out.writeVarInt(2);
+        // An item that did not match the menu when written
+        out.writeByte(1);
+        out.writeVarInt(9);
+        out.writePence(150);
+        out.writeString("Biscuit");
+        out.writeString("Snacks");
+        out.writeBoolean(false);
+        out.writeVarInt(1);
+        out.writeVarInt(4);
+        out.writeVarLong(3);
+
+        Order order = codec.decode(out.toByteArray());
+        assertEquals(3, order.getVersion());
+        List<OrderLine> lines = order.getLines();
+        assertSame(latte, lines.get(0).getItem());
+        assertEquals(2, lines.get(0).getQuantity());
+        assertEquals(280, lines.get(0).getUnitPence());
+        assertEquals("Biscuit", lines.get(1).getItem().getName());
+        assertEquals(710, order.getTotalPence());
+    }
+
+    @Test
+    void version3ReferenceToARemovedItemDecodesAsPlaceholder()
+    throws IOException {
+        BinaryRecordWriter out = header(3, 1);
+        out.writeByte(0);
+        out.writeVarInt(42);
+        out.writePence(199);
+        out.writeVarInt(1);
+        out.writeVarInt(4);
+        out.writeVarLong(1);
+
+        OrderLine line = codec.decode(out.toByteArray()).getLines().get(0);
+        assertEquals("Item #42", line.getItem().getName());
+        assertEquals(199, line.getUnitPence());
+    }
+
+    @Test
+    void version2GroupsUnitsIntoLines() throws IOException {
+        BinaryRecordWriter out = header(2, 4);
+        for (int i = 0; i < 3; i++) {
+            out.writeByte(0);
+            out.writeVarInt(1);
+            out.writePence(300);
+        }
+        // Null units of old orders are dropped
+        out.writeByte(2);
+        out.writeVarInt(4);
+        out.writeVarLong(5);
+
+        Order order = codec.decode(out.toByteArray());
+        assertEquals(5, order.getVersion());
+        assertEquals(1, order.getLines().size());
+        assertEquals(3, order.getLines().get(0).getQuantity());
+        assertEquals(900, order.getTotalPence());
+    }
+
+    @Test
+    void version1ReadsRawDoublePricesAtVersionZero() throws IOException {
+        BinaryRecordWriter out = header(1, 1);
+        out.writeByte(1);
+        out.writeVarInt(3);
+        // A price that was not whole pence, held as a raw double
+        out.writeSignedVarLong(1);
+        long bits = Double.doubleToLongBits(1.999);
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            out.writeByte((int) (bits >>> shift));
+        }
+        out.writeString("Tea");
+        out.writeString("Drinks");
+        out.writeBoolean(false);
+        out.writeVarInt(4);
+
+        Order order = codec.decode(out.toByteArray());
+        assertEquals(0, order.getVersion());
+        assertEquals(ORDERED, order.getOrderTimestamp());
+        OrderLine line = order.getLines().get(0);
+        assertEquals("Tea", line.getItem().getName());
+        assertEquals(200, line.getUnitPence());
+    }
+
+    @Test
+    void unknownVersionIsRejected() {
+        assertThrows(IOException.class, () ->
+        codec.decode(header(5, 0).toByteArray()));
+        assertThrows(IOException.class, () ->
+        codec.decode(header(0, 0).toByteArray()));
+    }
+
+    private Order roundTrip(Order order) throws IOException {
+        return codec.decode(codec.encode(order));
+    }
+
+    private static void assertCommonFields(Order expected, Order actual) {
+        assertEquals(expected.getClass(), actual.getClass());
+        assertEquals(expected.getOrderID(), actual.getOrderID());
+        assertEquals(expected.getCustomerID(), actual.getCustomerID());
+        assertEquals(expected.getStatus(), actual.getStatus());
+        assertEquals(expected.getOrderTimestamp(),
+        actual.getOrderTimestamp());
+        assertEquals(expected.getLastUpdatedTimestamp(),
+        actual.getLastUpdatedTimestamp());
+        assertEquals(expected.getVersion(), actual.getVersion());
+        assertEquals(expected.getTotalPence(), actual.getTotalPence());
+        assertEquals(expected.getLines().toString(),
+        actual.getLines().toString());
+    }
+
+    private Item menuItem(int id, String name, String category, long pence,
+    boolean special) {
+        Item item = ItemCodec.newItem(id, name, category, pence, special);
+        menu.put(id, item);
+        return item;
+    }
+
+    /**
+     * Starts an eat-in record of the given version, up to the item count.
+     */
+    private static BinaryRecordWriter header(int version, int count) {
+        BinaryRecordWriter out = new BinaryRecordWriter(64);
+        out.writeByte(version);
+        // Eat-in
+        out.writeByte(1);
+        out.writeVarInt(20);
+        out.writeVarInt(5);
+        out.writeEnum(OrderStatus.COMPLETED);
+        out.writeDateTime(ORDERED);
+        out.writeDateTime(UPDATED);
+        out.writeVarInt(count);
+        return out;
+    }
+}
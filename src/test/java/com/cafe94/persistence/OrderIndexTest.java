@@ -0,0 +1,91 @@
+package com.cafe94.persistence;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.cafe94.domain.EatIn;
+import com.cafe94.domain.Item;
+import com.cafe94.domain.Order;
+import com.cafe94.enums.OrderStatus;
+
+/**
+ * Tests for {@link OrderIndex}.
+ * @author Adigun Lateef
+ * @version 1.0
+ */
+class OrderIndexTest {
+
+    private static final LocalDateTime START =
+    LocalDateTime.of(2024, 3, 1, 8, 0);
+    private static final OrderStatus[] CYCLE = {OrderStatus.CONFIRMED,
+        OrderStatus.PREPARING, OrderStatus.READY, OrderStatus.COMPLETED};
+
+    private final Item latte =
+    ItemCodec.newItem(1, "Latte", "Drinks", 300, false);
+
+    @Test
+    void statusesAreMergedOldestFirst() {
+        OrderIndex index = new OrderIndex();
+        List<Order> orders = new ArrayList<>();
+        for (int id = 1; id <= 40; id++) {
+            // IDs and timestamps run in opposite directions
+            orders.add(order(id, CYCLE[id % CYCLE.length],
+            START.plusMinutes(100 - id)));
+        }
+        index.putAll(orders);
+
+        List<Integer> ids = ids(index.findByStatuses(EnumSet.of(
+        OrderStatus.CONFIRMED, OrderStatus.READY, OrderStatus.COMPLETED)));
+        List<Integer> expected = new ArrayList<>();
+        for (int id = 40; id >= 1; id--) {
+            if (CYCLE[id % CYCLE.length] != OrderStatus.PREPARING) {
+                expected.add(id);
+            }
+        }
+        assertEquals(expected, ids);
+    }
+
+    @Test
+    void equalTimestampsAreOrderedById() {
+        OrderIndex index = new OrderIndex();
+        index.put(order(3, OrderStatus.READY, START));
+        index.put(order(1, OrderStatus.CONFIRMED, START));
+        index.put(order(2, OrderStatus.READY, START));
+
+        assertEquals(List.of(1, 2, 3), ids(index.findByStatuses(
+        List.of(OrderStatus.READY, OrderStatus.CONFIRMED))));
+    }
+
+    @Test
+    void repeatedAndUnusedStatusesAddNothing() {
+        OrderIndex index = new OrderIndex();
+        index.put(order(1, OrderStatus.READY, START));
+
+        assertEquals(List.of(1), ids(index.findByStatuses(List.of(
+        OrderStatus.READY, OrderStatus.READY, OrderStatus.CANCELLED))));
+        assertEquals(List.of(), ids(index.findByStatuses(
+        Collections.emptyList())));
+    }
+
+    private Order order(int id, OrderStatus status,
+    LocalDateTime timestamp) {
+        Order order = new EatIn(id, List.of(latte), 5, 1, status);
+        order.restoreTimestamps(timestamp, timestamp);
+        return order;
+    }
+
+    private static List<Integer> ids(List<Order> orders) {
+        List<Integer> ids = new ArrayList<>();
+        for (Order order : orders) {
+            ids.add(order.getOrderID());
+        }
+        return ids;
+    }
+}
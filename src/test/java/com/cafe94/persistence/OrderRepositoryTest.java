@@ -0,0 +1,349 @@
+package com.cafe94.persistence;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.cafe94.domain.EatIn;
+import com.cafe94.domain.Item;
+import com.cafe94.domain.Order;
+import com.cafe94.enums.OrderStatus;
+
+/**
+ * Tests for {@link OrderRepository}: finished orders moved to the archive
+ * and read back together with the live ones, keyset pages over both,
+ * and conditional saves that refuse to overwrite a newer version, even
+ * when threads race on the same lock stripe.
+ * @author Adigun Lateef
+ * @version 1.0
+ */
+class OrderRepositoryTest {
+
+    private static final LocalDateTime START =
+    LocalDateTime.of(2024, 3, 1, 8, 0);
+    private static final StorageOptions ARCHIVING =
+    StorageOptions.journaled().withArchiveAfter(60);
+
+    @TempDir
+    File directory;
+
+    private final Item latte =
+    ItemCodec.newItem(1, "Latte", "Drinks", 300, false);
+
+    private OrderRepository orders;
+
+    @AfterEach
+    void close() {
+        if (orders != null) {
+            orders.close();
+        }
+    }
+
+    @Test
+    void archivedOrdersAreFoundAfterRestart() {
+        open();
+        orders.save(order(1, 7, OrderStatus.COMPLETED, START));
+        orders.save(order(2, 7, OrderStatus.CANCELLED, START.plusHours(1)));
+        orders.save(order(3, 8, OrderStatus.COMPLETED, START.plusHours(2)));
+        // Recent, so it stays live
+        orders.save(order(4, 7, OrderStatus.CONFIRMED,
+        LocalDateTime.now()));
+        assertEquals(3, orders.archiveFinishedOrders());
+
+        reopen();
+        assertEquals(OrderStatus.CANCELLED,
+        orders.findById(2).get().getStatus());
+        assertEquals("Latte",
+        orders.findById(3).get().getItems().get(0).getName());
+        assertEquals(OrderStatus.CONFIRMED,
+        orders.findById(4).get().getStatus());
+        // Newest first across live and archived orders
+        assertEquals(List.of(4, 2, 1), ids(orders.findByCustomerId(7)));
+        assertEquals(List.of(3), ids(orders.findByCustomerId(8)));
+
+        // New orders never reuse an archived ID
+        Order placed = orders.save(new EatIn(0, List.of(latte), 9, 1,
+        OrderStatus.CONFIRMED));
+        assertEquals(5, placed.getOrderID());
+    }
+
+    @Test
+    void liveCopyWinsOverArchivedCopyAfterCrash() throws IOException {
+        open();
+        Order order = orders.save(order(1, 7, OrderStatus.COMPLETED, START));
+        orders.save(order(2, 7, OrderStatus.COMPLETED, START.plusHours(1)));
+        orders.close();
+        // Stopped after archiving, before removing from the live store
+        OrderArchive archive = new OrderArchive(file("orders.dat"));
+        archive.load();
+        archive.archive(List.of(order));
+        archive.close();
+
+        open();
+        assertEquals(List.of(2, 1), ids(orders.findByCustomerId(7)));
+        assertEquals(2, orders.findAll().size());
+        assertTrue(orders.deleteById(1));
+
+        // The archived copy was dropped, so the deletion sticks
+        reopen();
+        assertFalse(orders.findById(1).isPresent());
+        assertEquals(List.of(2), ids(orders.findAll()));
+    }
+
+    @Test
+    void pagesMergeLiveAndArchivedOrdersOldestFirst() {
+        open();
+        List<Order> saved = new ArrayList<>();
+        for (int id = 1; id <= 12; id++) {
+            // Pairs share a timestamp; odd IDs finish and get archived
+            OrderStatus status = id % 2 == 1 ? OrderStatus.COMPLETED
+            : OrderStatus.CONFIRMED;
+            saved.add(orders.save(order(id, 7, status,
+            START.plusMinutes((id + 1) / 2))));
+        }
+        assertEquals(6, orders.archiveFinishedOrders());
+        reopen();
+
+        List<Integer> paged = pageThrough(5);
+        assertEquals(ids(saved), paged);
+        assertEquals(paged, ids(orders.streamAll()
+        .collect(Collectors.toList())));
+    }
+
+    @Test
+    void pagesSplitOrdersPlacedAtTheSameTime() {
+        open();
+        List<Order> saved = new ArrayList<>();
+        for (int id = 1; id <= 10; id++) {
+            saved.add(orders.save(order(id, 7, OrderStatus.CONFIRMED,
+            START)));
+        }
+        // Archived orders are indexed by whole second only
+        for (int id = 11; id <= 20; id++) {
+            saved.add(orders.save(order(id, 7, OrderStatus.COMPLETED,
+            START.plusSeconds(1).plusNanos((20 - id) * 1_000_000L))));
+        }
+        assertEquals(10, orders.archiveFinishedOrders());
+        saved.sort(OrderRepository.OLDEST_FIRST);
+
+        for (int limit = 1; limit <= 4; limit++) {
+            assertEquals(ids(saved), pageThrough(limit), "Limit " + limit);
+        }
+        assertEquals(List.of(4, 5), ids(orders.findPage(START, 3, 2)));
+    }
+
+    @Test
+    void updateAppliesTheChangeAndBumpsTheVersion() {
+        open();
+        Order saved = orders.save(order(1, 7, OrderStatus.CONFIRMED, START));
+        assertEquals(1, saved.getVersion());
+
+        Order updated = orders.update(1, 1, Order::startPreparation);
+        assertSame(saved, updated);
+        assertEquals(OrderStatus.PREPARING, updated.getStatus());
+        assertEquals(2, updated.getVersion());
+
+        reopen();
+        Order reloaded = orders.findById(1).get();
+        assertEquals(OrderStatus.PREPARING, reloaded.getStatus());
+        assertEquals(2, reloaded.getVersion());
+        assertEquals(3, orders.update(1, 2, Order::markAsReady).getVersion());
+    }
+
+    @Test
+    void staleUpdateIsRefusedWithoutRunningTheChange() {
+        open();
+        orders.save(order(1, 7, OrderStatus.CONFIRMED, START));
+        orders.update(1, 1, Order::startPreparation);
+        AtomicInteger runs = new AtomicInteger();
+
+        StaleRecordException stale = assertThrows(
+        StaleRecordException.class, () -> orders.update(1, 1,
+        order -> runs.incrementAndGet()));
+        assertEquals("Order", stale.getRecordType());
+        assertEquals(1, stale.getRecordId());
+        assertEquals(1, stale.getExpectedVersion());
+        assertEquals(2, stale.getActualVersion());
+        assertEquals(0, runs.get());
+
+        reopen();
+        Order reloaded = orders.findById(1).get();
+        assertEquals(OrderStatus.PREPARING, reloaded.getStatus());
+        assertEquals(2, reloaded.getVersion());
+        assertThrows(NoSuchElementException.class, () ->
+        orders.update(2, TransactionParticipant.ANY_VERSION,
+        order -> runs.incrementAndGet()));
+        assertEquals(0, runs.get());
+    }
+
+    @Test
+    void saveIfVersionOnlyOverwritesTheVersionRead() {
+        open();
+        // Nothing is stored yet, so a new order is at version 0
+        assertEquals(1, orders.saveIfVersion(order(1, 7,
+        OrderStatus.CONFIRMED, START), 0).getVersion());
+        assertThrows(StaleRecordException.class, () -> orders.saveIfVersion(
+        order(2, 7, OrderStatus.CONFIRMED, START), 1));
+        assertFalse(orders.findById(2).isPresent());
+
+        // Two copies read at version 1: the first save wins
+        Order first = order(1, 7, OrderStatus.PREPARING, START);
+        Order second = order(1, 7, OrderStatus.CANCELLED, START);
+        assertEquals(2, orders.saveIfVersion(first, 1).getVersion());
+        StaleRecordException stale = assertThrows(
+        StaleRecordException.class, () -> orders.saveIfVersion(second, 1));
+        assertEquals(2, stale.getActualVersion());
+
+        reopen();
+        assertEquals(OrderStatus.PREPARING,
+        orders.findById(1).get().getStatus());
+        // An unconditional save overwrites whatever is stored
+        assertEquals(3, orders.save(second).getVersion());
+        assertEquals(OrderStatus.CANCELLED,
+        orders.findById(1).get().getStatus());
+    }
+
+    @Test
+    void archivedOrdersKeepTheirVersion() {
+        open();
+        orders.save(order(1, 7, OrderStatus.COMPLETED, START));
+        orders.update(1, 1, order -> { });
+        assertEquals(1, orders.archiveFinishedOrders());
+        reopen();
+
+        assertEquals(2, orders.findById(1).get().getVersion());
+        assertThrows(StaleRecordException.class, () -> orders.update(1, 1,
+        order -> { }));
+        assertThrows(StaleRecordException.class, () -> orders.saveIfVersion(
+        order(1, 7, OrderStatus.COMPLETED, START), 1));
+        assertEquals(3, orders.update(1, 2, order -> { }).getVersion());
+
+        reopen();
+        assertEquals(List.of(1), ids(orders.findAll()));
+        assertEquals(3, orders.findById(1).get().getVersion());
+    }
+
+    @Test
+    void concurrentUpdatesAreNeverLost() throws Exception {
+        // Kept in memory, so threads race instead of waiting on the disk
+        orders = new OrderRepository(file("orders.dat").getPath(),
+        StorageOptions.memory());
+        // More orders than stripes, so some orders share a stripe
+        int orderCount = 100;
+        int threads = 8;
+        int rounds = 200;
+        for (int id = 1; id <= orderCount; id++) {
+            orders.save(order(id, 7, OrderStatus.CONFIRMED, START));
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> workers = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                boolean conditional = t % 2 == 0;
+                workers.add(pool.submit(() -> {
+                    for (int round = 0; round < rounds; round++) {
+                        for (int id = 1; id <= orderCount; id++) {
+                            if (conditional) {
+                                updateWithRetry(id);
+                            } else {
+                                orders.update(id,
+                                TransactionParticipant.ANY_VERSION,
+                                order -> { });
+                            }
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> worker : workers) {
+                worker.get();
+            }
+        } finally {
+            pool.shutdown();
+        }
+
+        for (int id = 1; id <= orderCount; id++) {
+            // Every update bumped the version exactly once
+            assertEquals(1 + threads * rounds,
+            orders.findById(id).get().getVersion(), "Order " + id);
+        }
+    }
+
+    /**
+     * Updates an order at the version last read, reading it again after
+     * each conflict.
+     */
+    private void updateWithRetry(int orderId) {
+        while (true) {
+            long version = orders.findById(orderId).get().getVersion();
+            try {
+                orders.update(orderId, version, order -> { });
+                return;
+            } catch (StaleRecordException e) {
+                // Someone else updated it first
+            }
+        }
+    }
+
+    /**
+     * @return The IDs of every order, read one keyset page at a time.
+     */
+    private List<Integer> pageThrough(int limit) {
+        List<Integer> paged = new ArrayList<>();
+        Order last = null;
+        while (true) {
+            List<Order> page = last == null ? orders.findPage(null, 0, limit)
+            : orders.findPage(last.getOrderTimestamp(), last.getOrderID(),
+            limit);
+            if (page.isEmpty()) {
+                return paged;
+            }
+            assertTrue(page.size() <= limit);
+            paged.addAll(ids(page));
+            last = page.get(page.size() - 1);
+        }
+    }
+
+    private void open() {
+        orders = new OrderRepository(file("orders.dat").getPath(), ARCHIVING);
+    }
+
+    private void reopen() {
+        orders.close();
+        open();
+    }
+
+    private Order order(int id, int customerId, OrderStatus status,
+    LocalDateTime timestamp) {
+        Order order = new EatIn(id, List.of(latte), customerId, 1, status);
+        order.restoreTimestamps(timestamp, timestamp);
+        return order;
+    }
+
+    private File file(String name) {
+        return new File(directory, name);
+    }
+
+    private static List<Integer> ids(List<Order> orders) {
+        return orders.stream().map(Order::getOrderID)
+        .collect(Collectors.toList());
+    }
+}
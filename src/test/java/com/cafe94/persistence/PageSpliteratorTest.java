@@ -0,0 +1,79 @@
+package com.cafe94.persistence;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for {@link PageSpliterator}: every element is visited once, each
+ * page is fetched after the last element of the one before, and no page
+ * is fetched past a short one.
+ * @author Adigun Lateef
+ * @version 1.0
+ */
+class PageSpliteratorTest {
+
+    private final List<Integer> cursors = new ArrayList<>();
+
+    @Test
+    void everyElementIsVisitedOnceInOrder() {
+        for (int size = 0; size <= 12; size++) {
+            for (int pageSize = 1; pageSize <= 5; pageSize++) {
+                cursors.clear();
+                List<Integer> elements = range(size);
+                assertEquals(elements, stream(elements, pageSize)
+                .collect(Collectors.toList()),
+                size + " elements, pages of " + pageSize);
+                // A full last page costs one more, empty, fetch
+                assertEquals(size / pageSize + 1, cursors.size());
+            }
+        }
+    }
+
+    @Test
+    void pagesStartAfterTheLastElementSeen() {
+        stream(range(7), 3).forEach(element -> { });
+
+        assertEquals(List.of(-1, 2, 5), cursors);
+    }
+
+    @Test
+    void pagesAreOnlyFetchedWhenNeeded() {
+        assertEquals(List.of(0, 1, 2), stream(range(100), 2).limit(3)
+        .collect(Collectors.toList()));
+        assertEquals(List.of(-1, 1), cursors);
+    }
+
+    @Test
+    void pageSizeMustBePositive() {
+        assertThrows(IllegalArgumentException.class, () ->
+        new PageSpliterator<Integer>(0, (last, limit) -> List.of()));
+        assertThrows(NullPointerException.class, () ->
+        new PageSpliterator<Integer>(1, null));
+    }
+
+    /**
+     * Streams a sorted list through a keyset query over it, recording the
+     * cursor of every fetch, or -1 for the first.
+     */
+    private Stream<Integer> stream(List<Integer> elements, int pageSize) {
+        return StreamSupport.stream(new PageSpliterator<Integer>(pageSize,
+        (last, limit) -> {
+            cursors.add(last == null ? -1 : last);
+            return elements.stream().filter(element -> last == null
+            || element > last).limit(limit).collect(Collectors.toList());
+        }), false);
+    }
+
+    private static List<Integer> range(int size) {
+        return IntStream.range(0, size).boxed().collect(Collectors.toList());
+    }
+}
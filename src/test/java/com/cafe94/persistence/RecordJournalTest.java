@@ -0,0 +1,237 @@
+package com.cafe94.persistence;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests for {@link RecordJournal}: replay, torn tails, checkpoints and
+ * group commit.
+ * @author Adigun Lateef
+ * @version 1.0
+ */
+class RecordJournalTest {
+
+    @TempDir
+    File directory;
+
+    @Test
+    void replaysRecordsInOrder() throws IOException {
+        File dataFile = new File(directory, "orders.dat");
+        try (RecordJournal journal = new RecordJournal(dataFile, 0)) {
+            assertEquals(1, journal.append(RecordJournal.OP_PUT, 7,
+            bytes("first")));
+            assertEquals(2, journal.append(RecordJournal.OP_DELETE, 7,
+            new byte[0]));
+            assertEquals(3, journal.append(RecordJournal.OP_PUT, 8,
+            bytes("second")));
+            journal.awaitDurable();
+        }
+
+        Recorder recorder = new Recorder();
+        RecordJournal reopened = new RecordJournal(dataFile, 0);
+        assertEquals(3, reopened.replay(recorder, 0));
+        assertEquals(List.of("put 1 7 first", "delete 2 7",
+        "put 3 8 second"), recorder.events);
+        assertEquals(3, reopened.getLastSequence());
+        assertEquals(3, reopened.getLiveRecords());
+    }
+
+    @Test
+    void truncatedWriteIsDroppedAndCutFromTheSegment() throws IOException {
+        File dataFile = new File(directory, "orders.dat");
+        try (RecordJournal journal = new RecordJournal(dataFile, 0)) {
+            journal.append(RecordJournal.OP_PUT, 1, bytes("kept"));
+            journal.append(RecordJournal.OP_PUT, 2, bytes("torn"));
+        }
+        File segment = onlySegment(dataFile);
+        long intactLength = segment.length() - recordLength("torn");
+        try (RandomAccessFile raf = new RandomAccessFile(segment, "rw")) {
+            // Cut the last record off part way through its payload
+            raf.setLength(segment.length() - 2);
+        }
+
+        Recorder recorder = new Recorder();
+        RecordJournal reopened = new RecordJournal(dataFile, 0);
+        assertEquals(1, reopened.replay(recorder, 0));
+        assertEquals(List.of("put 1 1 kept"), recorder.events);
+        assertEquals(intactLength, segment.length());
+
+        // The next record must follow the intact ones and replay cleanly
+        reopened.append(RecordJournal.OP_PUT, 3, bytes("after"));
+        reopened.close();
+        Recorder again = new Recorder();
+        new RecordJournal(dataFile, 0).replay(again, 0);
+        assertEquals(List.of("put 1 1 kept", "put 2 3 after"),
+        again.events);
+    }
+
+    @Test
+    void corruptRecordStopsReplayOfItsSegment() throws IOException {
+        File dataFile = new File(directory, "orders.dat");
+        try (RecordJournal journal = new RecordJournal(dataFile, 0)) {
+            journal.append(RecordJournal.OP_PUT, 1, bytes("good"));
+            journal.append(RecordJournal.OP_PUT, 2, bytes("flip"));
+            journal.append(RecordJournal.OP_PUT, 3, bytes("lost"));
+        }
+        File segment = onlySegment(dataFile);
+        long secondPayload = segment.length() - recordLength("lost") - 4;
+        try (RandomAccessFile raf = new RandomAccessFile(segment, "rw")) {
+            raf.seek(secondPayload);
+            raf.write('X');
+        }
+
+        Recorder recorder = new Recorder();
+        assertEquals(1, new RecordJournal(dataFile, 0).replay(recorder, 0));
+        assertEquals(List.of("put 1 1 good"), recorder.events);
+    }
+
+    @Test
+    void coveredRecordsAreSkipped() throws IOException {
+        File dataFile = new File(directory, "orders.dat");
+        try (RecordJournal journal = new RecordJournal(dataFile, 0)) {
+            for (int id = 1; id <= 4; id++) {
+                journal.append(RecordJournal.OP_PUT, id, bytes("r" + id));
+            }
+        }
+
+        Recorder recorder = new Recorder();
+        RecordJournal reopened = new RecordJournal(dataFile, 0);
+        assertEquals(2, reopened.replay(recorder, 2));
+        assertEquals(List.of("put 3 3 r3", "put 4 4 r4"), recorder.events);
+        assertEquals(5, reopened.append(RecordJournal.OP_PUT, 5,
+        bytes("r5")));
+    }
+
+    @Test
+    void discardThroughDeletesOnlyRolledSegments() throws IOException {
+        File dataFile = new File(directory, "orders.dat");
+        RecordJournal journal = new RecordJournal(dataFile, 0);
+        journal.append(RecordJournal.OP_PUT, 1, bytes("old"));
+        RecordJournal.Checkpoint checkpoint = journal.roll();
+        assertEquals(1, checkpoint.getLastSequence());
+        assertEquals(1, checkpoint.getRecords());
+        journal.append(RecordJournal.OP_PUT, 2, bytes("new"));
+
+        journal.discardThrough(checkpoint);
+        assertEquals(1, journal.getLiveRecords());
+        journal.close();
+
+        Recorder recorder = new Recorder();
+        new RecordJournal(dataFile, 0).replay(recorder, 0);
+        assertEquals(List.of("put 2 2 new"), recorder.events);
+    }
+
+    @Test
+    void groupCommitMakesEveryWriterDurable() throws Exception {
+        File dataFile = new File(directory, "orders.dat");
+        int writers = 8;
+        int recordsEach = 50;
+        RecordJournal journal = new RecordJournal(dataFile, 200);
+        ExecutorService pool = Executors.newFixedThreadPool(writers);
+        try {
+            List<Future<?>> results = new ArrayList<>();
+            for (int w = 0; w < writers; w++) {
+                int base = w * recordsEach;
+                results.add(pool.submit(() -> {
+                    for (int i = 1; i <= recordsEach; i++) {
+                        journal.append(RecordJournal.OP_PUT, base + i,
+                        bytes("w" + (base + i)));
+                        journal.awaitDurable();
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> result : results) {
+                result.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        journal.close();
+
+        Recorder recorder = new Recorder();
+        assertEquals(writers * recordsEach,
+        new RecordJournal(dataFile, 0).replay(recorder, 0));
+        boolean[] seen = new boolean[writers * recordsEach + 1];
+        for (int id : recorder.ids) {
+            assertFalse(seen[id], "Duplicate record " + id);
+            seen[id] = true;
+        }
+        assertArrayEquals(new long[0], recorder.outOfOrder());
+    }
+
+    @Test
+    void awaitDurableWithNothingAppendedReturns() throws IOException {
+        RecordJournal journal = new RecordJournal(
+        new File(directory, "empty.dat"), 0);
+        journal.awaitDurable();
+        assertEquals(0, journal.getLastSequence());
+    }
+
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return The bytes one put record with this payload takes on disk.
+     */
+    private static long recordLength(String payload) {
+        // length + crc + op + sequence + id + payload
+        return 4 + 4 + 1 + 8 + 4 + bytes(payload).length;
+    }
+
+    private File onlySegment(File dataFile) {
+        File[] segments = directory.listFiles((dir, name) ->
+        name.startsWith(dataFile.getName() + ".") && name.endsWith(".log"));
+        assertEquals(1, segments.length);
+        return segments[0];
+    }
+
+    /**
+     * Collects replayed records as readable events.
+     */
+    private static final class Recorder implements RecordJournal.Visitor {
+        private final List<String> events = new ArrayList<>();
+        private final List<Integer> ids = new ArrayList<>();
+        private final List<Long> sequences = new ArrayList<>();
+
+        @Override
+        public void onPut(long sequence, int id, byte[] payload) {
+            events.add("put " + sequence + " " + id + " "
+            + new String(payload, StandardCharsets.UTF_8));
+            ids.add(id);
+            sequences.add(sequence);
+        }
+
+        @Override
+        public void onDelete(long sequence, int id) {
+            events.add("delete " + sequence + " " + id);
+            ids.add(id);
+            sequences.add(sequence);
+        }
+
+        /**
+         * @return Sequences that did not follow their predecessor.
+         */
+        private long[] outOfOrder() {
+            return sequences.stream().filter(s ->
+            s != sequences.indexOf(s) + 1).mapToLong(Long::longValue)
+            .toArray();
+        }
+    }
+}
@@ -0,0 +1,241 @@
+package com.cafe94.persistence;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests for {@link RecordStore}: journal replay over the data file,
+ * compaction and the recovery checks used by transactions.
+ * @author Adigun Lateef
+ * @version 1.0
+ */
+class RecordStoreTest {
+
+    @TempDir
+    File directory;
+
+    @Test
+    void journaledChangesSurviveReopen() throws IOException {
+        Map<Integer, String> records = new ConcurrentHashMap<>();
+        try (RecordStore<String> store = open(records,
+        StorageOptions.journaled())) {
+            put(store, records, 1, "one");
+            put(store, records, 2, "two");
+            records.remove(1);
+            store.delete(1);
+            store.awaitDurable();
+        }
+
+        Map<Integer, String> reloaded = new ConcurrentHashMap<>();
+        open(reloaded, StorageOptions.journaled()).close();
+        assertEquals(Map.of(2, "two"), reloaded);
+    }
+
+    @Test
+    void compactionFoldsTheJournalIntoTheDataFile() throws IOException {
+        Map<Integer, String> records = new ConcurrentHashMap<>();
+        try (RecordStore<String> store = open(records,
+        StorageOptions.journaled())) {
+            put(store, records, 1, "one");
+            put(store, records, 2, "two");
+            assertTrue(store.compact());
+            assertEquals(0, segments().length);
+            assertTrue(dataFile().length() > 0);
+            put(store, records, 3, "three");
+        }
+
+        Map<Integer, String> reloaded = new ConcurrentHashMap<>();
+        open(reloaded, StorageOptions.journaled()).close();
+        assertEquals(Map.of(1, "one", 2, "two", 3, "three"), reloaded);
+    }
+
+    @Test
+    void compactIfNeededWaitsForTheThreshold() throws IOException {
+        Map<Integer, String> records = new ConcurrentHashMap<>();
+        StorageOptions options = StorageOptions.journaled()
+        .withCompactionThresholds(3, Long.MAX_VALUE);
+        try (RecordStore<String> store = open(records, options)) {
+            put(store, records, 1, "one");
+            put(store, records, 2, "two");
+            assertFalse(store.compactIfNeeded());
+            put(store, records, 3, "three");
+            assertTrue(store.compactIfNeeded());
+            assertEquals(0, segments().length);
+        }
+    }
+
+    @Test
+    void segmentLeftByInterruptedCompactionIsNotReplayed()
+    throws IOException {
+        Map<Integer, String> records = new ConcurrentHashMap<>();
+        File leftover = new File(directory, "leftover");
+        try (RecordStore<String> store = open(records,
+        StorageOptions.journaled())) {
+            put(store, records, 1, "old");
+            File segment = segments()[0];
+            Files.copy(segment.toPath(), leftover.toPath());
+            put(store, records, 1, "new");
+            assertTrue(store.compact());
+            // As if the crash came before the segment was deleted
+            Files.move(leftover.toPath(), segment.toPath(),
+            StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        Map<Integer, String> reloaded = new ConcurrentHashMap<>();
+        open(reloaded, StorageOptions.journaled()).close();
+        assertEquals(Map.of(1, "new"), reloaded);
+    }
+
+    @Test
+    void coversTellsWhetherALoggedChangeReachedTheStore()
+    throws IOException {
+        Map<Integer, String> records = new ConcurrentHashMap<>();
+        long beforeReplayed;
+        try (RecordStore<String> store = open(records,
+        StorageOptions.journaled())) {
+            put(store, records, 1, "one");
+            put(store, records, 2, "two");
+            store.compact();
+            beforeReplayed = store.position();
+            put(store, records, 5, "five");
+        }
+
+        Map<Integer, String> reloaded = new ConcurrentHashMap<>();
+        try (RecordStore<String> store = open(reloaded,
+        StorageOptions.journaled())) {
+            // In the data file
+            assertTrue(store.covers(1, beforeReplayed - 1));
+            // Replayed from the journal
+            assertTrue(store.covers(5, beforeReplayed));
+            // Never written after the position
+            assertFalse(store.covers(6, beforeReplayed));
+            store.endRecovery();
+            assertFalse(store.covers(5, beforeReplayed));
+        }
+    }
+
+    @Test
+    void snapshotModeRewritesTheDataFile() throws IOException {
+        Map<Integer, String> records = new ConcurrentHashMap<>();
+        try (RecordStore<String> store = open(records,
+        StorageOptions.snapshot())) {
+            put(store, records, 1, "one");
+            put(store, records, 2, "two");
+            assertEquals(0, segments().length);
+        }
+
+        Map<Integer, String> reloaded = new ConcurrentHashMap<>();
+        open(reloaded, StorageOptions.snapshot()).close();
+        assertEquals(Map.of(1, "one", 2, "two"), reloaded);
+    }
+
+    @Test
+    void writeBehindPersistsDirtyRecordsOnClose() throws IOException {
+        Map<Integer, String> records = new ConcurrentHashMap<>();
+        StorageOptions options = StorageOptions.journaled()
+        .withWriteBehind(50);
+        try (RecordStore<String> store = open(records, options)) {
+            put(store, records, 1, "one");
+            put(store, records, 1, "uno");
+        }
+
+        Map<Integer, String> reloaded = new ConcurrentHashMap<>();
+        open(reloaded, StorageOptions.journaled()).close();
+        assertEquals(Map.of(1, "uno"), reloaded);
+    }
+
+    @Test
+    void unreadableRecordIsSkippedAndKeptInTheJournal() throws IOException {
+        Map<Integer, String> records = new ConcurrentHashMap<>();
+        open(records, StorageOptions.journaled()).close();
+        try (RecordJournal journal = new RecordJournal(dataFile(), 0)) {
+            journal.replay(new RecordJournal.Visitor() {
+                @Override
+                public void onPut(long sequence, int id, byte[] payload) {
+                }
+
+                @Override
+                public void onDelete(long sequence, int id) {
+                }
+            }, 0);
+            JavaSerializationCodec<String> codec =
+            new JavaSerializationCodec<>(String.class);
+            journal.append(RecordJournal.OP_PUT, 1, codec.encode("one"));
+            journal.append(RecordJournal.OP_PUT, 2,
+            "not a record".getBytes(StandardCharsets.UTF_8));
+            journal.append(RecordJournal.OP_PUT, 3, codec.encode("three"));
+            journal.awaitDurable();
+        }
+
+        Map<Integer, String> reloaded = new ConcurrentHashMap<>();
+        try (RecordStore<String> store = open(reloaded,
+        StorageOptions.journaled().withCompactionThresholds(1, 1))) {
+            // Replay carried on past the unreadable record
+            assertEquals(Map.of(1, "one", 3, "three"), reloaded);
+            put(store, reloaded, 4, "four");
+            assertFalse(store.compactIfNeeded());
+            assertFalse(store.compact());
+        }
+        boolean kept = false;
+        for (File segment : segments()) {
+            kept |= new String(Files.readAllBytes(segment.toPath()),
+            StandardCharsets.UTF_8).contains("not a record");
+        }
+        assertTrue(kept);
+    }
+
+    @Test
+    void unreadableSnapshotIsCopiedBeforeItIsRewritten() throws IOException {
+        byte[] garbage = "not a data file".getBytes(StandardCharsets.UTF_8);
+        Files.write(dataFile().toPath(), garbage);
+
+        Map<Integer, String> records = new ConcurrentHashMap<>();
+        try (RecordStore<String> store = open(records,
+        StorageOptions.snapshot())) {
+            assertTrue(records.isEmpty());
+            put(store, records, 1, "one");
+        }
+        assertNotEquals(garbage.length, dataFile().length());
+        File[] copies = directory.listFiles((dir, name) ->
+        name.startsWith("records.dat.unreadable-"));
+        assertEquals(1, copies.length);
+        assertArrayEquals(garbage, Files.readAllBytes(copies[0].toPath()));
+    }
+
+    private RecordStore<String> open(Map<Integer, String> records,
+    StorageOptions options) {
+        RecordStore<String> store = new RecordStore<>(dataFile().getPath(),
+        "test record", String.class, records, options, null);
+        store.load();
+        return store;
+    }
+
+    private static void put(RecordStore<String> store,
+    Map<Integer, String> records, int id, String record) {
+        records.put(id, record);
+        store.put(id, record);
+    }
+
+    private File dataFile() {
+        return new File(directory, "records.dat");
+    }
+
+    private File[] segments() {
+        return directory.listFiles((dir, name) ->
+        name.startsWith("records.dat.") && name.endsWith(".log"));
+    }
+}
@@ -0,0 +1,167 @@
+package com.cafe94.persistence;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.IntFunction;
+
+import com.cafe94.domain.Booking;
+import com.cafe94.domain.EatIn;
+import com.cafe94.domain.Item;
+import com.cafe94.domain.Order;
+import com.cafe94.enums.BookingStatus;
+import com.cafe94.enums.OrderStatus;
+import com.cafe94.util.primitive.IntObjectConcurrentMap;
+
+/**
+ * Measures how long the order and booking data files take to load at
+ * startup as the number of decoding threads grows. It writes synthetic
+ * binary data files to a temporary directory, then loads each one with
+ * 1, 2, 4, ... threads up to the number of available processors and
+ * prints the best time of several runs and the speedup over one thread.
+ * <p>
+ * Usage: {@code mvn -Pbenchmark test-compile exec:java
+ * [-Dbenchmark.args="records runs"]}, by default 200000 records of each
+ * type and 5 runs. It lives with the tests so it is not shipped in the
+ * application jar.
+ * @author Adigun Lateef
+ * @version 1.0
+ */
+public final class StartupBenchmark {
+
+    private static final int DEFAULT_RECORDS = 200_000;
+    private static final int DEFAULT_RUNS = 5;
+    private static final int MENU_SIZE = 40;
+
+    private StartupBenchmark() {
+    }
+
+    /**
+     * Runs the benchmark.
+     *
+     * @param args Optional record count and number of runs
+     * @throws IOException if the temporary directory cannot be used.
+     */
+    public static void main(String[] args) throws IOException {
+        int count = args.length > 0 ? Integer.parseInt(args[0])
+        : DEFAULT_RECORDS;
+        int runs = args.length > 1 ? Integer.parseInt(args[1])
+        : DEFAULT_RUNS;
+        File directory = Files.createTempDirectory("cafe94-startup").toFile();
+        try {
+            Map<Integer, Item> menu = new ConcurrentHashMap<>();
+            for (int id = 1; id <= MENU_SIZE; id++) {
+                menu.put(id, new Item(id, "Item " + id, "Category "
+                + (id % 5), 2.5 + id % 9, id % 7 == 0));
+            }
+            IntFunction<Item> lookup = menu::get;
+
+            Map<Integer, Order> orders = new IntObjectConcurrentMap<>();
+            for (int id = 1; id <= count; id++) {
+                List<Item> items = new ArrayList<>();
+                for (int line = 0; line < 1 + id % 4; line++) {
+                    items.add(menu.get(1 + (id + line * 7) % MENU_SIZE));
+                }
+                orders.put(id, new EatIn(id, items, 1 + id % 500,
+                1 + id % 20, OrderStatus.COMPLETED));
+            }
+            Map<Integer, Booking> bookings =
+            new IntObjectConcurrentMap<>();
+            LocalDate firstDay = LocalDate.now();
+            for (int id = 1; id <= count; id++) {
+                bookings.put(id, new Booking(id, 1 + id % 500,
+                firstDay.plusDays(id % 365), LocalTime.of(12 + id % 10, 0),
+                1 + id % 8, BookingStatus.CONFIRMED));
+            }
+
+            System.out.println("Processors: "
+            + Runtime.getRuntime().availableProcessors() + ", records: "
+            + count + ", runs: " + runs);
+            benchmark(new File(directory, "orders.dat"), "order", Order.class,
+            orders, () -> new OrderCodec(lookup), runs);
+            benchmark(new File(directory, "bookings.dat"), "booking",
+            Booking.class, bookings, BookingCodec::new, runs);
+        } finally {
+            File[] files = directory.listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    Files.deleteIfExists(file.toPath());
+                }
+            }
+            Files.deleteIfExists(directory.toPath());
+        }
+    }
+
+    /**
+     * Supplies a fresh codec for each store.
+     */
+    private interface CodecFactory<V> {
+        RecordCodec<V> create();
+    }
+
+    private static <V extends Serializable> void benchmark(File file,
+    String label, Class<V> type, Map<Integer, V> records,
+    CodecFactory<V> codecs, int runs) throws IOException {
+        StorageOptions options = StorageOptions.snapshot()
+        .withCodec(StorageOptions.Codec.BINARY);
+        try (RecordStore<V> writer = new RecordStore<>(file.getPath(), label,
+        type, records, options, codecs.create())) {
+            if (!writer.compact()) {
+                throw new IOException("Could not write " + file);
+            }
+        }
+        System.out.println();
+        System.out.println(file.getName() + " (" + file.length() / 1024
+        + " KiB)");
+        System.out.println("threads      ms   speedup");
+        long single = 0;
+        for (int threads : threadCounts()) {
+            long best = Long.MAX_VALUE;
+            // One extra run warms up the codec before timing
+            for (int run = 0; run <= runs; run++) {
+                Map<Integer, V> loaded = new IntObjectConcurrentMap<>();
+                long start = System.nanoTime();
+                try (RecordStore<V> reader = new RecordStore<>(
+                file.getPath(), label, type, loaded,
+                options.withLoadParallelism(threads), codecs.create())) {
+                    reader.load();
+                }
+                long elapsed = System.nanoTime() - start;
+                if (loaded.size() != records.size()) {
+                    throw new IOException("Loaded " + loaded.size() + " of "
+                    + records.size() + " " + label + " records");
+                }
+                if (run > 0) {
+                    best = Math.min(best, elapsed);
+                }
+            }
+            if (threads == 1) {
+                single = best;
+            }
+            System.out.println(String.format("%7d %7.1f %8.2fx", threads,
+            best / 1e6, (double) single / best));
+        }
+    }
+
+    /**
+     * @return Powers of two up to the processor count, and the count.
+     */
+    private static List<Integer> threadCounts() {
+        int processors = Runtime.getRuntime().availableProcessors();
+        TreeSet<Integer> counts = new TreeSet<>(Arrays.asList(1,
+        processors));
+        for (int threads = 2; threads < processors; threads *= 2) {
+            counts.add(threads);
+        }
+        return new ArrayList<>(counts);
+    }
+}
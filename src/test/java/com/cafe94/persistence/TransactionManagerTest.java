@@ -0,0 +1,186 @@
+package com.cafe94.persistence;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.cafe94.domain.Booking;
+import com.cafe94.domain.EatIn;
+import com.cafe94.domain.Item;
+import com.cafe94.domain.Order;
+import com.cafe94.enums.BookingStatus;
+import com.cafe94.enums.OrderStatus;
+
+/**
+ * Tests for {@link TransactionManager}: redo of logged saves after a
+ * crash and stale updates. A crash is simulated by reopening the files
+ * without closing anything.
+ * @author Adigun Lateef
+ * @version 1.0
+ */
+class TransactionManagerTest {
+
+    @TempDir
+    File directory;
+
+    private final Item latte =
+    ItemCodec.newItem(1, "Latte", "Drinks", 300, false);
+
+    private OrderRepository orders;
+    private TableRepository tables;
+    private BookingRepository bookings;
+    private TransactionManager transactions;
+
+    @Test
+    void saveTheStoreLostIsRedone() {
+        open();
+        IUnitOfWork unit = transactions.begin();
+        Order order = newOrder();
+        unit.save(order);
+        unit.commit();
+        int orderId = unit.<Order>getSaved(order).getOrderID();
+
+        // The transaction log is durable, the order journal was lost
+        for (File segment : segments("orders.dat")) {
+            assertTrue(segment.delete());
+        }
+        open();
+        assertTrue(orders.findById(orderId).isPresent());
+        assertEquals(0, segments("transactions.log").length);
+    }
+
+    @Test
+    void saveTheStoreAlreadyHasIsNotRedone() {
+        open();
+        Order order = orders.save(newOrder());
+        IUnitOfWork unit = transactions.begin();
+        unit.update(order, order.getVersion(), Order::confirmOrder);
+        unit.commit();
+        order = unit.getSaved(order);
+        // A later plain save the redo must not roll back
+        order.startPreparation();
+        orders.save(order);
+
+        open();
+        Order recovered = orders.findById(order.getOrderID()).get();
+        assertEquals(OrderStatus.PREPARING, recovered.getStatus());
+        assertEquals(3, recovered.getVersion());
+    }
+
+    @Test
+    void staleUpdateRunsNoChange() {
+        open();
+        Order order = orders.save(newOrder());
+        Booking booking = bookings.save(new Booking(0, 9,
+        LocalDate.of(2024, 5, 17), LocalTime.of(19, 0), 2,
+        BookingStatus.PENDING_APPROVAL));
+
+        IUnitOfWork unit = transactions.begin();
+        unit.update(order, order.getVersion(), Order::confirmOrder);
+        Booking brandNew = new Booking(0, 9, LocalDate.of(2024, 5, 18),
+        LocalTime.of(12, 0), 4, BookingStatus.PENDING_APPROVAL);
+        unit.save(brandNew);
+        unit.update(booking, booking.getVersion() + 1,
+        b -> b.assignTable(3));
+        assertThrows(StaleRecordException.class, unit::commit);
+
+        assertEquals(OrderStatus.PENDING_CONFIRMATION, order.getStatus());
+        assertEquals(1, order.getVersion());
+        assertEquals(0, brandNew.getBookingID());
+        assertEquals(0, booking.getTableNumber());
+        assertEquals(1, bookings.findAll().size());
+
+        open();
+        assertEquals(OrderStatus.PENDING_CONFIRMATION,
+        orders.findById(order.getOrderID()).get().getStatus());
+        assertFalse(bookings.findAll().isEmpty());
+    }
+
+    @Test
+    void throwingChangeLeavesEarlierChangesUnapplied() {
+        open();
+        Order order = orders.save(newOrder());
+        Booking booking = bookings.save(new Booking(0, 9,
+        LocalDate.of(2024, 5, 17), LocalTime.of(19, 0), 2,
+        BookingStatus.PENDING_APPROVAL));
+
+        IUnitOfWork unit = transactions.begin();
+        unit.update(order, order.getVersion(), Order::confirmOrder);
+        Booking brandNew = new Booking(0, 9, LocalDate.of(2024, 5, 18),
+        LocalTime.of(12, 0), 4, BookingStatus.PENDING_APPROVAL);
+        unit.save(brandNew);
+        unit.update(booking, booking.getVersion(), b -> {
+            throw new IllegalStateException("No table fits");
+        });
+        assertThrows(IllegalStateException.class, unit::commit);
+
+        Order stored = orders.findById(order.getOrderID()).get();
+        assertSame(order, stored);
+        assertEquals(OrderStatus.PENDING_CONFIRMATION, stored.getStatus());
+        assertEquals(1, stored.getVersion());
+        assertEquals(0, brandNew.getBookingID());
+        assertEquals(1, bookings.findAll().size());
+
+        open();
+        assertEquals(OrderStatus.PENDING_CONFIRMATION,
+        orders.findById(order.getOrderID()).get().getStatus());
+        assertEquals(1, bookings.findAll().size());
+    }
+
+    @Test
+    void commitSavesCopiesOfTheStagedRecords() {
+        open();
+        Order order = orders.save(newOrder());
+
+        IUnitOfWork unit = transactions.begin();
+        unit.update(order, order.getVersion(), Order::confirmOrder);
+        unit.commit();
+
+        Order saved = unit.getSaved(order);
+        assertNotSame(order, saved);
+        assertSame(saved, orders.findById(order.getOrderID()).get());
+        assertEquals(OrderStatus.CONFIRMED, saved.getStatus());
+        assertEquals(2, saved.getVersion());
+        assertEquals(OrderStatus.PENDING_CONFIRMATION, order.getStatus());
+        assertEquals(1, order.getVersion());
+    }
+
+    /**
+     * Opens the repositories and the manager, recovering from the log.
+     */
+    private void open() {
+        StorageOptions options = StorageOptions.journaled();
+        orders = new OrderRepository(path("orders.dat"), options);
+        tables = new TableRepository(path("tables.dat"),
+        Collections.emptyList(), options);
+        bookings = new BookingRepository(path("bookings.dat"), options);
+        transactions = new TransactionManager(path("transactions.log"),
+        orders, tables, bookings);
+    }
+
+    private Order newOrder() {
+        return new EatIn(0, List.of(latte, latte), 5, 1,
+        OrderStatus.PENDING_CONFIRMATION);
+    }
+
+    private String path(String name) {
+        return new File(directory, name).getPath();
+    }
+
+    private File[] segments(String dataFile) {
+        return directory.listFiles((dir, name) ->
+        name.startsWith(dataFile + ".") && name.endsWith(".log"));
+    }
+}
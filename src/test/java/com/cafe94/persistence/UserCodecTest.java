@@ -0,0 +1,77 @@
+package com.cafe94.persistence;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+
+import org.junit.jupiter.api.Test;
+
+import com.cafe94.domain.Customer;
+import com.cafe94.domain.Driver;
+import com.cafe94.domain.Manager;
+import com.cafe94.domain.Staff;
+import com.cafe94.domain.User;
+
+/**
+ * Tests for {@link UserCodec}.
+ * @author Adigun Lateef
+ * @version 1.0
+ */
+class UserCodecTest {
+
+    private final UserCodec codec = new UserCodec();
+
+    @Test
+    void customerRoundTrip() throws IOException {
+        Customer customer = new Customer(4, "Ada", "Lovelace",
+        "ada@example.com", "hash", "2 Mill Lane", "07700900000");
+        customer.setAssociatedStaffUserId(12);
+
+        Customer decoded = (Customer) codec.decode(codec.encode(customer));
+        assertCommonFields(customer, decoded);
+        assertEquals("2 Mill Lane", decoded.getAddress());
+        assertEquals("07700900000", decoded.getPhoneNumber());
+        assertEquals(Integer.valueOf(12), decoded.getAssociatedStaffUserId());
+    }
+
+    @Test
+    void staffRoundTripKeepsTheSubclass() throws IOException {
+        Manager manager = new Manager(5, "Grace", "Hopper",
+        "grace@example.com", "hash", "M-1");
+        manager.linkAssociatedCustomer(4);
+        Driver driver = new Driver(6, "Alan", "Turing",
+        "alan@example.com", "hash", "D-1");
+
+        Staff decodedManager = (Staff) codec.decode(codec.encode(manager));
+        assertSame(Manager.class, decodedManager.getClass());
+        assertCommonFields(manager, decodedManager);
+        assertEquals("M-1", decodedManager.getStaffId());
+        assertEquals(Integer.valueOf(4),
+        decodedManager.getAssociatedCustomerUserId());
+
+        Staff decodedDriver = (Staff) codec.decode(codec.encode(driver));
+        assertSame(Driver.class, decodedDriver.getClass());
+        assertNull(decodedDriver.getAssociatedCustomerUserId());
+    }
+
+    @Test
+    void unknownSubclassIsNotEncoded() {
+        Customer customer = new Customer(4, "Ada", "Lovelace",
+        "ada@example.com", "hash", "2 Mill Lane", "07700900000") {
+        };
+        assertThrows(IOException.class, () -> codec.encode(customer));
+    }
+
+    private static void assertCommonFields(User expected, User actual) {
+        assertEquals(expected.getUserID(), actual.getUserID());
+        assertEquals(expected.getRole(), actual.getRole());
+        assertEquals(expected.getFirstName(), actual.getFirstName());
+        assertEquals(expected.getLastName(), actual.getLastName());
+        assertEquals(expected.getEmail(), actual.getEmail());
+        assertEquals(expected.getHashedPassword(),
+        actual.getHashedPassword());
+    }
+}
@@ -0,0 +1,134 @@
+package com.cafe94.persistence;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+
+import com.cafe94.domain.Customer;
+import com.cafe94.domain.Driver;
+import com.cafe94.domain.Manager;
+import com.cafe94.domain.Staff;
+import com.cafe94.domain.User;
+import com.cafe94.domain.Waiter;
+import com.cafe94.enums.UserRole;
+
+/**
+ * Tests for {@link UserIndex}: the name order of the staff lists, and
+ * staff members whose role or name changes.
+ * @author Adigun Lateef
+ * @version 1.0
+ */
+class UserIndexTest {
+
+    /**
+     * Characters whose case folding is unusual: dotted and dotless i,
+     * sharp s, final sigma, a ligature, a private use character and a
+     * Deseret capital and small letter outside the Basic Multilingual
+     * Plane.
+     */
+    private static final String[] ALPHABET = {"a", "B", "i", "I", "z",
+        "_", "[", "\u00E9", "\u00C9", "\u00DF", "\u0130", "\u0131",
+        "\u03A3", "\u03C2", "\u03C3", "\uFB00", "\uE000",
+        "\uD801\uDC00", "\uD801\uDC28"};
+
+    private final UserIndex index = new UserIndex();
+
+    @Test
+    void collationKeysSortLikeCaseInsensitiveOrder() {
+        Random random = new Random(94);
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < 400; i++) {
+            StringBuilder name = new StringBuilder();
+            for (int length = 1 + random.nextInt(3); length > 0; length--) {
+                name.append(ALPHABET[random.nextInt(ALPHABET.length)]);
+            }
+            names.add(name.toString());
+        }
+        for (String a : names) {
+            for (String b : names) {
+                assertEquals(Integer.signum(
+                String.CASE_INSENSITIVE_ORDER.compare(a, b)),
+                Integer.signum(UserIndex.compareKeys(
+                UserIndex.collationKey(a), UserIndex.collationKey(b))),
+                a + " / " + b);
+            }
+        }
+    }
+
+    @Test
+    void staffAreListedInCaseInsensitiveNameOrder() {
+        List<Staff> staff = new ArrayList<>();
+        for (int id = 1; id <= ALPHABET.length; id++) {
+            // Last names repeat, so first names and then IDs decide
+            staff.add(waiter(id, ALPHABET[id % 7], ALPHABET[id - 1]));
+        }
+        staff.forEach(index::put);
+
+        staff.sort(Comparator.comparing(Staff::getLastName,
+        String.CASE_INSENSITIVE_ORDER)
+        .thenComparing(Staff::getFirstName, String.CASE_INSENSITIVE_ORDER)
+        .thenComparingInt(Staff::getUserID));
+        assertEquals(ids(staff), ids(index.findAllStaff()));
+        assertEquals(ids(staff), ids(index.findStaffByRole(
+        UserRole.WAITER)));
+    }
+
+    @Test
+    void roleChangeMovesTheStaffMember() {
+        index.put(waiter(1, "Hopper", "Grace"));
+        index.put(waiter(2, "Lovelace", "Ada"));
+
+        // A promotion saves a new profile under the same ID
+        index.put(new Manager(2, "Ada", "Lovelace", "ada@cafe94.com",
+        "hash", "M2"));
+        assertEquals(List.of(1), ids(index.findStaffByRole(
+        UserRole.WAITER)));
+        assertEquals(List.of(2), ids(index.findStaffByRole(
+        UserRole.MANAGER)));
+        assertEquals(List.of(1, 2), ids(index.findAllStaff()));
+
+        // A staff profile turned customer leaves every staff list
+        index.put(new Customer(1, "Grace", "Hopper", "grace@cafe94.com",
+        "hash", "1 Navy Yard", "01234 567890"));
+        assertEquals(List.of(), ids(index.findStaffByRole(
+        UserRole.WAITER)));
+        assertEquals(List.of(2), ids(index.findAllStaff()));
+        assertEquals(1, index.findByEmail("grace@cafe94.com").size());
+    }
+
+    @Test
+    void renamedStaffMemberIsResortedOnSave() {
+        Staff renamed = new Driver(1, "Alan", "Turing", "alan@cafe94.com",
+        "hash", "D1");
+        index.put(renamed);
+        index.put(new Driver(2, "Tim", "Berners-Lee", "tim@cafe94.com",
+        "hash", "D2"));
+        assertEquals(List.of(2, 1), ids(index.findAllStaff()));
+
+        renamed.setLastName("Alderman");
+        // Still listed under the name it was saved with
+        assertEquals(List.of(2, 1), ids(index.findStaffByRole(
+        UserRole.DRIVER)));
+
+        index.put(renamed);
+        assertEquals(List.of(1, 2), ids(index.findStaffByRole(
+        UserRole.DRIVER)));
+        assertEquals(List.of(1, 2), ids(index.findAllStaff()));
+    }
+
+    private static Waiter waiter(int id, String lastName, String firstName) {
+        return new Waiter(id, firstName, lastName, "w" + id + "@cafe94.com",
+        "hash", "W" + id);
+    }
+
+    private static List<Integer> ids(List<? extends User> users) {
+        return users.stream().map(User::getUserID)
+        .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,131 @@
+package com.cafe94.persistence;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.cafe94.domain.Customer;
+import com.cafe94.domain.Staff;
+import com.cafe94.domain.User;
+import com.cafe94.domain.Waiter;
+
+/**
+ * Tests for {@link UserRepository#saveIfEmailAvailable}: emails matched
+ * ignoring case, changed emails, and the customer and staff profiles one
+ * person may hold under the same email.
+ * @author Adigun Lateef
+ * @version 1.0
+ */
+class UserRepositoryTest {
+
+    @TempDir
+    File directory;
+
+    private UserRepository users;
+
+    @BeforeEach
+    void open() {
+        users = new UserRepository(new File(directory, "users.dat")
+        .getPath(), StorageOptions.journaled());
+    }
+
+    @AfterEach
+    void close() {
+        users.close();
+    }
+
+    @Test
+    void duplicateInAnotherCaseIsRefused() {
+        User first = users.saveIfEmailAvailable(customer("Ada@Cafe94.com"),
+        Customer.class::isInstance).get();
+
+        assertFalse(users.saveIfEmailAvailable(customer("ada@CAFE94.COM"),
+        Customer.class::isInstance).isPresent());
+        assertEquals(List.of(first.getUserID()),
+        ids(users.findByEmail("ADA@cafe94.com")));
+        assertEquals(1, users.findAll().size());
+    }
+
+    @Test
+    void resavingAProfileDoesNotConflictWithItself() {
+        User saved = users.saveIfEmailAvailable(customer("ada@cafe94.com"),
+        Customer.class::isInstance).get();
+
+        assertTrue(users.saveIfEmailAvailable(saved, user -> true)
+        .isPresent());
+        // A copy read back under the same ID is the same profile
+        reopen();
+        User reloaded = users.findById(saved.getUserID()).get();
+        assertTrue(users.saveIfEmailAvailable(reloaded, user -> true)
+        .isPresent());
+        assertEquals(1, users.findAll().size());
+    }
+
+    @Test
+    void changedEmailFreesTheOldOne() {
+        User moved = users.saveIfEmailAvailable(customer("ada@cafe94.com"),
+        Customer.class::isInstance).get();
+
+        moved.setEmail("Countess@Cafe94.com");
+        assertTrue(users.saveIfEmailAvailable(moved,
+        Customer.class::isInstance).isPresent());
+        assertEquals(List.of(), ids(users.findByEmail("ada@cafe94.com")));
+        assertFalse(users.saveIfEmailAvailable(customer(
+        "countess@cafe94.com"), Customer.class::isInstance).isPresent());
+
+        User reused = users.saveIfEmailAvailable(customer(
+        "ADA@cafe94.com"), Customer.class::isInstance).get();
+        reopen();
+        assertEquals(List.of(reused.getUserID()),
+        ids(users.findByEmail("ada@cafe94.com")));
+        assertEquals(List.of(moved.getUserID()),
+        ids(users.findByEmail("countess@cafe94.com")));
+    }
+
+    @Test
+    void customerAndStaffProfilesShareAnEmail() {
+        User customer = users.saveIfEmailAvailable(customer(
+        "ada@cafe94.com"), Customer.class::isInstance).get();
+        // A staff signup only conflicts with other staff profiles
+        User staff = users.saveIfEmailAvailable(waiter("Ada@cafe94.com"),
+        Staff.class::isInstance).get();
+
+        assertFalse(users.saveIfEmailAvailable(waiter("ada@cafe94.com"),
+        Staff.class::isInstance).isPresent());
+        assertFalse(users.saveIfEmailAvailable(customer("ada@Cafe94.com"),
+        Customer.class::isInstance).isPresent());
+        reopen();
+        assertEquals(List.of(customer.getUserID(), staff.getUserID()),
+        ids(users.findByEmail("ada@cafe94.com")).stream().sorted()
+        .collect(Collectors.toList()));
+        assertEquals(List.of(staff.getUserID()), ids(users.findAllStaff()));
+    }
+
+    private void reopen() {
+        users.close();
+        open();
+    }
+
+    private static Customer customer(String email) {
+        return new Customer(0, "Ada", "Lovelace", email, "hash",
+        "12 St James's Square", "01234 567890");
+    }
+
+    private static Waiter waiter(String email) {
+        return new Waiter(0, "Ada", "Lovelace", email, "hash", "W1");
+    }
+
+    private static List<Integer> ids(List<? extends User> users) {
+        return users.stream().map(User::getUserID)
+        .collect(Collectors.toList());
+    }
+}
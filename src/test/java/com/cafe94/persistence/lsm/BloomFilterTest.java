@@ -0,0 +1,88 @@
+package com.cafe94.persistence.lsm;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for {@link BloomFilter}: no false negatives, a false positive
+ * rate near the one it is sized for, and its serialized form.
+ * @author Adigun Lateef
+ * @version 1.0
+ */
+class BloomFilterTest {
+
+    private static final int KEYS = 10_000;
+
+    @Test
+    void everyAddedKeyMightBeContained() {
+        BloomFilter filter = filled();
+        for (int i = 0; i < KEYS; i++) {
+            assertTrue(filter.mightContain(key("in", i)), "Key " + i);
+        }
+    }
+
+    @Test
+    void falsePositiveRateIsLow() {
+        BloomFilter filter = filled();
+        int positives = 0;
+        for (int i = 0; i < KEYS; i++) {
+            if (filter.mightContain(key("out", i))) {
+                positives++;
+            }
+        }
+        // Sized for about 1%; allow for an unlucky hash
+        assertTrue(positives < KEYS * 3 / 100, positives + " positives");
+    }
+
+    @Test
+    void emptyFilterContainsNothing() {
+        assertFalse(BloomFilter.forKeys(0).mightContain(key("in", 1)));
+    }
+
+    @Test
+    void readsBackWhatItWrote() throws IOException {
+        BloomFilter filter = filled();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            filter.writeTo(out);
+        }
+
+        BloomFilter read = BloomFilter.readFrom(new DataInputStream(
+        new ByteArrayInputStream(bytes.toByteArray())));
+        for (int i = 0; i < KEYS; i++) {
+            assertTrue(read.mightContain(key("in", i)), "Key " + i);
+            assertEquals(filter.mightContain(key("out", i)),
+            read.mightContain(key("out", i)));
+        }
+    }
+
+    @Test
+    void corruptHeaderIsRejected() {
+        byte[] header = {0, 0, 0, 0, 0, 0, 0, 1};
+        assertThrows(IOException.class, () -> BloomFilter.readFrom(
+        new DataInputStream(new ByteArrayInputStream(header))));
+    }
+
+    private static BloomFilter filled() {
+        BloomFilter filter = BloomFilter.forKeys(KEYS);
+        for (int i = 0; i < KEYS; i++) {
+            filter.add(key("in", i));
+        }
+        return filter;
+    }
+
+    private static byte[] key(String prefix, int i) {
+        return (prefix + i).getBytes(StandardCharsets.UTF_8);
+    }
+}
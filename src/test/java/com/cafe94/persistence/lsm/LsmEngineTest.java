@@ -0,0 +1,175 @@
+package com.cafe94.persistence.lsm;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests for {@link LsmEngine}: memtable flushes, segment merges and
+ * recovery from the write-ahead log. Flushes and merges run on the
+ * engine's background thread, so the tests wait for their effects.
+ * @author Adigun Lateef
+ * @version 1.0
+ */
+class LsmEngineTest {
+
+    private static final int KEYS = 200;
+    private static final long SMALL_MEMTABLE = 1024;
+
+    @TempDir
+    File directory;
+
+    @Test
+    void fullMemtablesAreFlushedToSegments() throws Exception {
+        try (LsmEngine engine = new LsmEngine(directory, SMALL_MEMTABLE,
+        100, false)) {
+            for (int i = 0; i < KEYS; i++) {
+                engine.put(key(i), value(i, 1));
+            }
+            awaitTrue(() -> engine.getSegmentCount() >= 5
+            && files("wal-").length == 1);
+            for (int i = 0; i < KEYS; i++) {
+                assertArrayEquals(value(i, 1), engine.get(key(i)));
+            }
+        }
+    }
+
+    @Test
+    void mergeKeepsNewestValuesAndDropsDeletes() throws Exception {
+        try (LsmEngine engine = new LsmEngine(directory, SMALL_MEMTABLE,
+        100, false)) {
+            fillAndOverwrite(engine);
+            awaitTrue(() -> engine.getSegmentCount() >= 2);
+        }
+
+        // Reopening with a low threshold merges what the first run left
+        try (LsmEngine engine = new LsmEngine(directory, SMALL_MEMTABLE,
+        2, false)) {
+            awaitTrue(() -> engine.getSegmentCount() == 1
+            && files("seg-").length == 1);
+            assertLatestValues(engine);
+            List<KeyValue> live = engine.scan(null, null, KEYS);
+            assertEquals(KEYS - (KEYS + 2) / 3, live.size());
+        }
+    }
+
+    @Test
+    void writesReadTheSameWhileMergingInTheBackground() throws Exception {
+        try (LsmEngine engine = new LsmEngine(directory, SMALL_MEMTABLE,
+        2, false)) {
+            fillAndOverwrite(engine);
+            assertLatestValues(engine);
+            awaitTrue(() -> engine.getSegmentCount() <= 2);
+            assertLatestValues(engine);
+        }
+    }
+
+    @Test
+    void reopenReplaysTheLog() throws IOException {
+        try (LsmEngine engine = new LsmEngine(directory)) {
+            engine.write(new WriteBatch().put(key(1), value(1, 1))
+            .put(key(2), value(2, 1)));
+            engine.delete(key(1));
+            assertEquals(0, engine.getSegmentCount());
+        }
+
+        try (LsmEngine engine = new LsmEngine(directory)) {
+            assertEquals(1, engine.getSegmentCount());
+            assertNull(engine.get(key(1)));
+            assertArrayEquals(value(2, 1), engine.get(key(2)));
+        }
+    }
+
+    @Test
+    void scanMergesMemtableAndSegments() throws Exception {
+        try (LsmEngine engine = new LsmEngine(directory, SMALL_MEMTABLE,
+        100, false)) {
+            for (int i = 0; i < KEYS; i++) {
+                engine.put(key(i), value(i, 1));
+            }
+            awaitTrue(() -> engine.getSegmentCount() >= 2);
+            engine.put(key(105), value(105, 2));
+            engine.delete(key(107));
+
+            List<KeyValue> page = engine.scanPrefix(bytes("key010"), 5);
+            List<String> keys = new ArrayList<>();
+            for (KeyValue entry : page) {
+                keys.add(text(entry.getKey()));
+            }
+            assertEquals(List.of("key0100", "key0101", "key0102",
+            "key0103", "key0104"), keys);
+            List<KeyValue> rest = engine.scan(key(105), key(110), KEYS);
+            assertEquals(4, rest.size());
+            assertArrayEquals(value(105, 2), rest.get(0).getValue());
+            assertArrayEquals(key(108), rest.get(2).getKey());
+        }
+    }
+
+    /**
+     * Writes every key, then overwrites the even ones and deletes every
+     * third one, across several flushes.
+     */
+    private static void fillAndOverwrite(LsmEngine engine)
+    throws IOException {
+        for (int i = 0; i < KEYS; i++) {
+            engine.put(key(i), value(i, 1));
+        }
+        for (int i = 0; i < KEYS; i += 2) {
+            engine.put(key(i), value(i, 2));
+        }
+        for (int i = 0; i < KEYS; i += 3) {
+            engine.delete(key(i));
+        }
+    }
+
+    private static void assertLatestValues(LsmEngine engine)
+    throws IOException {
+        for (int i = 0; i < KEYS; i++) {
+            byte[] expected = i % 3 == 0 ? null
+            : value(i, i % 2 == 0 ? 2 : 1);
+            assertArrayEquals(expected, engine.get(key(i)), "Key " + i);
+        }
+    }
+
+    private File[] files(String prefix) {
+        return directory.listFiles((dir, name) -> name.startsWith(prefix)
+        && !name.endsWith(".tmp"));
+    }
+
+    private static void awaitTrue(BooleanSupplier condition)
+    throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline,
+            "Timed out waiting for the background thread");
+            Thread.sleep(10);
+        }
+    }
+
+    private static byte[] key(int i) {
+        return bytes(String.format("key%04d", i));
+    }
+
+    private static byte[] value(int i, int generation) {
+        return bytes("value" + i + "." + generation);
+    }
+
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String text(byte[] bytes) {
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
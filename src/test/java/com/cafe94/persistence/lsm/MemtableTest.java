@@ -0,0 +1,95 @@
+package com.cafe94.persistence.lsm;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for {@link Memtable} and for {@link MergingIterator}, which
+ * merges memtables and segments with the newest source winning.
+ * @author Adigun Lateef
+ * @version 1.0
+ */
+class MemtableTest {
+
+    @Test
+    void deleteIsKeptAsTombstone() {
+        Memtable memtable = new Memtable();
+        memtable.apply(new WriteBatch().put(key("a"), key("1"))
+        .put(key("b"), key("2")));
+        memtable.apply(new WriteBatch().delete(key("a")));
+
+        assertSame(Bytes.TOMBSTONE, memtable.get(key("a")));
+        assertArrayEquals(key("2"), memtable.get(key("b")));
+        assertNull(memtable.get(key("c")));
+        assertEquals(2, memtable.size());
+        assertFalse(memtable.isEmpty());
+    }
+
+    @Test
+    void rangeIsHalfOpenAndInKeyOrder() {
+        Memtable memtable = new Memtable();
+        WriteBatch batch = new WriteBatch();
+        for (String k : new String[]{"d", "b", "a", "c", "e"}) {
+            batch.put(key(k), key(k));
+        }
+        memtable.apply(batch);
+
+        assertEquals(List.of("b", "c", "d"),
+        keys(memtable.range(key("b"), key("e"))));
+        assertEquals(List.of("a", "b"), keys(memtable.range(null, key("c"))));
+        assertEquals(List.of("d", "e"), keys(memtable.range(key("d"), null)));
+        assertEquals(List.of(), keys(memtable.range(key("c"), key("c"))));
+    }
+
+    @Test
+    void newestSourceWinsInMerge() {
+        Memtable newest = new Memtable();
+        newest.apply(new WriteBatch().put(key("b"), key("new"))
+        .delete(key("c")));
+        Memtable oldest = new Memtable();
+        oldest.apply(new WriteBatch().put(key("a"), key("old"))
+        .put(key("b"), key("old")).put(key("c"), key("old"))
+        .put(key("d"), key("old")));
+
+        List<Iterator<Map.Entry<byte[], byte[]>>> sources = new ArrayList<>();
+        sources.add(newest.range(null, null));
+        sources.add(oldest.range(null, null));
+        MergingIterator merged = new MergingIterator(sources);
+
+        List<String> entries = new ArrayList<>();
+        while (merged.hasNext()) {
+            Map.Entry<byte[], byte[]> entry = merged.next();
+            entries.add(text(entry.getKey()) + "="
+            + (entry.getValue() == Bytes.TOMBSTONE ? "deleted"
+            : text(entry.getValue())));
+        }
+        assertEquals(List.of("a=old", "b=new", "c=deleted", "d=old"),
+        entries);
+    }
+
+    private static List<String> keys(
+    Iterator<Map.Entry<byte[], byte[]>> entries) {
+        List<String> keys = new ArrayList<>();
+        entries.forEachRemaining(entry -> keys.add(text(entry.getKey())));
+        return keys;
+    }
+
+    private static byte[] key(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String text(byte[] bytes) {
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,116 @@
+package com.cafe94.persistence.lsm;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests for {@link Segment}: point lookups and range scans over several
+ * index blocks, and how deletes are written.
+ * @author Adigun Lateef
+ * @version 1.0
+ */
+class SegmentTest {
+
+    private static final int KEYS = 100;
+
+    @TempDir
+    File directory;
+
+    @Test
+    void lookupsFindEveryKeyAfterReopen() throws IOException {
+        File file = new File(directory, "seg-1.sst");
+        Memtable memtable = filled();
+        Segment.write(file, memtable.range(null, null), memtable.size(),
+        false).close();
+
+        try (Segment segment = Segment.open(file)) {
+            assertEquals(KEYS, segment.getEntryCount());
+            for (int i = 0; i < KEYS; i += 2) {
+                assertArrayEquals(value(i), segment.get(key(i)));
+            }
+            // Odd keys were deleted
+            assertSame(Bytes.TOMBSTONE, segment.get(key(1)));
+            assertNull(segment.get(key(KEYS)));
+            assertNull(segment.get(bytes("a")));
+        }
+    }
+
+    @Test
+    void rangeStartsInsideABlock() throws IOException {
+        Memtable memtable = filled();
+        try (Segment segment = Segment.write(new File(directory, "seg.sst"),
+        memtable.range(null, null), memtable.size(), false)) {
+            Iterator<Map.Entry<byte[], byte[]>> range =
+            segment.range(key(37), key(70));
+            for (int i = 37; i < 70; i++) {
+                Map.Entry<byte[], byte[]> entry = range.next();
+                assertArrayEquals(key(i), entry.getKey());
+                if (i % 2 == 1) {
+                    assertSame(Bytes.TOMBSTONE, entry.getValue());
+                }
+            }
+            assertFalse(range.hasNext());
+        }
+    }
+
+    @Test
+    void droppedTombstonesAreNotWritten() throws IOException {
+        File file = new File(directory, "seg.sst");
+        Memtable memtable = filled();
+        try (Segment segment = Segment.write(file,
+        memtable.range(null, null), memtable.size(), true)) {
+            assertEquals(KEYS / 2, segment.getEntryCount());
+            assertNull(segment.get(key(1)));
+        }
+
+        Memtable deletes = new Memtable();
+        deletes.apply(new WriteBatch().delete(key(1)));
+        assertNull(Segment.write(new File(directory, "empty.sst"),
+        deletes.range(null, null), 1, true));
+        assertFalse(new File(directory, "empty.sst").exists());
+        assertTrue(file.exists());
+    }
+
+    /**
+     * @return A memtable holding every even key and a delete of every odd
+     * one.
+     */
+    private static Memtable filled() {
+        WriteBatch batch = new WriteBatch();
+        for (int i = 0; i < KEYS; i++) {
+            if (i % 2 == 0) {
+                batch.put(key(i), value(i));
+            } else {
+                batch.delete(key(i));
+            }
+        }
+        Memtable memtable = new Memtable();
+        memtable.apply(batch);
+        return memtable;
+    }
+
+    private static byte[] key(int i) {
+        return bytes(String.format("key%04d", i));
+    }
+
+    private static byte[] value(int i) {
+        return bytes("value" + i);
+    }
+
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,159 @@
+package com.cafe94.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.cafe94.domain.EatIn;
+import com.cafe94.domain.Item;
+import com.cafe94.domain.Manager;
+import com.cafe94.domain.Order;
+import com.cafe94.domain.User;
+import com.cafe94.enums.OrderStatus;
+import com.cafe94.enums.Permission;
+import com.cafe94.persistence.MenuRepository;
+import com.cafe94.persistence.MenuSnapshot;
+import com.cafe94.persistence.OrderRepository;
+import com.cafe94.persistence.StorageOptions;
+
+/**
+ * Tests for {@link MenuService}: saved items are replaced, never changed
+ * in place, because orders and menu snapshots share them.
+ * @author Adigun Lateef
+ * @version 1.0
+ */
+class MenuServiceTest {
+
+    // The binary codec decodes order items to the menu's instances
+    private static final StorageOptions OPTIONS =
+    StorageOptions.journaled().withCodec(StorageOptions.Codec.BINARY);
+
+    @TempDir
+    File directory;
+
+    private final User manager = new Manager(1, "Ada", "Lovelace",
+    "ada@cafe94.com", "hash", "M1");
+
+    private MenuRepository menu;
+    private MenuService service;
+
+    @BeforeEach
+    void open() {
+        menu = new MenuRepository(new File(directory, "menu.dat").getPath(),
+        OPTIONS);
+        service = new MenuService(menu, new AuthorizationService() {
+            @Override
+            public void checkPermission(User user, Permission permission) {
+            }
+        });
+    }
+
+    @Test
+    void updateReplacesTheSavedInstance() {
+        Item latte = service.addItem("Latte", "Drinks", 3.00, manager);
+
+        Item updated = service.updateItem(latte.getItemID(), "Oat Latte",
+        "Coffee", 3.50, true, manager);
+
+        assertNotSame(latte, updated);
+        assertEquals("Latte", latte.getName());
+        assertEquals("Drinks", latte.getCategory());
+        assertEquals(300, latte.getPricePence());
+        assertFalse(latte.isDailySpecial());
+        assertEquals("Oat Latte",
+        menu.findById(latte.getItemID()).get().getName());
+    }
+
+    @Test
+    void renameAfterRestartDoesNotRewritePastOrders() {
+        Item latte = service.addItem("Latte", "Drinks", 3.00, manager);
+        int orderId = openOrders().save(new EatIn(0, List.of(latte), 5, 1,
+        OrderStatus.CONFIRMED)).getOrderID();
+
+        // Restart, so the order decodes to the menu's instance
+        open();
+        OrderRepository orders = openOrders();
+        service.updateItem(latte.getItemID(), "Oat Latte", "Drinks", 3.00,
+        false, manager);
+        service.setDailySpecial(latte.getItemID(), manager);
+
+        Order order = orders.findById(orderId).get();
+        Item ordered = order.getLines().get(0).getItem();
+        assertEquals("Latte", ordered.getName());
+        assertFalse(ordered.isDailySpecial());
+
+        order.startPreparation();
+        orders.save(order);
+        open();
+        ordered = openOrders().findById(orderId).get().getLines().get(0)
+        .getItem();
+        assertEquals("Latte", ordered.getName());
+        assertFalse(ordered.isDailySpecial());
+    }
+
+    @Test
+    void specialsAreToggledOnCopies() {
+        Item latte = service.addItem("Latte", "Drinks", 3.00, manager);
+        Item cake = service.addItem("Cake", "Desserts", 4.50, manager);
+
+        Item special = service.setDailySpecial(latte.getItemID(), manager);
+        assertTrue(special.isDailySpecial());
+        assertFalse(latte.isDailySpecial());
+        assertEquals(300, special.getPricePence());
+
+        service.setDailySpecial(cake.getItemID(), manager);
+        assertTrue(special.isDailySpecial());
+        assertFalse(menu.findById(latte.getItemID()).get().isDailySpecial());
+        assertEquals(1, menu.findDailySpecials().size());
+
+        Item cleared = service.clearDailySpecial(cake.getItemID(), manager);
+        assertFalse(cleared.isDailySpecial());
+        assertTrue(menu.findDailySpecials().isEmpty());
+    }
+
+    @Test
+    void olderSnapshotKeepsItsItems() {
+        Item latte = service.addItem("Latte", "Drinks", 3.00, manager);
+        service.addItem("Mocha", "Drinks", 3.20, manager);
+        MenuSnapshot before = menu.snapshot();
+
+        service.updateItem(latte.getItemID(), "Zebra Latte", "Coffee", 3.00,
+        false, manager);
+        service.setDailySpecial(latte.getItemID(), manager);
+
+        assertEquals(List.of("Latte", "Mocha"), names(before.getItems()));
+        assertEquals(List.of("Latte", "Mocha"),
+        names(before.getItemsInCategory("Drinks")));
+        assertTrue(before.getItemsInCategory("Coffee").isEmpty());
+        assertTrue(before.getDailySpecials().isEmpty());
+
+        MenuSnapshot after = menu.snapshot();
+        assertTrue(after.getVersion() > before.getVersion());
+        assertEquals(List.of("Zebra Latte", "Mocha"),
+        names(after.getItems()));
+        assertEquals(List.of("Zebra Latte"),
+        names(after.getDailySpecials()));
+    }
+
+    private static List<String> names(List<Item> items) {
+        List<String> names = new ArrayList<>();
+        for (Item item : items) {
+            names.add(item.getName());
+        }
+        return names;
+    }
+
+    private OrderRepository openOrders() {
+        return new OrderRepository(new File(directory, "orders.dat")
+        .getPath(), OPTIONS, menu);
+    }
+}
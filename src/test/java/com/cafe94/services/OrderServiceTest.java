@@ -0,0 +1,149 @@
+package com.cafe94.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.cafe94.domain.EatIn;
+import com.cafe94.domain.Item;
+import com.cafe94.domain.Manager;
+import com.cafe94.domain.Order;
+import com.cafe94.domain.User;
+import com.cafe94.enums.OrderStatus;
+import com.cafe94.enums.Permission;
+import com.cafe94.persistence.BookingRepository;
+import com.cafe94.persistence.OrderRepository;
+import com.cafe94.persistence.StaleRecordException;
+import com.cafe94.persistence.StorageOptions;
+import com.cafe94.persistence.TableRepository;
+import com.cafe94.persistence.TransactionManager;
+import com.cafe94.persistence.UserRepository;
+import com.cafe94.util.ConsoleNotificationService;
+
+/**
+ * Tests for the status changes of {@link OrderService}: a change that
+ * meets a conflicting save is retried against the latest order, and
+ * given up after three attempts.
+ * @author Adigun Lateef
+ * @version 1.0
+ */
+class OrderServiceTest {
+
+    @TempDir
+    File directory;
+
+    private final User chef = new Manager(1, "Ada", "Lovelace",
+    "ada@cafe94.com", "hash", "M1");
+
+    private ConflictingOrders orders;
+    private OrderService service;
+    private int orderId;
+
+    @BeforeEach
+    void open() {
+        StorageOptions options = StorageOptions.memory();
+        orders = new ConflictingOrders(file("orders.dat"), options);
+        TableRepository tables = new TableRepository(file("tables.dat"),
+        List.of(), options);
+        BookingRepository bookings = new BookingRepository(
+        file("bookings.dat"), options);
+        service = new OrderService(orders, tables,
+        new UserRepository(file("users.dat"), options),
+        new AuthorizationService() {
+            @Override
+            public void checkPermission(User user, Permission permission) {
+            }
+        }, new ConsoleNotificationService(),
+        new TransactionManager(orders, tables, bookings));
+        orderId = orders.save(new EatIn(0,
+        List.of(new Item(1, "Latte", "Drinks", 3.00, false)), 5, 1,
+        OrderStatus.CONFIRMED)).getOrderID();
+    }
+
+    @AfterEach
+    void close() {
+        orders.close();
+    }
+
+    @Test
+    void changeIsRetriedAfterAConflictingSave() {
+        orders.conflictWith(order -> { }, 2);
+
+        Order prepared = service.startOrderPreparation(orderId, chef);
+
+        assertEquals(3, orders.attempts);
+        assertEquals(OrderStatus.PREPARING, prepared.getStatus());
+        // Saved once by this change and twice by the conflicting saves
+        assertEquals(4, orders.findById(orderId).get().getVersion());
+    }
+
+    @Test
+    void changeIsGivenUpAfterThreeConflicts() {
+        orders.conflictWith(order -> { }, 3);
+
+        StaleRecordException stale = assertThrows(
+        StaleRecordException.class, () ->
+        service.startOrderPreparation(orderId, chef));
+
+        assertEquals(3, orders.attempts);
+        assertEquals(orderId, stale.getRecordId());
+        Order stored = orders.findById(orderId).get();
+        assertEquals(OrderStatus.CONFIRMED, stored.getStatus());
+        assertEquals(4, stored.getVersion());
+    }
+
+    @Test
+    void retriedChangeChecksTheLatestStatus() {
+        orders.conflictWith(Order::cancelOrder, 1);
+
+        assertThrows(IllegalStateException.class, () ->
+        service.startOrderPreparation(orderId, chef));
+
+        assertEquals(2, orders.attempts);
+        assertEquals(OrderStatus.CANCELLED,
+        orders.findById(orderId).get().getStatus());
+    }
+
+    private String file(String name) {
+        return new File(directory, name).getPath();
+    }
+
+    /**
+     * An order repository where someone else saves the order just before
+     * each of the first few updates.
+     */
+    private static class ConflictingOrders extends OrderRepository {
+
+        private final List<Consumer<Order>> conflicts = new ArrayList<>();
+        private int attempts;
+
+        ConflictingOrders(String storageFilePath, StorageOptions options) {
+            super(storageFilePath, options);
+        }
+
+        void conflictWith(Consumer<Order> change, int times) {
+            for (int i = 0; i < times; i++) {
+                conflicts.add(change);
+            }
+        }
+
+        @Override
+        public Order update(int orderId, long expectedVersion,
+        Consumer<? super Order> change) {
+            attempts++;
+            if (!conflicts.isEmpty()) {
+                super.update(orderId, expectedVersion, conflicts.remove(0));
+            }
+            return super.update(orderId, expectedVersion, change);
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.cafe94.util.primitive;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for {@link IntHashSet}, including removal from the middle of a
+ * probe run, which shifts later keys back instead of leaving a marker.
+ * @author Adigun Lateef
+ * @version 1.0
+ */
+class IntHashSetTest {
+
+    // Table length of a set created with no expected size
+    private static final int MASK = IntHashing.MIN_CAPACITY - 1;
+
+    @Test
+    void zeroIsAnOrdinaryKey() {
+        IntHashSet set = new IntHashSet();
+        assertFalse(set.contains(0));
+        assertTrue(set.add(0));
+        assertFalse(set.add(0));
+        assertTrue(set.contains(0));
+        assertEquals(1, set.size());
+        assertTrue(set.remove(0));
+        assertFalse(set.remove(0));
+        assertTrue(set.isEmpty());
+    }
+
+    @Test
+    void removingFromARunKeepsLaterKeysReachable() {
+        // Four keys with the last home slot, so their run wraps around
+        int[] colliding = keysWithHome(MASK, 4);
+        int neighbour = keysWithHome(0, 1)[0];
+        for (int victim = 0; victim < colliding.length; victim++) {
+            IntHashSet set = new IntHashSet();
+            for (int key : colliding) {
+                set.add(key);
+            }
+            set.add(neighbour);
+
+            assertTrue(set.remove(colliding[victim]));
+            for (int i = 0; i < colliding.length; i++) {
+                assertEquals(i != victim, set.contains(colliding[i]),
+                "Key " + colliding[i] + " after removing " + victim);
+            }
+            assertTrue(set.contains(neighbour));
+            assertEquals(colliding.length, set.size());
+        }
+    }
+
+    @Test
+    void growsPastItsInitialCapacity() {
+        IntHashSet set = new IntHashSet();
+        for (int key = -500; key < 500; key++) {
+            assertTrue(set.add(key));
+        }
+        assertEquals(1000, set.size());
+        int[] keys = set.toArray();
+        Arrays.sort(keys);
+        assertEquals(-500, keys[0]);
+        assertEquals(499, keys[keys.length - 1]);
+        set.clear();
+        assertTrue(set.isEmpty());
+        assertArrayEquals(new int[0], set.toArray());
+    }
+
+    @Test
+    void behavesLikeHashSet() {
+        Random random = new Random(94);
+        IntHashSet set = new IntHashSet();
+        Set<Integer> expected = new HashSet<>();
+        for (int i = 0; i < 200_000; i++) {
+            // A small key range, so adds and removes hit the same runs
+            int key = random.nextInt(2_000) - 100;
+            switch (random.nextInt(3)) {
+                case 0:
+                    assertEquals(expected.add(key), set.add(key));
+                    break;
+                case 1:
+                    assertEquals(expected.remove(key), set.remove(key));
+                    break;
+                default:
+                    assertEquals(expected.contains(key), set.contains(key));
+            }
+        }
+        assertEquals(expected.size(), set.size());
+        Set<Integer> visited = new HashSet<>();
+        set.forEach(visited::add);
+        assertEquals(expected, visited);
+    }
+
+    /**
+     * @return Non-zero keys whose hash lands on a slot of a new set.
+     */
+    static int[] keysWithHome(int home, int count) {
+        int[] keys = new int[count];
+        int found = 0;
+        for (int key = 1; found < count; key++) {
+            if ((IntHashing.mix(key) & MASK) == home) {
+                keys[found++] = key;
+            }
+        }
+        return keys;
+    }
+}
@@ -0,0 +1,76 @@
+package com.cafe94.util.primitive;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for {@link IntLongMap}.
+ * @author Adigun Lateef
+ * @version 1.0
+ */
+class IntLongMapTest {
+
+    @Test
+    void addKeepsCountsAcrossRehash() {
+        IntLongMap counts = new IntLongMap();
+        Map<Integer, Long> expected = new HashMap<>();
+        for (int i = 0; i < 10_000; i++) {
+            int key = (i * 31) % 1_500 - 50;
+            counts.add(key, i % 7);
+            expected.merge(key, (long) (i % 7), Long::sum);
+        }
+        assertEquals(expected.size(), counts.size());
+        for (Map.Entry<Integer, Long> entry : expected.entrySet()) {
+            assertEquals(entry.getValue(), counts.get(entry.getKey()));
+        }
+        Map<Integer, Long> visited = new HashMap<>();
+        counts.forEach(visited::put);
+        assertEquals(expected, visited);
+    }
+
+    @Test
+    void absentKeysReadAsTheDefault() {
+        IntLongMap map = new IntLongMap();
+        map.put(0, 5);
+        assertTrue(map.containsKey(0));
+        assertFalse(map.containsKey(1));
+        assertEquals(0, map.get(1));
+        assertEquals(-1, map.getOrDefault(1, -1));
+        assertEquals(6, map.increment(0));
+        assertEquals(1, map.size());
+    }
+
+    @Test
+    void overflowIsRejected() {
+        IntLongMap map = new IntLongMap();
+        map.put(3, Long.MAX_VALUE);
+        assertThrows(ArithmeticException.class, () -> map.add(3, 1));
+        assertEquals(Long.MAX_VALUE, map.get(3));
+    }
+
+    @Test
+    void topOrdersByValueThenKey() {
+        IntLongMap map = new IntLongMap();
+        for (int key = 1; key <= 100; key++) {
+            map.add(key, key % 10);
+        }
+        map.add(0, 9);
+
+        Map<Integer, Long> top = map.top(4);
+        assertEquals(List.of(0, 9, 19, 29), new ArrayList<>(top.keySet()));
+        assertEquals(List.of(9L, 9L, 9L, 9L), new ArrayList<>(top.values()));
+        assertTrue(map.top(0).isEmpty());
+        assertEquals(map.size(), map.top(500).size());
+        assertTrue(new IntLongMap().top(3).isEmpty());
+        assertThrows(IllegalArgumentException.class, () -> map.top(-1));
+    }
+}
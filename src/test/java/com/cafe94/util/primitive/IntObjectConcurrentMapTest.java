@@ -0,0 +1,188 @@
+package com.cafe94.util.primitive;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for {@link IntObjectConcurrentMap}: removal from the middle of a
+ * probe run, the map views, and optimistic reads racing writes that
+ * shift and rehash the same segment.
+ * @author Adigun Lateef
+ * @version 1.0
+ */
+class IntObjectConcurrentMapTest {
+
+    // Segment bits and slot bits of a map created with no expected size
+    private static final int SEGMENT_AND_SLOT =
+    0xF0000000 | (IntHashing.MIN_CAPACITY - 1);
+
+    @Test
+    void removingFromARunKeepsLaterKeysReachable() {
+        int[] colliding = collidingKeys(5);
+        for (int victim = 0; victim < colliding.length; victim++) {
+            IntObjectConcurrentMap<String> map =
+            new IntObjectConcurrentMap<>();
+            for (int key : colliding) {
+                map.put(key, "v" + key);
+            }
+
+            assertEquals("v" + colliding[victim],
+            map.remove(colliding[victim]));
+            for (int i = 0; i < colliding.length; i++) {
+                assertEquals(i == victim ? null : "v" + colliding[i],
+                map.get(colliding[i]), "Key " + colliding[i]
+                + " after removing " + victim);
+            }
+            assertEquals(colliding.length - 1, map.size());
+        }
+    }
+
+    @Test
+    void behavesLikeHashMap() {
+        Random random = new Random(94);
+        IntObjectConcurrentMap<String> map = new IntObjectConcurrentMap<>();
+        Map<Integer, String> expected = new HashMap<>();
+        for (int i = 0; i < 200_000; i++) {
+            int key = random.nextInt(3_000) - 100;
+            switch (random.nextInt(3)) {
+                case 0:
+                    String value = "v" + random.nextInt(10);
+                    assertEquals(expected.put(key, value), map.put(key, value));
+                    break;
+                case 1:
+                    assertEquals(expected.remove(key), map.remove(key));
+                    break;
+                default:
+                    assertEquals(expected.get(key), map.get(key));
+            }
+        }
+        assertEquals(expected.size(), map.size());
+        assertEquals(expected, map);
+        assertEquals(map, expected);
+    }
+
+    @Test
+    void viewsWriteThrough() {
+        IntObjectConcurrentMap<String> map = new IntObjectConcurrentMap<>();
+        for (int key = 0; key < 100; key++) {
+            map.put(key, "v" + key);
+        }
+
+        Iterator<Integer> keys = map.keySet().iterator();
+        while (keys.hasNext()) {
+            if (keys.next() % 2 == 0) {
+                keys.remove();
+            }
+        }
+        assertEquals(50, map.size());
+        map.values().removeIf(value -> value.endsWith("1"));
+        assertEquals(40, map.size());
+        for (Map.Entry<Integer, String> entry : map.entrySet()) {
+            assertTrue(entry.getKey() % 2 == 1);
+            assertEquals("v" + entry.getKey(), entry.getValue());
+        }
+        map.clear();
+        assertTrue(map.isEmpty());
+    }
+
+    @Test
+    void conditionalUpdates() {
+        IntObjectConcurrentMap<String> map = new IntObjectConcurrentMap<>();
+        assertEquals("x", map.computeIfAbsent(-5, key -> "x"));
+        assertEquals("x", map.putIfAbsent(-5, "other"));
+        assertEquals("xy", map.merge(-5, "y", String::concat));
+        assertTrue(map.replace(-5, "xy", "z"));
+        assertFalse(map.replace(-5, "xy", "q"));
+        assertFalse(map.remove(-5, "q"));
+        assertNull(map.computeIfPresent(-5, (key, value) -> null));
+        assertFalse(map.containsKey(-5));
+        assertThrows(NullPointerException.class, () -> map.put(1, null));
+    }
+
+    @Test
+    void optimisticReadsNeverMissAStableKey() throws Exception {
+        IntObjectConcurrentMap<String> map = new IntObjectConcurrentMap<>();
+        // Stable keys share runs with the keys the writers churn
+        int[] colliding = collidingKeys(40);
+        List<Integer> stable = new ArrayList<>();
+        for (int i = 0; i < colliding.length; i += 2) {
+            map.put(colliding[i], "v" + colliding[i]);
+            stable.add(colliding[i]);
+        }
+        AtomicBoolean writing = new AtomicBoolean(true);
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> results = new ArrayList<>();
+            results.add(pool.submit(() -> {
+                try {
+                    for (int round = 0; round < 2_000; round++) {
+                        for (int i = 1; i < colliding.length; i += 2) {
+                            map.put(colliding[i], "v" + colliding[i]);
+                        }
+                        // Grows the segment, then empties it again
+                        for (int key = 0; key < 64; key++) {
+                            map.put(key << 8, "v" + key);
+                        }
+                        for (int i = 1; i < colliding.length; i += 2) {
+                            map.remove(colliding[i]);
+                        }
+                        for (int key = 0; key < 64; key++) {
+                            map.remove(key << 8);
+                        }
+                    }
+                } finally {
+                    writing.set(false);
+                }
+                return null;
+            }));
+            for (int reader = 0; reader < 3; reader++) {
+                results.add(pool.submit(() -> {
+                    while (writing.get()) {
+                        for (int key : stable) {
+                            assertEquals("v" + key, map.get(key));
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> result : results) {
+                result.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        assertEquals(stable.size(), map.size());
+    }
+
+    /**
+     * @return Keys that share a segment and a home slot in a new map.
+     */
+    private static int[] collidingKeys(int count) {
+        int target = IntHashing.mix(1) & SEGMENT_AND_SLOT;
+        int[] keys = new int[count];
+        int found = 0;
+        for (int key = 1; found < count; key++) {
+            if ((IntHashing.mix(key) & SEGMENT_AND_SLOT) == target) {
+                keys[found++] = key;
+            }
+        }
+        return keys;
+    }
+}